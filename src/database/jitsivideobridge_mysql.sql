@@ -0,0 +1,15 @@
+CREATE TABLE ofJitsiVideobridgeMetrics (
+  nodeID              VARCHAR(64)   NOT NULL,
+  sampleTime          BIGINT        NOT NULL,
+  conferences         BIGINT        NOT NULL,
+  endpoints           BIGINT        NOT NULL,
+  bitrateDownload     BIGINT        NOT NULL,
+  bitrateUpload       BIGINT        NOT NULL,
+  cpuLoad             BIGINT        NOT NULL,
+  portsUsed           BIGINT        NOT NULL,
+  allocationLatency   BIGINT        NOT NULL,
+  PRIMARY KEY (nodeID, sampleTime),
+  INDEX ofJvbMetrics_sampleTime_idx (sampleTime)
+);
+
+INSERT INTO ofVersion (name, version) VALUES ('jitsivideobridge', 0);
@@ -0,0 +1,17 @@
+CREATE TABLE ofJitsiVideobridgeMetrics (
+  nodeID              VARCHAR2(64)  NOT NULL,
+  sampleTime          INTEGER       NOT NULL,
+  conferences         INTEGER       NOT NULL,
+  endpoints           INTEGER       NOT NULL,
+  bitrateDownload     INTEGER       NOT NULL,
+  bitrateUpload       INTEGER       NOT NULL,
+  cpuLoad             INTEGER       NOT NULL,
+  portsUsed           INTEGER       NOT NULL,
+  allocationLatency   INTEGER       NOT NULL,
+  CONSTRAINT ofJvbMetrics_pk PRIMARY KEY (nodeID, sampleTime)
+);
+CREATE INDEX ofJvbMetrics_sampleTime_idx ON ofJitsiVideobridgeMetrics (sampleTime);
+
+INSERT INTO ofVersion (name, version) VALUES ('jitsivideobridge', 0);
+
+commit;
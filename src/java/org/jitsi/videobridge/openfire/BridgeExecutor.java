@@ -0,0 +1,318 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.TimerTask;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The thread pool on which this plugin processes Colibri requests that are delivered asynchronously through the
+ * {@link LocalColibriChannel}, and other work that should not block the threads of Openfire (such as the warm-up of
+ * the Videobridge).
+ *
+ * The number of threads and the capacity of the queue are defined by Openfire properties, and can be changed while
+ * the pool is in use. Optionally, the pool sizes itself: it grows when tasks wait in the queue for longer than a target
+ * latency, and shrinks back when the threads are mostly idle.
+ */
+public class BridgeExecutor implements Executor
+{
+    private static final Logger Log = LoggerFactory.getLogger( BridgeExecutor.class );
+
+    /**
+     * The name of the Openfire property that defines the number of threads. When auto-tuning is enabled, this is the
+     * number of threads that the pool starts with.
+     */
+    public static final String THREADS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.EXECUTOR_THREADS";
+
+    /**
+     * The default number of threads.
+     */
+    public static final int THREADS_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The name of the Openfire property that defines the maximum number of tasks that can wait in the queue. Tasks
+     * that are submitted when the queue is full are rejected.
+     */
+    public static final String QUEUE_CAPACITY_PROPERTY_NAME = "org.jitsi.videobridge.openfire.EXECUTOR_QUEUE_CAPACITY";
+
+    /**
+     * The default maximum number of tasks that can wait in the queue.
+     */
+    public static final int QUEUE_CAPACITY_DEFAULT_VALUE = 1024;
+
+    /**
+     * The name of the Openfire property that enables the automatic sizing of the pool.
+     */
+    public static final String AUTOTUNE_PROPERTY_NAME = "org.jitsi.videobridge.openfire.EXECUTOR_AUTOTUNE";
+
+    /**
+     * The name of the Openfire property that defines the queue latency (in milliseconds) above which an auto-tuned pool
+     * grows.
+     */
+    public static final String AUTOTUNE_TARGET_LATENCY_PROPERTY_NAME = "org.jitsi.videobridge.openfire.EXECUTOR_AUTOTUNE_TARGET_LATENCY";
+
+    /**
+     * The default queue latency (in milliseconds) above which an auto-tuned pool grows.
+     */
+    public static final long AUTOTUNE_TARGET_LATENCY_DEFAULT_VALUE = 10;
+
+    /**
+     * The interval (in milliseconds) in which an auto-tuned pool is resized.
+     */
+    private static final long AUTOTUNE_INTERVAL = 5000;
+
+    /**
+     * The weight of a new queue latency observation in the moving average.
+     */
+    private static final double LATENCY_WEIGHT = 0.1;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ThreadPoolExecutor pool;
+
+    private volatile int queueCapacity;
+
+    private volatile boolean autoTuned;
+
+    /**
+     * An exponentially weighted moving average of the time (in nanoseconds) that tasks wait in the queue, stored as the
+     * bits of a double. Threads of the pool update it concurrently.
+     */
+    private final AtomicLong queueLatency = new AtomicLong( Double.doubleToLongBits( 0 ) );
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * The number of tasks that were accepted, but did not start executing yet. This, rather than the size of the queue
+     * of the pool, is checked against the capacity, as it is reserved before a task is enqueued: concurrent callers can
+     * not together exceed the capacity.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The task that periodically resizes the pool, or null when auto-tuning is disabled.
+     */
+    private TimerTask tuner;
+
+    public BridgeExecutor()
+    {
+        final int threads = getConfiguredThreads();
+        pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), BridgeExecutor::newThread );
+        pool.allowCoreThreadTimeOut( true );
+        reload();
+    }
+
+    private static Thread newThread( final Runnable runnable )
+    {
+        final Thread thread = new Thread( runnable, "jitsi-videobridge-plugin-" + threadCount.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+    private static int getConfiguredThreads()
+    {
+        return Math.max( 1, JiveGlobals.getIntProperty( THREADS_PROPERTY_NAME, THREADS_DEFAULT_VALUE ) );
+    }
+
+    /**
+     * Applies the sizing as configured in Openfire to the pool, which is resized while tasks continue to execute.
+     */
+    public synchronized void reload()
+    {
+        setThreads( getConfiguredThreads() );
+        queueCapacity = Math.max( 1, JiveGlobals.getIntProperty( QUEUE_CAPACITY_PROPERTY_NAME, QUEUE_CAPACITY_DEFAULT_VALUE ) );
+        autoTuned = JiveGlobals.getBooleanProperty( AUTOTUNE_PROPERTY_NAME, false );
+
+        if ( tuner != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( tuner );
+            tuner = null;
+        }
+        if ( autoTuned )
+        {
+            tuner = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        tune();
+                    }
+                    catch ( Throwable t )
+                    {
+                        Log.warn( "An unexpected exception occurred while resizing the thread pool.", t );
+                    }
+                }
+            };
+            TaskEngine.getInstance().scheduleAtFixedRate( tuner, AUTOTUNE_INTERVAL, AUTOTUNE_INTERVAL );
+        }
+        Log.debug( "Thread pool: {} threads, queue capacity {}, auto-tuning {}.", pool.getMaximumPoolSize(), queueCapacity, autoTuned ? "enabled" : "disabled" );
+    }
+
+    /**
+     * Sets the number of threads. The order in which the core and maximum sizes are updated matters, as the core size
+     * can never exceed the maximum size.
+     */
+    private synchronized void setThreads( final int threads )
+    {
+        if ( threads > pool.getMaximumPoolSize() )
+        {
+            pool.setMaximumPoolSize( threads );
+            pool.setCorePoolSize( threads );
+        }
+        else
+        {
+            pool.setCorePoolSize( threads );
+            pool.setMaximumPoolSize( threads );
+        }
+    }
+
+    /**
+     * Grows the pool when tasks wait for longer than the target latency, and shrinks it when less than half of the
+     * threads are busy. The pool is sized between the number of available processors and four times that number.
+     */
+    protected synchronized void tune()
+    {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final int threads = pool.getMaximumPoolSize();
+        final long target = TimeUnit.MILLISECONDS.toNanos( JiveGlobals.getLongProperty( AUTOTUNE_TARGET_LATENCY_PROPERTY_NAME, AUTOTUNE_TARGET_LATENCY_DEFAULT_VALUE ) );
+
+        if ( pool.getQueue().isEmpty() )
+        {
+            // The average is only updated when tasks execute. Let it decay when nothing waits, so that an idle pool shrinks.
+            updateQueueLatency( average -> average / 2 );
+        }
+
+        final double latency = Double.longBitsToDouble( queueLatency.get() );
+        int resized = threads;
+        if ( latency > target && threads < cores * 4 )
+        {
+            resized = Math.min( cores * 4, threads + Math.max( 1, threads / 4 ) );
+        }
+        else if ( latency < target / 2 && pool.getActiveCount() < threads / 2 && threads > cores )
+        {
+            resized = Math.max( cores, threads - 1 );
+        }
+
+        if ( resized != threads )
+        {
+            Log.debug( "Resizing the thread pool from {} to {} threads (average queue latency: {}ms).", threads, resized, getQueueLatency() );
+            setThreads( resized );
+        }
+    }
+
+    /**
+     * Executes a task on a thread of the pool.
+     *
+     * @param task the task to execute (cannot be null).
+     * @throws RejectedExecutionException when the queue is full, or the pool is shut down.
+     */
+    @Override
+    public void execute( final Runnable task )
+    {
+        int current;
+        do
+        {
+            current = pending.get();
+            if ( current >= queueCapacity )
+            {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException( "The queue of the thread pool is full (capacity: " + queueCapacity + ")." );
+            }
+        }
+        while ( !pending.compareAndSet( current, current + 1 ) );
+
+        final long queued = System.nanoTime();
+        try
+        {
+            pool.execute( () -> {
+                pending.decrementAndGet();
+                final long latency = System.nanoTime() - queued;
+                updateQueueLatency( average -> average + LATENCY_WEIGHT * ( latency - average ) );
+                task.run();
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // The pool is shut down.
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Atomically replaces the moving average of the queue latency with the result of a function of its current value.
+     */
+    private void updateQueueLatency( final DoubleUnaryOperator update )
+    {
+        long current;
+        long updated;
+        do
+        {
+            current = queueLatency.get();
+            updated = Double.doubleToLongBits( update.applyAsDouble( Double.longBitsToDouble( current ) ) );
+        }
+        while ( !queueLatency.compareAndSet( current, updated ) );
+    }
+
+    /**
+     * Stops the pool. Tasks that are queued are discarded.
+     */
+    public synchronized void shutdown()
+    {
+        if ( tuner != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( tuner );
+            tuner = null;
+        }
+        pool.shutdownNow();
+    }
+
+    public int getThreads()
+    {
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads()
+    {
+        return pool.getActiveCount();
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    public int getQueueSize()
+    {
+        return pending.get();
+    }
+
+    public boolean isAutoTuned()
+    {
+        return autoTuned;
+    }
+
+    /**
+     * Returns the average time that tasks wait in the queue before they are executed.
+     *
+     * @return a latency in milliseconds.
+     */
+    public double getQueueLatency()
+    {
+        return Double.longBitsToDouble( queueLatency.get() ) / 1000000.0;
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+}
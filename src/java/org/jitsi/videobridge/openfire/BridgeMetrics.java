@@ -0,0 +1,162 @@
+package org.jitsi.videobridge.openfire;
+
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of aggregated Jitsi Videobridge metrics, as computed by {@link BridgeMetricsSampler}.
+ */
+public class BridgeMetrics
+{
+    /**
+     * A snapshot that is used before the first sample has been taken.
+     */
+    public static final BridgeMetrics EMPTY = new BridgeMetrics( 0, 0, 0, 0, 0, 0, 0, 0, -1, 0, 0, 0, 0, 0, 0 );
+
+    private final long timestamp;
+    private final int conferences;
+    private final int endpoints;
+    private final long bitrateDownload;
+    private final long bitrateUpload;
+    private final double packetLossRate;
+    private final int minPort;
+    private final int maxPort;
+    private final int portsUsed;
+    private final double portFragmentation;
+    private final double cpuLoad;
+    private final long iqCount;
+    private final double iqLatencyAverage;
+    private final double iqLatencyMax;
+    private final double allocationLatencyAverage;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param timestamp moment at which the snapshot was taken (in milliseconds since the epoch).
+     * @param conferences number of conferences hosted by the bridge.
+     * @param endpoints number of endpoints in all conferences.
+     * @param bitrateDownload aggregated ingress bitrate, in bits per second.
+     * @param bitrateUpload aggregated egress bitrate, in bits per second.
+     * @param packetLossRate aggregated ingress packet loss, as a fraction (0 - 1).
+     * @param minPort lower bound of the UDP port range that is configured for media.
+     * @param maxPort upper bound of the UDP port range that is configured for media.
+     * @param portsUsed number of ports in the configured range that are in use, or -1 when unknown.
+     * @param portFragmentation fragmentation of the free ports in the configured range, as a fraction (0 - 1).
+     * @param cpuLoad CPU usage of the Openfire process, as a fraction (0 - 1), or -1 when unknown.
+     * @param iqCount number of IQ requests that were processed in the sample interval.
+     * @param iqLatencyAverage average IQ processing time in the sample interval, in milliseconds.
+     * @param iqLatencyMax maximum IQ processing time in the sample interval, in milliseconds.
+     * @param allocationLatencyAverage average Colibri conference request processing time in the sample interval, in milliseconds.
+     */
+    public BridgeMetrics( final long timestamp, final int conferences, final int endpoints, final long bitrateDownload,
+                          final long bitrateUpload, final double packetLossRate, final int minPort, final int maxPort,
+                          final int portsUsed, final double portFragmentation, final double cpuLoad, final long iqCount,
+                          final double iqLatencyAverage, final double iqLatencyMax, final double allocationLatencyAverage )
+    {
+        this.timestamp = timestamp;
+        this.conferences = conferences;
+        this.endpoints = endpoints;
+        this.bitrateDownload = bitrateDownload;
+        this.bitrateUpload = bitrateUpload;
+        this.packetLossRate = packetLossRate;
+        this.minPort = minPort;
+        this.maxPort = maxPort;
+        this.portsUsed = portsUsed;
+        this.portFragmentation = portFragmentation;
+        this.cpuLoad = cpuLoad;
+        this.iqCount = iqCount;
+        this.iqLatencyAverage = iqLatencyAverage;
+        this.iqLatencyMax = iqLatencyMax;
+        this.allocationLatencyAverage = allocationLatencyAverage;
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public int getConferences()
+    {
+        return conferences;
+    }
+
+    public int getEndpoints()
+    {
+        return endpoints;
+    }
+
+    public long getBitrateDownload()
+    {
+        return bitrateDownload;
+    }
+
+    public long getBitrateUpload()
+    {
+        return bitrateUpload;
+    }
+
+    public double getPacketLossRate()
+    {
+        return packetLossRate;
+    }
+
+    public int getMinPort()
+    {
+        return minPort;
+    }
+
+    public int getMaxPort()
+    {
+        return maxPort;
+    }
+
+    public int getPortsUsed()
+    {
+        return portsUsed;
+    }
+
+    public double getPortFragmentation()
+    {
+        return portFragmentation;
+    }
+
+    public double getCpuLoad()
+    {
+        return cpuLoad;
+    }
+
+    public long getIqCount()
+    {
+        return iqCount;
+    }
+
+    public double getIqLatencyAverage()
+    {
+        return iqLatencyAverage;
+    }
+
+    public double getIqLatencyMax()
+    {
+        return iqLatencyMax;
+    }
+
+    public double getAllocationLatencyAverage()
+    {
+        return allocationLatencyAverage;
+    }
+
+    /**
+     * Returns a JSON representation of this snapshot.
+     *
+     * @return a JSON object (never null).
+     */
+    public String toJSON()
+    {
+        return String.format( Locale.ROOT,
+            "{\"timestamp\":%d,\"conferences\":%d,\"endpoints\":%d,\"bitrateDownload\":%d,\"bitrateUpload\":%d,"
+          + "\"packetLossRate\":%.4f,\"minPort\":%d,\"maxPort\":%d,\"portsUsed\":%d,\"portFragmentation\":%.4f,\"cpuLoad\":%.4f,"
+          + "\"iqCount\":%d,\"iqLatencyAverage\":%.3f,\"iqLatencyMax\":%.3f,\"allocationLatencyAverage\":%.3f}",
+            timestamp, conferences, endpoints, bitrateDownload, bitrateUpload,
+            packetLossRate, minPort, maxPort, portsUsed, portFragmentation, cpuLoad,
+            iqCount, iqLatencyAverage, iqLatencyMax, allocationLatencyAverage );
+    }
+}
@@ -0,0 +1,279 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jitsi.service.neomedia.MediaStream;
+import org.jitsi.service.neomedia.stats.MediaStreamStats2;
+import org.jitsi.service.neomedia.stats.ReceiveTrackStats;
+import org.jitsi.service.neomedia.stats.SendTrackStats;
+import org.jitsi.videobridge.*;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * Periodically computes aggregated metrics of the Jitsi Videobridge instance that is hosted by this plugin.
+ *
+ * Metrics are computed once per interval, on a single thread, regardless of how many consumers read them. Consumers
+ * either obtain the latest snapshot, or register a listener that is notified of every new snapshot. This ensures that
+ * the cost of computing metrics does not grow with the number of consumers.
+ */
+public class BridgeMetricsSampler
+{
+    private static final Logger Log = LoggerFactory.getLogger( BridgeMetricsSampler.class );
+
+    /**
+     * The name of the Openfire property that defines the interval (in milliseconds) in which metrics are sampled.
+     */
+    public static final String SAMPLE_INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.METRICS_SAMPLE_INTERVAL";
+
+    /**
+     * The default interval (in milliseconds) in which metrics are sampled.
+     */
+    public static final long SAMPLE_INTERVAL_DEFAULT_VALUE = 1000;
+
+    /**
+     * The component from which metrics are sampled.
+     */
+    private final OpenfireComponentImpl component;
+
+    /**
+     * The history to which every computed snapshot is added.
+     */
+    private final MetricsHistory history;
+
+    /**
+     * Tracks the usage of the UDP port range that is configured for media.
+     */
+    private final PortUsageTracker portUsageTracker;
+
+    /**
+     * Guards {@link #latest}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The most recently computed snapshot.
+     */
+    private BridgeMetrics latest = BridgeMetrics.EMPTY;
+
+    /**
+     * Consumers that are notified of every new snapshot.
+     */
+    private final Set<Consumer<BridgeMetrics>> listeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * The task that periodically computes a new snapshot, or null when this sampler is not running.
+     */
+    private TimerTask task;
+
+    public BridgeMetricsSampler( final OpenfireComponentImpl component, final MetricsHistory history, final PortUsageTracker portUsageTracker )
+    {
+        this.component = component;
+        this.history = history;
+        this.portUsageTracker = portUsageTracker;
+    }
+
+    /**
+     * Returns the interval in which metrics are sampled, as configured in Openfire.
+     *
+     * @return an interval in milliseconds.
+     */
+    public static long getSampleInterval()
+    {
+        return Math.max( 100, JiveGlobals.getLongProperty( SAMPLE_INTERVAL_PROPERTY_NAME, SAMPLE_INTERVAL_DEFAULT_VALUE ) );
+    }
+
+    /**
+     * Starts periodic sampling. Invoking this method on an instance that is already started causes the sampling task
+     * to be rescheduled, which allows a change of the sample interval to be applied.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        final long interval = getSampleInterval();
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    sample();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while sampling Jitsi Videobridge metrics.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, interval, interval );
+        Log.debug( "Started sampling Jitsi Videobridge metrics every {}ms.", interval );
+    }
+
+    /**
+     * Stops periodic sampling.
+     */
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Returns the most recently computed snapshot.
+     *
+     * @return metrics (never null).
+     */
+    public BridgeMetrics getLatest()
+    {
+        synchronized ( lock )
+        {
+            return latest;
+        }
+    }
+
+    /**
+     * Registers a consumer that is notified of every new snapshot. Consumers are notified on the sampling thread, and
+     * must therefore not block.
+     *
+     * @param listener the consumer (cannot be null).
+     */
+    public void addListener( final Consumer<BridgeMetrics> listener )
+    {
+        listeners.add( listener );
+    }
+
+    /**
+     * Unregisters a consumer that was registered through {@link #addListener(Consumer)}.
+     *
+     * @param listener the consumer (cannot be null).
+     */
+    public void removeListener( final Consumer<BridgeMetrics> listener )
+    {
+        listeners.remove( listener );
+    }
+
+    /**
+     * Computes a new snapshot, and makes it available to consumers.
+     */
+    protected void sample()
+    {
+        final BridgeMetrics metrics = compute();
+        synchronized ( lock )
+        {
+            latest = metrics;
+        }
+        history.record( metrics );
+
+        for ( final Consumer<BridgeMetrics> listener : listeners )
+        {
+            try
+            {
+                listener.accept( metrics );
+            }
+            catch ( Throwable t )
+            {
+                Log.warn( "An unexpected exception occurred while notifying a consumer of Jitsi Videobridge metrics.", t );
+            }
+        }
+    }
+
+    /**
+     * Computes metrics by iterating over all conferences that are hosted by the Videobridge.
+     *
+     * @return a new snapshot (never null).
+     */
+    private BridgeMetrics compute()
+    {
+        int conferences = 0;
+        int endpoints = 0;
+        long bitrateDownload = 0;
+        long bitrateUpload = 0;
+        long packetRateDownload = 0;
+        double lostPacketRateDownload = 0;
+
+        final Videobridge videobridge = component.getVideobridge();
+        if ( videobridge != null )
+        {
+            for ( final Conference conference : videobridge.getConferences() )
+            {
+                conferences++;
+                endpoints += conference.getEndpointCount();
+
+                for ( final Content content : conference.getContents() )
+                {
+                    for ( final Channel channel : content.getChannels() )
+                    {
+                        if ( !( channel instanceof RtpChannel ) )
+                        {
+                            continue;
+                        }
+
+                        final MediaStream stream = ( (RtpChannel) channel ).getStream();
+                        if ( stream == null )
+                        {
+                            continue;
+                        }
+
+                        final MediaStreamStats2 stats = stream.getMediaStreamStats();
+                        final ReceiveTrackStats receiveStats = stats.getReceiveStats();
+                        final SendTrackStats sendStats = stats.getSendStats();
+
+                        bitrateDownload += receiveStats.getBitrate();
+                        bitrateUpload += sendStats.getBitrate();
+                        packetRateDownload += receiveStats.getPacketRate();
+                        lostPacketRateDownload += receiveStats.getLossRate() * receiveStats.getPacketRate();
+                    }
+                }
+            }
+        }
+
+        final double packetLossRate = packetRateDownload == 0 ? 0 : lostPacketRateDownload / packetRateDownload;
+        final LatencyRecorder.Interval iq = component.getIqLatency().drain();
+        final LatencyRecorder.Interval allocation = component.getAllocationLatency().drain();
+
+        return new BridgeMetrics(
+            System.currentTimeMillis(),
+            conferences,
+            endpoints,
+            bitrateDownload,
+            bitrateUpload,
+            packetLossRate,
+            portUsageTracker.getMinPort(),
+            portUsageTracker.getMaxPort(),
+            portUsageTracker.getUsed(),
+            portUsageTracker.getFragmentation(),
+            getProcessCpuLoad(),
+            iq.getCount(),
+            iq.getAverageMillis(),
+            iq.getMaxMillis(),
+            allocation.getAverageMillis()
+        );
+    }
+
+    /**
+     * Returns the recent CPU usage of the Openfire process, if the JVM exposes it.
+     *
+     * @return CPU usage as a fraction (0 - 1), or -1 when unknown.
+     */
+    private static double getProcessCpuLoad()
+    {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if ( os instanceof com.sun.management.OperatingSystemMXBean )
+        {
+            return ( (com.sun.management.OperatingSystemMXBean) os ).getProcessCpuLoad();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,437 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.cluster.ClusterManager;
+import org.jivesoftware.openfire.cluster.ClusterNodeInfo;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.jivesoftware.util.cache.Cache;
+import org.jivesoftware.util.cache.CacheFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Shares the configuration of the Videobridge between the nodes of an Openfire cluster, as a versioned document.
+ *
+ * Openfire replicates property changes to all cluster nodes one by one. Without coordination, each node applies each
+ * change as it arrives, so nodes briefly run different configurations (for example, different port ranges), and a
+ * change of M properties is applied M times on each of N nodes.
+ *
+ * While clustering is started, changes to properties of the Videobridge are deferred. The node on which a
+ * configuration batch is written publishes a snapshot of all these properties as a new version of the configuration
+ * document, in a clustered cache, once the batch has been written completely. Other nodes observe the replicated
+ * property changes only as a reason to wait for a new version: they never publish, as they could do so while only
+ * part of the batch has been replicated to them. Each node (including the publishing node) waits until its own
+ * properties match the document, applies the document as a whole, and acknowledges the version that it applied. Nodes
+ * that have not acknowledged the current version are reported as skewed.
+ *
+ * Property changes that are not made through a batch (for example, on the system properties page of Openfire) are not
+ * published. Each node applies them by itself, when no new version was published for a while.
+ *
+ * When clustering is not started, property changes are applied as they occur.
+ */
+public class ClusteredConfiguration
+{
+    private static final Logger Log = LoggerFactory.getLogger( ClusteredConfiguration.class );
+
+    /**
+     * The name of the cache that holds the configuration document.
+     */
+    public static final String DOCUMENT_CACHE_NAME = "Jitsi Videobridge Configuration";
+
+    /**
+     * The name of the cache that holds the version of the configuration that each node applied, by node identifier.
+     */
+    public static final String ACKNOWLEDGEMENT_CACHE_NAME = "Jitsi Videobridge Configuration Acknowledgements";
+
+    /**
+     * The key of the configuration document in its cache.
+     */
+    private static final String DOCUMENT_KEY = "current";
+
+    /**
+     * The key of the version in the configuration document. Not a valid property name.
+     */
+    private static final String VERSION_KEY = "";
+
+    /**
+     * The prefixes of the names of the properties that are part of the configuration.
+     */
+    private static final String[] PREFIXES = { "org.jitsi.", "org.ice4j." };
+
+    /**
+     * The number of synchronization rounds (one per second) that a node waits for its properties to match a new
+     * version of the document. Afterwards, the version is applied with the properties of the node.
+     */
+    private static final int MAX_WAIT_ROUNDS = 10;
+
+    private final PluginImpl plugin;
+
+    private final Cache<String, HashMap<String, String>> documents;
+
+    private final Cache<String, Long> acknowledgements;
+
+    /**
+     * Names of properties that changed, and that have not yet been applied.
+     */
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    /**
+     * The version of the document that was applied last, or -1 when none was applied.
+     */
+    private long appliedVersion = -1;
+
+    /**
+     * The properties that were applied last.
+     */
+    private Map<String, String> appliedProperties;
+
+    /**
+     * The number of rounds that the properties of this node have not matched a newer version of the document.
+     */
+    private int waitRounds;
+
+    /**
+     * Set when a configuration batch was written on this node, which is then to publish a new version.
+     */
+    private boolean publishRequested;
+
+    /**
+     * The number of rounds that changed properties were pending, without a new version being published.
+     */
+    private int pendingRounds;
+
+    private TimerTask task;
+
+    public ClusteredConfiguration( final PluginImpl plugin )
+    {
+        this.plugin = plugin;
+        CacheFactory.setMaxLifetimeProperty( DOCUMENT_CACHE_NAME, -1 );
+        CacheFactory.setMaxLifetimeProperty( ACKNOWLEDGEMENT_CACHE_NAME, -1 );
+        this.documents = CacheFactory.createCache( DOCUMENT_CACHE_NAME );
+        this.acknowledgements = CacheFactory.createCache( ACKNOWLEDGEMENT_CACHE_NAME );
+    }
+
+    public synchronized void start()
+    {
+        stop();
+
+        // The plugin was initialized with the properties as they are now.
+        appliedProperties = snapshot();
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    synchronize();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while synchronizing the configuration with the cluster.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, 1000, 1000 );
+    }
+
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Checks if the configuration is shared with a cluster.
+     *
+     * @return true when clustering is started, otherwise false.
+     */
+    public boolean isActive()
+    {
+        return ClusterManager.isClusteringStarted();
+    }
+
+    /**
+     * Records changed properties, to be applied with the next version of the configuration.
+     *
+     * @param properties the names of changed properties (cannot be null).
+     * @return true if any of the properties is part of the configuration, otherwise false.
+     */
+    public synchronized boolean defer( final Collection<String> properties )
+    {
+        boolean result = false;
+        for ( final String property : properties )
+        {
+            if ( isConfigurationProperty( property ) )
+            {
+                pending.add( property );
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the properties of a configuration batch that was written on this node, and requests that the next
+     * synchronization publishes them as a new version of the configuration. To be invoked only after all changes of
+     * the batch were written.
+     *
+     * @param properties the names of the changed properties (cannot be null).
+     */
+    public synchronized void requestPublication( final Collection<String> properties )
+    {
+        if ( defer( properties ) )
+        {
+            publishRequested = true;
+        }
+    }
+
+    /**
+     * Publishes a new version of the configuration when a configuration batch was written on this node, and applies a
+     * newer version of the configuration when one was published. Invoked every second, and after a configuration batch
+     * is written.
+     */
+    public synchronized void synchronize()
+    {
+        final Map<String, String> snapshot = snapshot();
+
+        if ( !isActive() )
+        {
+            // Clustering stopped: apply what was deferred.
+            if ( !pending.isEmpty() )
+            {
+                plugin.applyProperties( new ArrayList<>( pending ), Collections.emptyMap() );
+                pending.clear();
+            }
+            publishRequested = false;
+            pendingRounds = 0;
+            appliedProperties = snapshot;
+            return;
+        }
+
+        HashMap<String, String> document = documents.get( DOCUMENT_KEY );
+        if ( publishRequested )
+        {
+            publishRequested = false;
+            if ( document == null || !getProperties( document ).equals( snapshot ) )
+            {
+                document = publish( snapshot );
+            }
+        }
+
+        if ( document == null || getVersion( document ) <= appliedVersion )
+        {
+            if ( pending.isEmpty() )
+            {
+                return;
+            }
+            if ( document != null && getProperties( document ).equals( snapshot ) )
+            {
+                pending.clear(); // replicated changes that are part of the applied version.
+                pendingRounds = 0;
+                return;
+            }
+            if ( ++pendingRounds < MAX_WAIT_ROUNDS )
+            {
+                return; // the node on which the changes were made might still publish them.
+            }
+
+            final Set<String> changed = getChanged( appliedProperties, snapshot );
+            changed.addAll( pending );
+            Log.info( "Applying {} changed properties that were not published as a version of the clustered configuration.", changed.size() );
+            plugin.applyProperties( changed, Collections.emptyMap() );
+            pending.clear();
+            pendingRounds = 0;
+            appliedProperties = snapshot;
+            return;
+        }
+
+        final long version = getVersion( document );
+        final Map<String, String> properties = getProperties( document );
+
+        if ( !properties.equals( snapshot ) && ++waitRounds < MAX_WAIT_ROUNDS )
+        {
+            return; // the property changes have not yet been replicated to this node.
+        }
+        if ( !properties.equals( snapshot ) )
+        {
+            Log.warn( "The properties of this node do not match version {} of the clustered configuration after {} seconds. Applying the properties of this node. Differences: {}", version, waitRounds, getChanged( properties, snapshot ) );
+        }
+        waitRounds = 0;
+
+        final Set<String> changed = getChanged( appliedProperties, snapshot );
+        changed.addAll( pending );
+        if ( !changed.isEmpty() )
+        {
+            plugin.applyProperties( changed, Collections.emptyMap() );
+        }
+        Log.info( "Applied version {} of the clustered configuration ({} changed properties).", version, changed.size() );
+
+        pending.clear();
+        pendingRounds = 0;
+        appliedProperties = snapshot;
+        appliedVersion = version;
+        acknowledgements.put( getNodeId(), version );
+    }
+
+    /**
+     * Publishes the properties of this node as a new version of the document, unless the current version already
+     * holds these properties.
+     *
+     * @return the current document (never null).
+     */
+    private HashMap<String, String> publish( final Map<String, String> snapshot )
+    {
+        final Lock lock = CacheFactory.getLock( DOCUMENT_KEY, documents );
+        lock.lock();
+        try
+        {
+            final HashMap<String, String> current = documents.get( DOCUMENT_KEY );
+            if ( current != null && getProperties( current ).equals( snapshot ) )
+            {
+                return current;
+            }
+
+            final HashMap<String, String> document = new HashMap<>( snapshot );
+            document.put( VERSION_KEY, String.valueOf( current == null ? 1 : getVersion( current ) + 1 ) );
+            documents.put( DOCUMENT_KEY, document );
+            Log.debug( "Published version {} of the clustered configuration.", document.get( VERSION_KEY ) );
+            return document;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the names of properties that differ between two sets of properties. For child properties (such as the
+     * values of list properties), the name of the parent property is included as well.
+     */
+    static Set<String> getChanged( final Map<String, String> a, final Map<String, String> b )
+    {
+        final Set<String> names = new HashSet<>( a.keySet() );
+        names.addAll( b.keySet() );
+
+        final Set<String> result = new LinkedHashSet<>();
+        for ( final String name : names )
+        {
+            if ( !Objects.equals( a.get( name ), b.get( name ) ) )
+            {
+                result.add( name );
+                if ( name.lastIndexOf( '.' ) > 0 )
+                {
+                    result.add( name.substring( 0, name.lastIndexOf( '.' ) ) );
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isConfigurationProperty( final String property )
+    {
+        for ( final String prefix : PREFIXES )
+        {
+            if ( property.startsWith( prefix ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current values of all properties that are part of the configuration.
+     */
+    private static Map<String, String> snapshot()
+    {
+        final Map<String, String> result = new HashMap<>();
+        for ( final String name : JiveGlobals.getPropertyNames() )
+        {
+            if ( isConfigurationProperty( name ) && JiveGlobals.getProperty( name ) != null )
+            {
+                result.put( name, JiveGlobals.getProperty( name ) );
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> getProperties( final Map<String, String> document )
+    {
+        final Map<String, String> result = new HashMap<>( document );
+        result.remove( VERSION_KEY );
+        return result;
+    }
+
+    private static long getVersion( final Map<String, String> document )
+    {
+        return Long.parseLong( document.get( VERSION_KEY ) );
+    }
+
+    private static String getNodeId()
+    {
+        return XMPPServer.getInstance().getNodeID().toString();
+    }
+
+    /**
+     * Returns the current version of the configuration.
+     *
+     * @return a version, or -1 when no version was published.
+     */
+    public long getVersion()
+    {
+        final HashMap<String, String> document = documents.get( DOCUMENT_KEY );
+        return document == null ? -1 : getVersion( document );
+    }
+
+    public synchronized long getAppliedVersion()
+    {
+        return appliedVersion;
+    }
+
+    /**
+     * Returns the version of the configuration that each node of the cluster applied.
+     *
+     * @return versions by node identifier, where -1 denotes a node that did not apply any version (never null).
+     */
+    public Map<String, Long> getAcknowledgements()
+    {
+        final Map<String, Long> result = new TreeMap<>();
+        if ( isActive() )
+        {
+            for ( final ClusterNodeInfo node : ClusterManager.getNodesInfo() )
+            {
+                final String nodeId = node.getNodeID().toString();
+                final Long version = acknowledgements.get( nodeId );
+                result.put( nodeId, version == null ? -1 : version );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of cluster nodes that have not applied the current version of the configuration.
+     *
+     * @return a node count.
+     */
+    public int getSkewedNodes()
+    {
+        final long version = getVersion();
+        int result = 0;
+        for ( final long acknowledged : getAcknowledgements().values() )
+        {
+            if ( acknowledged < version )
+            {
+                result++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.xmpp.packet.IQ;
+
+import java.util.*;
+
+/**
+ * Utility methods to inspect Colibri conference requests and responses, as exchanged with the Videobridge component.
+ *
+ * These methods operate on the XML representation of stanzas, which allows the plugin to inspect Colibri IQs before
+ * they are parsed by the Videobridge.
+ */
+public final class ColibriElements
+{
+    /**
+     * The XML namespace of Colibri conference requests.
+     */
+    public static final String NAMESPACE = "http://jitsi.org/protocol/colibri";
+
+    private ColibriElements()
+    {
+    }
+
+    /**
+     * Returns the Colibri 'conference' child element of an IQ.
+     *
+     * @param iq the IQ to inspect (can be null).
+     * @return the conference element, or null if the IQ is not a Colibri conference IQ.
+     */
+    public static Element getConference( final IQ iq )
+    {
+        if ( iq == null )
+        {
+            return null;
+        }
+        final Element child = iq.getChildElement();
+        if ( child != null && "conference".equals( child.getName() ) && NAMESPACE.equals( child.getNamespaceURI() ) )
+        {
+            return child;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the identifier of the conference that a request applies to. For requests that create a new conference,
+     * the identifier is only available in the response.
+     *
+     * @param request the request (cannot be null).
+     * @param response the response (can be null).
+     * @return a conference identifier, or null if unknown.
+     */
+    public static String getConferenceId( final IQ request, final IQ response )
+    {
+        final Element responseConference = getConference( response );
+        if ( responseConference != null && responseConference.attributeValue( "id" ) != null )
+        {
+            return responseConference.attributeValue( "id" );
+        }
+        final Element requestConference = getConference( request );
+        return requestConference == null ? null : requestConference.attributeValue( "id" );
+    }
+
+    /**
+     * Returns the name of a conference (typically, the address of the MUC room that the conference is used for).
+     *
+     * @param iq a Colibri request or response (can be null).
+     * @return a conference name, or null if unknown.
+     */
+    public static String getConferenceName( final IQ iq )
+    {
+        final Element conference = getConference( iq );
+        return conference == null ? null : conference.attributeValue( "name" );
+    }
+
+    /**
+     * Returns the identifiers of all endpoints that are referenced in a Colibri IQ, either as an 'endpoint' element,
+     * or as the 'endpoint' attribute of a channel.
+     *
+     * @param iq a Colibri request or response (can be null).
+     * @return endpoint identifiers (possibly empty, never null).
+     */
+    public static Set<String> getEndpointIds( final IQ iq )
+    {
+        final Set<String> result = new HashSet<>();
+        final Element conference = getConference( iq );
+        if ( conference == null )
+        {
+            return result;
+        }
+
+        for ( final Iterator endpoints = conference.elementIterator( "endpoint" ); endpoints.hasNext(); )
+        {
+            final String id = ( (Element) endpoints.next() ).attributeValue( "id" );
+            if ( id != null )
+            {
+                result.add( id );
+            }
+        }
+
+        for ( final Element channel : getChannels( conference ) )
+        {
+            final String id = channel.attributeValue( "endpoint" );
+            if ( id != null )
+            {
+                result.add( id );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all 'channel' and 'sctpconnection' elements of all contents of a conference element.
+     *
+     * @param conference a Colibri conference element (cannot be null).
+     * @return channel elements (possibly empty, never null).
+     */
+    public static List<Element> getChannels( final Element conference )
+    {
+        final List<Element> result = new ArrayList<>();
+        for ( final Iterator contents = conference.elementIterator( "content" ); contents.hasNext(); )
+        {
+            final Element content = (Element) contents.next();
+            for ( final Iterator channels = content.elementIterator(); channels.hasNext(); )
+            {
+                final Element channel = (Element) channels.next();
+                if ( "channel".equals( channel.getName() ) || "sctpconnection".equals( channel.getName() ) )
+                {
+                    result.add( channel );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the port numbers of the UDP host candidates of all transports in a conference element: those of the
+     * channels, and those of the channel bundles. In a response to a Colibri request, these are the ports that the
+     * Videobridge bound for the channels in the response.
+     *
+     * @param conference a Colibri conference element (cannot be null).
+     * @return port numbers (possibly empty, never null).
+     */
+    public static Set<Integer> getHostCandidatePorts( final Element conference )
+    {
+        final List<Element> transports = new ArrayList<>();
+        for ( final Element channel : getChannels( conference ) )
+        {
+            transports.add( channel.element( "transport" ) );
+        }
+        for ( final Iterator bundles = conference.elementIterator( "channel-bundle" ); bundles.hasNext(); )
+        {
+            transports.add( ( (Element) bundles.next() ).element( "transport" ) );
+        }
+
+        final Set<Integer> result = new HashSet<>();
+        for ( final Element transport : transports )
+        {
+            if ( transport == null )
+            {
+                continue;
+            }
+            for ( final Iterator candidates = transport.elementIterator( "candidate" ); candidates.hasNext(); )
+            {
+                final Element candidate = (Element) candidates.next();
+                // Raw UDP candidates have neither a type nor a protocol.
+                final String type = candidate.attributeValue( "type" );
+                final String protocol = candidate.attributeValue( "protocol" );
+                if ( ( type != null && !"host".equals( type ) ) || ( protocol != null && !"udp".equalsIgnoreCase( protocol ) ) )
+                {
+                    continue;
+                }
+                try
+                {
+                    result.add( Integer.parseInt( candidate.attributeValue( "port" ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    // Ignore candidates without a valid port.
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.PacketError;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Absorbs retransmissions of Colibri requests.
+ *
+ * A conference focus retransmits a request when it does not receive a response in time, which is likely to happen
+ * when the Videobridge is busy. Each retransmission would otherwise be processed as a new request, duplicating the
+ * allocation work and allocating ports that are not released until the channels expire.
+ *
+ * Requests are identified by their sender and stanza ID. When a request arrives that was processed recently, the
+ * original response is replayed without involving the Videobridge. When the original request is still being processed,
+ * the retransmission waits (for a short period, which is independent of the retention period) for the same response.
+ * When the original request does not complete in that period, the retransmission is answered with a 'wait' error,
+ * rather than holding up the thread that processes it any longer. Error responses are not retained, so that a request
+ * that failed is processed again when it is retransmitted. When the cache is full, requests are processed without
+ * being retained. Responses are removed by a {@link TimingWheel} when they expire.
+ */
+public class ColibriRequestCache
+{
+    private static final Logger Log = LoggerFactory.getLogger( ColibriRequestCache.class );
+
+    /**
+     * The name of the Openfire property that defines the period (in milliseconds) for which responses are retained. A
+     * value of zero or less disables the cache.
+     */
+    public static final String TTL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.COLIBRI_REQUEST_CACHE_TTL";
+
+    /**
+     * The default period (in milliseconds) for which responses are retained.
+     */
+    public static final long TTL_DEFAULT_VALUE = 30000;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of requests that are retained.
+     */
+    public static final String SIZE_PROPERTY_NAME = "org.jitsi.videobridge.openfire.COLIBRI_REQUEST_CACHE_SIZE";
+
+    /**
+     * The default maximum number of requests that are retained.
+     */
+    public static final int SIZE_DEFAULT_VALUE = 10000;
+
+    /**
+     * The name of the Openfire property that defines the period (in milliseconds) for which a retransmission waits for
+     * the response to the original request, when that is still being processed.
+     */
+    public static final String COALESCE_TIMEOUT_PROPERTY_NAME = "org.jitsi.videobridge.openfire.COLIBRI_REQUEST_CACHE_COALESCE_TIMEOUT";
+
+    /**
+     * The default period (in milliseconds) for which a retransmission waits for the response to the original request.
+     */
+    public static final long COALESCE_TIMEOUT_DEFAULT_VALUE = 1000;
+
+    /**
+     * Processes a request.
+     */
+    public interface Handler
+    {
+        IQ handle( IQ request ) throws Exception;
+    }
+
+    /**
+     * A request that is being processed, or was processed recently.
+     */
+    private static class Entry
+    {
+        final CompletableFuture<IQ> response = new CompletableFuture<>();
+        final long created = System.currentTimeMillis();
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final TimingWheel timingWheel;
+
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong coalesceTimeouts = new AtomicLong();
+
+    public ColibriRequestCache( final TimingWheel timingWheel )
+    {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Processes a request, unless it is a retransmission of a request that is being processed or was processed
+     * recently, in which case the response to the original request is returned.
+     *
+     * @param request the request (cannot be null).
+     * @param handler processes the request when it is not a retransmission (cannot be null).
+     * @return the response (can be null when the handler returns null).
+     * @throws Exception when processing the request fails.
+     */
+    public IQ process( final IQ request, final Handler handler ) throws Exception
+    {
+        final long ttl = JiveGlobals.getLongProperty( TTL_PROPERTY_NAME, TTL_DEFAULT_VALUE );
+        if ( ttl <= 0 || request.getFrom() == null || request.getID() == null )
+        {
+            return handler.handle( request );
+        }
+
+        final String key = request.getFrom().toString() + '\u0000' + request.getID();
+        final long now = System.currentTimeMillis();
+
+        final int size = JiveGlobals.getIntProperty( SIZE_PROPERTY_NAME, SIZE_DEFAULT_VALUE );
+        if ( entries.size() >= size && !entries.containsKey( key ) )
+        {
+            return handler.handle( request ); // full: process without retaining.
+        }
+
+        final Entry entry = new Entry();
+        Entry existing = entries.putIfAbsent( key, entry );
+        if ( existing != null && now - existing.created > ttl && entries.replace( key, existing, entry ) )
+        {
+            existing = null; // expired: process again.
+        }
+
+        if ( existing != null )
+        {
+            if ( existing.response.isDone() )
+            {
+                replayed.incrementAndGet();
+            }
+            else
+            {
+                coalesced.incrementAndGet();
+            }
+            Log.debug( "Absorbed a retransmission of Colibri request '{}' from {}.", request.getID(), request.getFrom() );
+            try
+            {
+                final long timeout = Math.max( 0, JiveGlobals.getLongProperty( COALESCE_TIMEOUT_PROPERTY_NAME, COALESCE_TIMEOUT_DEFAULT_VALUE ) );
+                final IQ response = existing.response.get( timeout, TimeUnit.MILLISECONDS );
+                return response == null ? null : response.createCopy();
+            }
+            catch ( ExecutionException e )
+            {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            catch ( TimeoutException e )
+            {
+                coalesceTimeouts.incrementAndGet();
+                Log.debug( "The original of retransmitted Colibri request '{}' from {} is still being processed.", request.getID(), request.getFrom() );
+                final IQ error = IQ.createResultIQ( request );
+                if ( request.getChildElement() != null )
+                {
+                    error.setChildElement( request.getChildElement().createCopy() );
+                }
+                error.setError( new PacketError( PacketError.Condition.resource_constraint, PacketError.Type.wait, "The original request is still being processed." ) );
+                return error;
+            }
+        }
+
+        misses.incrementAndGet();
+        try
+        {
+            final IQ response = handler.handle( request );
+            entry.response.complete( response );
+            if ( response == null || response.getType() == IQ.Type.error )
+            {
+                entries.remove( key, entry );
+            }
+            else
+            {
+                timingWheel.schedule( () -> entries.remove( key, entry ), ttl );
+            }
+            return response;
+        }
+        catch ( Exception | Error e )
+        {
+            entry.response.completeExceptionally( e );
+            entries.remove( key, entry );
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of requests that were processed by the Videobridge.
+     *
+     * @return a request count.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of retransmissions that were answered with the response to an earlier request.
+     *
+     * @return a request count.
+     */
+    public long getReplayed()
+    {
+        return replayed.get();
+    }
+
+    /**
+     * Returns the number of retransmissions that arrived while the original request was being processed.
+     *
+     * @return a request count.
+     */
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the number of retransmissions that were answered with an error, as the original request was not
+     * processed in time.
+     *
+     * @return a request count.
+     */
+    public long getCoalesceTimeouts()
+    {
+        return coalesceTimeouts.get();
+    }
+
+    public int getSize()
+    {
+        return entries.size();
+    }
+}
@@ -0,0 +1,87 @@
+package org.jitsi.videobridge.openfire;
+
+import org.xmpp.packet.JID;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Migrates a conference to another Videobridge (see {@link ConferenceMigrator}), and returns the result as JSON.
+ *
+ * The 'conference' request parameter identifies the conference on the Videobridge of this plugin. The 'target'
+ * parameter is the address of the Videobridge component to migrate to; when absent, the conference is migrated to the
+ * Videobridge of this plugin. When the 'action' parameter is 'expire', the conference is expired instead, which is to
+ * be done after its clients have switched to the target. Repeating a migration returns the result of the earlier one.
+ *
+ * POST requests must carry the nonce that a GET request returns, as the 'csrf' parameter (see {@link CsrfProtection}).
+ */
+public class ConferenceMigrationServlet extends HttpServlet
+{
+    @Override
+    protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        CsrfProtection.respond( request, response );
+    }
+
+    @Override
+    protected void doPost( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        if ( CsrfProtection.reject( request, response ) )
+        {
+            return;
+        }
+
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        final LocalColibriChannel channel = plugin == null ? null : plugin.getLocalColibriChannel();
+        if ( channel == null || !( plugin.getComponent() instanceof OpenfireComponentImpl ) )
+        {
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Jitsi Videobridge is not running, or its local Colibri channel is disabled." );
+            return;
+        }
+
+        final String conferenceId = request.getParameter( "conference" );
+        if ( conferenceId == null || conferenceId.trim().isEmpty() )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST, "Missing parameter 'conference'." );
+            return;
+        }
+
+        final JID target;
+        try
+        {
+            final String value = request.getParameter( "target" );
+            target = value == null || value.trim().isEmpty() ? channel.getAddress() : new JID( value.trim() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST, "Invalid value for parameter 'target': " + e.getMessage() );
+            return;
+        }
+
+        final ConferenceMigrator migrator = new ConferenceMigrator( (OpenfireComponentImpl) plugin.getComponent(), channel );
+        final String json;
+        try
+        {
+            if ( "expire".equals( request.getParameter( "action" ) ) )
+            {
+                migrator.expire( conferenceId.trim() );
+                json = "{\"expired\":\"" + conferenceId.trim().replace( "\"", "" ) + "\"}";
+            }
+            else
+            {
+                json = migrator.migrate( conferenceId.trim(), target ).toJSON();
+            }
+        }
+        catch ( IOException e )
+        {
+            response.sendError( HttpServletResponse.SC_CONFLICT, e.getMessage() );
+            return;
+        }
+
+        response.setContentType( "application/json" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.getWriter().print( json );
+    }
+}
@@ -0,0 +1,609 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.*;
+import org.jitsi.videobridge.*;
+import org.jivesoftware.openfire.IQResultListener;
+import org.jivesoftware.openfire.XMPPServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Moves a running conference from the Videobridge of this plugin to another Videobridge.
+ *
+ * The state of the conference (its contents, channels, endpoints, payload types, RTP header extensions, sources and
+ * source groups) is obtained by a Colibri request for all of its channels, and captured in a compact snapshot. The
+ * snapshot omits everything that is bound to this Videobridge: identifiers, ICE credentials, candidates and DTLS
+ * fingerprints. From the snapshot, the conference is allocated on the target Videobridge, which generates a new
+ * transport for each channel (or channel bundle).
+ *
+ * The new transports are to be signaled to the clients by the conference focus (for example, with a Jingle
+ * transport-replace), which causes the clients to restart ICE against the target. The conference on this Videobridge
+ * is kept until {@link #expire(String)} is invoked, so that clients can keep using it until they have switched. Media
+ * is interrupted while a client restarts ICE and DTLS against the target; how long depends on the client and the
+ * network, and is not covered by this class.
+ *
+ * A migration is performed once: while the original conference exists, a repeated migration to the same target returns
+ * the result of the earlier one, rather than allocating the conference on the target again.
+ *
+ * The target can be the Videobridge of this plugin (which is useful to test a migration), or the Videobridge of any
+ * other Openfire node, addressed by the address of its component. A conference that is allocated on a remote
+ * Videobridge is requested by the XMPP domain of this server, which the remote Videobridge must accept as a conference
+ * focus.
+ */
+public class ConferenceMigrator
+{
+    private static final Logger Log = LoggerFactory.getLogger( ConferenceMigrator.class );
+
+    /**
+     * The XML namespace of ICE-UDP transports.
+     */
+    private static final String ICE_UDP_NAMESPACE = "urn:xmpp:jingle:transports:ice-udp:1";
+
+    /**
+     * The attributes of channels and SCTP connections that are carried over to the target.
+     */
+    private static final List<String> ATTRIBUTES = Arrays.asList( "endpoint", "direction", "initiator", "last-n", "rtp-level-relay-type", "channel-bundle-id" );
+
+    /**
+     * The child elements of channels that are carried over to the target.
+     */
+    private static final List<String> CHILDREN = Arrays.asList( "payload-type", "rtp-hdrext", "source", "ssrc-group", "ssrc" );
+
+    /**
+     * The time (in milliseconds) to wait for a response of a Videobridge.
+     */
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * The results of migrations, keyed by the identifier of the original conference and the address of the target.
+     * Entries are removed when the original conference is expired, or no longer exists. Guarded by itself, which also
+     * serializes migrations.
+     */
+    private static final Map<String, Result> migrations = new HashMap<>();
+
+    /**
+     * The state of a conference, without anything that is bound to a particular Videobridge.
+     */
+    public static class Snapshot
+    {
+        private final String focus;
+        private final Element conference;
+
+        Snapshot( final String focus, final Element conference )
+        {
+            this.focus = focus;
+            this.conference = conference;
+        }
+
+        /**
+         * Returns the address of the conference focus that manages the conference.
+         *
+         * @return an address, or null if unknown.
+         */
+        public String getFocus()
+        {
+            return focus;
+        }
+
+        /**
+         * Returns the Colibri conference element that allocates the conference on a Videobridge.
+         *
+         * @return a copy of the element (never null).
+         */
+        public Element getConference()
+        {
+            return conference.createCopy();
+        }
+
+        /**
+         * Encodes this snapshot as deflated XML.
+         *
+         * @return an encoded snapshot (never null).
+         */
+        public byte[] encode()
+        {
+            final Element wrapper = DocumentHelper.createElement( "migration" );
+            if ( focus != null )
+            {
+                wrapper.addAttribute( "focus", focus );
+            }
+            wrapper.add( conference.createCopy() );
+
+            final Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION );
+            deflater.setInput( wrapper.asXML().getBytes( StandardCharsets.UTF_8 ) );
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[ 1024 ];
+            while ( !deflater.finished() )
+            {
+                out.write( buffer, 0, deflater.deflate( buffer ) );
+            }
+            deflater.end();
+            return out.toByteArray();
+        }
+
+        /**
+         * Decodes a snapshot that was encoded by {@link #encode()}.
+         *
+         * @param encoded an encoded snapshot (cannot be null).
+         * @return the snapshot (never null).
+         * @throws IOException when the data is not an encoded snapshot.
+         */
+        public static Snapshot decode( final byte[] encoded ) throws IOException
+        {
+            final Inflater inflater = new Inflater();
+            inflater.setInput( encoded );
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[ 1024 ];
+            try
+            {
+                while ( !inflater.finished() )
+                {
+                    final int length = inflater.inflate( buffer );
+                    if ( length == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+                    {
+                        throw new IOException( "Truncated snapshot." );
+                    }
+                    out.write( buffer, 0, length );
+                }
+                final Element wrapper = DocumentHelper.parseText( new String( out.toByteArray(), StandardCharsets.UTF_8 ) ).getRootElement();
+                final Element conference = wrapper.element( "conference" );
+                if ( conference == null )
+                {
+                    throw new IOException( "The snapshot does not contain a conference." );
+                }
+                return new Snapshot( wrapper.attributeValue( "focus" ), conference.createCopy() );
+            }
+            catch ( DataFormatException | DocumentException e )
+            {
+                throw new IOException( "Unable to decode a snapshot.", e );
+            }
+            finally
+            {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * The outcome of a migration.
+     */
+    public static class Result
+    {
+        private final String sourceConferenceId;
+        private final JID target;
+        private final Element targetConference;
+        private final int snapshotSize;
+        private final long durationMillis;
+
+        Result( final String sourceConferenceId, final JID target, final Element targetConference, final int snapshotSize, final long durationMillis )
+        {
+            this.sourceConferenceId = sourceConferenceId;
+            this.target = target;
+            this.targetConference = targetConference;
+            this.snapshotSize = snapshotSize;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getSourceConferenceId()
+        {
+            return sourceConferenceId;
+        }
+
+        public JID getTarget()
+        {
+            return target;
+        }
+
+        public String getTargetConferenceId()
+        {
+            return targetConference.attributeValue( "id" );
+        }
+
+        /**
+         * Returns the Colibri description of the conference on the target, which holds the new transports that are to
+         * be signaled to the clients.
+         *
+         * @return a Colibri conference element (never null).
+         */
+        public Element getTargetConference()
+        {
+            return targetConference;
+        }
+
+        /**
+         * Returns the size of the encoded snapshot.
+         *
+         * @return a size in bytes.
+         */
+        public int getSnapshotSize()
+        {
+            return snapshotSize;
+        }
+
+        /**
+         * Returns the time that it took to capture the snapshot and allocate the conference on the target.
+         *
+         * @return a duration in milliseconds.
+         */
+        public long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        /**
+         * Returns a JSON representation of this result.
+         *
+         * @return a JSON object (never null).
+         */
+        public String toJSON()
+        {
+            return "{"
+                + "\"sourceConference\":\"" + escape( sourceConferenceId ) + "\","
+                + "\"target\":\"" + escape( target.toString() ) + "\","
+                + "\"targetConference\":\"" + escape( getTargetConferenceId() ) + "\","
+                + "\"snapshotSize\":" + snapshotSize + ","
+                + "\"duration\":" + durationMillis + ","
+                + "\"colibri\":\"" + escape( targetConference.asXML() ) + "\""
+                + "}";
+        }
+
+        private static String escape( final String value )
+        {
+            if ( value == null )
+            {
+                return "";
+            }
+            final StringBuilder result = new StringBuilder();
+            for ( final char c : value.toCharArray() )
+            {
+                switch ( c )
+                {
+                    case '"': result.append( "\\\"" ); break;
+                    case '\\': result.append( "\\\\" ); break;
+                    case '\n': result.append( "\\n" ); break;
+                    case '\r': result.append( "\\r" ); break;
+                    case '\t': result.append( "\\t" ); break;
+                    default:
+                        if ( c < 0x20 )
+                        {
+                            result.append( String.format( "\\u%04x", (int) c ) );
+                        }
+                        else
+                        {
+                            result.append( c );
+                        }
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private final OpenfireComponentImpl component;
+
+    private final LocalColibriChannel channel;
+
+    public ConferenceMigrator( final OpenfireComponentImpl component, final LocalColibriChannel channel )
+    {
+        this.component = component;
+        this.channel = channel;
+    }
+
+    /**
+     * Captures the state of a conference on the Videobridge of this plugin.
+     *
+     * @param conferenceId the identifier of the conference (cannot be null).
+     * @return a snapshot (never null).
+     * @throws IOException when the conference does not exist, or its state cannot be obtained.
+     */
+    public Snapshot snapshot( final String conferenceId ) throws IOException
+    {
+        final Conference conference = findConference( conferenceId );
+        final String focus = conference.getFocus() == null ? null : conference.getFocus().toString();
+
+        // Requests the description of every channel of the conference.
+        final IQ request = new IQ( IQ.Type.get );
+        request.setTo( channel.getAddress() );
+        request.setFrom( focus != null ? new JID( focus ) : new JID( XMPPServer.getInstance().getServerInfo().getXMPPDomain() ) );
+        final Element requestConference = request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        requestConference.addAttribute( "id", conferenceId );
+        for ( final Content content : conference.getContents() )
+        {
+            final Element requestContent = requestConference.addElement( "content" ).addAttribute( "name", content.getName() );
+            for ( final Channel bridgeChannel : content.getChannels() )
+            {
+                requestContent.addElement( bridgeChannel instanceof SctpConnection ? "sctpconnection" : "channel" ).addAttribute( "id", bridgeChannel.getID() );
+            }
+        }
+
+        final IQ response = channel.send( request );
+        final Element described = ColibriElements.getConference( response );
+        if ( response.getType() != IQ.Type.result || described == null )
+        {
+            throw new IOException( "Unable to obtain the state of conference " + conferenceId + ": " + response.toXML() );
+        }
+        return new Snapshot( focus, toAllocation( described ) );
+    }
+
+    /**
+     * Converts the description of a conference to a request that allocates the same conference on another Videobridge.
+     */
+    static Element toAllocation( final Element described )
+    {
+        final Element result = DocumentHelper.createElement( QName.get( "conference", ColibriElements.NAMESPACE ) );
+        if ( described.attributeValue( "name" ) != null )
+        {
+            result.addAttribute( "name", described.attributeValue( "name" ) );
+        }
+
+        final Set<String> bundles = new LinkedHashSet<>();
+        for ( final Iterator contents = described.elementIterator( "content" ); contents.hasNext(); )
+        {
+            final Element content = (Element) contents.next();
+            final Element resultContent = result.addElement( "content" ).addAttribute( "name", content.attributeValue( "name" ) );
+            for ( final Iterator channels = content.elementIterator(); channels.hasNext(); )
+            {
+                final Element channel = (Element) channels.next();
+                if ( !"channel".equals( channel.getName() ) && !"sctpconnection".equals( channel.getName() ) )
+                {
+                    continue;
+                }
+
+                final Element resultChannel = resultContent.addElement( channel.getName() );
+                for ( final String attribute : ATTRIBUTES )
+                {
+                    if ( channel.attributeValue( attribute ) != null )
+                    {
+                        resultChannel.addAttribute( attribute, channel.attributeValue( attribute ) );
+                    }
+                }
+                for ( final Iterator children = channel.elementIterator(); children.hasNext(); )
+                {
+                    final Element child = (Element) children.next();
+                    if ( CHILDREN.contains( child.getName() ) )
+                    {
+                        resultChannel.add( child.createCopy() );
+                    }
+                }
+
+                final String bundle = channel.attributeValue( "channel-bundle-id" );
+                if ( bundle != null )
+                {
+                    bundles.add( bundle );
+                }
+                else
+                {
+                    addTransport( resultChannel, channel.element( QName.get( "transport", ICE_UDP_NAMESPACE ) ) );
+                }
+            }
+        }
+
+        for ( final Iterator endpoints = described.elementIterator( "endpoint" ); endpoints.hasNext(); )
+        {
+            result.add( ( (Element) endpoints.next() ).createCopy() );
+        }
+
+        for ( final String bundle : bundles )
+        {
+            Element describedBundle = null;
+            for ( final Iterator existing = described.elementIterator( "channel-bundle" ); existing.hasNext(); )
+            {
+                final Element candidate = (Element) existing.next();
+                if ( bundle.equals( candidate.attributeValue( "id" ) ) )
+                {
+                    describedBundle = candidate;
+                }
+            }
+            final Element resultBundle = result.addElement( "channel-bundle" ).addAttribute( "id", bundle );
+            addTransport( resultBundle, describedBundle == null ? null : describedBundle.element( QName.get( "transport", ICE_UDP_NAMESPACE ) ) );
+        }
+        return result;
+    }
+
+    /**
+     * Adds a request for a new ICE-UDP transport, which retains the RTCP multiplexing of the original transport.
+     */
+    private static void addTransport( final Element parent, final Element original )
+    {
+        final Element transport = parent.addElement( QName.get( "transport", ICE_UDP_NAMESPACE ) );
+        if ( original != null && original.element( "rtcp-mux" ) != null )
+        {
+            transport.addElement( "rtcp-mux" );
+        }
+    }
+
+    /**
+     * Allocates a conference from a snapshot on a Videobridge.
+     *
+     * @param snapshot the state of the conference (cannot be null).
+     * @param target the address of the Videobridge component (cannot be null).
+     * @return the Colibri description of the allocated conference (never null).
+     * @throws IOException when the conference cannot be allocated.
+     */
+    public Element restore( final Snapshot snapshot, final JID target ) throws IOException
+    {
+        final IQ request = new IQ( IQ.Type.set );
+        request.setTo( target );
+        request.setChildElement( snapshot.getConference() );
+
+        final IQ response;
+        if ( channel.isLocal( target ) )
+        {
+            request.setFrom( snapshot.getFocus() != null ? new JID( snapshot.getFocus() ) : new JID( XMPPServer.getInstance().getServerInfo().getXMPPDomain() ) );
+            response = channel.send( request );
+        }
+        else
+        {
+            request.setFrom( new JID( XMPPServer.getInstance().getServerInfo().getXMPPDomain() ) );
+            response = sendRemote( request );
+        }
+
+        final Element allocated = ColibriElements.getConference( response );
+        if ( response.getType() != IQ.Type.result || allocated == null || allocated.attributeValue( "id" ) == null )
+        {
+            throw new IOException( "The conference could not be allocated on " + target + ": " + response.toXML() );
+        }
+        return allocated;
+    }
+
+    /**
+     * Sends a request to a Videobridge through Openfire, and waits for its response.
+     */
+    static IQ sendRemote( final IQ request ) throws IOException
+    {
+        final CompletableFuture<IQ> result = new CompletableFuture<>();
+        XMPPServer.getInstance().getIQRouter().addIQResultListener( request.getID(), new IQResultListener()
+        {
+            @Override
+            public void receivedAnswer( final IQ packet )
+            {
+                result.complete( packet );
+            }
+
+            @Override
+            public void answerTimeout( final String packetId )
+            {
+                result.completeExceptionally( new TimeoutException( "No response from " + request.getTo() ) );
+            }
+        }, TIMEOUT );
+        XMPPServer.getInstance().getIQRouter().route( request );
+
+        try
+        {
+            return result.get( TIMEOUT + 1000, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for a response from " + request.getTo(), e );
+        }
+        catch ( ExecutionException | TimeoutException e )
+        {
+            throw new IOException( "No response from " + request.getTo(), e );
+        }
+    }
+
+    /**
+     * Captures the state of a conference, and allocates it on a target Videobridge. The conference on this Videobridge
+     * is not expired.
+     *
+     * @param conferenceId the identifier of the conference on this Videobridge (cannot be null).
+     * @param target the address of the Videobridge component to migrate to (cannot be null).
+     * @return the result (never null).
+     * @throws IOException when the migration fails.
+     */
+    public Result migrate( final String conferenceId, final JID target ) throws IOException
+    {
+        final String key = conferenceId + '\u0000' + target.toString();
+        synchronized ( migrations )
+        {
+            pruneMigrations();
+            final Result previous = migrations.get( key );
+            if ( previous != null )
+            {
+                Log.debug( "Conference {} was migrated to {} already (conference {}).", conferenceId, target, previous.getTargetConferenceId() );
+                return previous;
+            }
+
+            final long start = System.nanoTime();
+            final Snapshot snapshot = snapshot( conferenceId );
+            final byte[] encoded = snapshot.encode();
+
+            // The target is given the decoded snapshot, as it would be when it is transferred to another node.
+            final Element allocated = restore( Snapshot.decode( encoded ), target );
+            final long durationMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+            Log.info( "Migrated conference {} to {} (conference {}) in {} ms. Snapshot size: {} bytes.", conferenceId, target, allocated.attributeValue( "id" ), durationMillis, encoded.length );
+            final Result result = new Result( conferenceId, target, allocated, encoded.length, durationMillis );
+            migrations.put( key, result );
+            return result;
+        }
+    }
+
+    /**
+     * Removes the results of migrations of conferences that no longer exist. Must be invoked while holding the lock of
+     * {@link #migrations}.
+     */
+    private void pruneMigrations()
+    {
+        if ( migrations.isEmpty() )
+        {
+            return;
+        }
+        final Set<String> existing = new HashSet<>();
+        final Videobridge videobridge = component.getVideobridge();
+        if ( videobridge != null )
+        {
+            for ( final Conference conference : videobridge.getConferences() )
+            {
+                existing.add( conference.getID() );
+            }
+        }
+        migrations.values().removeIf( result -> !existing.contains( result.getSourceConferenceId() ) );
+    }
+
+    /**
+     * Expires all channels of a conference on the Videobridge of this plugin, which is to be done after its clients
+     * have switched to the target of a migration.
+     *
+     * @param conferenceId the identifier of the conference (cannot be null).
+     * @throws IOException when the conference does not exist, or cannot be expired.
+     */
+    public void expire( final String conferenceId ) throws IOException
+    {
+        final Conference conference = findConference( conferenceId );
+
+        final IQ request = new IQ( IQ.Type.set );
+        request.setTo( channel.getAddress() );
+        request.setFrom( conference.getFocus() != null ? new JID( conference.getFocus().toString() ) : new JID( XMPPServer.getInstance().getServerInfo().getXMPPDomain() ) );
+        final Element requestConference = request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        requestConference.addAttribute( "id", conferenceId );
+        for ( final Content content : conference.getContents() )
+        {
+            final Element requestContent = requestConference.addElement( "content" ).addAttribute( "name", content.getName() );
+            for ( final Channel bridgeChannel : content.getChannels() )
+            {
+                requestContent.addElement( bridgeChannel instanceof SctpConnection ? "sctpconnection" : "channel" )
+                    .addAttribute( "id", bridgeChannel.getID() )
+                    .addAttribute( "expire", "0" );
+            }
+        }
+
+        final IQ response = channel.send( request );
+        if ( response.getType() != IQ.Type.result )
+        {
+            throw new IOException( "Unable to expire conference " + conferenceId + ": " + response.toXML() );
+        }
+
+        synchronized ( migrations )
+        {
+            migrations.values().removeIf( result -> conferenceId.equals( result.getSourceConferenceId() ) );
+        }
+    }
+
+    private Conference findConference( final String conferenceId ) throws IOException
+    {
+        final Videobridge videobridge = component.getVideobridge();
+        if ( videobridge != null )
+        {
+            for ( final Conference conference : videobridge.getConferences() )
+            {
+                if ( conferenceId.equals( conference.getID() ) )
+                {
+                    return conference;
+                }
+            }
+        }
+        throw new IOException( "Conference " + conferenceId + " does not exist." );
+    }
+}
@@ -0,0 +1,200 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.muc.MUCEventListener;
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.Message;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms up the Videobridge once, when a multi-user chat room gets an occupant for the first time since the plugin was
+ * started, before a conference focus is likely to request a conference.
+ *
+ * The first allocation of a channel is expensive: it triggers the initialization of the candidate harvesters
+ * (including lookups of mapped addresses), and the loading of code that has not been used yet. That work is done once
+ * per Videobridge, so this warm-up is too: a conference with one channel is allocated, and expired as soon as it was
+ * allocated. The focus allocates its own conferences, which are not affected otherwise. Whether the warm-up shortens
+ * the first allocation of the focus on a particular server can be measured with the {@link LoadHarness}, by comparing
+ * the first run after a restart with and without the warm-up.
+ */
+public class ConferencePreallocator implements MUCEventListener
+{
+    private static final Logger Log = LoggerFactory.getLogger( ConferencePreallocator.class );
+
+    /**
+     * The name of the Openfire property that enables the warm-up.
+     */
+    public static final String ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PREALLOCATION_ENABLED";
+
+    /**
+     * The name of the Openfire property that lists the addresses of the rooms that trigger the warm-up. When empty,
+     * every room does.
+     */
+    public static final String ROOMS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PREALLOCATION_ROOMS";
+
+    /**
+     * The name of the conference that is allocated to warm up the Videobridge, and of its endpoint.
+     */
+    private static final String NAME = "warm-up";
+
+    /**
+     * The channel through which requests are delivered to the Videobridge.
+     */
+    private final LocalColibriChannel channel;
+
+    /**
+     * The address from which requests are sent to the Videobridge.
+     */
+    private final JID from;
+
+    /**
+     * The executor on which the warm-up is performed.
+     */
+    private final Executor executor;
+
+    /**
+     * Set when the warm-up was started, after which room events are ignored.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    public ConferencePreallocator( final LocalColibriChannel channel, final Executor executor )
+    {
+        this.channel = channel;
+        this.executor = executor;
+        this.from = new JID( null, XMPPServer.getInstance().getServerInfo().getXMPPDomain(), PluginImpl.PLUGIN_NAME );
+    }
+
+    public static boolean isEnabled()
+    {
+        return JiveGlobals.getBooleanProperty( ENABLED_PROPERTY_NAME, false );
+    }
+
+    /**
+     * Checks if the Videobridge was warmed up (or is being warmed up).
+     *
+     * @return true if the warm-up was started, otherwise false.
+     */
+    public boolean isStarted()
+    {
+        return started.get();
+    }
+
+    @Override
+    public void occupantJoined( final JID roomJID, final JID user, final String nickname )
+    {
+        if ( started.get() || !isEnabled() || !isConfiguredRoom( roomJID ) || !started.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        // Do not hold up the processing of the MUC join.
+        try
+        {
+            executor.execute( this::warmUp );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            Log.debug( "Not warming up the Videobridge: the thread pool is saturated. Retrying when the next occupant joins a room." );
+            started.set( false );
+        }
+    }
+
+    @Override
+    public void occupantLeft( final JID roomJID, final JID user )
+    {
+    }
+
+    @Override
+    public void roomDestroyed( final JID roomJID )
+    {
+    }
+
+    @Override
+    public void roomCreated( final JID roomJID )
+    {
+    }
+
+    @Override
+    public void nicknameChanged( final JID roomJID, final JID user, final String oldNickname, final String newNickname )
+    {
+    }
+
+    @Override
+    public void messageReceived( final JID roomJID, final JID user, final String nickname, final Message message )
+    {
+    }
+
+    @Override
+    public void privateMessageRecieved( final JID toJID, final JID fromJID, final Message message )
+    {
+    }
+
+    @Override
+    public void roomSubjectChanged( final JID roomJID, final JID user, final String newSubject )
+    {
+    }
+
+    /**
+     * Checks if a room triggers the warm-up.
+     */
+    private static boolean isConfiguredRoom( final JID roomJID )
+    {
+        final List<String> rooms = JiveGlobals.getListProperty( ROOMS_PROPERTY_NAME, Collections.<String>emptyList() );
+        return rooms.isEmpty() || rooms.contains( roomJID.toBareJID() );
+    }
+
+    /**
+     * Allocates a conference with one channel, and expires it.
+     */
+    private void warmUp()
+    {
+        final IQ request = new IQ( IQ.Type.set );
+        request.setFrom( from );
+        request.setTo( channel.getAddress() );
+        final Element conference = request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        conference.addAttribute( "name", NAME );
+        conference.addElement( "content" ).addAttribute( "name", "audio" )
+            .addElement( "channel" )
+            .addAttribute( "initiator", "true" )
+            .addAttribute( "endpoint", NAME )
+            .addAttribute( "expire", "10" );
+
+        final long start = System.nanoTime();
+        final IQ response = channel.send( request );
+        final String conferenceId = ColibriElements.getConferenceId( request, response );
+        if ( response.getType() == IQ.Type.error || conferenceId == null )
+        {
+            Log.debug( "Unable to warm up the Videobridge: {}", response.toXML() );
+            return;
+        }
+        Log.debug( "Warmed up the Videobridge in {}ms.", ( System.nanoTime() - start ) / 1000000 );
+
+        final IQ expire = new IQ( IQ.Type.set );
+        expire.setFrom( from );
+        expire.setTo( channel.getAddress() );
+        final Element expired = expire.setChildElement( "conference", ColibriElements.NAMESPACE );
+        expired.addAttribute( "id", conferenceId );
+        final Element content = expired.addElement( "content" ).addAttribute( "name", "audio" );
+        for ( final Element allocated : ColibriElements.getChannels( ColibriElements.getConference( response ) ) )
+        {
+            if ( allocated.attributeValue( "id" ) != null )
+            {
+                content.addElement( "channel" ).addAttribute( "id", allocated.attributeValue( "id" ) ).addAttribute( "expire", "0" );
+            }
+        }
+        final IQ expireResponse = channel.send( expire );
+        if ( expireResponse.getType() == IQ.Type.error )
+        {
+            Log.debug( "Unable to expire the warm-up conference {}. The Videobridge will expire it when it is idle. {}", conferenceId, expireResponse.toXML() );
+        }
+    }
+}
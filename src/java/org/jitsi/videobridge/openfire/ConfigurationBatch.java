@@ -0,0 +1,145 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+
+import java.util.*;
+
+/**
+ * A set of changes to Openfire properties that is applied as a whole, such as the submission of a configuration form.
+ *
+ * Changes that would not modify a property (setting its current value, or deleting a property that does not exist)
+ * are skipped, so that they cause no database writes or events. The Videobridge does not observe the remaining
+ * changes one by one: while the batch is written, the plugin defers its reaction to property events, and then applies
+ * the resulting configuration once (see {@link PluginImpl#applyBatch(Map)}).
+ */
+public class ConfigurationBatch
+{
+    /**
+     * The changes in this batch, in the order in which they were added. Values are either a string or a list of
+     * strings. A null value denotes a deletion.
+     */
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    /**
+     * Adds the setting of a property to this batch.
+     *
+     * @param name the name of the property (cannot be null).
+     * @param value the value of the property, or null to delete the property.
+     * @return this batch.
+     */
+    public ConfigurationBatch set( final String name, final String value )
+    {
+        changes.put( name, value );
+        return this;
+    }
+
+    /**
+     * Adds the setting of a list property to this batch.
+     *
+     * @param name the name of the property (cannot be null).
+     * @param values the values of the property, or null to delete the property.
+     * @return this batch.
+     */
+    public ConfigurationBatch set( final String name, final List<String> values )
+    {
+        changes.put( name, values == null ? null : new ArrayList<>( values ) );
+        return this;
+    }
+
+    /**
+     * Adds the deletion of a property to this batch.
+     *
+     * @param name the name of the property (cannot be null).
+     * @return this batch.
+     */
+    public ConfigurationBatch delete( final String name )
+    {
+        changes.put( name, null );
+        return this;
+    }
+
+    /**
+     * Writes the changes in this batch, and applies the resulting configuration to the Videobridge once. When the
+     * plugin is not running, the properties are written only.
+     *
+     * @return the number of properties that were modified.
+     */
+    public int apply()
+    {
+        final Map<String, Object> effective = new LinkedHashMap<>();
+        for ( final Map.Entry<String, Object> change : changes.entrySet() )
+        {
+            if ( !isCurrent( change.getKey(), change.getValue() ) )
+            {
+                effective.put( change.getKey(), change.getValue() );
+            }
+        }
+        changes.clear();
+
+        if ( effective.isEmpty() )
+        {
+            return 0;
+        }
+
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        if ( plugin != null )
+        {
+            plugin.applyBatch( effective );
+        }
+        else
+        {
+            write( effective );
+        }
+        return effective.size();
+    }
+
+    /**
+     * Checks if a property already has a particular value. This is evaluated against the property cache of Openfire,
+     * and does not query the database.
+     */
+    private static boolean isCurrent( final String name, final Object value )
+    {
+        if ( value instanceof List )
+        {
+            return value.equals( JiveGlobals.getListProperty( name, null ) );
+        }
+        if ( value == null )
+        {
+            return JiveGlobals.getProperty( name ) == null && JiveGlobals.getListProperty( name, null ) == null;
+        }
+        return value.equals( JiveGlobals.getProperty( name ) );
+    }
+
+    /**
+     * Writes changes to the Openfire properties.
+     */
+    @SuppressWarnings( "unchecked" )
+    static void write( final Map<String, Object> changes )
+    {
+        for ( final Map.Entry<String, Object> change : changes.entrySet() )
+        {
+            if ( change.getValue() == null )
+            {
+                JiveGlobals.deleteProperty( change.getKey() );
+            }
+            else if ( change.getValue() instanceof List )
+            {
+                JiveGlobals.setProperty( change.getKey(), (List<String>) change.getValue() );
+            }
+            else
+            {
+                JiveGlobals.setProperty( change.getKey(), (String) change.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Returns the changes in this batch that have not yet been applied.
+     *
+     * @return changes, where a null value denotes a deletion (never null).
+     */
+    public Map<String, Object> getChanges()
+    {
+        return Collections.unmodifiableMap( changes );
+    }
+}
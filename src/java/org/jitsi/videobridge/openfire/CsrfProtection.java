@@ -0,0 +1,88 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.CookieUtils;
+import org.jivesoftware.util.StringUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Protects the servlets of this plugin that change state against cross-site request forgery, in the same way as the
+ * pages of the Openfire Admin Console: a request must carry a nonce as the 'csrf' parameter, which must equal the
+ * value of the 'csrf' cookie. A page of another site can cause the browser to send the cookie, but cannot read it.
+ */
+public final class CsrfProtection
+{
+    /**
+     * The name of both the cookie and the request parameter that hold the nonce.
+     */
+    public static final String NAME = "csrf";
+
+    private CsrfProtection()
+    {
+    }
+
+    /**
+     * Returns the nonce of the session of the browser, and sets it as a cookie when none was set.
+     *
+     * @return a nonce (never null).
+     */
+    public static String issue( final HttpServletRequest request, final HttpServletResponse response )
+    {
+        final Cookie cookie = CookieUtils.getCookie( request, NAME );
+        if ( cookie != null && cookie.getValue() != null && !cookie.getValue().isEmpty() )
+        {
+            return cookie.getValue();
+        }
+        final String nonce = StringUtils.randomString( 15 );
+        CookieUtils.setCookie( request, response, NAME, nonce, -1 );
+        return nonce;
+    }
+
+    /**
+     * Checks if a request carries the nonce of the session of the browser.
+     *
+     * @return true if the 'csrf' parameter equals the 'csrf' cookie, otherwise false.
+     */
+    public static boolean verify( final HttpServletRequest request )
+    {
+        final Cookie cookie = CookieUtils.getCookie( request, NAME );
+        final String parameter = request.getParameter( NAME );
+        if ( cookie == null || cookie.getValue() == null || cookie.getValue().isEmpty() || parameter == null )
+        {
+            return false;
+        }
+        return MessageDigest.isEqual( cookie.getValue().getBytes( StandardCharsets.UTF_8 ), parameter.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Rejects a request that does not carry the nonce of the session of the browser.
+     *
+     * @return true if the request was rejected (and a response was sent), otherwise false.
+     */
+    static boolean reject( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        if ( verify( request ) )
+        {
+            return false;
+        }
+        response.sendError( HttpServletResponse.SC_FORBIDDEN, "Missing or invalid '" + NAME + "' parameter. Obtain a nonce with a GET request, and pass it as the '" + NAME + "' parameter." );
+        return true;
+    }
+
+    /**
+     * Responds to a request for a nonce with a JSON object that holds it.
+     */
+    static void respond( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        final String nonce = issue( request, response );
+        response.setHeader( "Cache-Control", "no-store" );
+        response.setContentType( "application/json" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.getWriter().print( "{\"" + NAME + "\":\"" + nonce + "\"}" );
+    }
+}
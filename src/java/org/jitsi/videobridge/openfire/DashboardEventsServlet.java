@@ -0,0 +1,225 @@
+package org.jitsi.videobridge.openfire;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams Jitsi Videobridge metrics to the admin console dashboard, using server-sent events.
+ *
+ * Every connected viewer receives the snapshots that are computed by the {@link BridgeMetricsSampler} of the plugin.
+ * Viewers do not cause additional metrics to be computed: they only serialize snapshots that already exist.
+ *
+ * Streams are asynchronous: no thread is held while a viewer waits for the next snapshot. Snapshots are pushed by the
+ * sampling thread, using non-blocking writes. A snapshot is skipped for a viewer that has not yet received the previous
+ * one, so that a slow viewer cannot hold up the sampler.
+ *
+ * A stream is closed after a while, after which the browser will automatically reconnect. This prevents abandoned
+ * connections (that are not detected as such) to be kept open indefinitely. When the container does not support
+ * asynchronous processing, only the latest snapshot is sent, and the browser reconnects for the next one.
+ */
+public class DashboardEventsServlet extends HttpServlet
+{
+    private static final Logger Log = LoggerFactory.getLogger( DashboardEventsServlet.class );
+
+    /**
+     * The maximum duration of a single event stream.
+     */
+    private static final long MAX_STREAM_DURATION_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+
+    /**
+     * The time after which the browser should try to reconnect after the stream was closed.
+     */
+    private static final long RETRY_MILLIS = 2000;
+
+    @Override
+    protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        final BridgeMetricsSampler sampler = getSampler();
+        if ( sampler == null )
+        {
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Jitsi Videobridge is not running." );
+            return;
+        }
+
+        response.setContentType( "text/event-stream" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.setHeader( "Cache-Control", "no-cache" );
+
+        if ( !request.isAsyncSupported() )
+        {
+            final ServletOutputStream out = response.getOutputStream();
+            out.write( getPreamble() );
+            out.write( getEvent( sampler.getLatest() ) );
+            out.flush();
+            return;
+        }
+
+        final AsyncContext context = request.startAsync();
+        context.setTimeout( MAX_STREAM_DURATION_MILLIS );
+        final Stream stream = new Stream( context, sampler );
+        context.addListener( stream );
+        response.getOutputStream().setWriteListener( stream );
+    }
+
+    private static byte[] getPreamble()
+    {
+        return ( "retry: " + RETRY_MILLIS + "\n\n" ).getBytes( StandardCharsets.UTF_8 );
+    }
+
+    private static byte[] getEvent( final BridgeMetrics metrics )
+    {
+        return ( "event: metrics\ndata: " + metrics.toJSON() + "\n\n" ).getBytes( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Finds the metrics sampler of the running plugin.
+     *
+     * @return a metrics sampler, or null when the plugin is not running.
+     */
+    static BridgeMetricsSampler getSampler()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getMetricsSampler();
+    }
+
+    /**
+     * The event stream of one viewer.
+     */
+    private static class Stream implements Consumer<BridgeMetrics>, WriteListener, AsyncListener
+    {
+        private final AsyncContext context;
+
+        private final BridgeMetricsSampler sampler;
+
+        private boolean started;
+
+        private boolean closed;
+
+        private Stream( final AsyncContext context, final BridgeMetricsSampler sampler )
+        {
+            this.context = context;
+            this.sampler = sampler;
+        }
+
+        /**
+         * Invoked by the container when the stream can be written to: initially, and after a write that could not be
+         * completed immediately has been completed.
+         */
+        @Override
+        public synchronized void onWritePossible() throws IOException
+        {
+            if ( closed || started )
+            {
+                return;
+            }
+            started = true;
+
+            final ServletOutputStream out = context.getResponse().getOutputStream();
+            out.write( getPreamble() );
+            if ( out.isReady() )
+            {
+                out.write( getEvent( sampler.getLatest() ) );
+            }
+            if ( out.isReady() )
+            {
+                out.flush();
+            }
+            sampler.addListener( this );
+        }
+
+        /**
+         * Invoked by the sampling thread for every new snapshot.
+         */
+        @Override
+        public synchronized void accept( final BridgeMetrics metrics )
+        {
+            if ( closed )
+            {
+                return;
+            }
+            try
+            {
+                final ServletOutputStream out = context.getResponse().getOutputStream();
+                if ( !out.isReady() )
+                {
+                    // The previous snapshot has not been written yet: skip this one.
+                    return;
+                }
+                out.write( getEvent( metrics ) );
+                if ( out.isReady() )
+                {
+                    out.flush();
+                }
+            }
+            catch ( IOException | IllegalStateException e )
+            {
+                Log.debug( "Unable to stream metrics to the admin console.", e );
+                close();
+            }
+        }
+
+        @Override
+        public void onError( final Throwable t )
+        {
+            Log.debug( "An error occurred while streaming metrics to the admin console.", t );
+            close();
+        }
+
+        @Override
+        public void onComplete( final AsyncEvent event )
+        {
+            close();
+        }
+
+        @Override
+        public void onTimeout( final AsyncEvent event )
+        {
+            close();
+        }
+
+        @Override
+        public void onError( final AsyncEvent event )
+        {
+            close();
+        }
+
+        @Override
+        public void onStartAsync( final AsyncEvent event )
+        {
+        }
+
+        private void close()
+        {
+            sampler.removeListener( this );
+            synchronized ( this )
+            {
+                if ( closed )
+                {
+                    return;
+                }
+                closed = true;
+            }
+            try
+            {
+                context.complete();
+            }
+            catch ( IllegalStateException e )
+            {
+                // The stream was completed by the container already.
+            }
+        }
+    }
+}
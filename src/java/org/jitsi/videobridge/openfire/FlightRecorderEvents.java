@@ -0,0 +1,118 @@
+package org.jitsi.videobridge.openfire;
+
+import org.xmpp.packet.IQ;
+
+/**
+ * Emits Java Flight Recorder events for activity of this plugin.
+ *
+ * The JFR API is not available on all Java runtimes that are supported by this plugin. This class can be used safely
+ * on all of them: when the API is absent, the methods of this class do nothing. The classes that depend on the JFR
+ * API are loaded only when the API is present.
+ *
+ * When JFR is available but not recording, the overhead of these methods is limited to a check if the event is
+ * enabled. Event fields that are expensive to compute are only computed when an event is going to be committed.
+ */
+public final class FlightRecorderEvents
+{
+    /**
+     * Indicates if the JFR API is available in this runtime.
+     */
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    /**
+     * A scope that is used when no event is to be recorded.
+     */
+    static final Scope NOOP_SCOPE = () -> {};
+
+    /**
+     * A colibri scope that is used when no event is to be recorded.
+     */
+    static final ColibriScope NOOP_COLIBRI_SCOPE = ( request, response ) -> {};
+
+    private FlightRecorderEvents()
+    {
+    }
+
+    /**
+     * Marks the end of a timed section of code. The event for that section is committed when the scope is closed.
+     */
+    public interface Scope extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+    /**
+     * Marks the end of the processing of a Colibri request.
+     */
+    public interface ColibriScope
+    {
+        /**
+         * Commits the event for the processing of the Colibri request.
+         *
+         * @param request the request that was processed (cannot be null).
+         * @param response the response to the request (can be null).
+         */
+        void complete( IQ request, IQ response );
+    }
+
+    private static boolean isJfrAvailable()
+    {
+        try
+        {
+            Class.forName( "jdk.jfr.Event" );
+            return true;
+        }
+        catch ( ClassNotFoundException | LinkageError e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a phase of the initialization of the plugin.
+     *
+     * @param phase a name for the phase (cannot be null).
+     * @return a scope that is to be closed when the phase ends (never null).
+     */
+    public static Scope initializationPhase( final String phase )
+    {
+        return AVAILABLE ? FlightRecorderSupport.initializationPhase( phase ) : NOOP_SCOPE;
+    }
+
+    /**
+     * Starts timing the application of a change of an Openfire property.
+     *
+     * @param property the name of the property (cannot be null).
+     * @param deleted true if the property was deleted, false if it was set.
+     * @return a scope that is to be closed when the change has been applied (never null).
+     */
+    public static Scope propertyApply( final String property, final boolean deleted )
+    {
+        return AVAILABLE ? FlightRecorderSupport.propertyApply( property, deleted ) : NOOP_SCOPE;
+    }
+
+    /**
+     * Records a change of the port range that is used for media.
+     *
+     * @param minPort the new lower bound of the range.
+     * @param maxPort the new upper bound of the range.
+     */
+    public static void portRangeChanged( final int minPort, final int maxPort )
+    {
+        if ( AVAILABLE )
+        {
+            FlightRecorderSupport.portRangeChanged( minPort, maxPort );
+        }
+    }
+
+    /**
+     * Starts timing the processing of a Colibri request.
+     *
+     * @return a scope that is to be completed when the request has been processed (never null).
+     */
+    public static ColibriScope colibriRequest()
+    {
+        return AVAILABLE ? FlightRecorderSupport.colibriRequest() : NOOP_COLIBRI_SCOPE;
+    }
+}
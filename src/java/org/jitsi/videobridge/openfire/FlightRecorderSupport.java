@@ -0,0 +1,136 @@
+package org.jitsi.videobridge.openfire;
+
+import jdk.jfr.*;
+import org.xmpp.packet.IQ;
+
+/**
+ * The Java Flight Recorder events of this plugin.
+ *
+ * This class depends on the JFR API, and must only be used through {@link FlightRecorderEvents}, which guarantees that
+ * this class is not loaded in runtimes that lack that API.
+ */
+final class FlightRecorderSupport
+{
+    private static final String CATEGORY = "Jitsi Videobridge";
+
+    private FlightRecorderSupport()
+    {
+    }
+
+    static FlightRecorderEvents.Scope initializationPhase( final String phase )
+    {
+        final InitializationPhaseEvent event = new InitializationPhaseEvent();
+        if ( !event.isEnabled() )
+        {
+            return FlightRecorderEvents.NOOP_SCOPE;
+        }
+        event.phase = phase;
+        event.begin();
+        return event::commit;
+    }
+
+    static FlightRecorderEvents.Scope propertyApply( final String property, final boolean deleted )
+    {
+        final PropertyApplyEvent event = new PropertyApplyEvent();
+        if ( !event.isEnabled() )
+        {
+            return FlightRecorderEvents.NOOP_SCOPE;
+        }
+        event.property = property;
+        event.deleted = deleted;
+        event.begin();
+        return event::commit;
+    }
+
+    static void portRangeChanged( final int minPort, final int maxPort )
+    {
+        final PortRangeEvent event = new PortRangeEvent();
+        if ( event.shouldCommit() )
+        {
+            event.minPort = minPort;
+            event.maxPort = maxPort;
+            event.commit();
+        }
+    }
+
+    static FlightRecorderEvents.ColibriScope colibriRequest()
+    {
+        final ColibriRequestEvent event = new ColibriRequestEvent();
+        if ( !event.isEnabled() )
+        {
+            return FlightRecorderEvents.NOOP_COLIBRI_SCOPE;
+        }
+        event.begin();
+        return ( request, response ) -> {
+            event.end();
+            // Only inspect the stanzas when the event passes the threshold of the recording.
+            if ( event.shouldCommit() )
+            {
+                event.conferenceId = ColibriElements.getConferenceId( request, response );
+                event.endpointCount = ColibriElements.getEndpointIds( request ).size();
+                event.from = request.getFrom() == null ? null : request.getFrom().toString();
+                event.error = response != null && response.getType() == IQ.Type.error;
+                event.commit();
+            }
+        };
+    }
+
+    @Name( "org.jitsi.videobridge.openfire.InitializationPhase" )
+    @Label( "Plugin Initialization Phase" )
+    @Description( "A phase of the initialization of the Jitsi Videobridge Openfire plugin." )
+    @Category( CATEGORY )
+    @StackTrace( false )
+    static class InitializationPhaseEvent extends Event
+    {
+        @Label( "Phase" )
+        String phase;
+    }
+
+    @Name( "org.jitsi.videobridge.openfire.PropertyApply" )
+    @Label( "Property Apply" )
+    @Description( "The application of a changed Openfire property to the Videobridge configuration." )
+    @Category( CATEGORY )
+    @StackTrace( false )
+    static class PropertyApplyEvent extends Event
+    {
+        @Label( "Property" )
+        String property;
+
+        @Label( "Deleted" )
+        boolean deleted;
+    }
+
+    @Name( "org.jitsi.videobridge.openfire.PortRange" )
+    @Label( "Port Range Change" )
+    @Description( "A change of the UDP port range that is used for media." )
+    @Category( CATEGORY )
+    @StackTrace( false )
+    static class PortRangeEvent extends Event
+    {
+        @Label( "Minimum Port" )
+        int minPort;
+
+        @Label( "Maximum Port" )
+        int maxPort;
+    }
+
+    @Name( "org.jitsi.videobridge.openfire.ColibriRequest" )
+    @Label( "Colibri Request" )
+    @Description( "The processing of a Colibri conference request by the Videobridge." )
+    @Category( CATEGORY )
+    @StackTrace( false )
+    static class ColibriRequestEvent extends Event
+    {
+        @Label( "Conference ID" )
+        String conferenceId;
+
+        @Label( "Endpoint Count" )
+        int endpointCount;
+
+        @Label( "From" )
+        String from;
+
+        @Label( "Error" )
+        boolean error;
+    }
+}
@@ -0,0 +1,398 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the video that the Videobridge forwards to endpoints, per multi-user chat room.
+ *
+ * The Videobridge forwards the video of the last N active speakers to each endpoint, where N (last-N) is defined by
+ * the conference focus per video channel. This policy rewrites the last-N value of video channels in Colibri requests,
+ * based on Openfire properties:
+ * <ul>
+ *     <li>a default last-N, applied to channels for which the focus does not request a value;</li>
+ *     <li>a maximum number of forwarded video streams, which caps any requested value;</li>
+ *     <li>a receive bitrate limit per endpoint, which caps the number of streams to the number that fits the limit,
+ *         given the expected bitrate of a stream;</li>
+ *     <li>an audio-only mode, in which no video is forwarded at all.</li>
+ * </ul>
+ * Each property can be overridden per room, by a property with the same suffix under
+ * <tt>org.jitsi.videobridge.openfire.room.&lt;room name&gt;.</tt>. Conferences are associated with rooms through
+ * their name, which a conference focus sets to the address of the room.
+ *
+ * The video channels of conferences are tracked, so that a change of the policy is applied to ongoing conferences
+ * by sending them a Colibri update (see {@link #reapply(LocalColibriChannel)}).
+ */
+public class ForwardingPolicy
+{
+    private static final Logger Log = LoggerFactory.getLogger( ForwardingPolicy.class );
+
+    /**
+     * The prefix of the names of all properties that define the policy.
+     */
+    private static final String PREFIX = "org.jitsi.videobridge.openfire.";
+
+    /**
+     * The prefix of the names of properties that define the policy of a particular room, which is followed by the
+     * name of the room, a dot, and the suffix of the global property.
+     */
+    public static final String ROOM_PROPERTY_PREFIX = PREFIX + "room.";
+
+    /**
+     * The name of the Openfire property that defines the default last-N. A value of -1 means that the video of all
+     * endpoints is forwarded.
+     */
+    public static final String LAST_N_PROPERTY_NAME = PREFIX + "LAST_N";
+
+    /**
+     * The name of the Openfire property that defines the maximum number of video streams that are forwarded to an
+     * endpoint. A value of -1 means no maximum.
+     */
+    public static final String MAX_VIDEO_STREAMS_PROPERTY_NAME = PREFIX + "MAX_VIDEO_STREAMS";
+
+    /**
+     * The name of the Openfire property that defines the maximum bitrate (in kbps) of the video that is forwarded to
+     * an endpoint. A value of -1 means no maximum.
+     */
+    public static final String RECEIVE_BITRATE_PROPERTY_NAME = PREFIX + "RECEIVE_BITRATE_LIMIT";
+
+    /**
+     * The name of the Openfire property that defines the expected bitrate (in kbps) of a forwarded video stream, which
+     * is used to translate the receive bitrate limit to a number of streams.
+     */
+    public static final String VIDEO_STREAM_BITRATE_PROPERTY_NAME = PREFIX + "VIDEO_STREAM_BITRATE";
+
+    /**
+     * The default expected bitrate (in kbps) of a forwarded video stream.
+     */
+    public static final int VIDEO_STREAM_BITRATE_DEFAULT_VALUE = 500;
+
+    /**
+     * The name of the Openfire property that enables the audio-only mode, in which no video is forwarded.
+     */
+    public static final String AUDIO_ONLY_PROPERTY_NAME = PREFIX + "AUDIO_ONLY";
+
+    private static final List<String> SUFFIXES = Arrays.asList( "LAST_N", "MAX_VIDEO_STREAMS", "RECEIVE_BITRATE_LIMIT", "VIDEO_STREAM_BITRATE", "AUDIO_ONLY" );
+
+    /**
+     * The prefix of the stanza identifiers of updates of ongoing conferences.
+     */
+    private static final String ID_PREFIX = "forwarding-policy-";
+
+    /**
+     * The video channels of a conference, with the last-N value that the conference focus requested for each channel
+     * (null when the focus did not request a value).
+     */
+    private static class TrackedConference
+    {
+        final String name;
+
+        /**
+         * The conference focus that manages the conference, which the Videobridge only accepts updates from.
+         */
+        final JID focus;
+
+        final Map<String, Integer> requested = new ConcurrentHashMap<>();
+
+        TrackedConference( final String name, final JID focus )
+        {
+            this.name = name;
+            this.focus = focus;
+        }
+    }
+
+    /**
+     * Tracked conferences, by conference identifier.
+     */
+    private final Map<String, TrackedConference> conferences = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if a property defines (part of) this policy.
+     *
+     * @param property the name of a property (cannot be null).
+     * @return true if the property defines the policy, otherwise false.
+     */
+    public static boolean isPolicyProperty( final String property )
+    {
+        if ( property.startsWith( ROOM_PROPERTY_PREFIX ) )
+        {
+            return SUFFIXES.contains( property.substring( property.lastIndexOf( '.' ) + 1 ) );
+        }
+        return property.startsWith( PREFIX ) && SUFFIXES.contains( property.substring( PREFIX.length() ) );
+    }
+
+    /**
+     * Returns the value of a policy property for a room, falling back to the global value.
+     */
+    private static int getInt( final String room, final String suffix, final int defaultValue )
+    {
+        final int global = JiveGlobals.getIntProperty( PREFIX + suffix, defaultValue );
+        return room == null ? global : JiveGlobals.getIntProperty( ROOM_PROPERTY_PREFIX + room + '.' + suffix, global );
+    }
+
+    private static boolean getBoolean( final String room, final String suffix )
+    {
+        final boolean global = JiveGlobals.getBooleanProperty( PREFIX + suffix, false );
+        return room == null ? global : JiveGlobals.getBooleanProperty( ROOM_PROPERTY_PREFIX + room + '.' + suffix, global );
+    }
+
+    /**
+     * Returns the name of the room that a conference is used for.
+     *
+     * @param conferenceName the name of a conference (can be null).
+     * @return the name of a room, or null if unknown.
+     */
+    static String getRoom( final String conferenceName )
+    {
+        if ( conferenceName == null || conferenceName.isEmpty() )
+        {
+            return null;
+        }
+        try
+        {
+            final JID jid = new JID( conferenceName );
+            return jid.getNode() != null ? jid.getNode() : conferenceName;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return conferenceName;
+        }
+    }
+
+    /**
+     * Computes the last-N value of a video channel.
+     *
+     * @param room the name of the room of the conference (can be null).
+     * @param requested the value requested by the conference focus, or null when none was requested.
+     * @return a last-N value, where -1 means that the video of all endpoints is forwarded.
+     */
+    public static int getLastN( final String room, final Integer requested )
+    {
+        if ( getBoolean( room, "AUDIO_ONLY" ) )
+        {
+            return 0;
+        }
+
+        int cap = getInt( room, "MAX_VIDEO_STREAMS", -1 );
+        final int receiveBitrate = getInt( room, "RECEIVE_BITRATE_LIMIT", -1 );
+        if ( receiveBitrate >= 0 )
+        {
+            final int streams = receiveBitrate / Math.max( 1, getInt( room, "VIDEO_STREAM_BITRATE", VIDEO_STREAM_BITRATE_DEFAULT_VALUE ) );
+            cap = cap < 0 ? streams : Math.min( cap, streams );
+        }
+
+        final int lastN = requested != null && requested >= 0 ? requested : getInt( room, "LAST_N", -1 );
+        if ( cap < 0 )
+        {
+            return lastN;
+        }
+        return lastN < 0 ? cap : Math.min( lastN, cap );
+    }
+
+    /**
+     * Rewrites the last-N values of the video channels in a Colibri request. Channels that are created receive the
+     * value of the policy. Channels that are updated are only rewritten when the request changes their last-N value.
+     *
+     * @param request a Colibri request (cannot be null).
+     */
+    public void apply( final IQ request )
+    {
+        final Element conference = ColibriElements.getConference( request );
+        if ( conference == null )
+        {
+            return;
+        }
+
+        String name = getConferenceName( conference );
+        if ( name == null && conference.attributeValue( "id" ) != null )
+        {
+            // Updates of a conference typically do not repeat its name.
+            final TrackedConference tracked = conferences.get( conference.attributeValue( "id" ) );
+            name = tracked == null ? null : tracked.name;
+        }
+        final String room = getRoom( name );
+        for ( final Element channel : getVideoChannels( conference ) )
+        {
+            final Integer requested = getLastN( channel );
+            if ( channel.attributeValue( "id" ) != null && requested == null )
+            {
+                continue;
+            }
+            final int lastN = getLastN( room, requested );
+            if ( requested == null ? lastN >= 0 : lastN != requested )
+            {
+                channel.addAttribute( "last-n", String.valueOf( lastN ) );
+            }
+        }
+    }
+
+    /**
+     * Registers the video channels of a conference, so that changes of the policy can be applied to it.
+     *
+     * @param request a Colibri request, as received from the conference focus (cannot be null).
+     * @param response the response of the Videobridge (can be null).
+     * @param requested the last-N values of the video channels in the request, before {@link #apply(IQ)} rewrote them.
+     */
+    public void track( final IQ request, final IQ response, final Map<Element, Integer> requested )
+    {
+        if ( response == null || response.getType() != IQ.Type.result || ( request.getID() != null && request.getID().startsWith( ID_PREFIX ) ) )
+        {
+            return;
+        }
+        final String conferenceId = ColibriElements.getConferenceId( request, response );
+        final Element requestConference = ColibriElements.getConference( request );
+        final Element responseConference = ColibriElements.getConference( response );
+        if ( conferenceId == null || requestConference == null || responseConference == null )
+        {
+            return;
+        }
+
+        final TrackedConference tracked = conferences.computeIfAbsent( conferenceId, id -> new TrackedConference( getConferenceName( responseConference ) != null ? getConferenceName( responseConference ) : getConferenceName( requestConference ), request.getFrom() ) );
+
+        // Channels are matched by position, as the request does not hold the identifiers of channels that are created.
+        final List<Element> requestChannels = getVideoChannels( requestConference );
+        final List<Element> responseChannels = getVideoChannels( responseConference );
+        for ( int i = 0; i < responseChannels.size(); i++ )
+        {
+            final Element channel = responseChannels.get( i );
+            final String id = channel.attributeValue( "id" );
+            if ( id == null )
+            {
+                continue;
+            }
+            if ( "0".equals( channel.attributeValue( "expire" ) ) )
+            {
+                tracked.requested.remove( id );
+                continue;
+            }
+            final Element requestChannel = i < requestChannels.size() ? requestChannels.get( i ) : null;
+            if ( requestChannel != null && requested.containsKey( requestChannel ) )
+            {
+                final Integer value = requested.get( requestChannel );
+                if ( value == null && tracked.requested.containsKey( id ) )
+                {
+                    continue; // an update that does not change last-N.
+                }
+                tracked.requested.put( id, value == null ? -1 : value );
+            }
+        }
+
+        if ( tracked.requested.isEmpty() )
+        {
+            conferences.remove( conferenceId, tracked );
+        }
+    }
+
+    /**
+     * Returns the last-N values that the conference focus requested for the video channels of a request.
+     *
+     * @param request a Colibri request (cannot be null).
+     * @return last-N values by channel element, where null denotes that no value was requested (never null).
+     */
+    public static Map<Element, Integer> getRequested( final IQ request )
+    {
+        final Map<Element, Integer> result = new IdentityHashMap<>();
+        final Element conference = ColibriElements.getConference( request );
+        if ( conference != null )
+        {
+            for ( final Element channel : getVideoChannels( conference ) )
+            {
+                result.put( channel, getLastN( channel ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies the policy to all tracked conferences, by sending Colibri updates of the last-N values of their video
+     * channels. Conferences that no longer exist are no longer tracked.
+     *
+     * @param channel the channel through which the updates are sent (cannot be null).
+     */
+    public void reapply( final LocalColibriChannel channel )
+    {
+        for ( final Map.Entry<String, TrackedConference> entry : conferences.entrySet() )
+        {
+            final TrackedConference tracked = entry.getValue();
+            final String room = getRoom( tracked.name );
+
+            final IQ update = new IQ( IQ.Type.set );
+            update.setTo( channel.getAddress() );
+            update.setID( ID_PREFIX + update.getID() );
+            update.setFrom( tracked.focus );
+            final Element conference = update.setChildElement( "conference", ColibriElements.NAMESPACE );
+            conference.addAttribute( "id", entry.getKey() );
+            final Element content = conference.addElement( "content" ).addAttribute( "name", "video" );
+            for ( final Map.Entry<String, Integer> requested : tracked.requested.entrySet() )
+            {
+                content.addElement( "channel" )
+                    .addAttribute( "id", requested.getKey() )
+                    .addAttribute( "last-n", String.valueOf( getLastN( room, requested.getValue() < 0 ? null : requested.getValue() ) ) );
+            }
+
+            channel.sendAsync( update ).whenComplete( ( response, throwable ) -> {
+                if ( throwable != null || response.getType() == IQ.Type.error )
+                {
+                    Log.debug( "Unable to apply the forwarding policy to conference {}. It is no longer tracked.", entry.getKey() );
+                    conferences.remove( entry.getKey(), tracked );
+                }
+            } );
+        }
+    }
+
+    /**
+     * Returns the number of conferences to which changes of the policy are applied.
+     *
+     * @return a conference count.
+     */
+    public int getTrackedConferences()
+    {
+        return conferences.size();
+    }
+
+    private static String getConferenceName( final Element conference )
+    {
+        return conference.attributeValue( "name" );
+    }
+
+    private static Integer getLastN( final Element channel )
+    {
+        final String value = channel.attributeValue( "last-n" );
+        if ( value == null )
+        {
+            return null;
+        }
+        try
+        {
+            return Integer.parseInt( value.trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    private static List<Element> getVideoChannels( final Element conference )
+    {
+        final List<Element> result = new ArrayList<>();
+        for ( final Iterator contents = conference.elementIterator( "content" ); contents.hasNext(); )
+        {
+            final Element content = (Element) contents.next();
+            if ( "video".equals( content.attributeValue( "name" ) ) )
+            {
+                for ( final Iterator channels = content.elementIterator( "channel" ); channels.hasNext(); )
+                {
+                    result.add( (Element) channels.next() );
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package org.jitsi.videobridge.openfire;
+
+/**
+ * The metrics that are retained in {@link MetricsHistory}.
+ *
+ * All values are stored as whole numbers. Fractions are scaled to a fixed unit, as documented per constant.
+ */
+public enum HistoricMetric
+{
+    /**
+     * Number of conferences.
+     */
+    CONFERENCES( "conferences" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getConferences();
+        }
+    },
+
+    /**
+     * Number of endpoints.
+     */
+    ENDPOINTS( "endpoints" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getEndpoints();
+        }
+    },
+
+    /**
+     * Ingress bitrate, in bits per second.
+     */
+    BITRATE_DOWNLOAD( "bitrateDownload" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getBitrateDownload();
+        }
+    },
+
+    /**
+     * Egress bitrate, in bits per second.
+     */
+    BITRATE_UPLOAD( "bitrateUpload" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getBitrateUpload();
+        }
+    },
+
+    /**
+     * CPU usage of the Openfire process, in per mille, or -1 when unknown.
+     */
+    CPU_LOAD( "cpuLoad" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getCpuLoad() < 0 ? -1 : Math.round( metrics.getCpuLoad() * 1000 );
+        }
+    },
+
+    /**
+     * Number of ports in the configured port range that are in use, or -1 when unknown.
+     */
+    PORTS_USED( "portsUsed" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return metrics.getPortsUsed();
+        }
+    },
+
+    /**
+     * Average time spent processing Colibri conference requests, in microseconds.
+     */
+    ALLOCATION_LATENCY( "allocationLatency" )
+    {
+        @Override
+        long extract( final BridgeMetrics metrics )
+        {
+            return Math.round( metrics.getAllocationLatencyAverage() * 1000 );
+        }
+    };
+
+    private final String columnName;
+
+    HistoricMetric( final String columnName )
+    {
+        this.columnName = columnName;
+    }
+
+    /**
+     * Returns the name that is used for this metric in exports and in the database.
+     *
+     * @return a column name (never null).
+     */
+    public String getColumnName()
+    {
+        return columnName;
+    }
+
+    /**
+     * Obtains the value of this metric from a snapshot.
+     *
+     * @param metrics the snapshot (cannot be null).
+     * @return the value of this metric.
+     */
+    abstract long extract( BridgeMetrics metrics );
+}
@@ -0,0 +1,764 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accepts ICE-TCP connections on behalf of the TCP harvester of the Videobridge, and limits them.
+ *
+ * The TCP harvester accepts any number of connections, and keeps each of them open until it has read its first packet.
+ * A burst of clients that fall back to TCP, or a port scanner, can therefore exhaust threads and file descriptors.
+ *
+ * When enabled, this guard listens on the public TCP port instead of the harvester, which is moved to an internal port.
+ * A single selector thread accepts connections, and enforces:
+ * <ul>
+ *     <li>a maximum number of connections in total. When reached, the guard stops accepting connections, which leaves
+ *     new connections in the backlog of the operating system (backpressure);</li>
+ *     <li>a maximum number of connections per remote address. Connections that exceed it are reset immediately after
+ *     they are accepted, without reading from them (fast reject);</li>
+ *     <li>a handshake timeout. A connection that does not send a complete first packet (a framed STUN message, or a
+ *     pseudo-SSL handshake when SSLTCP is enabled) in time is closed, as is a connection that sends anything else.</li>
+ * </ul>
+ * Connections that pass the handshake are relayed to the harvester, on the local address on which they were accepted.
+ * The harvester advertises the public port as its mapped port, so that clients connect to the guard.
+ *
+ * Optionally, the port is shared with the HTTPS listener of Openfire's HTTP binding: connections that start with a TLS
+ * record are relayed to that listener instead. This allows the ICE-TCP port to be 443 (the only port that some
+ * firewalls allow), while web clients can still use HTTPS on that port.
+ */
+public class IceTcpGuard
+{
+    private static final Logger Log = LoggerFactory.getLogger( IceTcpGuard.class );
+
+    /**
+     * The name of the Openfire property that enables the guard. Changes take effect after a restart of the plugin.
+     */
+    public static final String ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_GUARD_ENABLED";
+
+    /**
+     * The name of the Openfire property that defines the port on which the TCP harvester listens while the guard is
+     * enabled. Changes take effect after a restart of the plugin. This port should not be reachable from outside of
+     * this host.
+     */
+    public static final String INTERNAL_PORT_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_GUARD_INTERNAL_PORT";
+
+    /**
+     * The default port on which the TCP harvester listens while the guard is enabled.
+     */
+    public static final int INTERNAL_PORT_DEFAULT_VALUE = 14443;
+
+    /**
+     * The TCP port on which the guard listens when no TCP port is configured. The TCP harvester falls back to this port
+     * when it cannot bind its default port (443), which requires privileges that Openfire typically does not have.
+     */
+    public static final int PUBLIC_PORT_DEFAULT_VALUE = 4443;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of connections.
+     */
+    public static final String MAX_CONNECTIONS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_MAX_CONNECTIONS";
+
+    /**
+     * The default maximum number of connections.
+     */
+    public static final int MAX_CONNECTIONS_DEFAULT_VALUE = 1000;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of connections from one remote address.
+     */
+    public static final String MAX_CONNECTIONS_PER_ADDRESS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_MAX_CONNECTIONS_PER_ADDRESS";
+
+    /**
+     * The default maximum number of connections from one remote address.
+     */
+    public static final int MAX_CONNECTIONS_PER_ADDRESS_DEFAULT_VALUE = 20;
+
+    /**
+     * The name of the Openfire property that defines the period (in milliseconds) in which a connection must send its
+     * first packet.
+     */
+    public static final String HANDSHAKE_TIMEOUT_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_HANDSHAKE_TIMEOUT";
+
+    /**
+     * The default period (in milliseconds) in which a connection must send its first packet.
+     */
+    public static final long HANDSHAKE_TIMEOUT_DEFAULT_VALUE = 5000;
+
+    /**
+     * The name of the Openfire property that defines the number of connections that the operating system queues while
+     * the guard does not accept connections. Changes take effect after a restart of the plugin.
+     */
+    public static final String BACKLOG_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_ACCEPT_BACKLOG";
+
+    /**
+     * The default number of connections that the operating system queues while the guard does not accept connections.
+     */
+    public static final int BACKLOG_DEFAULT_VALUE = 50;
+
+    /**
+     * The name of the Openfire property that enables relaying connections that start with a TLS record to the HTTPS
+     * listener of Openfire's HTTP binding. Changes take effect after a restart of the plugin.
+     */
+    public static final String HTTPS_SHARING_ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TCP_GUARD_HTTPS_SHARING";
+
+    /**
+     * The type of a TLS handshake record.
+     */
+    private static final byte TLS_HANDSHAKE = 0x16;
+
+    /**
+     * The first bytes of the pseudo-SSL handshake of an SSLTCP client.
+     */
+    private static final byte[] SSLTCP_HANDSHAKE_PREFIX = { (byte) 0x80, 0x46, 0x01, 0x03, 0x01 };
+
+    /**
+     * The number of bytes that is needed to validate the first packet: the RFC 4571 length field, and a STUN header.
+     */
+    private static final int HANDSHAKE_LENGTH = 2 + 20;
+
+    /**
+     * The size of the buffer that is used for each direction of a relayed connection.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final int publicPort;
+
+    private final int internalPort;
+
+    private final boolean sslTcp;
+
+    /**
+     * The port to which connections that start with a TLS record are relayed, or -1 when these are not accepted.
+     */
+    private final int httpsPort;
+
+    private final TimingWheel timingWheel;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * The number of connections by remote address. Only accessed by the selector thread.
+     */
+    private final Map<InetAddress, Integer> connectionsByAddress = new HashMap<>();
+
+    /**
+     * Connections that reached the handshake timeout, to be closed by the selector thread.
+     */
+    private final Queue<Connection> timedOut = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder https = new LongAdder();
+    private final LongAdder rejectedAddress = new LongAdder();
+    private final LongAdder handshakeTimeouts = new LongAdder();
+    private final LongAdder handshakeFailures = new LongAdder();
+    private final LongAdder relayFailures = new LongAdder();
+    private final LongAdder acceptPauses = new LongAdder();
+
+    private ServerSocketChannel server;
+
+    private Selector selector;
+
+    private SelectionKey acceptKey;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param publicPort the port on which connections are accepted.
+     * @param internalPort the port on which the TCP harvester listens.
+     * @param sslTcp true if SSLTCP is enabled for the TCP harvester.
+     * @param httpsPort the port to which connections that start with a TLS record are relayed, or -1 to reject these.
+     * @param timingWheel the scheduler of handshake timeouts (cannot be null).
+     */
+    public IceTcpGuard( final int publicPort, final int internalPort, final boolean sslTcp, final int httpsPort, final TimingWheel timingWheel )
+    {
+        this.publicPort = publicPort;
+        this.internalPort = internalPort;
+        this.sslTcp = sslTcp;
+        this.httpsPort = httpsPort;
+        this.timingWheel = timingWheel;
+    }
+
+    public static boolean isEnabled()
+    {
+        return JiveGlobals.getBooleanProperty( ENABLED_PROPERTY_NAME, false );
+    }
+
+    /**
+     * Binds the public port, and starts accepting connections.
+     *
+     * @throws IOException when the public port cannot be bound.
+     */
+    public synchronized void start() throws IOException
+    {
+        stop();
+
+        selector = Selector.open();
+        try
+        {
+            server = ServerSocketChannel.open();
+            server.socket().setReuseAddress( true );
+            server.bind( new InetSocketAddress( publicPort ), JiveGlobals.getIntProperty( BACKLOG_PROPERTY_NAME, BACKLOG_DEFAULT_VALUE ) );
+            server.configureBlocking( false );
+            acceptKey = server.register( selector, SelectionKey.OP_ACCEPT );
+        }
+        catch ( IOException e )
+        {
+            closeQuietly( server );
+            closeQuietly( selector );
+            throw e;
+        }
+
+        running = true;
+        thread = new Thread( this::run, "ICE-TCP guard" );
+        thread.setDaemon( true );
+        thread.start();
+        Log.info( "Accepting ICE-TCP connections on port {}, relaying to the TCP harvester on port {}.", publicPort, internalPort );
+        if ( httpsPort > 0 )
+        {
+            Log.info( "Sharing port {} with HTTPS: relaying TLS connections to port {}.", publicPort, httpsPort );
+        }
+    }
+
+    /**
+     * Stops accepting connections, and closes all connections.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        if ( thread != null )
+        {
+            selector.wakeup();
+            try
+            {
+                thread.join( 5000 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void run()
+    {
+        try
+        {
+            while ( running )
+            {
+                selector.select( 1000 );
+
+                Connection connection;
+                while ( ( connection = timedOut.poll() ) != null )
+                {
+                    if ( !connection.relaying && !connection.closed )
+                    {
+                        handshakeTimeouts.increment();
+                        close( connection );
+                    }
+                }
+
+                for ( final SelectionKey key : selector.selectedKeys() )
+                {
+                    if ( !key.isValid() )
+                    {
+                        continue;
+                    }
+                    if ( key == acceptKey )
+                    {
+                        accept();
+                    }
+                    else
+                    {
+                        handle( key, (Connection) key.attachment() );
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                if ( acceptKey.interestOps() == 0 && active.get() < getMaxConnections() )
+                {
+                    acceptKey.interestOps( SelectionKey.OP_ACCEPT ); // resume accepting.
+                }
+            }
+        }
+        catch ( Throwable t )
+        {
+            Log.error( "An unexpected exception occurred while accepting ICE-TCP connections. No new connections are accepted on port {}.", publicPort, t );
+        }
+        finally
+        {
+            for ( final SelectionKey key : selector.keys() )
+            {
+                if ( key.attachment() instanceof Connection )
+                {
+                    close( (Connection) key.attachment() );
+                }
+            }
+            closeQuietly( server );
+            closeQuietly( selector );
+        }
+    }
+
+    /**
+     * Accepts pending connections, unless the maximum number of connections is reached.
+     */
+    private void accept() throws IOException
+    {
+        final int maxPerAddress = JiveGlobals.getIntProperty( MAX_CONNECTIONS_PER_ADDRESS_PROPERTY_NAME, MAX_CONNECTIONS_PER_ADDRESS_DEFAULT_VALUE );
+        while ( true )
+        {
+            if ( active.get() >= getMaxConnections() )
+            {
+                // Leave further connections in the backlog until connections are closed.
+                acceptKey.interestOps( 0 );
+                acceptPauses.increment();
+                return;
+            }
+
+            final SocketChannel channel = server.accept();
+            if ( channel == null )
+            {
+                return;
+            }
+
+            final InetAddress address = ( (InetSocketAddress) channel.getRemoteAddress() ).getAddress();
+            final int count = connectionsByAddress.getOrDefault( address, 0 );
+            if ( count >= maxPerAddress )
+            {
+                rejectedAddress.increment();
+                reset( channel );
+                continue;
+            }
+
+            try
+            {
+                channel.configureBlocking( false );
+                channel.socket().setTcpNoDelay( true );
+                final Connection connection = new Connection( channel, address );
+                connection.clientKey = channel.register( selector, SelectionKey.OP_READ, connection );
+                connectionsByAddress.put( address, count + 1 );
+                active.incrementAndGet();
+                accepted.increment();
+                connection.timeout = timingWheel.schedule( () -> {
+                    timedOut.add( connection );
+                    selector.wakeup();
+                }, JiveGlobals.getLongProperty( HANDSHAKE_TIMEOUT_PROPERTY_NAME, HANDSHAKE_TIMEOUT_DEFAULT_VALUE ) );
+            }
+            catch ( IOException e )
+            {
+                Log.debug( "Unable to prepare an ICE-TCP connection from {}.", address, e );
+                reset( channel );
+            }
+        }
+    }
+
+    /**
+     * Processes the readiness of one of the channels of a connection.
+     */
+    private void handle( final SelectionKey key, final Connection connection )
+    {
+        try
+        {
+            if ( key.isConnectable() )
+            {
+                connection.server.finishConnect();
+                connection.relaying = true;
+                connection.timeout.cancel();
+            }
+            else if ( !connection.relaying )
+            {
+                readHandshake( connection );
+                return;
+            }
+            else
+            {
+                if ( key.isReadable() )
+                {
+                    final boolean fromClient = key == connection.clientKey;
+                    final ByteBuffer buffer = fromClient ? connection.toServer : connection.toClient;
+                    buffer.clear();
+                    final int read = ( fromClient ? connection.client : connection.server ).read( buffer );
+                    buffer.flip();
+                    if ( read == -1 )
+                    {
+                        // The side sends no more data, but can still receive: the other direction is relayed until it
+                        // ends as well.
+                        if ( fromClient )
+                        {
+                            connection.clientEnded = true;
+                        }
+                        else
+                        {
+                            connection.serverEnded = true;
+                        }
+                    }
+                }
+            }
+
+            // Write what can be written, and only read from a side when its data has been passed on (backpressure).
+            if ( connection.toServer.hasRemaining() )
+            {
+                connection.server.write( connection.toServer );
+            }
+            if ( connection.toClient.hasRemaining() )
+            {
+                connection.client.write( connection.toClient );
+            }
+
+            // Pass the end of the data of a side on to the other side, once everything that it sent has been written.
+            final boolean toServerEnded = connection.clientEnded && !connection.toServer.hasRemaining();
+            final boolean toClientEnded = connection.serverEnded && !connection.toClient.hasRemaining();
+            if ( toServerEnded )
+            {
+                connection.server.shutdownOutput();
+            }
+            if ( toClientEnded )
+            {
+                connection.client.shutdownOutput();
+            }
+            if ( toServerEnded && toClientEnded )
+            {
+                close( connection );
+                return;
+            }
+
+            connection.clientKey.interestOps( ( connection.toServer.hasRemaining() || connection.clientEnded ? 0 : SelectionKey.OP_READ ) | ( connection.toClient.hasRemaining() ? SelectionKey.OP_WRITE : 0 ) );
+            connection.serverKey.interestOps( ( connection.toClient.hasRemaining() || connection.serverEnded ? 0 : SelectionKey.OP_READ ) | ( connection.toServer.hasRemaining() ? SelectionKey.OP_WRITE : 0 ) );
+        }
+        catch ( IOException | CancelledKeyException e )
+        {
+            if ( connection.server != null && !connection.relaying )
+            {
+                relayFailures.increment();
+                Log.debug( "Unable to relay a connection from {} to the TCP harvester or HTTPS listener.", connection.address, e );
+            }
+            close( connection );
+        }
+    }
+
+    /**
+     * Reads the first packet of a connection. When it is valid, a connection to the TCP harvester (or, for TLS, the
+     * HTTPS listener) is established.
+     */
+    private void readHandshake( final Connection connection ) throws IOException
+    {
+        final ByteBuffer buffer = connection.toServer;
+        if ( connection.client.read( buffer ) == -1 )
+        {
+            handshakeFailures.increment();
+            close( connection );
+            return;
+        }
+
+        final int target = classify( buffer );
+        if ( target == 0 )
+        {
+            return; // incomplete.
+        }
+        if ( target == -1 )
+        {
+            handshakeFailures.increment();
+            Log.debug( "Closing an ICE-TCP connection from {} that did not start with a STUN message{}{}.", connection.address, sslTcp ? " or an SSLTCP handshake" : "", httpsPort > 0 ? " or a TLS record" : "" );
+            reset( connection );
+            return;
+        }
+        if ( target == httpsPort )
+        {
+            https.increment();
+        }
+
+        buffer.flip(); // to be written to the harvester when connected.
+        connection.clientKey.interestOps( 0 );
+        connection.server = SocketChannel.open();
+        connection.server.configureBlocking( false );
+        connection.serverKey = connection.server.register( selector, SelectionKey.OP_CONNECT, connection );
+        final InetAddress local = ( (InetSocketAddress) connection.client.getLocalAddress() ).getAddress();
+        if ( connection.server.connect( new InetSocketAddress( local, target ) ) )
+        {
+            connection.relaying = true;
+            connection.timeout.cancel();
+            connection.serverKey.interestOps( SelectionKey.OP_WRITE );
+        }
+    }
+
+    /**
+     * Classifies the data that was received at the start of a connection (in the buffer, in write mode) as a framed
+     * STUN message or (when enabled) an SSLTCP handshake, which are relayed to the TCP harvester, or (when enabled) a
+     * TLS record, which is relayed to the HTTPS listener.
+     *
+     * A TLS record cannot be mistaken for a framed STUN message: its first byte would announce a STUN message of at
+     * least 5632 bytes, which exceeds the size of any STUN message that is used for ICE. The pseudo-SSL handshake of
+     * SSLTCP is an SSL 2.0 record, which starts with a different byte.
+     *
+     * @return the port to relay the connection to, -1 when the data is invalid, or 0 when more data is needed.
+     */
+    int classify( final ByteBuffer buffer )
+    {
+        final int length = buffer.position();
+        if ( length == 0 )
+        {
+            return 0;
+        }
+
+        if ( httpsPort > 0 && buffer.get( 0 ) == TLS_HANDSHAKE )
+        {
+            if ( length < 3 )
+            {
+                return 0;
+            }
+            // The major version is 3 for SSL 3.0 and all versions of TLS.
+            return buffer.get( 1 ) == 0x03 && ( buffer.get( 2 ) & 0xFF ) <= 0x04 ? httpsPort : -1;
+        }
+
+        if ( sslTcp && buffer.get( 0 ) == SSLTCP_HANDSHAKE_PREFIX[ 0 ] )
+        {
+            for ( int i = 1; i < Math.min( length, SSLTCP_HANDSHAKE_PREFIX.length ); i++ )
+            {
+                if ( buffer.get( i ) != SSLTCP_HANDSHAKE_PREFIX[ i ] )
+                {
+                    return -1;
+                }
+            }
+            return length < SSLTCP_HANDSHAKE_PREFIX.length ? 0 : internalPort;
+        }
+
+        if ( length < HANDSHAKE_LENGTH )
+        {
+            return 0;
+        }
+        final int frameLength = ( ( buffer.get( 0 ) & 0xFF ) << 8 ) | ( buffer.get( 1 ) & 0xFF );
+        final boolean isStunType = ( buffer.get( 2 ) & 0xC0 ) == 0;
+        final boolean hasMagicCookie = buffer.getInt( 6 ) == 0x2112A442;
+        return frameLength >= 20 && isStunType && hasMagicCookie ? internalPort : -1;
+    }
+
+    private void close( final Connection connection )
+    {
+        if ( connection.closed )
+        {
+            return;
+        }
+        connection.closed = true;
+        if ( connection.timeout != null )
+        {
+            connection.timeout.cancel();
+        }
+        closeQuietly( connection.client );
+        closeQuietly( connection.server );
+
+        active.decrementAndGet();
+        connectionsByAddress.computeIfPresent( connection.address, ( address, count ) -> count > 1 ? count - 1 : null );
+    }
+
+    /**
+     * Closes a connection by resetting it, which does not leave the socket in TIME_WAIT.
+     */
+    private void reset( final Connection connection )
+    {
+        try
+        {
+            connection.client.socket().setSoLinger( true, 0 );
+        }
+        catch ( IOException e )
+        {
+            Log.trace( "Unable to disable lingering of an ICE-TCP connection.", e );
+        }
+        close( connection );
+    }
+
+    private static void reset( final SocketChannel channel )
+    {
+        try
+        {
+            channel.socket().setSoLinger( true, 0 );
+        }
+        catch ( IOException e )
+        {
+            Log.trace( "Unable to disable lingering of an ICE-TCP connection.", e );
+        }
+        closeQuietly( channel );
+    }
+
+    private static void closeQuietly( final Closeable closeable )
+    {
+        if ( closeable == null )
+        {
+            return;
+        }
+        try
+        {
+            closeable.close();
+        }
+        catch ( IOException e )
+        {
+            Log.trace( "Unable to close an ICE-TCP channel.", e );
+        }
+    }
+
+    private static int getMaxConnections()
+    {
+        return JiveGlobals.getIntProperty( MAX_CONNECTIONS_PROPERTY_NAME, MAX_CONNECTIONS_DEFAULT_VALUE );
+    }
+
+    public int getPublicPort()
+    {
+        return publicPort;
+    }
+
+    public int getInternalPort()
+    {
+        return internalPort;
+    }
+
+    /**
+     * Returns the port to which connections that start with a TLS record are relayed.
+     *
+     * @return a port number, or -1 when the port is not shared with HTTPS.
+     */
+    public int getHttpsPort()
+    {
+        return httpsPort;
+    }
+
+    /**
+     * Returns the number of accepted connections that were relayed to the HTTPS listener.
+     *
+     * @return a connection count.
+     */
+    public long getHttps()
+    {
+        return https.sum();
+    }
+
+    /**
+     * Returns the number of connections that are open (including connections that are in the handshake phase).
+     *
+     * @return a connection count.
+     */
+    public int getActive()
+    {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of connections that were accepted.
+     *
+     * @return a connection count.
+     */
+    public long getAccepted()
+    {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of connections that were reset because their remote address had too many connections.
+     *
+     * @return a connection count.
+     */
+    public long getRejectedAddress()
+    {
+        return rejectedAddress.sum();
+    }
+
+    /**
+     * Returns the number of times that accepting connections was paused, because the maximum number of connections
+     * was reached.
+     *
+     * @return a count.
+     */
+    public long getAcceptPauses()
+    {
+        return acceptPauses.sum();
+    }
+
+    /**
+     * Returns the number of connections that were closed because they did not send their first packet in time.
+     *
+     * @return a connection count.
+     */
+    public long getHandshakeTimeouts()
+    {
+        return handshakeTimeouts.sum();
+    }
+
+    /**
+     * Returns the number of connections that were closed because their first packet was invalid.
+     *
+     * @return a connection count.
+     */
+    public long getHandshakeFailures()
+    {
+        return handshakeFailures.sum();
+    }
+
+    /**
+     * Returns the number of connections that could not be relayed to the TCP harvester or the HTTPS listener.
+     *
+     * @return a connection count.
+     */
+    public long getRelayFailures()
+    {
+        return relayFailures.sum();
+    }
+
+    /**
+     * An accepted connection, and its relay to the TCP harvester. Only accessed by the selector thread, apart from
+     * the flags that are read when a handshake timeout is processed.
+     */
+    private static final class Connection
+    {
+        final SocketChannel client;
+        final InetAddress address;
+
+        /**
+         * Data from the client to the harvester, in read mode (except while the handshake is being read).
+         */
+        final ByteBuffer toServer = ByteBuffer.allocate( BUFFER_SIZE );
+
+        /**
+         * Data from the harvester to the client, in read mode.
+         */
+        final ByteBuffer toClient = (ByteBuffer) ByteBuffer.allocate( BUFFER_SIZE ).flip();
+
+        SocketChannel server;
+        SelectionKey clientKey;
+        SelectionKey serverKey;
+        TimingWheel.Timeout timeout;
+        volatile boolean relaying;
+        volatile boolean closed;
+
+        /**
+         * Set when the client closed its side of the connection: no more data is read from it.
+         */
+        boolean clientEnded;
+
+        /**
+         * Set when the harvester (or the HTTP binding) closed its side of the connection: no more data is read from it.
+         */
+        boolean serverEnded;
+
+        Connection( final SocketChannel client, final InetAddress address )
+        {
+            this.client = client;
+            this.address = address;
+        }
+    }
+}
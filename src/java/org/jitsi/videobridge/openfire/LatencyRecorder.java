@@ -0,0 +1,94 @@
+package org.jitsi.videobridge.openfire;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates durations of a recurring operation, in a way that is cheap enough to be used on hot code paths.
+ *
+ * Recording is lock-free. A reader periodically calls {@link #drain()} to obtain the values that were recorded since
+ * the previous invocation, which allows averages and maxima to be computed per sample interval.
+ */
+public class LatencyRecorder
+{
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records the duration of one operation.
+     *
+     * @param durationNanos the duration of the operation, in nanoseconds.
+     */
+    public void record( final long durationNanos )
+    {
+        count.increment();
+        totalNanos.add( durationNanos );
+        maxNanos.accumulateAndGet( durationNanos, Math::max );
+    }
+
+    /**
+     * Returns the values that were recorded since the last invocation of this method, and resets the recorder.
+     *
+     * Operations that are recorded concurrently with this invocation are attributed to either this or the next
+     * interval, but are never lost.
+     *
+     * @return the recorded values (never null).
+     */
+    public Interval drain()
+    {
+        final long max = maxNanos.getAndSet( 0 );
+        final long total = totalNanos.sumThenReset();
+        final long n = count.sumThenReset();
+        return new Interval( n, total, max );
+    }
+
+    /**
+     * The values recorded during one interval.
+     */
+    public static class Interval
+    {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Interval( final long count, final long totalNanos, final long maxNanos )
+        {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return the number of operations recorded in this interval.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the average duration of the operations in this interval, in (fractional) milliseconds, or 0 when
+         * no operations were recorded.
+         */
+        public double getAverageMillis()
+        {
+            if ( count == 0 )
+            {
+                return 0;
+            }
+            return (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos( 1 );
+        }
+
+        /**
+         * @return the longest duration of the operations in this interval, in (fractional) milliseconds.
+         */
+        public double getMaxMillis()
+        {
+            return (double) maxNanos / TimeUnit.MILLISECONDS.toNanos( 1 );
+        }
+    }
+}
@@ -0,0 +1,994 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates synthetic media load on the Videobridge of this plugin, and measures how well it is forwarded.
+ *
+ * Conferences are allocated through the {@link LocalColibriChannel} (or, for comparison, through Openfire's routing,
+ * as the requests of a conference focus that does not run in this Openfire instance are), with one audio channel per
+ * simulated endpoint.
+ * The channels use the raw UDP transport, which allows the simulated endpoints to send plain RTP and RTCP over the
+ * network stack of this host without ICE or DTLS. Every packet carries the time at which it was sent, from which the
+ * forwarding latency is computed when other endpoints of the same conference receive it.
+ *
+ * The harness generates real load on the Openfire process, and is therefore disabled unless explicitly enabled. It is
+ * intended for test servers, to determine how many endpoints a server can carry.
+ */
+public class LoadHarness
+{
+    private static final Logger Log = LoggerFactory.getLogger( LoadHarness.class );
+
+    /**
+     * The name of the Openfire property that enables the load harness.
+     */
+    public static final String ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOAD_HARNESS_ENABLED";
+
+    private static final String RAW_UDP_NAMESPACE = "urn:xmpp:jingle:transports:raw-udp:1";
+
+    /**
+     * The payload type (Opus) of the generated RTP packets.
+     */
+    private static final int PAYLOAD_TYPE = 111;
+
+    /**
+     * The payload type (VP8) of the generated RTP packets, when video is simulated.
+     */
+    private static final int VIDEO_PAYLOAD_TYPE = 100;
+
+    private static final String SSMA_NAMESPACE = "urn:xmpp:jingle:apps:rtp:ssma:0";
+
+    /**
+     * The number of times per second that the simulated endpoints send packets.
+     */
+    private static final int TICKS_PER_SECOND = 50;
+
+    /**
+     * The maximum number of latency samples retained during a run.
+     */
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of simulated endpoints of a run (in all of its
+     * conferences).
+     */
+    public static final String MAX_ENDPOINTS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOAD_HARNESS_MAX_ENDPOINTS";
+
+    /**
+     * The default maximum number of simulated endpoints of a run.
+     */
+    public static final int MAX_ENDPOINTS_DEFAULT_VALUE = 500;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of RTP packets that the simulated endpoints of
+     * a run send per second (together).
+     */
+    public static final String MAX_PACKETS_PER_SECOND_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOAD_HARNESS_MAX_PACKETS_PER_SECOND";
+
+    /**
+     * The default maximum number of RTP packets that the simulated endpoints of a run send per second.
+     */
+    public static final int MAX_PACKETS_PER_SECOND_DEFAULT_VALUE = 25000;
+
+    /**
+     * The maximum number of RTP packets that one simulated endpoint sends per second.
+     */
+    private static final int MAX_PACKETS_PER_SECOND_PER_ENDPOINT = 1000;
+
+    /**
+     * The number of completed runs that are retained, so that their reports can be retrieved.
+     */
+    private static final int RETAINED_RUNS = 10;
+
+    /**
+     * Prevents runs from overlapping.
+     */
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Runs that were started asynchronously, keyed by their identifier. The oldest completed runs are removed when more
+     * than {@link #RETAINED_RUNS} are retained.
+     */
+    private static final Map<String, Run> runs = new ConcurrentHashMap<>();
+
+    /**
+     * The shape of the load that is generated.
+     */
+    public static class Shape
+    {
+        final int conferences;
+        final int endpoints;
+        final int packetsPerSecond;
+        final int payloadSize;
+        final int durationSeconds;
+        final boolean video;
+
+        public Shape( final int conferences, final int endpoints, final int packetsPerSecond, final int payloadSize, final int durationSeconds )
+        {
+            this( conferences, endpoints, packetsPerSecond, payloadSize, durationSeconds, false );
+        }
+
+        /**
+         * The total number of endpoints (conferences times endpoints) and the total number of packets per second
+         * (that, times packetsPerSecond) are bounded by Openfire properties.
+         *
+         * @param conferences the number of conferences (at least 1).
+         * @param endpoints the number of endpoints per conference (at least 2).
+         * @param packetsPerSecond the number of RTP packets that each endpoint sends per second (1 - 1000).
+         * @param payloadSize the size (in bytes) of the payload of each RTP packet (8 - 1400).
+         * @param durationSeconds the duration (in seconds) of the run (1 - 600).
+         * @param video true to simulate video channels (to which the forwarding policy applies), false for audio.
+         */
+        public Shape( final int conferences, final int endpoints, final int packetsPerSecond, final int payloadSize, final int durationSeconds, final boolean video )
+        {
+            if ( conferences < 1 || endpoints < 2 || packetsPerSecond < 1 || packetsPerSecond > MAX_PACKETS_PER_SECOND_PER_ENDPOINT || payloadSize < 8 || payloadSize > 1400 || durationSeconds < 1 || durationSeconds > 600 )
+            {
+                throw new IllegalArgumentException( "Invalid load shape: " + conferences + " conferences, " + endpoints + " endpoints, " + packetsPerSecond + " packets/s, " + payloadSize + " bytes, " + durationSeconds + "s." );
+            }
+
+            // Computed in longs, as the product of valid integers can overflow.
+            final long totalEndpoints = (long) conferences * endpoints;
+            final int maxEndpoints = JiveGlobals.getIntProperty( MAX_ENDPOINTS_PROPERTY_NAME, MAX_ENDPOINTS_DEFAULT_VALUE );
+            if ( totalEndpoints > maxEndpoints )
+            {
+                throw new IllegalArgumentException( "Invalid load shape: " + totalEndpoints + " endpoints exceed the maximum of " + maxEndpoints + " (configured by the '" + MAX_ENDPOINTS_PROPERTY_NAME + "' property)." );
+            }
+            final long totalPacketsPerSecond = totalEndpoints * packetsPerSecond;
+            final int maxPacketsPerSecond = JiveGlobals.getIntProperty( MAX_PACKETS_PER_SECOND_PROPERTY_NAME, MAX_PACKETS_PER_SECOND_DEFAULT_VALUE );
+            if ( totalPacketsPerSecond > maxPacketsPerSecond )
+            {
+                throw new IllegalArgumentException( "Invalid load shape: " + totalPacketsPerSecond + " packets/s exceed the maximum of " + maxPacketsPerSecond + " (configured by the '" + MAX_PACKETS_PER_SECOND_PROPERTY_NAME + "' property)." );
+            }
+            this.conferences = conferences;
+            this.endpoints = endpoints;
+            this.packetsPerSecond = packetsPerSecond;
+            this.payloadSize = payloadSize;
+            this.durationSeconds = durationSeconds;
+            this.video = video;
+        }
+    }
+
+    /**
+     * The results of a run.
+     */
+    public static class Report
+    {
+        private final Shape shape;
+        private final boolean routed;
+        private final long allocationMillis;
+        private final double[] colibriLatencyPercentiles;
+        private final double[] firstMediaPercentiles;
+        private final long durationMillis;
+        private final long packetsSent;
+        private final long packetsReceived;
+        private final long bytesReceived;
+        private final double[] latencyPercentiles;
+        private final double cpuUsage;
+        private final long allocationRate;
+
+        Report( final Shape shape, final boolean routed, final long allocationMillis, final double[] colibriLatencyPercentiles, final double[] firstMediaPercentiles, final long durationMillis, final long packetsSent, final long packetsReceived, final long bytesReceived, final double[] latencyPercentiles, final double cpuUsage, final long allocationRate )
+        {
+            this.shape = shape;
+            this.routed = routed;
+            this.allocationMillis = allocationMillis;
+            this.colibriLatencyPercentiles = colibriLatencyPercentiles;
+            this.firstMediaPercentiles = firstMediaPercentiles;
+            this.durationMillis = durationMillis;
+            this.packetsSent = packetsSent;
+            this.packetsReceived = packetsReceived;
+            this.bytesReceived = bytesReceived;
+            this.latencyPercentiles = latencyPercentiles;
+            this.cpuUsage = cpuUsage;
+            this.allocationRate = allocationRate;
+        }
+
+        /**
+         * Returns the time that it took to allocate all conferences.
+         *
+         * @return a duration in milliseconds.
+         */
+        public long getAllocationMillis()
+        {
+            return allocationMillis;
+        }
+
+        /**
+         * Returns the median time from sending a Colibri request that allocates a conference until its response was
+         * received.
+         *
+         * @return a latency in milliseconds.
+         */
+        public double getColibriLatencyP50()
+        {
+            return colibriLatencyPercentiles[ 0 ];
+        }
+
+        /**
+         * Returns the median time to first media: the time from sending the Colibri request that allocates a
+         * conference until its response was received, plus the time from the start of the load until the first packet
+         * was forwarded to an endpoint of the conference.
+         *
+         * @return a duration in milliseconds, or -1 when no packets were received.
+         */
+        public double getFirstMediaP50()
+        {
+            return firstMediaPercentiles[ 0 ];
+        }
+
+        /**
+         * Returns the median forwarding latency.
+         *
+         * @return a latency in milliseconds, or -1 when no packets were received.
+         */
+        public double getLatencyP50()
+        {
+            return latencyPercentiles[ 0 ];
+        }
+
+        /**
+         * Returns the 99th percentile of the forwarding latency.
+         *
+         * @return a latency in milliseconds, or -1 when no packets were received.
+         */
+        public double getLatencyP99()
+        {
+            return latencyPercentiles[ 2 ];
+        }
+
+        /**
+         * Returns the number of packets that were forwarded to (and received by) simulated endpoints, per second.
+         */
+        public long getForwardedPerSecond()
+        {
+            return durationMillis == 0 ? 0 : packetsReceived * 1000 / durationMillis;
+        }
+
+        /**
+         * Returns the rate at which the simulated endpoints received forwarded packets: the egress of the Videobridge
+         * towards them (counting RTP headers and payloads, but not the UDP and IP headers).
+         *
+         * @return a bitrate in bits per second.
+         */
+        public long getEgressBitrate()
+        {
+            return durationMillis == 0 ? 0 : bytesReceived * 8 * 1000 / durationMillis;
+        }
+
+        /**
+         * Returns the fraction of the packets that were expected to be forwarded, but were not received. Every packet
+         * is expected to be forwarded to all other endpoints of its conference: packets that are not forwarded because
+         * of a last-N limit count as lost.
+         */
+        public double getLoss()
+        {
+            final long expected = packetsSent * ( shape.endpoints - 1 );
+            return expected == 0 ? 0 : Math.max( 0, expected - packetsReceived ) / (double) expected;
+        }
+
+        /**
+         * Returns a JSON representation of this report.
+         *
+         * @return a JSON object (never null).
+         */
+        public String toJSON()
+        {
+            return String.format( Locale.ROOT,
+                "{\"conferences\":%d,\"endpoints\":%d,\"packetsPerSecond\":%d,\"payloadSize\":%d,\"video\":%b,\"routed\":%b,"
+                    + "\"allocationTime\":%d,\"colibriLatencyP50\":%.3f,\"colibriLatencyMax\":%.3f,"
+                    + "\"firstMediaP50\":%.3f,\"firstMediaMax\":%.3f,\"duration\":%d,"
+                    + "\"packetsSent\":%d,\"packetsReceived\":%d,\"bytesReceived\":%d,\"egressBitrate\":%d,"
+                    + "\"forwardedPerSecond\":%d,\"loss\":%.4f,"
+                    + "\"latencyP50\":%.3f,\"latencyP95\":%.3f,\"latencyP99\":%.3f,\"latencyMax\":%.3f,"
+                    + "\"cpuUsage\":%.3f,\"allocationRate\":%d}",
+                shape.conferences, shape.endpoints, shape.packetsPerSecond, shape.payloadSize, shape.video, routed,
+                allocationMillis, colibriLatencyPercentiles[ 0 ], colibriLatencyPercentiles[ 3 ],
+                firstMediaPercentiles[ 0 ], firstMediaPercentiles[ 3 ], durationMillis,
+                packetsSent, packetsReceived, bytesReceived, getEgressBitrate(), getForwardedPerSecond(), getLoss(),
+                latencyPercentiles[ 0 ], latencyPercentiles[ 1 ], latencyPercentiles[ 2 ], latencyPercentiles[ 3 ],
+                cpuUsage, allocationRate );
+        }
+    }
+
+    /**
+     * A run that was started asynchronously.
+     */
+    public static class Run
+    {
+        private final String id;
+        private final long started = System.currentTimeMillis();
+        private volatile boolean completed;
+        private volatile Report report;
+        private volatile String error;
+
+        Run( final String id )
+        {
+            this.id = id;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public boolean isCompleted()
+        {
+            return completed;
+        }
+
+        /**
+         * Returns the results of the run.
+         *
+         * @return a report, or null when the run did not complete, or failed.
+         */
+        public Report getReport()
+        {
+            return report;
+        }
+
+        /**
+         * Returns a JSON representation of this run, which includes its report when it completed successfully.
+         *
+         * @return a JSON object (never null).
+         */
+        public String toJSON()
+        {
+            final String status = !completed ? "running" : report != null ? "completed" : "failed";
+            return "{\"id\":\"" + id + "\",\"status\":\"" + status + "\",\"started\":" + started
+                + ( report != null ? ",\"report\":" + report.toJSON() : "" )
+                + ( error != null ? ",\"error\":\"" + escape( error ) + "\"" : "" )
+                + "}";
+        }
+
+        private static String escape( final String value )
+        {
+            final StringBuilder result = new StringBuilder();
+            for ( final char c : value.toCharArray() )
+            {
+                switch ( c )
+                {
+                    case '"': result.append( "\\\"" ); break;
+                    case '\\': result.append( "\\\\" ); break;
+                    default:
+                        if ( c < 0x20 )
+                        {
+                            result.append( String.format( "\\u%04x", (int) c ) );
+                        }
+                        else
+                        {
+                            result.append( c );
+                        }
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * A simulated endpoint.
+     */
+    private static class Endpoint
+    {
+        final String conferenceId;
+        final int conferenceIndex;
+        final String channelId;
+        final String media;
+        final int payloadType;
+        final int ssrc;
+        final DatagramChannel rtp;
+        final DatagramChannel rtcp;
+        InetSocketAddress rtpTarget;
+        InetSocketAddress rtcpTarget;
+        int sequenceNumber;
+
+        Endpoint( final String conferenceId, final int conferenceIndex, final String channelId, final boolean video, final int ssrc ) throws IOException
+        {
+            this.conferenceId = conferenceId;
+            this.conferenceIndex = conferenceIndex;
+            this.channelId = channelId;
+            this.media = video ? "video" : "audio";
+            this.payloadType = video ? VIDEO_PAYLOAD_TYPE : PAYLOAD_TYPE;
+            this.ssrc = ssrc;
+            this.rtp = DatagramChannel.open().bind( new InetSocketAddress( 0 ) );
+            this.rtcp = DatagramChannel.open().bind( new InetSocketAddress( 0 ) );
+        }
+
+        void close()
+        {
+            try
+            {
+                rtp.close();
+                rtcp.close();
+            }
+            catch ( IOException e )
+            {
+                Log.debug( "Unable to close the sockets of a simulated endpoint.", e );
+            }
+        }
+    }
+
+    private final LocalColibriChannel channel;
+
+    private final JID from;
+
+    /**
+     * The name from which the names of conferences are derived.
+     */
+    private final String name;
+
+    /**
+     * True when Colibri requests are routed through Openfire, rather than delivered through the local Colibri channel.
+     */
+    private final boolean routed;
+
+    public LoadHarness( final LocalColibriChannel channel )
+    {
+        this( channel, "load-harness" );
+    }
+
+    /**
+     * @param name identifies the user of the harness in the names of conferences, and in the address from which
+     *             requests are sent (cannot be null).
+     */
+    public LoadHarness( final LocalColibriChannel channel, final String name )
+    {
+        this( channel, name, false );
+    }
+
+    /**
+     * @param name identifies the user of the harness in the names of conferences, and in the address from which
+     *             requests are sent (cannot be null).
+     * @param routed true to route Colibri requests through Openfire, false to deliver them through the local Colibri
+     *               channel. Requests that are routed are sent from the address of the server, to which Openfire
+     *               delivers their responses.
+     */
+    public LoadHarness( final LocalColibriChannel channel, final String name, final boolean routed )
+    {
+        this.channel = channel;
+        this.name = name;
+        this.routed = routed;
+        final String domain = XMPPServer.getInstance().getServerInfo().getXMPPDomain();
+        this.from = routed ? new JID( domain ) : new JID( null, domain, name );
+    }
+
+    public static boolean isEnabled()
+    {
+        return JiveGlobals.getBooleanProperty( ENABLED_PROPERTY_NAME, false );
+    }
+
+    /**
+     * Returns a run that was started asynchronously.
+     *
+     * @param id the identifier of the run.
+     * @return the run, or null when it is unknown (or was discarded, as newer runs completed).
+     */
+    public static Run getRun( final String id )
+    {
+        return id == null ? null : runs.get( id );
+    }
+
+    /**
+     * Starts a run on a dedicated thread, and returns immediately. The report of the run can be obtained through
+     * {@link #getRun(String)}.
+     *
+     * @param shape the load to generate (cannot be null).
+     * @return the run that was started (never null).
+     * @throws IllegalStateException when another run (of any harness) is in progress.
+     */
+    public Run start( final Shape shape )
+    {
+        if ( !running.compareAndSet( false, true ) )
+        {
+            throw new IllegalStateException( "Another load harness run is in progress." );
+        }
+
+        final Run run = new Run( UUID.randomUUID().toString() );
+        try
+        {
+            discardCompletedRuns();
+            runs.put( run.id, run );
+            final Thread thread = new Thread( () -> {
+                try
+                {
+                    run.report = execute( shape );
+                }
+                catch ( Exception e )
+                {
+                    Log.debug( "Load harness run {} failed.", run.id, e );
+                    run.error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+                }
+                finally
+                {
+                    run.completed = true;
+                    running.set( false );
+                }
+            }, "jitsi-videobridge-load-harness" );
+            thread.setDaemon( true );
+            thread.start();
+        }
+        catch ( RuntimeException | Error e )
+        {
+            runs.remove( run.id );
+            running.set( false );
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * Removes the oldest completed runs, so that at most {@link #RETAINED_RUNS} - 1 are retained.
+     */
+    private static void discardCompletedRuns()
+    {
+        final List<Run> completed = new ArrayList<>();
+        for ( final Run run : runs.values() )
+        {
+            if ( run.completed )
+            {
+                completed.add( run );
+            }
+        }
+        completed.sort( Comparator.comparingLong( run -> run.started ) );
+        for ( int i = 0; i < completed.size() - ( RETAINED_RUNS - 1 ); i++ )
+        {
+            runs.remove( completed.get( i ).id );
+        }
+    }
+
+    /**
+     * Allocates conferences, generates load for the duration of the shape, and expires the conferences. This blocks
+     * the calling thread for the duration of the run.
+     *
+     * @param shape the load to generate (cannot be null).
+     * @return the results of the run (never null).
+     * @throws IllegalStateException when another run (of any harness) is in progress.
+     * @throws IOException when conferences cannot be allocated, or sockets cannot be opened.
+     * @throws InterruptedException when interrupted while generating load.
+     */
+    public Report run( final Shape shape ) throws IOException, InterruptedException
+    {
+        if ( !running.compareAndSet( false, true ) )
+        {
+            throw new IllegalStateException( "Another load harness run is in progress." );
+        }
+        try
+        {
+            return execute( shape );
+        }
+        finally
+        {
+            running.set( false );
+        }
+    }
+
+    /**
+     * Performs a run. The caller must have claimed the {@link #running} flag.
+     */
+    private Report execute( final Shape shape ) throws IOException, InterruptedException
+    {
+        final List<Endpoint> endpoints = new ArrayList<>();
+        try
+        {
+            final long[] colibriLatencies = new long[ shape.conferences ];
+            final long allocationStart = System.nanoTime();
+            for ( int i = 0; i < shape.conferences; i++ )
+            {
+                endpoints.addAll( allocate( name + "-" + i, shape.endpoints, shape.video, colibriLatencies, i ) );
+            }
+            final long allocationMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - allocationStart );
+            Log.debug( "Allocated {} conferences with {} endpoints each in {}ms ({}). Generating load for {}s.", shape.conferences, shape.endpoints, allocationMillis, routed ? "routed" : "local", shape.durationSeconds );
+            return generate( shape, endpoints, allocationMillis, colibriLatencies );
+        }
+        finally
+        {
+            for ( final Endpoint endpoint : endpoints )
+            {
+                endpoint.close();
+            }
+            expire( endpoints );
+        }
+    }
+
+    /**
+     * Allocates a conference with one raw UDP audio (or video) channel per endpoint, and records how long it took for
+     * the Videobridge to respond to the request. The SSRCs of video channels are signaled, so that the Videobridge can
+     * select the streams that it forwards.
+     */
+    private List<Endpoint> allocate( final String name, final int count, final boolean video, final long[] colibriLatencies, final int index ) throws IOException
+    {
+        final IQ request = new IQ( IQ.Type.set );
+        request.setFrom( from );
+        request.setTo( channel.getAddress() );
+        final Element conference = request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        conference.addAttribute( "name", name );
+        final Element content = conference.addElement( "content" ).addAttribute( "name", video ? "video" : "audio" );
+        for ( int i = 0; i < count; i++ )
+        {
+            final Element channelElement = content.addElement( "channel" )
+                .addAttribute( "initiator", "true" )
+                .addAttribute( "endpoint", "endpoint-" + i )
+                .addAttribute( "expire", "60" )
+                .addAttribute( "rtp-level-relay-type", "translator" );
+            if ( video )
+            {
+                channelElement.addElement( "payload-type" )
+                    .addAttribute( "id", String.valueOf( VIDEO_PAYLOAD_TYPE ) )
+                    .addAttribute( "name", "VP8" )
+                    .addAttribute( "clockrate", "90000" );
+                channelElement.addElement( "source", SSMA_NAMESPACE )
+                    .addAttribute( "ssrc", String.valueOf( ssrc( index, i ) ) );
+            }
+            else
+            {
+                channelElement.addElement( "payload-type" )
+                    .addAttribute( "id", String.valueOf( PAYLOAD_TYPE ) )
+                    .addAttribute( "name", "opus" )
+                    .addAttribute( "clockrate", "48000" )
+                    .addAttribute( "channels", "2" );
+            }
+            channelElement.addElement( "transport", RAW_UDP_NAMESPACE );
+        }
+
+        final long requestStart = System.nanoTime();
+        final IQ response = send( request );
+        colibriLatencies[ index ] = System.nanoTime() - requestStart;
+        final String conferenceId = ColibriElements.getConferenceId( request, response );
+        if ( response.getType() == IQ.Type.error || conferenceId == null )
+        {
+            throw new IOException( "Unable to allocate a conference: " + response.toXML() );
+        }
+
+        final List<Endpoint> result = new ArrayList<>();
+        for ( final Element allocated : ColibriElements.getChannels( ColibriElements.getConference( response ) ) )
+        {
+            final Endpoint endpoint = new Endpoint( conferenceId, index, allocated.attributeValue( "id" ), video, ssrc( index, result.size() ) );
+            result.add( endpoint );
+
+            final Element transport = allocated.element( "transport" );
+            if ( transport != null )
+            {
+                for ( final Iterator candidates = transport.elementIterator( "candidate" ); candidates.hasNext(); )
+                {
+                    final Element candidate = (Element) candidates.next();
+                    final InetSocketAddress address = new InetSocketAddress( candidate.attributeValue( "ip" ), Integer.parseInt( candidate.attributeValue( "port" ) ) );
+                    if ( "1".equals( candidate.attributeValue( "component" ) ) )
+                    {
+                        endpoint.rtpTarget = address;
+                    }
+                    else if ( "2".equals( candidate.attributeValue( "component" ) ) )
+                    {
+                        endpoint.rtcpTarget = address;
+                    }
+                }
+            }
+        }
+
+        for ( final Endpoint endpoint : result )
+        {
+            if ( endpoint.rtpTarget == null )
+            {
+                for ( final Endpoint allocated : result )
+                {
+                    allocated.close();
+                }
+                throw new IOException( "The Videobridge did not provide a raw UDP candidate for channel " + endpoint.channelId + "." );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the SSRC of an endpoint of a conference of a run.
+     */
+    private static int ssrc( final int conferenceIndex, final int endpointIndex )
+    {
+        return 0x10000 + conferenceIndex * 1000 + endpointIndex;
+    }
+
+    /**
+     * Delivers a Colibri request to the Videobridge, and returns its response.
+     */
+    private IQ send( final IQ request ) throws IOException
+    {
+        return routed ? ConferenceMigrator.sendRemote( request ) : channel.send( request );
+    }
+
+    /**
+     * Sends packets from all endpoints, and receives the packets that are forwarded to them.
+     *
+     * @param colibriLatencies the time (in nanoseconds) that it took to allocate each conference.
+     */
+    private Report generate( final Shape shape, final List<Endpoint> endpoints, final long allocationMillis, final long[] colibriLatencies ) throws IOException, InterruptedException
+    {
+        // The time at which the first packet was forwarded to an endpoint of each conference (0 when none was).
+        final long[] firstReceived = new long[ shape.conferences ];
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+        final long[] latencies = new long[ MAX_LATENCY_SAMPLES ];
+        final int[] latencyCount = new int[ 1 ];
+        final AtomicBoolean stopped = new AtomicBoolean();
+
+        final Selector selector = Selector.open();
+        for ( final Endpoint endpoint : endpoints )
+        {
+            endpoint.rtp.configureBlocking( false );
+            endpoint.rtp.register( selector, SelectionKey.OP_READ, endpoint );
+        }
+
+        final Thread receiver = new Thread( () -> {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect( 1500 );
+            try
+            {
+                while ( !stopped.get() )
+                {
+                    selector.select( 100 );
+                    for ( final Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); )
+                    {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        buffer.clear();
+                        while ( ( (DatagramChannel) key.channel() ).receive( buffer ) != null )
+                        {
+                            buffer.flip();
+                            received.incrementAndGet();
+                            bytesReceived.addAndGet( buffer.remaining() );
+                            final Endpoint endpoint = (Endpoint) key.attachment();
+                            if ( firstReceived[ endpoint.conferenceIndex ] == 0 )
+                            {
+                                firstReceived[ endpoint.conferenceIndex ] = System.nanoTime();
+                            }
+                            final long sentAt = readTimestamp( buffer, endpoint.payloadType );
+                            if ( sentAt != 0 && latencyCount[ 0 ] < latencies.length )
+                            {
+                                latencies[ latencyCount[ 0 ]++ ] = System.nanoTime() - sentAt;
+                            }
+                            buffer.clear();
+                        }
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                Log.warn( "Unable to receive forwarded packets.", e );
+            }
+        }, "jitsi-videobridge-load-harness-receiver" );
+
+        final ByteBuffer packet = ByteBuffer.allocate( 12 + shape.payloadSize );
+        final ByteBuffer report = ByteBuffer.allocate( 8 );
+        final long[] tick = new long[ 1 ];
+        final Runnable sender = () -> {
+            final long t = tick[ 0 ]++;
+            final long packets = ( t + 1 ) * shape.packetsPerSecond / TICKS_PER_SECOND - t * shape.packetsPerSecond / TICKS_PER_SECOND;
+            for ( final Endpoint endpoint : endpoints )
+            {
+                try
+                {
+                    for ( long p = 0; p < packets; p++ )
+                    {
+                        writeRtp( packet, endpoint );
+                        endpoint.rtp.send( packet, endpoint.rtpTarget );
+                        sent.incrementAndGet();
+                    }
+                    if ( t % TICKS_PER_SECOND == 0 && endpoint.rtcpTarget != null )
+                    {
+                        writeReceiverReport( report, endpoint );
+                        endpoint.rtcp.send( report, endpoint.rtcpTarget );
+                    }
+                }
+                catch ( IOException e )
+                {
+                    Log.debug( "Unable to send a packet of a simulated endpoint.", e );
+                }
+            }
+        };
+
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        final long cpuBefore = getProcessCpuTime( os );
+        final long allocatedBefore = getAllocatedBytes();
+        final long start = System.nanoTime();
+
+        receiver.start();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> new Thread( runnable, "jitsi-videobridge-load-harness-sender" ) );
+        try
+        {
+            scheduler.scheduleAtFixedRate( sender, 0, 1000 / TICKS_PER_SECOND, TimeUnit.MILLISECONDS );
+            Thread.sleep( TimeUnit.SECONDS.toMillis( shape.durationSeconds ) );
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination( 1, TimeUnit.SECONDS );
+
+            // Allow packets that are in flight to arrive.
+            Thread.sleep( 500 );
+            stopped.set( true );
+            receiver.join( 1000 );
+            selector.close();
+        }
+
+        final long durationNanos = System.nanoTime() - start;
+        final long cpuAfter = getProcessCpuTime( os );
+        final long allocatedAfter = getAllocatedBytes();
+
+        final double cpuUsage = cpuBefore < 0 || cpuAfter < 0 ? -1 : ( cpuAfter - cpuBefore ) / (double) durationNanos / Runtime.getRuntime().availableProcessors();
+        final long allocationRate = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : ( allocatedAfter - allocatedBefore ) * TimeUnit.SECONDS.toNanos( 1 ) / durationNanos;
+
+        final long[] firstMedia = new long[ shape.conferences ];
+        int firstMediaCount = 0;
+        for ( int i = 0; i < shape.conferences; i++ )
+        {
+            if ( firstReceived[ i ] != 0 )
+            {
+                firstMedia[ firstMediaCount++ ] = colibriLatencies[ i ] + firstReceived[ i ] - start;
+            }
+        }
+
+        return new Report( shape, routed, allocationMillis, percentiles( colibriLatencies, colibriLatencies.length ), percentiles( firstMedia, firstMediaCount ), TimeUnit.NANOSECONDS.toMillis( durationNanos ), sent.get(), received.get(), bytesReceived.get(), percentiles( latencies, latencyCount[ 0 ] ), cpuUsage, allocationRate );
+    }
+
+    /**
+     * Writes an RTP packet that carries the current time in the first eight bytes of its payload.
+     */
+    private static void writeRtp( final ByteBuffer packet, final Endpoint endpoint )
+    {
+        packet.clear();
+        packet.put( (byte) 0x80 );
+        packet.put( (byte) endpoint.payloadType );
+        packet.putShort( (short) endpoint.sequenceNumber );
+        packet.putInt( endpoint.sequenceNumber * 960 );
+        packet.putInt( endpoint.ssrc );
+        packet.putLong( System.nanoTime() );
+        while ( packet.hasRemaining() )
+        {
+            packet.put( (byte) 0 );
+        }
+        packet.flip();
+        endpoint.sequenceNumber++;
+    }
+
+    /**
+     * Writes an empty RTCP receiver report.
+     */
+    private static void writeReceiverReport( final ByteBuffer packet, final Endpoint endpoint )
+    {
+        packet.clear();
+        packet.put( (byte) 0x80 );
+        packet.put( (byte) 201 );
+        packet.putShort( (short) 1 );
+        packet.putInt( endpoint.ssrc );
+        packet.flip();
+    }
+
+    /**
+     * Reads the send time from a received RTP packet, skipping the CSRCs and header extension that the Videobridge may
+     * have added.
+     *
+     * @param payloadType the payload type of the packets of the run.
+     * @return the send time (in nanoseconds), or 0 when the packet does not carry one.
+     */
+    private static long readTimestamp( final ByteBuffer packet, final int payloadType )
+    {
+        if ( packet.remaining() < 12 || ( packet.get( 0 ) & 0xC0 ) != 0x80 || ( packet.get( 1 ) & 0x7F ) != payloadType )
+        {
+            return 0;
+        }
+        int offset = 12 + 4 * ( packet.get( 0 ) & 0x0F );
+        if ( ( packet.get( 0 ) & 0x10 ) != 0 && packet.remaining() >= offset + 4 )
+        {
+            offset += 4 + 4 * ( packet.getShort( offset + 2 ) & 0xFFFF );
+        }
+        return packet.remaining() >= offset + 8 ? packet.getLong( offset ) : 0;
+    }
+
+    /**
+     * Computes the 50th, 95th and 99th percentile and the maximum of latency samples.
+     *
+     * @return percentiles in milliseconds.
+     */
+    private static double[] percentiles( final long[] samples, final int count )
+    {
+        if ( count == 0 )
+        {
+            return new double[] { -1, -1, -1, -1 };
+        }
+        Arrays.sort( samples, 0, count );
+        return new double[] {
+            samples[ (int) ( count * 0.50 ) ] / 1000000.0,
+            samples[ (int) ( count * 0.95 ) ] / 1000000.0,
+            samples[ (int) ( count * 0.99 ) ] / 1000000.0,
+            samples[ count - 1 ] / 1000000.0
+        };
+    }
+
+    private static long getProcessCpuTime( final OperatingSystemMXBean os )
+    {
+        if ( os instanceof com.sun.management.OperatingSystemMXBean )
+        {
+            return ( (com.sun.management.OperatingSystemMXBean) os ).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of bytes that were allocated by all live threads. Allocations of threads that terminate while
+     * the load is generated are not accounted for, which makes this an approximation.
+     */
+    private static long getAllocatedBytes()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if ( !( threads instanceof com.sun.management.ThreadMXBean ) || !( (com.sun.management.ThreadMXBean) threads ).isThreadAllocatedMemoryEnabled() )
+        {
+            return -1;
+        }
+        long total = 0;
+        for ( final long allocated : ( (com.sun.management.ThreadMXBean) threads ).getThreadAllocatedBytes( threads.getAllThreadIds() ) )
+        {
+            if ( allocated > 0 )
+            {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Expires the channels of all endpoints.
+     */
+    private void expire( final List<Endpoint> endpoints )
+    {
+        final Map<String, List<Endpoint>> byConference = new HashMap<>();
+        for ( final Endpoint endpoint : endpoints )
+        {
+            byConference.computeIfAbsent( endpoint.conferenceId, k -> new ArrayList<>() ).add( endpoint );
+        }
+
+        for ( final Map.Entry<String, List<Endpoint>> entry : byConference.entrySet() )
+        {
+            final IQ request = new IQ( IQ.Type.set );
+            request.setFrom( from );
+            request.setTo( channel.getAddress() );
+            final Element conference = request.setChildElement( "conference", ColibriElements.NAMESPACE );
+            conference.addAttribute( "id", entry.getKey() );
+            final Element content = conference.addElement( "content" ).addAttribute( "name", entry.getValue().get( 0 ).media );
+            for ( final Endpoint endpoint : entry.getValue() )
+            {
+                content.addElement( "channel" ).addAttribute( "id", endpoint.channelId ).addAttribute( "expire", "0" );
+            }
+            try
+            {
+                final IQ response = send( request );
+                if ( response.getType() == IQ.Type.error )
+                {
+                    Log.debug( "Unable to expire load harness conference {}. The Videobridge will expire it when it is idle. {}", entry.getKey(), response.toXML() );
+                }
+            }
+            catch ( IOException e )
+            {
+                Log.debug( "Unable to expire load harness conference {}. The Videobridge will expire it when it is idle.", entry.getKey(), e );
+            }
+        }
+    }
+}
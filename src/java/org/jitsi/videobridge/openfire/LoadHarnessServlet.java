@@ -0,0 +1,113 @@
+package org.jitsi.videobridge.openfire;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Starts runs of the {@link LoadHarness}, and returns their reports as JSON.
+ *
+ * A POST request starts a run in the background, and is answered immediately with the identifier of the run. The shape
+ * of the load is defined by the 'conferences', 'endpoints', 'packetsPerSecond', 'payloadSize' and 'duration' (in
+ * seconds) request parameters. When the 'routed' parameter is 'true', the Colibri requests of the run are routed
+ * through Openfire rather than delivered through the local Colibri channel. A GET request with the 'id' parameter returns the status of that run, which includes
+ * its report when it completed; without that parameter, a GET request returns the nonce that POST requests must carry
+ * as the 'csrf' parameter (see {@link CsrfProtection}). The harness must be enabled through an Openfire property.
+ */
+public class LoadHarnessServlet extends HttpServlet
+{
+    @Override
+    protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        if ( request.getParameter( "id" ) == null )
+        {
+            CsrfProtection.respond( request, response );
+            return;
+        }
+
+        final LoadHarness.Run run = LoadHarness.getRun( request.getParameter( "id" ) );
+        if ( run == null )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND, "Unknown load harness run." );
+            return;
+        }
+
+        response.setContentType( "application/json" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.getWriter().print( run.toJSON() );
+    }
+
+    @Override
+    protected void doPost( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        if ( CsrfProtection.reject( request, response ) )
+        {
+            return;
+        }
+
+        if ( !LoadHarness.isEnabled() )
+        {
+            response.sendError( HttpServletResponse.SC_FORBIDDEN, "The load harness is disabled. Set the '" + LoadHarness.ENABLED_PROPERTY_NAME + "' property to 'true' to enable it." );
+            return;
+        }
+
+        final LocalColibriChannel channel = LocalColibriChannel.find();
+        if ( channel == null )
+        {
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Jitsi Videobridge is not running, or its local Colibri channel is disabled." );
+            return;
+        }
+
+        final LoadHarness.Shape shape;
+        try
+        {
+            shape = new LoadHarness.Shape(
+                getIntParameter( request, "conferences", 1 ),
+                getIntParameter( request, "endpoints", 3 ),
+                getIntParameter( request, "packetsPerSecond", 50 ),
+                getIntParameter( request, "payloadSize", 160 ),
+                getIntParameter( request, "duration", 10 ),
+                Boolean.parseBoolean( request.getParameter( "video" ) ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST, e.getMessage() );
+            return;
+        }
+
+        final LoadHarness.Run run;
+        try
+        {
+            run = new LoadHarness( channel, "load-harness", Boolean.parseBoolean( request.getParameter( "routed" ) ) ).start( shape );
+        }
+        catch ( IllegalStateException e )
+        {
+            response.sendError( HttpServletResponse.SC_CONFLICT, e.getMessage() );
+            return;
+        }
+
+        response.setStatus( HttpServletResponse.SC_ACCEPTED );
+        response.setHeader( "Location", request.getRequestURI() + "?id=" + run.getId() );
+        response.setContentType( "application/json" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.getWriter().print( run.toJSON() );
+    }
+
+    private static int getIntParameter( final HttpServletRequest request, final String name, final int defaultValue )
+    {
+        final String value = request.getParameter( name );
+        if ( value == null || value.trim().isEmpty() )
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Integer.parseInt( value.trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Invalid value for parameter '" + name + "': " + value );
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.jitsi.videobridge.openfire;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+import org.xmpp.packet.PacketError;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A channel through which a conference focus that runs in the same Openfire instance as this plugin can exchange
+ * Colibri requests with the Videobridge directly, without routing stanzas through Openfire.
+ *
+ * Requests are handed to the Videobridge component as objects, and are processed on the thread of the caller (or on
+ * the provided executor). Apart from routing, processing is identical to that of requests that arrive through
+ * Openfire: the same component handles them, and the same metrics and events are recorded.
+ *
+ * A focus obtains a channel through {@link #find()}. When that returns null, or when a request is not addressed to
+ * the local Videobridge (see {@link #isLocal(JID)}), the focus is expected to send the request through Openfire, as
+ * it would without this channel.
+ */
+public class LocalColibriChannel
+{
+    private static final Logger Log = LoggerFactory.getLogger( LocalColibriChannel.class );
+
+    private final OpenfireComponentImpl component;
+
+    /**
+     * The address of the Videobridge component.
+     */
+    private final JID address;
+
+    /**
+     * The executor on which requests are processed when no executor is provided by the caller.
+     */
+    private final Executor executor;
+
+    public LocalColibriChannel( final OpenfireComponentImpl component, final JID address, final Executor executor )
+    {
+        this.component = component;
+        this.address = address;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the channel of the running plugin.
+     *
+     * @return a channel, or null when the plugin (or the Videobridge) is not running.
+     */
+    public static LocalColibriChannel find()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getLocalColibriChannel();
+    }
+
+    /**
+     * Returns the address of the Videobridge component that this channel delivers requests to.
+     *
+     * @return an address (never null).
+     */
+    public JID getAddress()
+    {
+        return address;
+    }
+
+    /**
+     * Checks if requests to a particular address can be delivered through this channel.
+     *
+     * @param to the address of a request (can be null).
+     * @return true if the address is that of the local Videobridge, otherwise false.
+     */
+    public boolean isLocal( final JID to )
+    {
+        return to != null && to.getNode() == null && to.getResource() == null && address.getDomain().equals( to.getDomain() );
+    }
+
+    /**
+     * Delivers a request to the Videobridge, and returns its response. The request is processed on the calling thread.
+     *
+     * When processing fails, an error response is returned, as the Videobridge would have sent when the request was
+     * routed through Openfire.
+     *
+     * @param request a 'get' or 'set' IQ that is addressed to the local Videobridge (cannot be null).
+     * @return the response (never null).
+     * @throws IllegalArgumentException when the request is not a 'get' or 'set' IQ to the local Videobridge.
+     */
+    public IQ send( final IQ request )
+    {
+        if ( !isLocal( request.getTo() ) )
+        {
+            throw new IllegalArgumentException( "The request is not addressed to the local Videobridge (" + address + "): " + request.getTo() );
+        }
+
+        if ( request.getType() != IQ.Type.get && request.getType() != IQ.Type.set )
+        {
+            throw new IllegalArgumentException( "Only 'get' and 'set' IQs can be sent, not: " + request.getType() );
+        }
+
+        IQ response;
+        try
+        {
+            response = request.getType() == IQ.Type.get
+                ? component.handleIQGetImpl( request )
+                : component.handleIQSetImpl( request );
+        }
+        catch ( Exception e )
+        {
+            Log.warn( "An exception occurred while processing a request that was delivered through the local Colibri channel.", e );
+            response = createError( request, PacketError.Condition.internal_server_error );
+        }
+
+        if ( response == null )
+        {
+            // Mirrors the behavior of a component that does not handle the request.
+            response = createError( request, PacketError.Condition.feature_not_implemented );
+        }
+
+        // Responses are addressed when routed through Openfire. Do the same here.
+        response.setID( request.getID() );
+        response.setTo( request.getFrom() );
+        response.setFrom( request.getTo() );
+        return response;
+    }
+
+    private static IQ createError( final IQ request, final PacketError.Condition condition )
+    {
+        final IQ error = IQ.createResultIQ( request );
+        if ( request.getChildElement() != null )
+        {
+            error.setChildElement( request.getChildElement().createCopy() );
+        }
+        error.setError( condition );
+        return error;
+    }
+
+    /**
+     * Delivers a request to the Videobridge asynchronously, on the thread pool of this plugin.
+     *
+     * @param request a 'get' or 'set' IQ that is addressed to the local Videobridge (cannot be null).
+     * @return a future that is completed with the response.
+     * @throws java.util.concurrent.RejectedExecutionException when the thread pool of this plugin is saturated.
+     */
+    public CompletableFuture<IQ> sendAsync( final IQ request )
+    {
+        return sendAsync( request, executor );
+    }
+
+    /**
+     * Delivers a request to the Videobridge asynchronously.
+     *
+     * @param request a 'get' or 'set' IQ that is addressed to the local Videobridge (cannot be null).
+     * @param executor the executor on which the request is processed (cannot be null).
+     * @return a future that is completed with the response.
+     */
+    public CompletableFuture<IQ> sendAsync( final IQ request, final Executor executor )
+    {
+        return CompletableFuture.supplyAsync( () -> send( request ), executor );
+    }
+}
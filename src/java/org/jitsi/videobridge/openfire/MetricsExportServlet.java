@@ -0,0 +1,64 @@
+package org.jitsi.videobridge.openfire;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Exports the metrics that are retained in memory by the plugin as CSV.
+ *
+ * The resolution is selected with the 'resolution' request parameter, which can be 'second' or 'minute' (the default).
+ */
+public class MetricsExportServlet extends HttpServlet
+{
+    @Override
+    protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    {
+        final MetricsHistory history = getHistory();
+        if ( history == null )
+        {
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Jitsi Videobridge is not running." );
+            return;
+        }
+
+        final boolean perSecond = "second".equalsIgnoreCase( request.getParameter( "resolution" ) );
+        final MetricsRingBuffer buffer = perSecond ? history.getSeconds() : history.getMinutes();
+
+        response.setContentType( "text/csv" );
+        response.setCharacterEncoding( "UTF-8" );
+        response.setHeader( "Content-Disposition", "attachment; filename=\"jitsi-videobridge-metrics-" + ( perSecond ? "second" : "minute" ) + ".csv\"" );
+
+        final PrintWriter writer = response.getWriter();
+        writer.print( "timestamp" );
+        for ( final HistoricMetric metric : HistoricMetric.values() )
+        {
+            writer.print( ',' );
+            writer.print( metric.getColumnName() );
+        }
+        writer.print( "\r\n" );
+
+        buffer.read( -1, ( timestamp, values ) -> {
+            writer.print( timestamp );
+            for ( final long value : values )
+            {
+                writer.print( ',' );
+                writer.print( value );
+            }
+            writer.print( "\r\n" );
+        } );
+        writer.flush();
+    }
+
+    /**
+     * Finds the metrics history of the running plugin.
+     *
+     * @return a metrics history, or null when the plugin is not running.
+     */
+    static MetricsHistory getHistory()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getMetricsHistory();
+    }
+}
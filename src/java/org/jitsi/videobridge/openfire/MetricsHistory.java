@@ -0,0 +1,117 @@
+package org.jitsi.videobridge.openfire;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retains recent Jitsi Videobridge metrics, at a per-second and a per-minute resolution.
+ *
+ * Every snapshot that is computed by {@link BridgeMetricsSampler} is added to the per-second buffer. Snapshots are
+ * averaged per minute, and added to the per-minute buffer when a minute has passed. Both buffers have a fixed capacity,
+ * which keeps memory usage constant, regardless of the uptime of the plugin.
+ *
+ * This class expects {@link #record(BridgeMetrics)} to be invoked by a single thread. Reading is thread-safe.
+ */
+public class MetricsHistory
+{
+    /**
+     * The amount of rows retained at per-second resolution (one hour).
+     */
+    public static final int SECONDS_CAPACITY = 3600;
+
+    /**
+     * The amount of rows retained at per-minute resolution (one day).
+     */
+    public static final int MINUTES_CAPACITY = 1440;
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+    private final MetricsRingBuffer seconds = new MetricsRingBuffer( SECONDS_CAPACITY );
+
+    private final MetricsRingBuffer minutes = new MetricsRingBuffer( MINUTES_CAPACITY );
+
+    /**
+     * The row to be added to the per-second buffer, reused for every snapshot.
+     */
+    private final long[] row = new long[ HistoricMetric.values().length ];
+
+    /**
+     * The sum of all values of the minute that is currently being aggregated.
+     */
+    private final long[] minuteSums = new long[ HistoricMetric.values().length ];
+
+    /**
+     * The amount of snapshots that contributed to {@link #minuteSums}.
+     */
+    private int minuteSamples;
+
+    /**
+     * The start of the minute that is currently being aggregated (in milliseconds since the epoch), or -1 if none.
+     */
+    private long minuteStart = -1;
+
+    /**
+     * Adds a snapshot to the history.
+     *
+     * @param metrics the snapshot to add (cannot be null).
+     */
+    public void record( final BridgeMetrics metrics )
+    {
+        for ( final HistoricMetric metric : HistoricMetric.values() )
+        {
+            row[ metric.ordinal() ] = metric.extract( metrics );
+        }
+        seconds.add( metrics.getTimestamp(), row );
+
+        final long start = metrics.getTimestamp() - ( metrics.getTimestamp() % MINUTE_MILLIS );
+        if ( minuteStart != -1 && minuteStart != start )
+        {
+            completeMinute();
+        }
+        minuteStart = start;
+        for ( int i = 0; i < row.length; i++ )
+        {
+            minuteSums[ i ] += row[ i ];
+        }
+        minuteSamples++;
+    }
+
+    /**
+     * Adds the average of the minute that is being aggregated to the per-minute buffer, and resets the aggregation.
+     */
+    private void completeMinute()
+    {
+        if ( minuteSamples == 0 )
+        {
+            return;
+        }
+        final long[] averages = new long[ minuteSums.length ];
+        for ( int i = 0; i < minuteSums.length; i++ )
+        {
+            averages[ i ] = Math.round( (double) minuteSums[ i ] / minuteSamples );
+            minuteSums[ i ] = 0;
+        }
+        minuteSamples = 0;
+        minutes.add( minuteStart, averages );
+    }
+
+    /**
+     * Returns the buffer that contains per-second metrics.
+     *
+     * @return a buffer (never null).
+     */
+    public MetricsRingBuffer getSeconds()
+    {
+        return seconds;
+    }
+
+    /**
+     * Returns the buffer that contains per-minute metrics. Each row contains the average value of a minute, and is
+     * timestamped with the start of that minute.
+     *
+     * @return a buffer (never null).
+     */
+    public MetricsRingBuffer getMinutes()
+    {
+        return minutes;
+    }
+}
@@ -0,0 +1,174 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.database.DbConnectionManager;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes the per-minute metrics of a {@link MetricsHistory} to the Openfire database.
+ *
+ * All rows that were added since the previous write are inserted as one batch, in a single transaction. Rows that are
+ * older than the configured retention period are removed in the same transaction. Each row is stored together with the
+ * identifier of the cluster node that produced it.
+ */
+public class MetricsHistoryWriter
+{
+    private static final Logger Log = LoggerFactory.getLogger( MetricsHistoryWriter.class );
+
+    /**
+     * The name of the Openfire property that defines the interval (in minutes) in which metrics are written to the
+     * database.
+     */
+    public static final String WRITE_INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.METRICS_WRITE_INTERVAL";
+
+    /**
+     * The default interval (in minutes) in which metrics are written to the database.
+     */
+    public static final int WRITE_INTERVAL_DEFAULT_VALUE = 5;
+
+    /**
+     * The name of the Openfire property that defines the amount of days that metrics are retained in the database.
+     * A value of zero or less disables persistence of metrics.
+     */
+    public static final String RETENTION_DAYS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.METRICS_RETENTION_DAYS";
+
+    /**
+     * The default amount of days that metrics are retained in the database.
+     */
+    public static final int RETENTION_DAYS_DEFAULT_VALUE = 30;
+
+    private static final String INSERT_METRICS =
+        "INSERT INTO ofJitsiVideobridgeMetrics (nodeID, sampleTime, conferences, endpoints, bitrateDownload, " +
+        "bitrateUpload, cpuLoad, portsUsed, allocationLatency) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_EXPIRED_METRICS =
+        "DELETE FROM ofJitsiVideobridgeMetrics WHERE sampleTime < ?";
+
+    private final MetricsHistory history;
+
+    /**
+     * The timestamp of the most recent row that was written to the database.
+     */
+    private long lastWritten = -1;
+
+    private TimerTask task;
+
+    public MetricsHistoryWriter( final MetricsHistory history )
+    {
+        this.history = history;
+    }
+
+    /**
+     * Starts periodic writing. Invoking this method on an instance that is already started causes the task to be
+     * rescheduled, which allows a change of the configuration to be applied.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        final long interval = TimeUnit.MINUTES.toMillis( Math.max( 1, JiveGlobals.getIntProperty( WRITE_INTERVAL_PROPERTY_NAME, WRITE_INTERVAL_DEFAULT_VALUE ) ) );
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                write();
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, interval, interval );
+    }
+
+    /**
+     * Stops periodic writing, after writing all rows that have not been written yet.
+     */
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+            write();
+        }
+    }
+
+    /**
+     * Writes all per-minute rows that have not yet been written, and removes expired rows from the database.
+     */
+    synchronized void write()
+    {
+        final int retentionDays = JiveGlobals.getIntProperty( RETENTION_DAYS_PROPERTY_NAME, RETENTION_DAYS_DEFAULT_VALUE );
+        if ( retentionDays <= 0 )
+        {
+            return;
+        }
+
+        final String nodeID = XMPPServer.getInstance().getNodeID().toString();
+        final long[] newest = { lastWritten };
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        boolean abortTransaction = false;
+        try
+        {
+            con = DbConnectionManager.getTransactionConnection();
+            pstmt = con.prepareStatement( INSERT_METRICS );
+
+            final PreparedStatement insert = pstmt;
+            final int rows = history.getMinutes().read( lastWritten, ( timestamp, values ) -> {
+                try
+                {
+                    insert.setString( 1, nodeID );
+                    insert.setLong( 2, timestamp );
+                    insert.setLong( 3, values[ HistoricMetric.CONFERENCES.ordinal() ] );
+                    insert.setLong( 4, values[ HistoricMetric.ENDPOINTS.ordinal() ] );
+                    insert.setLong( 5, values[ HistoricMetric.BITRATE_DOWNLOAD.ordinal() ] );
+                    insert.setLong( 6, values[ HistoricMetric.BITRATE_UPLOAD.ordinal() ] );
+                    insert.setLong( 7, values[ HistoricMetric.CPU_LOAD.ordinal() ] );
+                    insert.setLong( 8, values[ HistoricMetric.PORTS_USED.ordinal() ] );
+                    insert.setLong( 9, values[ HistoricMetric.ALLOCATION_LATENCY.ordinal() ] );
+                    insert.addBatch();
+                    newest[ 0 ] = timestamp;
+                }
+                catch ( SQLException e )
+                {
+                    throw new IllegalStateException( e );
+                }
+            } );
+
+            if ( rows > 0 )
+            {
+                pstmt.executeBatch();
+            }
+            DbConnectionManager.fastcloseStmt( pstmt );
+
+            pstmt = con.prepareStatement( DELETE_EXPIRED_METRICS );
+            pstmt.setLong( 1, System.currentTimeMillis() - TimeUnit.DAYS.toMillis( retentionDays ) );
+            pstmt.executeUpdate();
+
+            Log.debug( "Wrote {} rows of Jitsi Videobridge metrics to the database.", rows );
+        }
+        catch ( SQLException | IllegalStateException e )
+        {
+            abortTransaction = true;
+            Log.warn( "Unable to write Jitsi Videobridge metrics to the database.", e );
+        }
+        finally
+        {
+            DbConnectionManager.closeTransactionConnection( pstmt, con, abortTransaction );
+        }
+
+        if ( !abortTransaction )
+        {
+            lastWritten = newest[ 0 ];
+        }
+    }
+}
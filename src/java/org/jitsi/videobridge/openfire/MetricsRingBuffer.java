@@ -0,0 +1,143 @@
+package org.jitsi.videobridge.openfire;
+
+/**
+ * A fixed-capacity, circular store of timestamped rows of {@link HistoricMetric} values.
+ *
+ * All data is kept in primitive arrays that are allocated when the buffer is created. When the buffer is full, adding a
+ * row overwrites the oldest row. The memory used by an instance therefore is constant, regardless of how many rows are
+ * added to it.
+ */
+public class MetricsRingBuffer
+{
+    /**
+     * Receives rows that are read from a buffer.
+     */
+    public interface RowVisitor
+    {
+        /**
+         * Invoked for each row, in chronological order.
+         *
+         * The array that is passed is reused for all rows of a read operation, and should not be retained.
+         *
+         * @param timestamp the timestamp of the row (in milliseconds since the epoch).
+         * @param values the values of the row, indexed by {@link HistoricMetric#ordinal()}.
+         */
+        void visit( long timestamp, long[] values );
+    }
+
+    private final long[] timestamps;
+
+    /**
+     * Values, indexed by [metric][slot].
+     */
+    private final long[][] values;
+
+    /**
+     * The slot in which the next row is to be written.
+     */
+    private int next;
+
+    /**
+     * The number of slots that contain a row.
+     */
+    private int size;
+
+    public MetricsRingBuffer( final int capacity )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "Capacity must be a positive number, but was: " + capacity );
+        }
+        this.timestamps = new long[ capacity ];
+        this.values = new long[ HistoricMetric.values().length ][ capacity ];
+    }
+
+    /**
+     * Returns the maximum amount of rows that this buffer retains.
+     *
+     * @return the capacity of the buffer.
+     */
+    public int getCapacity()
+    {
+        return timestamps.length;
+    }
+
+    /**
+     * Returns the amount of rows that are currently in this buffer.
+     *
+     * @return the amount of rows.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds a row, overwriting the oldest row when the buffer is full.
+     *
+     * @param timestamp the timestamp of the row (in milliseconds since the epoch).
+     * @param row the values of the row, indexed by {@link HistoricMetric#ordinal()}.
+     */
+    public synchronized void add( final long timestamp, final long[] row )
+    {
+        timestamps[ next ] = timestamp;
+        for ( int metric = 0; metric < values.length; metric++ )
+        {
+            values[ metric ][ next ] = row[ metric ];
+        }
+        next = ( next + 1 ) % timestamps.length;
+        if ( size < timestamps.length )
+        {
+            size++;
+        }
+    }
+
+    /**
+     * Passes all rows that are newer than the provided timestamp to the visitor, in chronological order.
+     *
+     * The rows are copied while holding the lock of this buffer, and passed to the visitor after the lock is released.
+     * A slow visitor (for example, one that writes to a client or a database) therefore does not block {@link #add}.
+     *
+     * @param since the timestamp after which rows are to be visited (exclusive). Use -1 to visit all rows.
+     * @param visitor the recipient of the rows (cannot be null).
+     * @return the amount of rows that were visited.
+     */
+    public int read( final long since, final RowVisitor visitor )
+    {
+        final long[] copiedTimestamps;
+        final long[][] copiedValues;
+        synchronized ( this )
+        {
+            final int oldest = ( next - size + timestamps.length ) % timestamps.length;
+            int skipped = 0;
+            while ( skipped < size && timestamps[ ( oldest + skipped ) % timestamps.length ] <= since )
+            {
+                skipped++;
+            }
+
+            final int count = size - skipped;
+            copiedTimestamps = new long[ count ];
+            copiedValues = new long[ values.length ][ count ];
+            for ( int i = 0; i < count; i++ )
+            {
+                final int slot = ( oldest + skipped + i ) % timestamps.length;
+                copiedTimestamps[ i ] = timestamps[ slot ];
+                for ( int metric = 0; metric < values.length; metric++ )
+                {
+                    copiedValues[ metric ][ i ] = values[ metric ][ slot ];
+                }
+            }
+        }
+
+        final long[] row = new long[ copiedValues.length ];
+        for ( int i = 0; i < copiedTimestamps.length; i++ )
+        {
+            for ( int metric = 0; metric < row.length; metric++ )
+            {
+                row[ metric ] = copiedValues[ metric ][ i ];
+            }
+            visitor.visit( copiedTimestamps[ i ], row );
+        }
+        return copiedTimestamps.length;
+    }
+}
@@ -0,0 +1,360 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jitsi.util.OSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Loads the native libraries that are shipped with the plugin, when the feature that needs them is first used.
+ *
+ * The native libraries for the current platform are extracted from the applicable jar file of the plugin into a
+ * 'native' folder, once after the plugin is installed or updated. A library is loaded when it is first requested.
+ *
+ * libjitsi loads the libraries by name, through {@link System#loadLibrary(String)}, so the libraries are loaded by
+ * name too: the JVM finds them only when the 'native' folder is in the 'java.library.path' system property. The JVM
+ * reads that property once, at startup, so the folder is to be added to it in the arguments of the JVM of Openfire.
+ * When it is missing, a warning states the exact argument to add.
+ */
+public class NativeLibraryLoader
+{
+    private static final Logger Log = LoggerFactory.getLogger( NativeLibraryLoader.class );
+
+    /**
+     * The name of the library that implements SCTP (used for WebRTC data channels).
+     */
+    public static final String SCTP_LIBRARY = "jnsctp";
+
+    /**
+     * The name of the library that accelerates SRTP through OpenSSL. Without it, SRTP is implemented in Java.
+     */
+    public static final String SRTP_LIBRARY = "jnopenssl";
+
+    /**
+     * The name of the system property that holds the folders in which libraries are searched.
+     */
+    private static final String LIBRARY_PATH_PROPERTY = "java.library.path";
+
+    /**
+     * The absolute paths of the libraries that are available, by library name (as used with
+     * {@link System#loadLibrary(String)}).
+     */
+    private final Map<String, File> libraries;
+
+    /**
+     * The outcome of each attempt to load a library, by library name.
+     */
+    private final Map<String, Boolean> loaded = new ConcurrentHashMap<>();
+
+    private NativeLibraryLoader( final Map<String, File> libraries )
+    {
+        this.libraries = libraries;
+    }
+
+    /**
+     * Extracts the native libraries for the current platform (unless these were extracted before), and indexes them.
+     *
+     * @param pluginJarFile the jar file of the plugin, next to which the jar files with native libraries are located
+     *                      (cannot be null).
+     * @return a loader (never null).
+     */
+    public static NativeLibraryLoader create( final File pluginJarFile )
+    {
+        final File folder = new File( pluginJarFile.getParentFile(), "native" );
+        if ( !folder.exists() )
+        {
+            extract( pluginJarFile, folder );
+        }
+        else
+        {
+            Log.info( "Native lib folder already exist." );
+        }
+
+        final Map<String, File> libraries = new HashMap<>();
+        final File[] files = folder.listFiles();
+        if ( files != null )
+        {
+            for ( final File file : files )
+            {
+                final String name = getLibraryName( file.getName() );
+                if ( file.isFile() && name != null )
+                {
+                    libraries.put( name, file.getAbsoluteFile() );
+                }
+            }
+        }
+        Log.debug( "Native libraries available for loading: {}", libraries.keySet() );
+        if ( !libraries.isEmpty() )
+        {
+            checkLibraryPath( folder );
+        }
+        return new NativeLibraryLoader( libraries );
+    }
+
+    /**
+     * Logs a warning when a folder is not in 'java.library.path', stating the argument of the JVM that adds it.
+     */
+    private static void checkLibraryPath( final File folder )
+    {
+        final String path;
+        try
+        {
+            path = folder.getCanonicalPath();
+        }
+        catch ( IOException e )
+        {
+            Log.warn( "Unable to determine the path of the native lib folder.", e );
+            return;
+        }
+
+        final String libraryPath = System.getProperty( LIBRARY_PATH_PROPERTY, "" );
+        if ( isOnLibraryPath( libraryPath, path ) )
+        {
+            Log.debug( "Native lib folder '{}' is on the library path.", path );
+            return;
+        }
+        final String argument = "-D" + LIBRARY_PATH_PROPERTY + "=" + ( libraryPath.isEmpty() ? path : path + File.pathSeparator + libraryPath );
+        Log.warn( "Native lib folder '{}' is not on the library path of this JVM. Native libraries (such as those for SRTP and SCTP) will not be loaded, unless this argument is added to the arguments of the JVM of Openfire (and Openfire is restarted): {}", path, argument );
+    }
+
+    /**
+     * Checks if a folder is one of the folders of a library path.
+     *
+     * @param libraryPath the value of 'java.library.path' (cannot be null).
+     * @param path the canonical path of the folder (cannot be null).
+     * @return true if the folder is in the library path, otherwise false.
+     */
+    static boolean isOnLibraryPath( final String libraryPath, final String path )
+    {
+        for ( final String entry : libraryPath.split( File.pathSeparator ) )
+        {
+            if ( entry.isEmpty() )
+            {
+                continue;
+            }
+            try
+            {
+                if ( new File( entry ).getCanonicalPath().equals( path ) )
+                {
+                    return true;
+                }
+            }
+            catch ( IOException e )
+            {
+                Log.debug( "Unable to determine the path of library path entry '{}'.", entry, e );
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the jar file with the native libraries for the current platform, and copies the files in its root to a
+     * folder.
+     */
+    private static void extract( final File pluginJarFile, final File folder )
+    {
+        final String jarFileSuffix;
+        if ( OSUtils.IS_LINUX32 )
+        {
+            jarFileSuffix = "-native-linux-32.jar";
+        }
+        else if ( OSUtils.IS_LINUX64 )
+        {
+            jarFileSuffix = "-native-linux-64.jar";
+        }
+        else if ( OSUtils.IS_WINDOWS32 )
+        {
+            jarFileSuffix = "-native-windows-32.jar";
+        }
+        else if ( OSUtils.IS_WINDOWS64 )
+        {
+            jarFileSuffix = "-native-windows-64.jar";
+        }
+        else if ( OSUtils.IS_MAC )
+        {
+            jarFileSuffix = "-native-macosx.jar";
+        }
+        else
+        {
+            Log.warn( "Unable to determine what the native libraries are for this OS." );
+            return;
+        }
+
+        if ( !folder.mkdirs() )
+        {
+            Log.warn( "Unable to create native lib folder." );
+            return;
+        }
+
+        final String nativeLibsJarPath;
+        try
+        {
+            nativeLibsJarPath = pluginJarFile.getCanonicalPath().replaceFirst( "\\.jar", jarFileSuffix );
+        }
+        catch ( IOException e )
+        {
+            Log.warn( "Unable to determine the path of the native library jar file.", e );
+            return;
+        }
+        Log.debug( "Applicable native jar: '{}'", nativeLibsJarPath );
+
+        try ( JarFile jar = new JarFile( nativeLibsJarPath ) )
+        {
+            for ( final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); )
+            {
+                final JarEntry jarEntry = entries.nextElement();
+                if ( jarEntry.isDirectory() || jarEntry.getName().contains( "/" ) )
+                {
+                    // Skip everything that's not in the root of the jar-file.
+                    continue;
+                }
+                final File extractedFile = new File( folder, jarEntry.getName() );
+                Log.debug( "Copying file '{}' from native library into '{}'.", jarEntry, extractedFile );
+                try ( InputStream is = jar.getInputStream( jarEntry ) )
+                {
+                    Files.copy( is, extractedFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+                }
+                catch ( IOException e )
+                {
+                    Log.warn( "An unexpected error occurred while copying native library '{}'.", jarEntry.getName(), e );
+                }
+            }
+            Log.info( "Native lib folder created and natives extracted" );
+        }
+        catch ( IOException e )
+        {
+            Log.warn( "Unable to read the native library jar file '{}'.", nativeLibsJarPath, e );
+        }
+    }
+
+    /**
+     * Returns the library name (as used with {@link System#loadLibrary(String)}) for the file name of a native
+     * library of the current platform, by reversing {@link System#mapLibraryName(String)}.
+     *
+     * @return a library name, or null when the file is not a native library of the current platform.
+     */
+    static String getLibraryName( final String fileName )
+    {
+        final String mapped = System.mapLibraryName( "*" );
+        final String prefix = mapped.substring( 0, mapped.indexOf( '*' ) );
+        final List<String> suffixes = new ArrayList<>();
+        suffixes.add( mapped.substring( mapped.indexOf( '*' ) + 1 ) );
+        if ( OSUtils.IS_MAC )
+        {
+            suffixes.add( ".jnilib" ); // the legacy suffix of JNI libraries on macOS.
+            suffixes.add( ".dylib" );
+        }
+
+        for ( final String suffix : suffixes )
+        {
+            if ( fileName.startsWith( prefix ) && fileName.endsWith( suffix ) && fileName.length() > prefix.length() + suffix.length() )
+            {
+                return fileName.substring( prefix.length(), fileName.length() - suffix.length() );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads a library, unless it was loaded (or failed to load) before. The library is loaded by name, as libjitsi
+     * does: when this succeeds, the later attempts of libjitsi will succeed too.
+     *
+     * @param name the library name, as used with {@link System#loadLibrary(String)} (cannot be null).
+     * @return true if the library is loaded, otherwise false.
+     */
+    public boolean load( final String name )
+    {
+        final Boolean result = loaded.get( name );
+        if ( result != null )
+        {
+            return result;
+        }
+        return loaded.computeIfAbsent( name, this::doLoad );
+    }
+
+    private boolean doLoad( final String name )
+    {
+        final File file = libraries.get( name );
+        if ( file == null )
+        {
+            Log.debug( "Native library '{}' is not available for this platform.", name );
+            return false;
+        }
+
+        try
+        {
+            System.loadLibrary( name );
+            Log.info( "Loaded native library '{}' from '{}'.", name, file );
+            return true;
+        }
+        catch ( UnsatisfiedLinkError | SecurityException e )
+        {
+            Log.warn( "Unable to load native library '{}'. Is '{}' on the library path of this JVM?", name, file.getParent(), e );
+            return false;
+        }
+    }
+
+    /**
+     * Loads the libraries that are needed to process a Colibri request, before the Videobridge processes it: SRTP
+     * when channels are created, and SCTP when SCTP connections are created.
+     *
+     * @param conference the Colibri conference element of the request (cannot be null).
+     */
+    public void prepare( final Element conference )
+    {
+        if ( loaded.containsKey( SRTP_LIBRARY ) && loaded.containsKey( SCTP_LIBRARY ) )
+        {
+            return;
+        }
+
+        for ( final Element channel : ColibriElements.getChannels( conference ) )
+        {
+            if ( channel.attributeValue( "id" ) == null )
+            {
+                load( SRTP_LIBRARY );
+                if ( "sctpconnection".equals( channel.getName() ) )
+                {
+                    load( SCTP_LIBRARY );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the libraries that are available for this platform.
+     *
+     * @return library names (possibly empty, never null).
+     */
+    public Set<String> getAvailable()
+    {
+        return Collections.unmodifiableSet( libraries.keySet() );
+    }
+
+    /**
+     * Returns the names of the libraries that were loaded.
+     *
+     * @return library names (possibly empty, never null).
+     */
+    public Set<String> getLoaded()
+    {
+        final Set<String> result = new TreeSet<>();
+        for ( final Map.Entry<String, Boolean> entry : loaded.entrySet() )
+        {
+            if ( entry.getValue() )
+            {
+                result.add( entry.getKey() );
+            }
+        }
+        return result;
+    }
+}
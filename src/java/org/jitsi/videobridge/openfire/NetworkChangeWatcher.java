@@ -0,0 +1,270 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.*;
+
+/**
+ * Periodically takes a snapshot of the network interfaces (that are up) and their addresses, and notifies a listener
+ * when it differs from the previous snapshot.
+ *
+ * Typical causes of changes are DHCP lease renewals, failover addresses that move between hosts, and container
+ * network reconfiguration.
+ */
+public class NetworkChangeWatcher
+{
+    private static final Logger Log = LoggerFactory.getLogger( NetworkChangeWatcher.class );
+
+    /**
+     * The name of the Openfire property that defines the interval (in milliseconds) in which the network interfaces
+     * are inspected. A value of zero or less disables the watcher.
+     */
+    public static final String INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.NETWORK_WATCH_INTERVAL";
+
+    /**
+     * The default interval (in milliseconds) in which the network interfaces are inspected.
+     */
+    public static final long INTERVAL_DEFAULT_VALUE = 5000;
+
+    /**
+     * Notified of changes in the network configuration of this host.
+     */
+    public interface Listener
+    {
+        /**
+         * Invoked when the network configuration of this host changed.
+         *
+         * @param change describes the change (never null).
+         */
+        void networkChanged( Change change );
+    }
+
+    /**
+     * The difference between two snapshots of the network configuration of this host.
+     */
+    public static class Change
+    {
+        private final Map<String, Set<String>> added;
+        private final Map<String, Set<String>> removed;
+
+        Change( final Map<String, Set<String>> added, final Map<String, Set<String>> removed )
+        {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        /**
+         * Returns, per interface name, the addresses that appeared (which includes all addresses of interfaces that
+         * came up).
+         *
+         * @return added addresses (never null).
+         */
+        public Map<String, Set<String>> getAdded()
+        {
+            return added;
+        }
+
+        /**
+         * Returns, per interface name, the addresses that disappeared (which includes all addresses of interfaces
+         * that went down).
+         *
+         * @return removed addresses (never null).
+         */
+        public Map<String, Set<String>> getRemoved()
+        {
+            return removed;
+        }
+
+        public boolean isEmpty()
+        {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "added: " + added + ", removed: " + removed;
+        }
+    }
+
+    private final Listener listener;
+
+    /**
+     * The snapshot that was taken when this watcher was created.
+     */
+    private final Map<String, Set<String>> initial;
+
+    /**
+     * The most recently taken snapshot.
+     */
+    private Map<String, Set<String>> current;
+
+    /**
+     * The task that periodically takes snapshots, or null when this watcher is not running.
+     */
+    private TimerTask task;
+
+    public NetworkChangeWatcher( final Listener listener )
+    {
+        this.listener = listener;
+        final Map<String, Set<String>> snapshot = snapshot();
+        this.initial = snapshot == null ? Collections.<String, Set<String>>emptyMap() : snapshot;
+        this.current = initial;
+    }
+
+    /**
+     * Returns the interval in which the network interfaces are inspected, as configured in Openfire.
+     *
+     * @return an interval in milliseconds, or a value of zero or less when the watcher is disabled.
+     */
+    public static long getInterval()
+    {
+        return JiveGlobals.getLongProperty( INTERVAL_PROPERTY_NAME, INTERVAL_DEFAULT_VALUE );
+    }
+
+    /**
+     * Starts watching. Invoking this method on an instance that is already started causes the task to be rescheduled,
+     * which allows a change of the interval to be applied.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        final long interval = getInterval();
+        if ( interval <= 0 )
+        {
+            Log.debug( "Watching the network configuration for changes is disabled." );
+            return;
+        }
+
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    check();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while checking the network configuration for changes.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, interval, interval );
+        Log.debug( "Started watching the network configuration for changes every {}ms.", interval );
+    }
+
+    /**
+     * Stops watching.
+     */
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Takes a new snapshot, and notifies the listener if it differs from the previous one.
+     */
+    protected void check()
+    {
+        final Map<String, Set<String>> snapshot = snapshot();
+        final Change change;
+        synchronized ( this )
+        {
+            if ( snapshot == null || snapshot.equals( current ) )
+            {
+                return;
+            }
+            change = diff( current, snapshot );
+            current = snapshot;
+        }
+
+        Log.info( "The network configuration of this host changed ({}).", change );
+        listener.networkChanged( change );
+    }
+
+    /**
+     * Returns the difference between the network configuration at the time this watcher was created, and the one
+     * that was most recently observed.
+     *
+     * @return a change, which is empty when the network configuration is unchanged (never null).
+     */
+    public synchronized Change getChangeSinceStart()
+    {
+        return diff( initial, current );
+    }
+
+    /**
+     * Computes the difference between two snapshots.
+     */
+    private static Change diff( final Map<String, Set<String>> before, final Map<String, Set<String>> after )
+    {
+        return new Change( subtract( after, before ), subtract( before, after ) );
+    }
+
+    /**
+     * Returns, per interface, the addresses in the first snapshot that are not in the second.
+     */
+    private static Map<String, Set<String>> subtract( final Map<String, Set<String>> first, final Map<String, Set<String>> second )
+    {
+        final Map<String, Set<String>> result = new TreeMap<>();
+        for ( final Map.Entry<String, Set<String>> entry : first.entrySet() )
+        {
+            final Set<String> addresses = new TreeSet<>( entry.getValue() );
+            final Set<String> other = second.get( entry.getKey() );
+            if ( other != null )
+            {
+                addresses.removeAll( other );
+            }
+            if ( !addresses.isEmpty() )
+            {
+                result.put( entry.getKey(), addresses );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Takes a snapshot of the addresses of all network interfaces of this host that are up, keyed by interface name.
+     *
+     * @return a snapshot, or null when the network interfaces cannot be enumerated.
+     */
+    private static Map<String, Set<String>> snapshot()
+    {
+        final Map<String, Set<String>> result = new TreeMap<>();
+        try
+        {
+            for ( final NetworkInterface networkInterface : Collections.list( NetworkInterface.getNetworkInterfaces() ) )
+            {
+                if ( !networkInterface.isUp() )
+                {
+                    continue;
+                }
+                final Set<String> addresses = new TreeSet<>();
+                for ( final InetAddress address : Collections.list( networkInterface.getInetAddresses() ) )
+                {
+                    addresses.add( NetworkFilter.getHostAddress( address ) );
+                }
+                result.put( NetworkFilter.getInterfaceName( networkInterface ), addresses );
+            }
+        }
+        catch ( SocketException e )
+        {
+            Log.warn( "Unable to enumerate the network interfaces of this host.", e );
+            return null;
+        }
+        return result;
+    }
+}
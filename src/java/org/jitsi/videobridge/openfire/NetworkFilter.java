@@ -0,0 +1,435 @@
+package org.jitsi.videobridge.openfire;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled representation of the rules that define which network interfaces and which IP addresses can be used
+ * for media.
+ *
+ * Address rules are either a literal IP address, or a CIDR prefix (eg: <tt>10.0.0.0/8</tt> or <tt>fd00::/8</tt>).
+ * They are compiled into binary prefix tries (one for IPv4, one for IPv6), in which a lookup takes at most one step
+ * per bit of the address, regardless of the number of rules. Interface rules are either a literal interface name, or
+ * a glob in which <tt>*</tt> matches any sequence of characters and <tt>?</tt> matches a single character (eg:
+ * <tt>veth*</tt>).
+ *
+ * When no 'allowed' rules are defined, everything that is not explicitly blocked is allowed.
+ *
+ * Instances are immutable, and are expected to be compiled only when the rules change.
+ */
+public final class NetworkFilter
+{
+    private static final Logger Log = LoggerFactory.getLogger( NetworkFilter.class );
+
+    /**
+     * A filter that allows everything.
+     */
+    public static final NetworkFilter ALLOW_ALL = compile( null, null, null, null );
+
+    private final Set<String> allowedInterfaceNames;
+    private final Pattern allowedInterfacePattern;
+    private final Set<String> blockedInterfaceNames;
+    private final Pattern blockedInterfacePattern;
+    private final PrefixTrie allowedAddresses;
+    private final PrefixTrie blockedAddresses;
+
+    private NetworkFilter( final Set<String> allowedInterfaceNames, final Pattern allowedInterfacePattern,
+                           final Set<String> blockedInterfaceNames, final Pattern blockedInterfacePattern,
+                           final PrefixTrie allowedAddresses, final PrefixTrie blockedAddresses )
+    {
+        this.allowedInterfaceNames = allowedInterfaceNames;
+        this.allowedInterfacePattern = allowedInterfacePattern;
+        this.blockedInterfaceNames = blockedInterfaceNames;
+        this.blockedInterfacePattern = blockedInterfacePattern;
+        this.allowedAddresses = allowedAddresses;
+        this.blockedAddresses = blockedAddresses;
+    }
+
+    /**
+     * Compiles rules into a filter. Rules that cannot be parsed are logged and ignored.
+     *
+     * @param allowedInterfaces rules for interfaces that are allowed (can be null or empty to allow all interfaces).
+     * @param blockedInterfaces rules for interfaces that are blocked (can be null).
+     * @param allowedAddresses rules for addresses that are allowed (can be null or empty to allow all addresses).
+     * @param blockedAddresses rules for addresses that are blocked (can be null).
+     * @return a filter (never null).
+     */
+    public static NetworkFilter compile( final Collection<String> allowedInterfaces, final Collection<String> blockedInterfaces,
+                                         final Collection<String> allowedAddresses, final Collection<String> blockedAddresses )
+    {
+        final Set<String> allowedInterfaceNames = new HashSet<>();
+        final Set<String> blockedInterfaceNames = new HashSet<>();
+        return new NetworkFilter(
+            allowedInterfaceNames, compileInterfaceRules( allowedInterfaces, allowedInterfaceNames ),
+            blockedInterfaceNames, compileInterfaceRules( blockedInterfaces, blockedInterfaceNames ),
+            compileAddressRules( allowedAddresses ),
+            compileAddressRules( blockedAddresses )
+        );
+    }
+
+    /**
+     * Checks if a rule is a pattern (a glob or CIDR prefix), rather than a literal interface name or address.
+     *
+     * @param rule the rule (cannot be null).
+     * @return true if the rule is a pattern, otherwise false.
+     */
+    public static boolean isPattern( final String rule )
+    {
+        return rule.indexOf( '*' ) >= 0 || rule.indexOf( '?' ) >= 0 || rule.indexOf( '/' ) >= 0;
+    }
+
+    /**
+     * Finds the rule that lists an interface by its literal name (rather than matching it with a pattern).
+     *
+     * @param rules interface rules (can be null).
+     * @param name the name of the interface (cannot be null).
+     * @return the rule, or null if the interface is not listed literally.
+     */
+    public static String findLiteralInterfaceRule( final Collection<String> rules, final String name )
+    {
+        if ( rules == null )
+        {
+            return null;
+        }
+        for ( final String rule : rules )
+        {
+            if ( !isPattern( rule ) && rule.trim().equals( name ) )
+            {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the rule that lists an address literally (rather than matching it with a CIDR prefix). Literals are
+     * compared by value, so that different notations of the same (IPv6) address match.
+     *
+     * @param rules address rules (can be null).
+     * @param address the address (cannot be null).
+     * @return the rule, or null if the address is not listed literally.
+     */
+    public static String findLiteralAddressRule( final Collection<String> rules, final InetAddress address )
+    {
+        if ( rules == null )
+        {
+            return null;
+        }
+        for ( final String rule : rules )
+        {
+            if ( isPattern( rule ) || rule.trim().isEmpty() )
+            {
+                continue;
+            }
+            try
+            {
+                if ( Arrays.equals( parseLiteralAddress( rule.trim() ), address.getAddress() ) )
+                {
+                    return rule;
+                }
+            }
+            catch ( IllegalArgumentException | UnknownHostException e )
+            {
+                // Not a valid address rule (it is ignored by the filter, too).
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the literal rules to the provided set, and returns a pattern that matches any of the glob rules.
+     *
+     * @return a pattern, or null if there are no glob rules.
+     */
+    private static Pattern compileInterfaceRules( final Collection<String> rules, final Set<String> literals )
+    {
+        if ( rules == null )
+        {
+            return null;
+        }
+
+        final StringBuilder regex = new StringBuilder();
+        for ( final String value : rules )
+        {
+            final String rule = value.trim();
+            if ( rule.isEmpty() )
+            {
+                continue;
+            }
+            if ( rule.indexOf( '*' ) < 0 && rule.indexOf( '?' ) < 0 )
+            {
+                literals.add( rule );
+                continue;
+            }
+
+            if ( regex.length() > 0 )
+            {
+                regex.append( '|' );
+            }
+            final StringBuilder literal = new StringBuilder();
+            for ( final char c : rule.toCharArray() )
+            {
+                if ( c == '*' || c == '?' )
+                {
+                    if ( literal.length() > 0 )
+                    {
+                        regex.append( Pattern.quote( literal.toString() ) );
+                        literal.setLength( 0 );
+                    }
+                    regex.append( c == '*' ? ".*" : "." );
+                }
+                else
+                {
+                    literal.append( c );
+                }
+            }
+            if ( literal.length() > 0 )
+            {
+                regex.append( Pattern.quote( literal.toString() ) );
+            }
+        }
+        return regex.length() == 0 ? null : Pattern.compile( regex.toString() );
+    }
+
+    /**
+     * Compiles address rules into a prefix trie.
+     *
+     * @return a trie, or null if there are no valid rules.
+     */
+    private static PrefixTrie compileAddressRules( final Collection<String> rules )
+    {
+        if ( rules == null )
+        {
+            return null;
+        }
+
+        final PrefixTrie trie = new PrefixTrie();
+        boolean empty = true;
+        for ( final String value : rules )
+        {
+            final String rule = value.trim();
+            if ( rule.isEmpty() )
+            {
+                continue;
+            }
+            try
+            {
+                final int slash = rule.indexOf( '/' );
+                final byte[] address = parseLiteralAddress( slash < 0 ? rule : rule.substring( 0, slash ) );
+                final int length = slash < 0 ? address.length * 8 : Integer.parseInt( rule.substring( slash + 1 ) );
+                if ( length < 0 || length > address.length * 8 )
+                {
+                    throw new IllegalArgumentException( "Invalid prefix length: " + length );
+                }
+                trie.add( address, length );
+                empty = false;
+            }
+            catch ( IllegalArgumentException | UnknownHostException e )
+            {
+                Log.warn( "Ignoring invalid address rule '{}'.", rule, e );
+            }
+        }
+        return empty ? null : trie;
+    }
+
+    /**
+     * Parses a textual IP address, without performing any name resolution.
+     */
+    private static byte[] parseLiteralAddress( final String value ) throws UnknownHostException
+    {
+        String literal = value;
+        if ( literal.indexOf( '%' ) >= 0 )
+        {
+            literal = literal.substring( 0, literal.indexOf( '%' ) );
+        }
+        if ( literal.isEmpty() || !literal.matches( "[0-9a-fA-F:.\\[\\]]+" ) || ( literal.indexOf( ':' ) < 0 && !literal.matches( "[0-9.]+" ) ) )
+        {
+            throw new IllegalArgumentException( "Not an IP address literal: " + value );
+        }
+        // For literals, InetAddress does not perform a lookup.
+        return InetAddress.getByName( literal ).getAddress();
+    }
+
+    /**
+     * Checks if a network interface is allowed by this filter.
+     *
+     * @param name the name of the interface (cannot be null).
+     * @return true if the interface is allowed, otherwise false.
+     */
+    public boolean isInterfaceAllowed( final String name )
+    {
+        if ( blockedInterfaceNames.contains( name ) || ( blockedInterfacePattern != null && blockedInterfacePattern.matcher( name ).matches() ) )
+        {
+            return false;
+        }
+        if ( allowedInterfaceNames.isEmpty() && allowedInterfacePattern == null )
+        {
+            return true;
+        }
+        return allowedInterfaceNames.contains( name ) || ( allowedInterfacePattern != null && allowedInterfacePattern.matcher( name ).matches() );
+    }
+
+    /**
+     * Checks if an IP address is allowed by this filter.
+     *
+     * @param address the address (cannot be null).
+     * @return true if the address is allowed, otherwise false.
+     */
+    public boolean isAddressAllowed( final InetAddress address )
+    {
+        final byte[] bytes = address.getAddress();
+        if ( blockedAddresses != null && blockedAddresses.matches( bytes ) )
+        {
+            return false;
+        }
+        return allowedAddresses == null || allowedAddresses.matches( bytes );
+    }
+
+    /**
+     * Checks if this filter defines any interface rules.
+     *
+     * @return true if interface rules are defined, otherwise false.
+     */
+    public boolean hasInterfaceRules()
+    {
+        return !allowedInterfaceNames.isEmpty() || allowedInterfacePattern != null || !blockedInterfaceNames.isEmpty() || blockedInterfacePattern != null;
+    }
+
+    /**
+     * Checks if this filter defines any address rules.
+     *
+     * @return true if address rules are defined, otherwise false.
+     */
+    public boolean hasAddressRules()
+    {
+        return allowedAddresses != null || blockedAddresses != null;
+    }
+
+    /**
+     * Returns the name by which an interface is identified in interface rules.
+     *
+     * @param networkInterface the interface (cannot be null).
+     * @return the name of the interface (never null).
+     */
+    public static String getInterfaceName( final NetworkInterface networkInterface )
+    {
+        // use getDisplayName() on Windows and getName() on Linux.
+        return ( System.getProperty( "os.name" ) == null || System.getProperty( "os.name" ).startsWith( "Windows" ) )
+            ? networkInterface.getDisplayName()
+            : networkInterface.getName();
+    }
+
+    /**
+     * Returns the textual representation of an address, as used in address rules.
+     *
+     * @param address the address (cannot be null).
+     * @return the textual representation, without a scope identifier (never null).
+     */
+    public static String getHostAddress( final InetAddress address )
+    {
+        final String hostAddress = address.getHostAddress();
+        return hostAddress.contains( "%" ) ? hostAddress.substring( 0, hostAddress.indexOf( '%' ) ) : hostAddress;
+    }
+
+    /**
+     * Applies this filter to the network interfaces of this host.
+     *
+     * @param allowed true to return the interfaces that are allowed, false to return the ones that are not.
+     * @return names of network interfaces (possibly empty, never null).
+     * @throws SocketException when the network interfaces of this host cannot be enumerated.
+     */
+    public List<String> getHostInterfaceNames( final boolean allowed ) throws SocketException
+    {
+        final List<String> result = new ArrayList<>();
+        for ( final NetworkInterface networkInterface : Collections.list( NetworkInterface.getNetworkInterfaces() ) )
+        {
+            final String name = getInterfaceName( networkInterface );
+            if ( isInterfaceAllowed( name ) == allowed )
+            {
+                result.add( name );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies this filter to the IP addresses of this host.
+     *
+     * @param allowed true to return the addresses that are allowed, false to return the ones that are not.
+     * @return textual IP addresses (possibly empty, never null).
+     * @throws SocketException when the network interfaces of this host cannot be enumerated.
+     */
+    public List<String> getHostAddresses( final boolean allowed ) throws SocketException
+    {
+        final List<String> result = new ArrayList<>();
+        for ( final NetworkInterface networkInterface : Collections.list( NetworkInterface.getNetworkInterfaces() ) )
+        {
+            for ( final InetAddress address : Collections.list( networkInterface.getInetAddresses() ) )
+            {
+                if ( isAddressAllowed( address ) == allowed )
+                {
+                    result.add( getHostAddress( address ) );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A binary trie of address prefixes, for IPv4 and IPv6 addresses.
+     */
+    private static final class PrefixTrie
+    {
+        private final Node ipv4 = new Node();
+        private final Node ipv6 = new Node();
+
+        void add( final byte[] address, final int length )
+        {
+            Node node = address.length == 4 ? ipv4 : ipv6;
+            for ( int bit = 0; bit < length && !node.terminal; bit++ )
+            {
+                final int value = ( address[ bit >>> 3 ] >>> ( 7 - ( bit & 7 ) ) ) & 1;
+                if ( node.children[ value ] == null )
+                {
+                    node.children[ value ] = new Node();
+                }
+                node = node.children[ value ];
+            }
+            // A shorter prefix covers all longer prefixes that start with it.
+            node.terminal = true;
+            node.children[ 0 ] = null;
+            node.children[ 1 ] = null;
+        }
+
+        boolean matches( final byte[] address )
+        {
+            Node node = address.length == 4 ? ipv4 : ipv6;
+            for ( int bit = 0; node != null; bit++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+                if ( bit == address.length * 8 )
+                {
+                    return false;
+                }
+                node = node.children[ ( address[ bit >>> 3 ] >>> ( 7 - ( bit & 7 ) ) ) & 1 ];
+            }
+            return false;
+        }
+
+        private static final class Node
+        {
+            final Node[] children = new Node[ 2 ];
+            boolean terminal;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jitsi.videobridge.TransportManager;
+import org.jitsi.videobridge.xmpp.ComponentImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.PacketError;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The Jitsi Videobridge component, as registered with Openfire by this plugin.
+ *
+ * This implementation adds plugin-specific instrumentation to the IQ handling of the Videobridge component, without
+ * modifying the way in which IQs are processed.
+ */
+public class OpenfireComponentImpl extends ComponentImpl
+{
+    private static final Logger Log = LoggerFactory.getLogger( OpenfireComponentImpl.class );
+
+    /**
+     * Records the time that is spent processing IQ requests.
+     */
+    private final LatencyRecorder iqLatency = new LatencyRecorder();
+
+    /**
+     * Records the time that is spent processing Colibri conference requests (which allocate or modify conferences).
+     */
+    private final LatencyRecorder allocationLatency = new LatencyRecorder();
+
+    /**
+     * Selects the port at which the Videobridge starts looking for an available port when it allocates new channels.
+     */
+    private final PortAllocator portAllocator;
+
+    /**
+     * Tracks the usage of the media port range. Records the ports that the Videobridge binds, as reported in its
+     * responses, and the requests for which it could not bind a port.
+     */
+    private final PortUsageTracker portUsageTracker;
+
+    /**
+     * Colibri conference requests are processed while holding the read lock. Changes to the configuration of the
+     * Videobridge that must not be observed partially are made while holding the write lock.
+     */
+    private final ReadWriteLock configurationLock = new ReentrantReadWriteLock();
+
+    /**
+     * Held while a Colibri request that is steered to a block of ports is processed, from the moment that the port
+     * tracker of the Videobridge is pointed at that block, until the ports that were bound are recorded. The port
+     * tracker is a single cursor that is shared by all requests, and the Videobridge binds somewhere during the
+     * processing of a request, at a moment that cannot be observed from here.
+     *
+     * Requests never wait for this lock: a request that creates transports while another request is being steered is
+     * not steered itself. Its transports are bound where the cursor of the Videobridge points, which is past the ports
+     * of the steered request, and the ports that it binds are recorded all the same. This keeps Colibri requests from
+     * being serialized, at the expense of some requests not being spread over the range by the plugin.
+     */
+    private final Lock portAllocationLock = new ReentrantLock();
+
+    /**
+     * Absorbs retransmissions of Colibri requests.
+     */
+    private final ColibriRequestCache requestCache;
+
+    /**
+     * Limits the video that is forwarded in conferences, per room.
+     */
+    private final ForwardingPolicy forwardingPolicy = new ForwardingPolicy();
+
+    /**
+     * Limits the resources that users and groups can use.
+     */
+    private final QuotaManager quotaManager = new QuotaManager( this );
+
+    /**
+     * Binds the channels of reconnecting endpoints to the port that they used before.
+     */
+    private final ReconnectAffinity reconnectAffinity;
+
+    /**
+     * The probe that determines if health check requests fail. Null when no probe is in use.
+     */
+    private volatile SelfTestProbe selfTestProbe;
+
+    /**
+     * Loads native libraries when the Colibri requests that need them are first processed. Null when not in use.
+     */
+    private volatile NativeLibraryLoader nativeLibraryLoader;
+
+    /**
+     * Creates a new instance. See {@link ComponentImpl#ComponentImpl(String, int, String, String, String)}
+     *
+     * @param portAllocator the allocator of media ports (cannot be null).
+     * @param portUsageTracker the tracker of the usage of the media port range (cannot be null).
+     * @param timingWheel the scheduler of the expiry of cached requests and recorded ports (cannot be null).
+     */
+    public OpenfireComponentImpl( final String host, final int port, final String domain, final String subDomain, final String secret, final PortAllocator portAllocator, final PortUsageTracker portUsageTracker, final TimingWheel timingWheel )
+    {
+        super( host, port, domain, subDomain, secret );
+        this.portAllocator = portAllocator;
+        this.portUsageTracker = portUsageTracker;
+        this.requestCache = new ColibriRequestCache( timingWheel );
+        this.reconnectAffinity = new ReconnectAffinity( timingWheel );
+    }
+
+    /**
+     * Returns the recorder that keeps track of the time that is spent processing IQ requests.
+     *
+     * @return an IQ latency recorder (never null).
+     */
+    public LatencyRecorder getIqLatency()
+    {
+        return iqLatency;
+    }
+
+    /**
+     * Returns the recorder that keeps track of the time that is spent processing Colibri conference requests.
+     *
+     * @return an allocation latency recorder (never null).
+     */
+    public LatencyRecorder getAllocationLatency()
+    {
+        return allocationLatency;
+    }
+
+    /**
+     * Returns the cache that absorbs retransmissions of Colibri requests.
+     *
+     * @return a request cache (never null).
+     */
+    public ColibriRequestCache getRequestCache()
+    {
+        return requestCache;
+    }
+
+    /**
+     * Returns the policy that limits the video that is forwarded in conferences.
+     *
+     * @return a forwarding policy (never null).
+     */
+    public ForwardingPolicy getForwardingPolicy()
+    {
+        return forwardingPolicy;
+    }
+
+    /**
+     * Returns the manager that limits the resources that users and groups can use.
+     *
+     * @return a quota manager (never null).
+     */
+    public QuotaManager getQuotaManager()
+    {
+        return quotaManager;
+    }
+
+    /**
+     * Returns the record of the ports that endpoints used, which is used to bind the channels of reconnecting
+     * endpoints to the port that they used before.
+     *
+     * @return a reconnect affinity (never null).
+     */
+    public ReconnectAffinity getReconnectAffinity()
+    {
+        return reconnectAffinity;
+    }
+
+    /**
+     * Returns the lock that guards the configuration that is used when Colibri conference requests are processed.
+     *
+     * @return a read/write lock (never null).
+     */
+    public ReadWriteLock getConfigurationLock()
+    {
+        return configurationLock;
+    }
+
+    /**
+     * Sets the probe that determines if health check requests fail. While the probe considers the Videobridge to be
+     * degraded, health check requests are answered with an error, so that conference focuses allocate new
+     * conferences on other bridges.
+     *
+     * @param selfTestProbe a probe, or null to answer health checks without consulting a probe.
+     */
+    public void setSelfTestProbe( final SelfTestProbe selfTestProbe )
+    {
+        this.selfTestProbe = selfTestProbe;
+    }
+
+    /**
+     * Sets the loader of native libraries. Before a Colibri request is processed, the libraries that it needs are
+     * loaded, unless these were loaded before.
+     *
+     * @param nativeLibraryLoader a loader, or null to stop loading native libraries.
+     */
+    public void setNativeLibraryLoader( final NativeLibraryLoader nativeLibraryLoader )
+    {
+        this.nativeLibraryLoader = nativeLibraryLoader;
+    }
+
+    @Override
+    public IQ handleIQGetImpl( final IQ iq ) throws Exception
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            final SelfTestProbe probe = selfTestProbe;
+            if ( probe != null && probe.isDegraded() && isHealthCheck( iq ) )
+            {
+                final IQ error = IQ.createResultIQ( iq );
+                error.setChildElement( iq.getChildElement().createCopy() );
+                error.setError( new PacketError( PacketError.Condition.internal_server_error, PacketError.Type.wait, "Self-test failed: " + probe.getLastResult() ) );
+                return error;
+            }
+            return super.handleIQGetImpl( iq );
+        }
+        finally
+        {
+            iqLatency.record( System.nanoTime() - start );
+        }
+    }
+
+    @Override
+    public IQ handleIQSetImpl( final IQ iq ) throws Exception
+    {
+        if ( ColibriElements.getConference( iq ) != null )
+        {
+            return requestCache.process( iq, this::handleInstrumented );
+        }
+        return handleInstrumented( iq );
+    }
+
+    /**
+     * Processes an IQ 'set' request, while recording instrumentation data.
+     */
+    private IQ handleInstrumented( final IQ iq ) throws Exception
+    {
+        final Element conference = ColibriElements.getConference( iq );
+        final boolean isColibri = conference != null;
+        final FlightRecorderEvents.ColibriScope event = isColibri ? FlightRecorderEvents.colibriRequest() : null;
+        if ( isColibri )
+        {
+            configurationLock.readLock().lock();
+        }
+        final long start = System.nanoTime();
+        IQ response = null;
+        QuotaManager.Admission admission = null;
+        int steeredPort = -1;
+        boolean portAllocationLocked = false;
+        try
+        {
+            Map<Element, Integer> requestedLastN = null;
+            if ( isColibri )
+            {
+                try
+                {
+                    admission = quotaManager.admit( iq );
+                }
+                catch ( QuotaManager.QuotaExceededException e )
+                {
+                    Log.debug( "Rejecting Colibri request '{}' from {}: {}", iq.getID(), iq.getFrom(), e.getMessage() );
+                    response = IQ.createResultIQ( iq );
+                    response.setChildElement( iq.getChildElement().createCopy() );
+                    response.setError( new PacketError( PacketError.Condition.resource_constraint, PacketError.Type.wait, e.getMessage() ) );
+                    return response;
+                }
+                if ( RuntimeConfiguration.isMinMaxPortEnabled() && countNewTransports( conference ) > 0 && portAllocationLock.tryLock() )
+                {
+                    portAllocationLocked = true;
+                    steeredPort = steerPortAllocation( conference );
+                }
+                final NativeLibraryLoader loader = nativeLibraryLoader;
+                if ( loader != null )
+                {
+                    loader.prepare( conference );
+                }
+                requestedLastN = ForwardingPolicy.getRequested( iq );
+                forwardingPolicy.apply( iq );
+            }
+            response = super.handleIQSetImpl( iq );
+            if ( isColibri )
+            {
+                forwardingPolicy.track( iq, response, requestedLastN );
+                recordPortUsage( response, steeredPort );
+                if ( RuntimeConfiguration.isMinMaxPortEnabled() )
+                {
+                    reconnectAffinity.record( iq, response );
+                }
+            }
+            return response;
+        }
+        finally
+        {
+            if ( portAllocationLocked )
+            {
+                portAllocationLock.unlock();
+            }
+            if ( isColibri )
+            {
+                quotaManager.complete( admission, iq, response );
+                configurationLock.readLock().unlock();
+            }
+            final long duration = System.nanoTime() - start;
+            iqLatency.record( duration );
+            if ( isColibri )
+            {
+                allocationLatency.record( duration );
+                event.complete( iq, response );
+            }
+        }
+    }
+
+    /**
+     * Checks if an IQ is a health check request, as sent by a conference focus to determine if it can allocate
+     * conferences on this Videobridge.
+     */
+    private static boolean isHealthCheck( final IQ iq )
+    {
+        final Element child = iq.getChildElement();
+        return child != null && "healthcheck".equals( child.getName() ) && "http://jitsi.org/protocol/healthcheck".equals( child.getNamespaceURI() );
+    }
+
+    /**
+     * Returns the number of transports that the Videobridge creates when it processes a Colibri request: one for every
+     * new channel that is not part of a channel bundle, and one for every channel bundle of new channels.
+     *
+     * @param conference the Colibri conference element of the request (cannot be null).
+     * @return a transport count.
+     */
+    static int countNewTransports( final Element conference )
+    {
+        int count = 0;
+        final Set<String> bundleIds = new HashSet<>();
+        for ( final Element channel : ColibriElements.getChannels( conference ) )
+        {
+            // Channels without an identifier are to be created.
+            if ( channel.attributeValue( "id" ) == null )
+            {
+                final String bundleId = channel.attributeValue( "channel-bundle-id" );
+                if ( bundleId == null || bundleIds.add( bundleId ) )
+                {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * When a Colibri request creates new transports, this method points the port tracker of the Videobridge at a block
+     * of ports that is handed out by the plugin's port allocator, with one port for every transport. The Videobridge
+     * binds the ports of the transports of a request consecutively, starting at that port, which spreads allocations
+     * over the range round-robin, and avoids ports that were recently released. An exception is made for an endpoint
+     * that reconnects: its transports start at the port that it used before (see {@link ReconnectAffinity}).
+     *
+     * Callers must hold {@link #portAllocationLock} until the ports that were bound have been recorded. Requests that
+     * are processed while the lock is held by another request are not steered (which also means that a reconnecting
+     * endpoint is not bound to its previous port when its request coincides with another request that creates
+     * transports).
+     *
+     * @param conference the Colibri conference element of the request (cannot be null).
+     * @return the port that the port tracker was pointed at, or -1 when it was not changed.
+     */
+    private int steerPortAllocation( final Element conference )
+    {
+        int port = -1;
+        for ( final Element channel : ColibriElements.getChannels( conference ) )
+        {
+            if ( channel.attributeValue( "id" ) == null )
+            {
+                port = reconnectAffinity.claim( conference.attributeValue( "id" ), channel.attributeValue( "endpoint" ) );
+                if ( port != -1 )
+                {
+                    break;
+                }
+            }
+        }
+        if ( port == -1 )
+        {
+            port = portAllocator.allocate( countNewTransports( conference ) );
+        }
+        if ( port != -1 )
+        {
+            TransportManager.portTracker.setNextPort( port );
+        }
+        return port;
+    }
+
+    /**
+     * Records the ports that the Videobridge bound, as listed in the candidates of its response to a Colibri request,
+     * with the port usage tracker as well as with the port allocator (which does not hand these out again, even if the
+     * Videobridge bound other ports than the ones that it was pointed at). When the Videobridge failed to process a
+     * request for which it was pointed at a port, that is recorded as a bind failure.
+     *
+     * @param response the response of the Videobridge (can be null).
+     * @param steeredPort the port that the port tracker was pointed at, or -1.
+     */
+    private void recordPortUsage( final IQ response, final int steeredPort )
+    {
+        if ( response != null && response.getType() == IQ.Type.error )
+        {
+            if ( steeredPort != -1 )
+            {
+                portUsageTracker.bindFailed( steeredPort );
+                portAllocator.bindFailed( steeredPort );
+            }
+            return;
+        }
+
+        final Element conference = ColibriElements.getConference( response );
+        if ( conference != null )
+        {
+            for ( final int port : ColibriElements.getHostCandidatePorts( conference ) )
+            {
+                portUsageTracker.allocated( port );
+                portAllocator.bound( port );
+            }
+        }
+    }
+}
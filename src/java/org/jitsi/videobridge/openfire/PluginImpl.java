@@ -16,10 +16,9 @@
 package org.jitsi.videobridge.openfire;
 
 import java.io.*;
-import java.lang.reflect.*;
 import java.net.*;
 import java.util.*;
-import java.util.jar.*;
+import java.util.concurrent.locks.Lock;
 
 import org.ice4j.StackProperties;
 import org.ice4j.ice.harvest.MappingCandidateHarvesters;
@@ -34,10 +33,13 @@ import org.jitsi.videobridge.xmpp.*;
 import org.jivesoftware.openfire.XMPPServer;
 import org.jivesoftware.openfire.XMPPServerInfo;
 import org.jivesoftware.openfire.container.*;
+import org.jivesoftware.openfire.http.HttpBindManager;
+import org.jivesoftware.openfire.muc.MUCEventDispatcher;
 import org.jivesoftware.util.*;
 import org.slf4j.*;
 import org.slf4j.Logger;
 import org.xmpp.component.*;
+import org.xmpp.packet.JID;
 
 /**
  * Implements <tt>org.jivesoftware.openfire.container.Plugin</tt> to integrate
@@ -145,6 +147,12 @@ public class PluginImpl
      */
     public static final String TCP_MAPPED_PORT_PROPERTY_NAME = "org.jitsi.videobridge.media.TCP_HARVESTER_MAPPED_PORT";
 
+    /**
+     * The name of the Openfire property that contains the maximum number of packets (if any) that libjitsi queues for
+     * sending, per media stream. Packets that are forwarded while the queue is full are dropped.
+     */
+    public static final String PACKET_QUEUE_CAPACITY_PROPERTY_NAME = "org.jitsi.videobridge.media.PACKET_QUEUE_CAPACITY";
+
     /**
      * The name of the Openfire property that contains the boolean value to determine that TCP
      * connectivity is available.
@@ -156,6 +164,17 @@ public class PluginImpl
      */
     public static final String TCP_SSLTCP_ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.TCP_HARVESTER_SSLTCP";
 
+    /**
+     * The name of this plugin, as registered with Openfire's plugin manager.
+     */
+    public static final String PLUGIN_NAME = "jitsivideobridge";
+
+    /**
+     * The name of the Openfire property that controls if a conference focus in the same Openfire instance can send
+     * Colibri requests to the Videobridge without routing them through Openfire.
+     */
+    public static final String LOCAL_COLIBRI_CHANNEL_ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOCAL_COLIBRI_CHANNEL_ENABLED";
+
     /**
      * The <tt>ComponentManager</tt> to which the component of this
      * <tt>Plugin</tt> has been added.
@@ -166,7 +185,99 @@ public class PluginImpl
      * The <tt>Component</tt> that has been registered by this plugin. This
      * wraps the Videobridge service.
      */
-    private ComponentImpl component;
+    private OpenfireComponentImpl component;
+
+    /**
+     * Periodically computes metrics of the Videobridge that is wrapped by {@link #component}.
+     */
+    private BridgeMetricsSampler metricsSampler;
+
+    /**
+     * Retains recent metrics, as computed by {@link #metricsSampler}.
+     */
+    private MetricsHistory metricsHistory;
+
+    /**
+     * Periodically writes {@link #metricsHistory} to the database.
+     */
+    private MetricsHistoryWriter metricsHistoryWriter;
+
+    /**
+     * Tracks the usage of the UDP port range that is configured for media.
+     */
+    private PortUsageTracker portUsageTracker;
+
+    /**
+     * Hands out the UDP ports of the range that is configured for media. This is the single authority for that range:
+     * it applies the range to all Videobridge and libjitsi components that allocate ports.
+     */
+    private PortAllocator portAllocator;
+
+    /**
+     * Schedules the expiry of state that the plugin keeps per conference, endpoint or request.
+     */
+    private TimingWheel timingWheel;
+
+    /**
+     * Loads the native libraries that are shipped with the plugin. Null when these could not be found.
+     */
+    private NativeLibraryLoader nativeLibraryLoader;
+
+    /**
+     * Accepts and limits ICE-TCP connections on behalf of the TCP harvester. Null when not in use.
+     */
+    private IceTcpGuard iceTcpGuard;
+
+    /**
+     * The compiled rules that define what network interfaces and addresses can be used for media.
+     */
+    private volatile NetworkFilter networkFilter = NetworkFilter.ALLOW_ALL;
+
+    /**
+     * Delivers Colibri requests of a co-located conference focus to {@link #component} directly.
+     */
+    private LocalColibriChannel localColibriChannel;
+
+    /**
+     * Detects changes in the network interfaces and addresses of this host.
+     */
+    private NetworkChangeWatcher networkChangeWatcher;
+
+    /**
+     * Warms up the Videobridge when a multi-user chat room gets its first occupant, through {@link #localColibriChannel}.
+     */
+    private ConferencePreallocator conferencePreallocator;
+
+    /**
+     * The thread pool on which this plugin performs asynchronous work.
+     */
+    private BridgeExecutor executor;
+
+    /**
+     * Periodically verifies that conferences can be allocated and media is forwarded.
+     */
+    private SelfTestProbe selfTestProbe;
+
+    /**
+     * Shares versions of the configuration with the other nodes of an Openfire cluster.
+     */
+    private volatile ClusteredConfiguration clusteredConfiguration;
+
+    /**
+     * Serializes the application of configuration batches.
+     */
+    private final Object batchLock = new Object();
+
+    /**
+     * The names of properties that changed while a configuration batch was being written, or null when no batch is
+     * being written. Guarded by {@link #deferLock}.
+     */
+    private Set<String> deferredProperties;
+
+    /**
+     * Guards {@link #deferredProperties}.
+     */
+    private final Object deferLock = new Object();
 
     /**
      * The subdomain of the address of component with which it has been
@@ -185,6 +296,65 @@ public class PluginImpl
     {
         PropertyEventDispatcher.removeListener(this);
 
+        if ( clusteredConfiguration != null )
+        {
+            clusteredConfiguration.stop();
+            clusteredConfiguration = null;
+        }
+
+        if ( metricsSampler != null )
+        {
+            metricsSampler.stop();
+            metricsSampler = null;
+        }
+
+        if ( metricsHistoryWriter != null )
+        {
+            metricsHistoryWriter.stop();
+            metricsHistoryWriter = null;
+        }
+        metricsHistory = null;
+
+        if ( portUsageTracker != null )
+        {
+            portUsageTracker.stop();
+            portUsageTracker = null;
+        }
+        portAllocator = null;
+
+        if ( networkChangeWatcher != null )
+        {
+            networkChangeWatcher.stop();
+            networkChangeWatcher = null;
+        }
+
+        if ( conferencePreallocator != null )
+        {
+            MUCEventDispatcher.removeListener( conferencePreallocator );
+            conferencePreallocator = null;
+        }
+
+        if ( component != null )
+        {
+            component.getQuotaManager().stop();
+        }
+
+        if ( selfTestProbe != null )
+        {
+            if ( component != null )
+            {
+                component.setSelfTestProbe( null );
+            }
+            selfTestProbe.stop();
+            selfTestProbe = null;
+        }
+
+        if ( executor != null )
+        {
+            executor.shutdown();
+            executor = null;
+        }
+
         if ((componentManager != null) && (subdomain != null))
         {
             try
@@ -198,8 +368,22 @@ public class PluginImpl
             }
             componentManager = null;
             component = null;
+            localColibriChannel = null;
             subdomain = null;
         }
+
+        if ( iceTcpGuard != null )
+        {
+            iceTcpGuard.stop();
+            iceTcpGuard = null;
+        }
+
+        if ( timingWheel != null )
+        {
+            timingWheel.stop();
+            timingWheel = null;
+        }
+        nativeLibraryLoader = null; // libraries that were loaded remain loaded, until the plugin's class loader is unloaded.
     }
 
     /**
@@ -215,7 +399,7 @@ public class PluginImpl
     {
         PropertyEventDispatcher.addListener(this);
 
-        try
+        try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.initializationPhase( "natives" ) )
         {
             checkNatives();
         }
@@ -241,29 +425,8 @@ public class PluginImpl
         final String domain = info.getXMPPDomain();
         final String secret = null;
 
-        final List<String> allowedInterfaces = JiveGlobals.getListProperty( INTERFACES_ALLOWED_PROPERTY_NAME, null );
-        if ( allowedInterfaces != null )
-        {
-            System.setProperty( StackProperties.ALLOWED_INTERFACES, String.join( ";", allowedInterfaces ) );
-            System.clearProperty( StackProperties.BLOCKED_INTERFACES );
-        }
-        else
-        {
-            System.clearProperty( StackProperties.ALLOWED_INTERFACES );
-            System.clearProperty( StackProperties.BLOCKED_INTERFACES );
-        }
-
-        final List<String> allowedAddresses = JiveGlobals.getListProperty( ADDRESSES_ALLOWED_PROPERTY_NAME, null );
-        if ( allowedAddresses != null )
-        {
-            System.setProperty( StackProperties.ALLOWED_ADDRESSES, String.join( ";", allowedAddresses ) );
-            System.clearProperty( StackProperties.BLOCKED_ADDRESSES );
-        }
-        else
-        {
-            System.clearProperty( StackProperties.ALLOWED_ADDRESSES );
-            System.clearProperty( StackProperties.BLOCKED_ADDRESSES );
-        }
+        final FlightRecorderEvents.Scope harvesterPhase = FlightRecorderEvents.initializationPhase( "harvesters" );
+        applyNetworkFilter();
 
         if ( JiveGlobals.getProperty( AWS_HARVESTER_CONFIG_PROPERTY_NAME ) != null )
         {
@@ -309,6 +472,7 @@ public class PluginImpl
         }
 
         System.setProperty( StackProperties.USE_DYNAMIC_HOST_HARVESTER, Boolean.toString( JiveGlobals.getBooleanProperty( MINMAX_PORT_ENABLED_PROPERTY_NAME, true ) ) );
+        harvesterPhase.close();
 
         // The ComponentImpl implementation depends on OSGI-based loading of
         // Components, which is prepared for here. Note that a configuration
@@ -330,15 +494,63 @@ public class PluginImpl
 
         OSGi.setClassLoader( classLoader );
 
-        ComponentImpl component =
-            new ComponentImpl( hostname, port, domain, subdomain, secret );
+        int minPort = JiveGlobals.getIntProperty( MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE );
+        int maxPort = JiveGlobals.getIntProperty( MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE );
+        if ( !PortUsageTracker.isValidRange( minPort, maxPort ) )
+        {
+            Log.warn( "Ignoring invalid UDP port range {} - {}. Using the default range {} - {} instead.", minPort, maxPort, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE );
+            minPort = RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE;
+            maxPort = RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE;
+        }
+        final PortUsageTracker portUsageTracker = new PortUsageTracker( minPort, maxPort );
+        final PortAllocator portAllocator = new PortAllocator( minPort, maxPort, portUsageTracker::isUsed );
+        portUsageTracker.setReleaseListener( portAllocator::released );
+
+        final TimingWheel timingWheel = new TimingWheel();
+        timingWheel.start();
+
+        final FlightRecorderEvents.Scope componentPhase = FlightRecorderEvents.initializationPhase( "component" );
+        OpenfireComponentImpl component =
+            new OpenfireComponentImpl( hostname, port, domain, subdomain, secret, portAllocator, portUsageTracker, timingWheel );
 
         try
         {
-            componentManager.addComponent(subdomain, component);
+            try
+            {
+                componentManager.addComponent(subdomain, component);
+            }
+            finally
+            {
+                componentPhase.close();
+            }
             this.componentManager = componentManager;
             this.component = component;
+            this.executor = new BridgeExecutor();
+            this.localColibriChannel = new LocalColibriChannel( component, new JID( null, subdomain + "." + domain, null ), executor );
             this.subdomain = subdomain;
+            this.timingWheel = timingWheel;
+            this.conferencePreallocator = new ConferencePreallocator( localColibriChannel, executor );
+            MUCEventDispatcher.addListener( conferencePreallocator );
+            this.selfTestProbe = new SelfTestProbe( localColibriChannel );
+            component.setSelfTestProbe( selfTestProbe );
+            component.setNativeLibraryLoader( nativeLibraryLoader );
+            this.selfTestProbe.start();
+            this.clusteredConfiguration = new ClusteredConfiguration( this );
+            this.clusteredConfiguration.start();
+            component.getQuotaManager().start();
+
+            this.metricsHistory = new MetricsHistory();
+            this.metricsHistoryWriter = new MetricsHistoryWriter( metricsHistory );
+            this.metricsHistoryWriter.start();
+            this.portUsageTracker = portUsageTracker;
+            this.portUsageTracker.start();
+            this.portAllocator = portAllocator;
+            this.networkChangeWatcher = new NetworkChangeWatcher( this::networkChanged );
+            this.networkChangeWatcher.start();
+            this.metricsSampler = new BridgeMetricsSampler( component, metricsHistory, portUsageTracker );
+            this.metricsSampler.start();
+
+            final FlightRecorderEvents.Scope mediaPhase = FlightRecorderEvents.initializationPhase( "media" );
 
             // Note that property setting uses an OSGi service that's only available after the component is started.
             //
@@ -352,21 +564,7 @@ public class PluginImpl
                     : -1
             );
 
-            LibJitsi.getConfigurationService().setProperty(
-                DefaultStreamConnector.MAX_PORT_NUMBER_PROPERTY_NAME,
-                JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE)
-            );
-
-            LibJitsi.getConfigurationService().setProperty(
-                DefaultStreamConnector.MIN_PORT_NUMBER_PROPERTY_NAME,
-                JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE)
-            );
-
-            // TODO: The port range is set both for DefaultStreamConnector, but also in the TransportManager. Figure out what's the difference.
-            TransportManager.portTracker.setRange(
-                JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE),
-                JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE)
-            );
+            applyPortRange();
 
             if ( JiveGlobals.getProperty( TCP_ENABLED_PROPERTY_NAME ) != null ) {
                 LibJitsi.getConfigurationService().setProperty(
@@ -411,14 +609,30 @@ public class PluginImpl
                     IceUdpTransportManager.TCP_HARVESTER_SSLTCP
                 );
             }
+
+            if ( JiveGlobals.getProperty( PACKET_QUEUE_CAPACITY_PROPERTY_NAME ) != null) {
+                LibJitsi.getConfigurationService().setProperty(
+                    RuntimeConfiguration.PACKET_QUEUE_CAPACITY_PNAME,
+                    JiveGlobals.getProperty( PACKET_QUEUE_CAPACITY_PROPERTY_NAME )
+                );
+            } else {
+                LibJitsi.getConfigurationService().removeProperty(
+                    RuntimeConfiguration.PACKET_QUEUE_CAPACITY_PNAME
+                );
+            }
+
+            startIceTcpGuard();
+            mediaPhase.close();
         }
         catch (ComponentException ce)
         {
             Log.error( "An exception occurred when loading the plugin: " +
                 "the component could not be added.", ce );
+            timingWheel.stop();
             this.componentManager = null;
             this.component = null;
             this.subdomain = null;
+            this.timingWheel = null;
         }
     }
 
@@ -436,146 +650,643 @@ public class PluginImpl
     }
 
     /**
-     * Checks whether we have folder with extracted natives, if missing
-     * find the appropriate jar file and extract them. Normally this is
-     * done once when plugin is installed or updated.
-     * If folder with natives exist add it to the java.library.path so
-     * libjitsi can use those native libs.
+     * Returns the sampler that periodically computes metrics of the Videobridge that is registered by this plugin.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The metrics sampler, or <tt>null</tt> when not running.
      */
-    private void checkNatives() throws Exception
+    public BridgeMetricsSampler getMetricsSampler()
     {
-        // Find the root path of the class that will be our plugin lib folder.
-        String binaryPath =
-            (new URL(ComponentImpl.class.getProtectionDomain()
-                .getCodeSource().getLocation(), ".")).openConnection()
-                .getPermission().getName();
+        return metricsSampler;
+    }
 
-        File pluginJarfile = new File(binaryPath);
-        File nativeLibFolder =
-            new File(pluginJarfile.getParentFile(), "native");
+    /**
+     * Returns the recent metrics of the Videobridge that is registered by this plugin.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The metrics history, or <tt>null</tt> when not running.
+     */
+    public MetricsHistory getMetricsHistory()
+    {
+        return metricsHistory;
+    }
 
-        if(!nativeLibFolder.exists())
-        {
-            // lets find the appropriate jar file to extract and
-            // extract it
-            String jarFileSuffix = null;
-            if ( OSUtils.IS_LINUX32 )
-            {
-                jarFileSuffix = "-native-linux-32.jar";
-            }
-            else if ( OSUtils.IS_LINUX64 )
-            {
-                jarFileSuffix = "-native-linux-64.jar";
-            }
-            else if ( OSUtils.IS_WINDOWS32 )
-            {
-                jarFileSuffix = "-native-windows-32.jar";
-            }
-            else if ( OSUtils.IS_WINDOWS64 )
-            {
-                jarFileSuffix = "-native-windows-64.jar";
-            }
-            else if ( OSUtils.IS_MAC )
-            {
-                jarFileSuffix = "-native-macosx.jar";
-            }
+    /**
+     * Returns the tracker of the usage of the UDP port range that is configured for media.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The port usage tracker, or <tt>null</tt> when not running.
+     */
+    public PortUsageTracker getPortUsageTracker()
+    {
+        return portUsageTracker;
+    }
 
-            if ( jarFileSuffix == null )
-            {
-                Log.warn( "Unable to determine what the native libraries are " +
-                    "for this OS." );
-            }
-            else if ( nativeLibFolder.mkdirs() )
+    /**
+     * Returns the allocator of the UDP ports of the range that is configured for media.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The port allocator, or <tt>null</tt> when not running.
+     */
+    public PortAllocator getPortAllocator()
+    {
+        return portAllocator;
+    }
+
+    /**
+     * Returns the channel through which a conference focus in the same Openfire instance can send Colibri requests to
+     * the Videobridge, without routing them through Openfire.
+     *
+     * When the plugin is not running, or when the channel is disabled, <tt>null</tt> will be returned.
+     *
+     * @return The local Colibri channel, or <tt>null</tt>.
+     */
+    public LocalColibriChannel getLocalColibriChannel()
+    {
+        return JiveGlobals.getBooleanProperty( LOCAL_COLIBRI_CHANNEL_ENABLED_PROPERTY_NAME, true ) ? localColibriChannel : null;
+    }
+
+    /**
+     * Returns the compiled rules that define what network interfaces and addresses can be used for media.
+     *
+     * @return The network filter (never <tt>null</tt>).
+     */
+    public NetworkFilter getNetworkFilter()
+    {
+        return networkFilter;
+    }
+
+    /**
+     * Looks up the instance of this plugin that is loaded by Openfire, for use by the admin console pages and servlets
+     * of this plugin.
+     *
+     * @return The plugin instance, or <tt>null</tt> when the plugin is not loaded.
+     */
+    public static PluginImpl getRunningInstance()
+    {
+        final Plugin plugin = XMPPServer.getInstance().getPluginManager().getPlugin( PLUGIN_NAME );
+        return plugin instanceof PluginImpl ? (PluginImpl) plugin : null;
+    }
+
+    /**
+     * Compiles the rules that define what network interfaces and addresses can be used for media, and applies them.
+     *
+     * The rules can contain patterns (CIDR prefixes and globs), which ice4j does not support. ice4j is configured with
+     * the literal interface names and addresses of this host that result from applying the compiled rules. ice4j reads
+     * that configuration once, so patterns are evaluated against the interfaces and addresses that this host has when
+     * the Videobridge starts. Interfaces and addresses that appear later are not matched until the plugin is restarted,
+     * which is reported through {@link RuntimeConfiguration#restartNeeded()}.
+     */
+    private void applyNetworkFilter()
+    {
+        final NetworkFilter filter = NetworkFilter.compile(
+            JiveGlobals.getListProperty( INTERFACES_ALLOWED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( INTERFACES_BLOCKED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( ADDRESSES_ALLOWED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( ADDRESSES_BLOCKED_PROPERTY_NAME, null )
+        );
+        networkFilter = filter;
+        expandNetworkFilter( filter );
+    }
+
+    /**
+     * Applies the compiled rules to the current interfaces and addresses of this host, and configures ice4j with the
+     * result.
+     *
+     * @param filter the compiled rules (cannot be null).
+     */
+    private void expandNetworkFilter( final NetworkFilter filter )
+    {
+        try
+        {
+            for ( final Map.Entry<String, String> property : getStackProperties( filter ).entrySet() )
             {
-                String nativeLibsJarPath = pluginJarfile.getCanonicalPath();
-                nativeLibsJarPath = nativeLibsJarPath.replaceFirst( "\\.jar",
-                    jarFileSuffix );
-                Log.debug("Applicable native jar: '{}'", nativeLibsJarPath);
-                JarFile jar = new JarFile( nativeLibsJarPath );
-                Enumeration en = jar.entries();
-                while ( en.hasMoreElements() )
+                if ( property.getValue() == null )
                 {
-                    try
-                    {
-                        JarEntry jarEntry = (JarEntry) en.nextElement();
-                        if ( jarEntry.isDirectory() || jarEntry.getName()
-                                                            .contains( "/" ) )
-                        {
-                            // Skip everything that's not in the root of the
-                            // jar-file.
-                            continue;
-                        }
-                        final File extractedFile = new File( nativeLibFolder,
-                                                        jarEntry.getName() );
-                        Log.debug( "Copying file '{}' from native library " +
-                            "into '{}'.", jarEntry, extractedFile );
-
-                        try ( InputStream is = jar.getInputStream( jarEntry );
-                              FileOutputStream fos = new FileOutputStream(
-                                  extractedFile ) )
-                        {
-                            while ( is.available() > 0 )
-                            {
-                                fos.write( is.read() );
-                            }
-                        }
-                    }
-                    catch ( Throwable t )
-                    {
-                        Log.warn( "An unexpected error occurred while copying" +
-                            " native libraries.", t );
-                    }
+                    System.clearProperty( property.getKey() );
+                }
+                else
+                {
+                    System.setProperty( property.getKey(), property.getValue() );
                 }
-                Log.info( "Native lib folder created and natives extracted" );
-            }
-            else
-            {
-                Log.warn( "Unable to create native lib folder." );
             }
         }
-        else
-            Log.info("Native lib folder already exist.");
-
-        String newLibPath =
-            nativeLibFolder.getCanonicalPath() + File.pathSeparator +
-                System.getProperty("java.library.path");
+        catch ( SocketException e )
+        {
+            Log.warn( "Unable to apply the interface and address rules, as the network interfaces of this host cannot be enumerated.", e );
+        }
+    }
 
-        System.setProperty("java.library.path", newLibPath);
+    /**
+     * Returns the ice4j configuration that results from applying the compiled rules to the current interfaces and
+     * addresses of this host.
+     *
+     * @param filter the compiled rules (cannot be null).
+     * @return values of ice4j properties by name, in which a null value denotes a property that is not to be set.
+     * @throws SocketException when the network interfaces of this host cannot be enumerated.
+     */
+    static Map<String, String> getStackProperties( final NetworkFilter filter ) throws SocketException
+    {
+        final Map<String, String> result = new HashMap<>();
+        result.put( StackProperties.ALLOWED_INTERFACES, null );
+        result.put( StackProperties.BLOCKED_INTERFACES, null );
+        result.put( StackProperties.ALLOWED_ADDRESSES, null );
+        result.put( StackProperties.BLOCKED_ADDRESSES, null );
 
-        // this will reload the new setting
-        Field fieldSysPath = ClassLoader.class.getDeclaredField("sys_paths");
-        fieldSysPath.setAccessible(true);
-        fieldSysPath.set(System.class.getClassLoader(), null);
+        if ( filter.hasInterfaceRules() )
+        {
+            putFilterProperties( result, StackProperties.ALLOWED_INTERFACES, StackProperties.BLOCKED_INTERFACES, filter.getHostInterfaceNames( true ), filter.getHostInterfaceNames( false ) );
+        }
+        if ( filter.hasAddressRules() )
+        {
+            putFilterProperties( result, StackProperties.ALLOWED_ADDRESSES, StackProperties.BLOCKED_ADDRESSES, filter.getHostAddresses( true ), filter.getHostAddresses( false ) );
+        }
+        return result;
     }
 
     /**
-     * A property was set. The parameter map <tt>params</tt> will contain the
-     * the value of the property under the key <tt>value</tt>.
+     * Invoked when the network interfaces or addresses of this host changed.
      *
-     * @param property the name of the property.
-     * @param params event parameters.
+     * Host candidates for dynamically allocated ports are harvested from the current addresses for every allocation,
+     * and need no further action. The interface and address rules, the single-port harvesters and the mapping
+     * harvesters are evaluated, bound and resolved only once, when the Videobridge starts. Re-applying them here would
+     * have no effect. Instead, when they are affected by the change, that is reported through
+     * {@link RuntimeConfiguration#restartNeeded()}.
+     *
+     * @param change the change (cannot be null).
      */
-    public void propertySet(String property, Map params)
+    private void networkChanged( final NetworkChangeWatcher.Change change )
     {
-        switch ( property )
+        if ( RuntimeConfiguration.isNetworkFilterStale() )
         {
-            case INTERFACES_ALLOWED_PROPERTY_NAME:
-                System.setProperty( StackProperties.ALLOWED_INTERFACES, String.join( ";", (List<String>) params.get("value") ) );
-                break;
-
-            case INTERFACES_BLOCKED_PROPERTY_NAME:
-                System.setProperty( StackProperties.BLOCKED_INTERFACES, String.join( ";", (List<String>) params.get("value") ) );
-                break;
-
-            case ADDRESSES_ALLOWED_PROPERTY_NAME:
-                System.setProperty( StackProperties.ALLOWED_ADDRESSES, String.join( ";", (List<String>) params.get("value") ) );
-                break;
+            Log.warn( "The interface and address rules select other interfaces or addresses than when the plugin started ({}). Restart the plugin to apply them.", change );
+        }
 
-            case ADDRESSES_BLOCKED_PROPERTY_NAME:
-                System.setProperty( StackProperties.BLOCKED_ADDRESSES, String.join( ";", (List<String>) params.get("value") ) );
-                break;
+        if ( RuntimeConfiguration.isSinglePortEnabled() && !change.getRemoved().isEmpty() )
+        {
+            Log.warn( "Addresses that were in use by the single-port harvester are no longer available ({}). Restart the plugin to harvest candidates for the current addresses.", change.getRemoved() );
+        }
+    }
 
-            case AWS_HARVESTER_CONFIG_PROPERTY_NAME:
+    /**
+     * Returns the thread pool on which this plugin performs asynchronous work.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The thread pool, or <tt>null</tt> when not running.
+     */
+    public BridgeExecutor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Returns the probe that periodically verifies that conferences can be allocated and media is forwarded.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The self-test probe, or <tt>null</tt> when not running.
+     */
+    public SelfTestProbe getSelfTestProbe()
+    {
+        return selfTestProbe;
+    }
+
+    /**
+     * Returns the component that shares the configuration with the other nodes of an Openfire cluster.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The clustered configuration, or <tt>null</tt> when not running.
+     */
+    public ClusteredConfiguration getClusteredConfiguration()
+    {
+        return clusteredConfiguration;
+    }
+
+    /**
+     * Starts accepting ICE-TCP connections on behalf of the TCP harvester, when enabled. The TCP harvester is moved to
+     * an internal port, and advertises the public port as its mapped port (unless a mapped port is configured). When
+     * enabled, the port is shared with the HTTPS listener of Openfire's HTTP binding.
+     *
+     * This does not use {@link RuntimeConfiguration}, which records the TCP configuration of the Videobridge when it is
+     * first used, to detect changes that require a restart.
+     */
+    private void startIceTcpGuard()
+    {
+        if ( !IceTcpGuard.isEnabled() || !JiveGlobals.getBooleanProperty( TCP_ENABLED_PROPERTY_NAME, !RuntimeConfiguration.DISABLE_TCP_HARVESTER_DEFAULT_VALUE ) )
+        {
+            return;
+        }
+
+        final int publicPort = JiveGlobals.getIntProperty( TCP_PORT_PROPERTY_NAME, IceTcpGuard.PUBLIC_PORT_DEFAULT_VALUE );
+        final int internalPort = JiveGlobals.getIntProperty( IceTcpGuard.INTERNAL_PORT_PROPERTY_NAME, IceTcpGuard.INTERNAL_PORT_DEFAULT_VALUE );
+        final boolean sslTcp = JiveGlobals.getBooleanProperty( TCP_SSLTCP_ENABLED_PROPERTY_NAME, RuntimeConfiguration.SSLTCP_TCP_HARVESTER_DEFAULT_VALUE );
+        int httpsPort = -1;
+        if ( JiveGlobals.getBooleanProperty( IceTcpGuard.HTTPS_SHARING_ENABLED_PROPERTY_NAME, false ) )
+        {
+            final HttpBindManager httpBindManager = HttpBindManager.getInstance();
+            if ( httpBindManager.isHttpBindEnabled() && httpBindManager.getHttpBindSecurePort() > 0 && httpBindManager.getHttpBindSecurePort() != publicPort )
+            {
+                httpsPort = httpBindManager.getHttpBindSecurePort();
+            }
+            else
+            {
+                Log.warn( "Not sharing port {} with HTTPS: the HTTPS listener of the HTTP binding is disabled, or uses the same port.", publicPort );
+            }
+        }
+        final IceTcpGuard guard = new IceTcpGuard( publicPort, internalPort, sslTcp, httpsPort, timingWheel );
+        try
+        {
+            guard.start();
+        }
+        catch ( IOException e )
+        {
+            Log.warn( "Unable to accept ICE-TCP connections on port {}. The TCP harvester accepts connections without limits.", publicPort, e );
+            return;
+        }
+
+        this.iceTcpGuard = guard;
+        applyIceTcpGuardPorts();
+    }
+
+    /**
+     * Moves the TCP harvester to the internal port of the ICE-TCP guard, and has it advertise the public port of the
+     * guard (unless a mapped port is configured explicitly). Invoked when the guard starts, and whenever a change of
+     * the TCP port properties would otherwise move the harvester away from the guard.
+     */
+    private void applyIceTcpGuardPorts()
+    {
+        final IceTcpGuard guard = iceTcpGuard;
+        if ( guard == null )
+        {
+            return;
+        }
+        LibJitsi.getConfigurationService().setProperty( IceUdpTransportManager.TCP_HARVESTER_PORT, String.valueOf( guard.getInternalPort() ) );
+        final String mappedPort = JiveGlobals.getProperty( TCP_MAPPED_PORT_PROPERTY_NAME );
+        LibJitsi.getConfigurationService().setProperty( IceUdpTransportManager.TCP_HARVESTER_MAPPED_PORT, mappedPort != null ? mappedPort : String.valueOf( guard.getPublicPort() ) );
+    }
+
+    /**
+     * Returns the loader of the native libraries that are shipped with the plugin.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The native library loader, or <tt>null</tt>.
+     */
+    public NativeLibraryLoader getNativeLibraryLoader()
+    {
+        return nativeLibraryLoader;
+    }
+
+    /**
+     * Returns the guard that accepts and limits ICE-TCP connections on behalf of the TCP harvester.
+     *
+     * When the plugin is not running, or when the guard is not enabled, <tt>null</tt> will be returned.
+     *
+     * @return The ICE-TCP guard, or <tt>null</tt>.
+     */
+    public IceTcpGuard getIceTcpGuard()
+    {
+        return iceTcpGuard;
+    }
+
+    /**
+     * Returns the scheduler of the expiry of state that the plugin keeps per conference, endpoint or request.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The timing wheel, or <tt>null</tt> when not running.
+     */
+    public TimingWheel getTimingWheel()
+    {
+        return timingWheel;
+    }
+
+    /**
+     * Returns the component that warms up the Videobridge when a multi-user chat room gets its first occupant.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The conference preallocator, or <tt>null</tt> when not running.
+     */
+    public ConferencePreallocator getConferencePreallocator()
+    {
+        return conferencePreallocator;
+    }
+
+    /**
+     * Returns the watcher that detects changes in the network interfaces and addresses of this host.
+     *
+     * When the plugin is not running, <tt>null</tt> will be returned.
+     *
+     * @return The network change watcher, or <tt>null</tt> when not running.
+     */
+    public NetworkChangeWatcher getNetworkChangeWatcher()
+    {
+        return networkChangeWatcher;
+    }
+
+    /**
+     * Sets either the 'allowed' or the 'blocked' ice4j property. ice4j ignores the 'blocked' property when the 'allowed'
+     * property is set, so only one of them is used.
+     */
+    private static void putFilterProperties( final Map<String, String> properties, final String allowedPropertyName, final String blockedPropertyName, final List<String> allowed, final List<String> blocked )
+    {
+        if ( !allowed.isEmpty() )
+        {
+            properties.put( allowedPropertyName, String.join( ";", allowed ) );
+            properties.put( blockedPropertyName, null );
+        }
+        else
+        {
+            properties.put( allowedPropertyName, null );
+            properties.put( blockedPropertyName, String.join( ";", blocked ) );
+        }
+    }
+
+    /**
+     * Applies the configured port range to every component that allocates media ports.
+     *
+     * libjitsi's DefaultStreamConnector (used for channels that do not use ICE) and the port tracker of the
+     * TransportManager (used by the ICE harvesters) each keep their own copy of the range. Both are set from here only,
+     * together with the plugin's port allocator, which steers the port tracker (see {@link OpenfireComponentImpl}), and
+     * the tracker of the usage of the range. The DefaultStreamConnector cannot be steered: it searches the range by
+     * itself, and the allocator only learns of the ports that it bound (see {@link PortAllocator}).
+     */
+    private void applyPortRange()
+    {
+        // Note that libjitsi's defaults (5000-6000) are different from JVB's defaults (10001-20000). Values are always
+        // set explicitly (instead of removing them when the Openfire property is deleted) to prevent the wrong
+        // defaults from being used!
+        int minPort = JiveGlobals.getIntProperty( MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE );
+        int maxPort = JiveGlobals.getIntProperty( MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE );
+        if ( !PortUsageTracker.isValidRange( minPort, maxPort ) )
+        {
+            if ( portAllocator == null )
+            {
+                Log.warn( "Unable to apply invalid UDP port range {} - {}.", minPort, maxPort );
+                return;
+            }
+
+            // Keep the range that is in use. This is re-applied (rather than nothing being done) so that every
+            // component uses the same range, even if the range of the plugin was a fallback for an invalid value.
+            Log.warn( "Ignoring invalid UDP port range {} - {}. Keeping the range {} - {}.", minPort, maxPort, portAllocator.getMinPort(), portAllocator.getMaxPort() );
+            minPort = portAllocator.getMinPort();
+            maxPort = portAllocator.getMaxPort();
+        }
+
+        LibJitsi.getConfigurationService().setProperty( DefaultStreamConnector.MIN_PORT_NUMBER_PROPERTY_NAME, String.valueOf( minPort ) );
+        LibJitsi.getConfigurationService().setProperty( DefaultStreamConnector.MAX_PORT_NUMBER_PROPERTY_NAME, String.valueOf( maxPort ) );
+        TransportManager.portTracker.setRange( minPort, maxPort );
+        if ( portAllocator != null )
+        {
+            portAllocator.setRange( minPort, maxPort );
+        }
+        if ( portUsageTracker != null )
+        {
+            portUsageTracker.setRange( minPort, maxPort );
+        }
+        FlightRecorderEvents.portRangeChanged( minPort, maxPort );
+    }
+
+    /**
+     * Checks whether we have folder with extracted natives, if missing
+     * find the appropriate jar file and extract them. Normally this is
+     * done once when plugin is installed or updated.
+     * The extracted natives are loaded by {@link #nativeLibraryLoader},
+     * when the features that need them are first used. That requires the
+     * folder to be in java.library.path of the JVM: a warning is logged
+     * when it is not.
+     */
+    private void checkNatives() throws Exception
+    {
+        // Find the root path of the class that will be our plugin lib folder.
+        String binaryPath =
+            (new URL(ComponentImpl.class.getProtectionDomain()
+                .getCodeSource().getLocation(), ".")).openConnection()
+                .getPermission().getName();
+
+        nativeLibraryLoader = NativeLibraryLoader.create( new File( binaryPath ) );
+    }
+
+    /**
+     * Writes a batch of property changes, and applies the resulting configuration to the Videobridge once.
+     *
+     * While the changes are written, the reaction to property events is deferred. Afterwards, each affected part of
+     * the configuration is applied once (for example, the network filter is compiled once, even when all four of its
+     * properties changed), while Colibri requests are held off, so that they never observe a partially applied
+     * configuration.
+     *
+     * @param changes property values (strings or lists of strings) by name, where a null value denotes a deletion
+     *                (cannot be null).
+     */
+    void applyBatch( final Map<String, Object> changes )
+    {
+        synchronized ( batchLock )
+        {
+            synchronized ( deferLock )
+            {
+                deferredProperties = new LinkedHashSet<>();
+            }
+
+            Set<String> deferred = null;
+            try
+            {
+                ConfigurationBatch.write( changes );
+            }
+            finally
+            {
+                synchronized ( deferLock )
+                {
+                    deferred = deferredProperties;
+                    deferredProperties = null;
+                }
+            }
+
+            // List properties are stored (and raise events) as child properties. Include the changed properties
+            // themselves, so that every change in the batch is applied.
+            deferred.addAll( changes.keySet() );
+
+            final ClusteredConfiguration clusteredConfiguration = this.clusteredConfiguration;
+            if ( clusteredConfiguration != null && clusteredConfiguration.isActive() )
+            {
+                // Publishes a new version, which every node (including this one) applies as a whole.
+                clusteredConfiguration.requestPublication( deferred );
+                clusteredConfiguration.synchronize();
+                return;
+            }
+
+            applyProperties( deferred, changes );
+        }
+    }
+
+    /**
+     * Applies changed properties to the Videobridge. Each affected part of the configuration is applied once, while
+     * Colibri requests are held off.
+     *
+     * @param properties the names of the changed properties (cannot be null).
+     * @param changes the values of (some of) the changed properties, where a null value denotes a deletion. The
+     *                current value is used for properties that are not in this map (cannot be null).
+     */
+    void applyProperties( final Collection<String> properties, final Map<String, Object> changes )
+    {
+        final OpenfireComponentImpl component = this.component;
+        final Lock lock = component == null ? null : component.getConfigurationLock().writeLock();
+        if ( lock != null )
+        {
+            lock.lock();
+        }
+        try
+        {
+            final Set<String> applied = new HashSet<>();
+            for ( final String property : properties )
+            {
+                if ( !applied.add( getApplyGroup( property ) ) )
+                {
+                    continue;
+                }
+                final String value = JiveGlobals.getProperty( property );
+                final boolean deleted = changes.containsKey( property ) ? changes.get( property ) == null : value == null;
+                try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.propertyApply( property, deleted ) )
+                {
+                    if ( deleted )
+                    {
+                        applyPropertyDeleted( property, Collections.emptyMap() );
+                    }
+                    else
+                    {
+                        applyPropertySet( property, Collections.singletonMap( "value", value ) );
+                    }
+                }
+            }
+            Log.debug( "Applied {} property changes ({} distinct configuration changes).", properties.size(), applied.size() );
+        }
+        finally
+        {
+            if ( lock != null )
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records a property change for later application, when a configuration batch is being written, or when the
+     * configuration is shared by a cluster.
+     *
+     * @return true if the change is deferred, false if it is to be applied immediately.
+     */
+    private boolean defer( final String property )
+    {
+        synchronized ( deferLock )
+        {
+            if ( deferredProperties != null )
+            {
+                deferredProperties.add( property );
+                return true;
+            }
+        }
+
+        // In a cluster, changes are applied when a new version of the configuration is published.
+        final ClusteredConfiguration clusteredConfiguration = this.clusteredConfiguration;
+        return clusteredConfiguration != null && clusteredConfiguration.isActive() && clusteredConfiguration.defer( Collections.singleton( property ) );
+    }
+
+    /**
+     * Returns an identifier for the part of the configuration that is applied when a property changes. Properties
+     * that share an identifier are applied by the same code, which reads all of them.
+     */
+    private static String getApplyGroup( final String property )
+    {
+        if ( ForwardingPolicy.isPolicyProperty( property ) )
+        {
+            return "forwarding-policy";
+        }
+
+        switch ( property )
+        {
+            case INTERFACES_ALLOWED_PROPERTY_NAME: // intended fall-through
+            case INTERFACES_BLOCKED_PROPERTY_NAME:
+            case ADDRESSES_ALLOWED_PROPERTY_NAME:
+            case ADDRESSES_BLOCKED_PROPERTY_NAME:
+                return "network-filter";
+
+            case STUN_HARVESTER_ADDRESS_PROPERTY_NAME: // intended fall-through
+            case STUN_HARVESTER_PORT_PROPERTY_NAME:
+                return "stun-harvester";
+
+            case SINGLE_PORT_ENABLED_PROPERTY_NAME: // intended fall-through
+            case SINGLE_PORT_NUMBER_PROPERTY_NAME:
+                return "single-port";
+
+            case MIN_PORT_NUMBER_PROPERTY_NAME: // intended fall-through
+            case MAX_PORT_NUMBER_PROPERTY_NAME:
+                return "port-range";
+
+            case BridgeExecutor.THREADS_PROPERTY_NAME: // intended fall-through
+            case BridgeExecutor.QUEUE_CAPACITY_PROPERTY_NAME:
+            case BridgeExecutor.AUTOTUNE_PROPERTY_NAME:
+                return "executor";
+
+            default:
+                return property;
+        }
+    }
+
+    /**
+     * Applies a change of the forwarding policy to ongoing conferences.
+     */
+    private void reapplyForwardingPolicy()
+    {
+        if ( component != null && localColibriChannel != null )
+        {
+            component.getForwardingPolicy().reapply( localColibriChannel );
+        }
+    }
+
+    /**
+     * A property was set. The parameter map <tt>params</tt> will contain the
+     * the value of the property under the key <tt>value</tt>.
+     *
+     * @param property the name of the property.
+     * @param params event parameters.
+     */
+    public void propertySet(String property, Map params)
+    {
+        if ( defer( property ) )
+        {
+            return;
+        }
+
+        try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.propertyApply( property, false ) )
+        {
+            applyPropertySet( property, params );
+        }
+    }
+
+    private void applyPropertySet(String property, Map params)
+    {
+        if ( ForwardingPolicy.isPolicyProperty( property ) )
+        {
+            reapplyForwardingPolicy();
+            return;
+        }
+
+        switch ( property )
+        {
+            case INTERFACES_ALLOWED_PROPERTY_NAME: // intended fall-through
+            case INTERFACES_BLOCKED_PROPERTY_NAME:
+            case ADDRESSES_ALLOWED_PROPERTY_NAME:
+            case ADDRESSES_BLOCKED_PROPERTY_NAME:
+                applyNetworkFilter();
+                break;
+
+            case AWS_HARVESTER_CONFIG_PROPERTY_NAME:
                 switch ( (String) params.get( "value" ) ) {
                     case "disabled":
                         System.setProperty( MappingCandidateHarvesters.DISABLE_AWS_HARVESTER_PNAME, "true" );
@@ -625,40 +1336,33 @@ public class PluginImpl
                 System.setProperty( StackProperties.USE_DYNAMIC_HOST_HARVESTER, Boolean.toString( JiveGlobals.getBooleanProperty( MINMAX_PORT_ENABLED_PROPERTY_NAME, true ) ) );
                 break;
 
+            case MIN_PORT_NUMBER_PROPERTY_NAME: // intended fall-through
             case MAX_PORT_NUMBER_PROPERTY_NAME:
-                LibJitsi.getConfigurationService().setProperty(
-                    DefaultStreamConnector.MAX_PORT_NUMBER_PROPERTY_NAME,
-                    (String) params.get( "value" )
-                );
-
-                // TODO: The port range is set both for DefaultStreamConnector, but also in the TransportManager. Figure out what's the difference.
-                TransportManager.portTracker.setRange(
-                    JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE),
-                    JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE)
-                );
+                applyPortRange();
                 break;
 
-            case MIN_PORT_NUMBER_PROPERTY_NAME:
+            case TCP_ENABLED_PROPERTY_NAME:
                 LibJitsi.getConfigurationService().setProperty(
-                    DefaultStreamConnector.MIN_PORT_NUMBER_PROPERTY_NAME,
-                    (String) params.get( "value" )
-                );
-
-                // TODO: The port range is set both for DefaultStreamConnector, but also in the TransportManager. Figure out what's the difference.
-                TransportManager.portTracker.setRange(
-                    JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE),
-                    JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE)
+                    IceUdpTransportManager.DISABLE_TCP_HARVESTER,
+                    !Boolean.parseBoolean( (String) params.get( "value" ) )
                 );
                 break;
 
-            case TCP_ENABLED_PROPERTY_NAME:
+            case PACKET_QUEUE_CAPACITY_PROPERTY_NAME:
+                // libjitsi reads the capacity once. The change takes effect when the plugin is restarted.
                 LibJitsi.getConfigurationService().setProperty(
-                    IceUdpTransportManager.DISABLE_TCP_HARVESTER,
-                    !Boolean.parseBoolean( (String) params.get( "value" ) )
+                    RuntimeConfiguration.PACKET_QUEUE_CAPACITY_PNAME,
+                    (String) params.get( "value" )
                 );
                 break;
 
             case TCP_PORT_PROPERTY_NAME:
+                if ( iceTcpGuard != null )
+                {
+                    // The harvester stays on the internal port of the guard. The guard binds the new port when the plugin is restarted.
+                    applyIceTcpGuardPorts();
+                    break;
+                }
                 LibJitsi.getConfigurationService().setProperty(
                     IceUdpTransportManager.TCP_HARVESTER_PORT,
                     (String) params.get( "value" )
@@ -678,6 +1382,65 @@ public class PluginImpl
                     Boolean.parseBoolean( (String) params.get( "value" ) )
                 );
                 break;
+
+            case BridgeMetricsSampler.SAMPLE_INTERVAL_PROPERTY_NAME:
+                if ( metricsSampler != null )
+                {
+                    metricsSampler.start(); // reschedules with the new interval.
+                }
+                break;
+
+            case MetricsHistoryWriter.WRITE_INTERVAL_PROPERTY_NAME:
+                if ( metricsHistoryWriter != null )
+                {
+                    metricsHistoryWriter.start(); // reschedules with the new interval.
+                }
+                break;
+
+            case PortUsageTracker.SCAN_INTERVAL_PROPERTY_NAME:
+                if ( portUsageTracker != null )
+                {
+                    portUsageTracker.start(); // reschedules with the new interval.
+                }
+                break;
+
+            case PortAllocator.COOLDOWN_PROPERTY_NAME:
+                if ( portAllocator != null )
+                {
+                    portAllocator.reloadCooldown();
+                }
+                break;
+
+            case TimingWheel.TICK_PROPERTY_NAME: // intended fall-through
+            case TimingWheel.SLOTS_PROPERTY_NAME:
+                if ( timingWheel != null )
+                {
+                    timingWheel.start(); // reconfigures, retaining scheduled timeouts.
+                }
+                break;
+
+            case NetworkChangeWatcher.INTERVAL_PROPERTY_NAME:
+                if ( networkChangeWatcher != null )
+                {
+                    networkChangeWatcher.start(); // reschedules with the new interval.
+                }
+                break;
+
+            case SelfTestProbe.INTERVAL_PROPERTY_NAME:
+                if ( selfTestProbe != null )
+                {
+                    selfTestProbe.start(); // reschedules with the new interval.
+                }
+                break;
+
+            case BridgeExecutor.THREADS_PROPERTY_NAME: // intended fall-through
+            case BridgeExecutor.QUEUE_CAPACITY_PROPERTY_NAME:
+            case BridgeExecutor.AUTOTUNE_PROPERTY_NAME:
+                if ( executor != null )
+                {
+                    executor.reload(); // resizes the pool while it is in use.
+                }
+                break;
         }
     }
 
@@ -689,22 +1452,32 @@ public class PluginImpl
      */
     public void propertyDeleted(String property, Map params)
     {
-        switch ( property )
+        if ( defer( property ) )
         {
-            case INTERFACES_ALLOWED_PROPERTY_NAME:
-                System.clearProperty( StackProperties.ALLOWED_INTERFACES );
-                break;
+            return;
+        }
 
-            case INTERFACES_BLOCKED_PROPERTY_NAME:
-                System.clearProperty( StackProperties.BLOCKED_INTERFACES );
-                break;
+        try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.propertyApply( property, true ) )
+        {
+            applyPropertyDeleted( property, params );
+        }
+    }
 
-            case ADDRESSES_ALLOWED_PROPERTY_NAME:
-                System.clearProperty( StackProperties.ALLOWED_ADDRESSES );
-                break;
+    private void applyPropertyDeleted(String property, Map params)
+    {
+        if ( ForwardingPolicy.isPolicyProperty( property ) )
+        {
+            reapplyForwardingPolicy();
+            return;
+        }
 
+        switch ( property )
+        {
+            case INTERFACES_ALLOWED_PROPERTY_NAME: // intended fall-through
+            case INTERFACES_BLOCKED_PROPERTY_NAME:
+            case ADDRESSES_ALLOWED_PROPERTY_NAME:
             case ADDRESSES_BLOCKED_PROPERTY_NAME:
-                System.clearProperty( StackProperties.BLOCKED_ADDRESSES );
+                applyNetworkFilter();
                 break;
 
             case AWS_HARVESTER_CONFIG_PROPERTY_NAME:
@@ -745,49 +1518,100 @@ public class PluginImpl
                 System.setProperty( StackProperties.USE_DYNAMIC_HOST_HARVESTER, Boolean.toString( JiveGlobals.getBooleanProperty( MINMAX_PORT_ENABLED_PROPERTY_NAME, true ) ) );
                 break;
 
+            case MIN_PORT_NUMBER_PROPERTY_NAME: // intended fall-through
             case MAX_PORT_NUMBER_PROPERTY_NAME:
-                LibJitsi.getConfigurationService().setProperty(
-                    DefaultStreamConnector.MAX_PORT_NUMBER_PROPERTY_NAME,
-                    String.valueOf( RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE ) // note that ĺibjitsi's default (6000) is different from JVB's default (20000). We need to manually set a value (instead of removing the value) to prevent the wrong default to be used!
-                );
-
-                // TODO: The port range is set both for DefaultStreamConnector, but also in the TransportManager. Figure out what's the difference.
-                TransportManager.portTracker.setRange(
-                    JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE),
-                    JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE) // note that ĺibjitsi's default (6000) is different from JVB's default (20000). We need to manually set a value (instead of removing the value) to prevent the wrong default to be used!
-                );
-
-                break;
-
-            case MIN_PORT_NUMBER_PROPERTY_NAME:
-                LibJitsi.getConfigurationService().setProperty(
-                    DefaultStreamConnector.MIN_PORT_NUMBER_PROPERTY_NAME,
-                    String.valueOf( RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE ) // note that ĺibjitsi's default (5000) is different from JVB's default (10001). We need to manually set a value (instead of removing the value) to prevent the wrong default to be used!
-                );
-
-                // TODO: The port range is set both for DefaultStreamConnector, but also in the TransportManager. Figure out what's the difference.
-                TransportManager.portTracker.setRange(
-                    JiveGlobals.getIntProperty(MIN_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MIN_PORT_DEFAULT_VALUE), // note that ĺibjitsi's default (5000) is different from JVB's default (10001). We need to manually set a value (instead of removing the value) to prevent the wrong default to be used!
-                    JiveGlobals.getIntProperty(MAX_PORT_NUMBER_PROPERTY_NAME, RuntimeConfiguration.MAX_PORT_DEFAULT_VALUE)
-                );
-
+                applyPortRange();
                 break;
 
             case TCP_ENABLED_PROPERTY_NAME:
                 LibJitsi.getConfigurationService().removeProperty( IceUdpTransportManager.DISABLE_TCP_HARVESTER );
                 break;
 
+            case PACKET_QUEUE_CAPACITY_PROPERTY_NAME:
+                LibJitsi.getConfigurationService().removeProperty( RuntimeConfiguration.PACKET_QUEUE_CAPACITY_PNAME );
+                break;
+
             case TCP_PORT_PROPERTY_NAME:
+                if ( iceTcpGuard != null )
+                {
+                    applyIceTcpGuardPorts();
+                    break;
+                }
                 LibJitsi.getConfigurationService().removeProperty( IceUdpTransportManager.TCP_HARVESTER_PORT );
                 break;
 
             case TCP_MAPPED_PORT_PROPERTY_NAME:
+                if ( iceTcpGuard != null )
+                {
+                    // Without an explicit mapped port, the harvester advertises the public port of the guard.
+                    applyIceTcpGuardPorts();
+                    break;
+                }
                 LibJitsi.getConfigurationService().removeProperty( IceUdpTransportManager.TCP_HARVESTER_MAPPED_PORT );
                 break;
 
             case TCP_SSLTCP_ENABLED_PROPERTY_NAME:
                 LibJitsi.getConfigurationService().removeProperty( IceUdpTransportManager.TCP_HARVESTER_SSLTCP );
                 break;
+
+            case BridgeMetricsSampler.SAMPLE_INTERVAL_PROPERTY_NAME:
+                if ( metricsSampler != null )
+                {
+                    metricsSampler.start(); // reschedules with the default interval.
+                }
+                break;
+
+            case MetricsHistoryWriter.WRITE_INTERVAL_PROPERTY_NAME:
+                if ( metricsHistoryWriter != null )
+                {
+                    metricsHistoryWriter.start(); // reschedules with the default interval.
+                }
+                break;
+
+            case PortUsageTracker.SCAN_INTERVAL_PROPERTY_NAME:
+                if ( portUsageTracker != null )
+                {
+                    portUsageTracker.start(); // reschedules with the default interval.
+                }
+                break;
+
+            case PortAllocator.COOLDOWN_PROPERTY_NAME:
+                if ( portAllocator != null )
+                {
+                    portAllocator.reloadCooldown();
+                }
+                break;
+
+            case TimingWheel.TICK_PROPERTY_NAME: // intended fall-through
+            case TimingWheel.SLOTS_PROPERTY_NAME:
+                if ( timingWheel != null )
+                {
+                    timingWheel.start(); // reconfigures, retaining scheduled timeouts.
+                }
+                break;
+
+            case NetworkChangeWatcher.INTERVAL_PROPERTY_NAME:
+                if ( networkChangeWatcher != null )
+                {
+                    networkChangeWatcher.start(); // reschedules with the default interval.
+                }
+                break;
+
+            case SelfTestProbe.INTERVAL_PROPERTY_NAME:
+                if ( selfTestProbe != null )
+                {
+                    selfTestProbe.start(); // reschedules with the default interval.
+                }
+                break;
+
+            case BridgeExecutor.THREADS_PROPERTY_NAME: // intended fall-through
+            case BridgeExecutor.QUEUE_CAPACITY_PROPERTY_NAME:
+            case BridgeExecutor.AUTOTUNE_PROPERTY_NAME:
+                if ( executor != null )
+                {
+                    executor.reload(); // resizes the pool to the default sizing.
+                }
+                break;
         }
     }
 
@@ -0,0 +1,306 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+
+/**
+ * Hands out UDP port numbers of the range that is configured for dynamically allocated media ports.
+ *
+ * Ports are handed out round-robin, as blocks of consecutive ports (the Videobridge binds the ports for the transports
+ * of one request consecutively, starting at the port that it is pointed at). A port is skipped when it is in use, or
+ * when it was handed out, bound or released less than a cooldown period ago. This prevents a port from being reused
+ * while the kernel might still hold state for its previous use, or while packets for a previous session might still
+ * arrive on it.
+ *
+ * The allocator is the single authority over the state of the ports in the range, and does not use locks: a port is
+ * reserved by atomically replacing the moment at which it was last used, which fails when another caller reserved it
+ * first. A block of which not every port could be reserved is released again. A change of the range replaces all
+ * state at once, so callers never observe a partially updated range.
+ *
+ * Only the ports of the ICE harvesters of the Videobridge are steered by this allocator. Channels that do not use ICE
+ * (raw UDP) are bound by libjitsi's DefaultStreamConnector, which searches the same range independently. The ports of
+ * those channels are recorded when they are bound (see {@link #bound(int)}), so that they are not handed out while in
+ * use, but they are not spread over the range by this allocator.
+ */
+public class PortAllocator
+{
+    /**
+     * The name of the Openfire property that defines the period (in milliseconds) after which a port that was handed
+     * out or released can be handed out again.
+     */
+    public static final String COOLDOWN_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PORT_COOLDOWN";
+
+    /**
+     * The default period (in milliseconds) after which a port that was handed out or released can be handed out again.
+     */
+    public static final long COOLDOWN_DEFAULT_VALUE = 60000;
+
+    /**
+     * The state of the ports of one range.
+     */
+    private static final class Range
+    {
+        /**
+         * The lowest port number of the range.
+         */
+        final int minPort;
+
+        /**
+         * The highest port number of the range.
+         */
+        final int maxPort;
+
+        /**
+         * The index (in the range) of the port at which the next search for available ports starts. This is a hint
+         * only: concurrent callers can start their search at the same index.
+         */
+        final AtomicInteger cursor = new AtomicInteger();
+
+        /**
+         * For each port in the range, the moment (in milliseconds since the epoch) at which it was last handed out,
+         * bound or released, or zero if never.
+         */
+        final AtomicLongArray lastUsed;
+
+        Range( final int minPort, final int maxPort )
+        {
+            this.minPort = minPort;
+            this.maxPort = maxPort;
+            this.lastUsed = new AtomicLongArray( maxPort - minPort + 1 );
+        }
+    }
+
+    /**
+     * Tells if a port is currently bound (can be null, in which case only the cooldown period is considered).
+     */
+    private final IntPredicate inUse;
+
+    private final AtomicLong allocations = new AtomicLong();
+
+    private final AtomicLong exhaustions = new AtomicLong();
+
+    private final AtomicLong bindFailures = new AtomicLong();
+
+    /**
+     * The range from which ports are handed out, and the state of its ports.
+     */
+    private final AtomicReference<Range> range = new AtomicReference<>();
+
+    /**
+     * The cooldown period, in milliseconds.
+     */
+    private volatile long cooldown = getConfiguredCooldown();
+
+    public PortAllocator( final int minPort, final int maxPort, final IntPredicate inUse )
+    {
+        this.inUse = inUse;
+        setRange( minPort, maxPort );
+    }
+
+    /**
+     * Returns the cooldown period, as configured in Openfire.
+     *
+     * @return a period in milliseconds.
+     */
+    public static long getConfiguredCooldown()
+    {
+        return Math.max( 0, JiveGlobals.getLongProperty( COOLDOWN_PROPERTY_NAME, COOLDOWN_DEFAULT_VALUE ) );
+    }
+
+    /**
+     * Re-reads the cooldown period from the Openfire configuration.
+     */
+    public void reloadCooldown()
+    {
+        cooldown = getConfiguredCooldown();
+    }
+
+    /**
+     * Changes the range from which ports are handed out. This resets the state of all ports.
+     *
+     * @param minPort the lowest port number of the range.
+     * @param maxPort the highest port number of the range.
+     */
+    public void setRange( final int minPort, final int maxPort )
+    {
+        if ( !PortUsageTracker.isValidRange( minPort, maxPort ) )
+        {
+            throw new IllegalArgumentException( "Invalid port range: " + minPort + " - " + maxPort );
+        }
+        range.set( new Range( minPort, maxPort ) );
+    }
+
+    public int getMinPort()
+    {
+        return range.get().minPort;
+    }
+
+    public int getMaxPort()
+    {
+        return range.get().maxPort;
+    }
+
+    /**
+     * Hands out a port.
+     *
+     * @return a port number, or -1 when all ports of the range are in use or cooling down.
+     */
+    public int allocate()
+    {
+        return allocate( 1 );
+    }
+
+    /**
+     * Hands out a block of consecutive ports, which are all available.
+     *
+     * @param count the number of ports in the block (at least one).
+     * @return the first port number of the block, or -1 when no such block is available.
+     */
+    public int allocate( final int count )
+    {
+        final Range range = this.range.get();
+        final int capacity = range.lastUsed.length();
+        final int length = Math.max( 1, count );
+        final long now = System.currentTimeMillis();
+        final int cursor = range.cursor.get();
+
+        for ( int attempt = 0; attempt < capacity; attempt++ )
+        {
+            final int start = ( cursor + attempt ) % capacity;
+            if ( start + length > capacity )
+            {
+                continue; // The Videobridge would wrap around to the start of the range.
+            }
+
+            final int reserved = reserve( range, start, length, now );
+            if ( reserved < length )
+            {
+                // Blocks that start before the unavailable port would contain it.
+                attempt += reserved;
+                continue;
+            }
+
+            range.cursor.set( ( start + length ) % capacity );
+            allocations.incrementAndGet();
+            return range.minPort + start;
+        }
+
+        exhaustions.incrementAndGet();
+        return -1;
+    }
+
+    /**
+     * Reserves the ports of a block, by setting the moment at which they were last used. When a port of the block is
+     * not available, or is reserved concurrently by another caller, the ports of the block that were already reserved
+     * are restored.
+     *
+     * @return the number of ports that were reserved: 'length' when the entire block was reserved, otherwise the
+     * index (in the block) of the first port that was not available.
+     */
+    private int reserve( final Range range, final int start, final int length, final long now )
+    {
+        final long[] previous = new long[ length ];
+        for ( int offset = 0; offset < length; offset++ )
+        {
+            final int index = start + offset;
+            final long last = range.lastUsed.get( index );
+            if ( !isAvailable( range, index, last, now ) || !range.lastUsed.compareAndSet( index, last, now ) )
+            {
+                for ( int undo = 0; undo < offset; undo++ )
+                {
+                    // Only restores ports that were not bound or released in the meantime.
+                    range.lastUsed.compareAndSet( start + undo, now, previous[ undo ] );
+                }
+                return offset;
+            }
+            previous[ offset ] = last;
+        }
+        return length;
+    }
+
+    private boolean isAvailable( final Range range, final int index, final long last, final long now )
+    {
+        if ( last != 0 && now - last < cooldown )
+        {
+            return false;
+        }
+        return inUse == null || !inUse.test( range.minPort + index );
+    }
+
+    /**
+     * Records that a port has been bound. Whether it was handed out by this allocator or not, it is not handed out
+     * until its cooldown period has passed (and after that, not while it is in use).
+     *
+     * @param port the port number. Ports outside of the range are ignored.
+     */
+    public void bound( final int port )
+    {
+        touch( port );
+    }
+
+    /**
+     * Records that a port has been released, which starts its cooldown period.
+     *
+     * @param port the port number. Ports outside of the range are ignored.
+     */
+    public void released( final int port )
+    {
+        touch( port );
+    }
+
+    /**
+     * Records that a port that was handed out could not be bound. The port remains in cooldown, as it apparently is
+     * used by something else.
+     *
+     * @param port the port number.
+     */
+    public void bindFailed( final int port )
+    {
+        bindFailures.incrementAndGet();
+        touch( port );
+    }
+
+    private void touch( final int port )
+    {
+        final Range range = this.range.get();
+        if ( port >= range.minPort && port <= range.maxPort )
+        {
+            range.lastUsed.set( port - range.minPort, System.currentTimeMillis() );
+        }
+    }
+
+    /**
+     * Returns the number of ports (or blocks of ports) that were handed out.
+     *
+     * @return a count.
+     */
+    public long getAllocations()
+    {
+        return allocations.get();
+    }
+
+    /**
+     * Returns the number of times that no port could be handed out.
+     *
+     * @return a count.
+     */
+    public long getExhaustions()
+    {
+        return exhaustions.get();
+    }
+
+    /**
+     * Returns the number of ports that were handed out, but could not be bound.
+     *
+     * @return a count.
+     */
+    public long getBindFailures()
+    {
+        return bindFailures.get();
+    }
+}
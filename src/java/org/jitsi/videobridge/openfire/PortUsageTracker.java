@@ -0,0 +1,633 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.TimerTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Tracks which UDP ports of the range that is configured for dynamically allocated media ports are in use.
+ *
+ * The usage of each port in the range is kept in a bitmap (one bit per port). Allocations are recorded from the
+ * candidates in the responses of the Videobridge to Colibri requests, and bind failures from its error responses. As
+ * the Videobridge does not report the ports that it releases, this tracker also periodically reconciles the bitmap
+ * with the UDP sockets that are bound on the host, as reported by the operating system. On hosts where that
+ * information is not available (everywhere but on Linux), released ports are not detected.
+ *
+ * When the utilization of the range crosses the configured thresholds, a warning is logged. A subsequent warning is
+ * only logged after utilization dropped below the threshold again.
+ */
+public class PortUsageTracker
+{
+    private static final Logger Log = LoggerFactory.getLogger( PortUsageTracker.class );
+
+    /**
+     * The name of the Openfire property that defines the utilization (in percent) of the port range above which a
+     * warning is logged.
+     */
+    public static final String WARNING_THRESHOLD_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PORT_USAGE_WARNING_THRESHOLD";
+
+    /**
+     * The default utilization (in percent) of the port range above which a warning is logged.
+     */
+    public static final int WARNING_THRESHOLD_DEFAULT_VALUE = 80;
+
+    /**
+     * The name of the Openfire property that defines the utilization (in percent) of the port range above which an
+     * error is logged.
+     */
+    public static final String CRITICAL_THRESHOLD_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PORT_USAGE_CRITICAL_THRESHOLD";
+
+    /**
+     * The default utilization (in percent) of the port range above which an error is logged.
+     */
+    public static final int CRITICAL_THRESHOLD_DEFAULT_VALUE = 95;
+
+    /**
+     * The name of the Openfire property that defines the interval (in milliseconds) in which port usage is reconciled
+     * with the sockets that are bound on the host.
+     */
+    public static final String SCAN_INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.PORT_USAGE_SCAN_INTERVAL";
+
+    /**
+     * The default interval (in milliseconds) in which port usage is reconciled with the sockets that are bound on the
+     * host.
+     */
+    public static final long SCAN_INTERVAL_DEFAULT_VALUE = 5000;
+
+    /**
+     * The files in which Linux lists the UDP sockets that are bound on the host.
+     */
+    private static final File[] PROC_NET_UDP = { new File( "/proc/net/udp" ), new File( "/proc/net/udp6" ) };
+
+    /**
+     * The severity of the utilization of the port range, relative to the configured thresholds.
+     */
+    public enum Level
+    {
+        NORMAL, WARNING, CRITICAL
+    }
+
+    /**
+     * The lowest port number of the tracked range.
+     */
+    private int minPort;
+
+    /**
+     * The highest port number of the tracked range.
+     */
+    private int maxPort;
+
+    /**
+     * One bit per port in the tracked range. A set bit denotes a port that is in use.
+     */
+    private long[] bitmap;
+
+    /**
+     * The number of bits that are set in {@link #bitmap}.
+     */
+    private int used;
+
+    /**
+     * The number of allocations that were recorded since the range was last set.
+     */
+    private long allocations;
+
+    /**
+     * The number of releases that were recorded since the range was last set.
+     */
+    private long releases;
+
+    /**
+     * The number of bind failures that were recorded since the range was last set.
+     */
+    private long bindFailures;
+
+    /**
+     * The severity of the utilization as last evaluated.
+     */
+    private Level level = Level.NORMAL;
+
+    /**
+     * The ports that were recorded as allocated since the scan that is in progress started, or null when no scan is in
+     * progress. Used to prevent a scan from undoing allocations that it did not observe.
+     */
+    private long[] allocatedDuringScan;
+
+    /**
+     * The ports that were recorded as released since the scan that is in progress started, or null when no scan is in
+     * progress. Used to prevent a scan from undoing releases that it did not observe.
+     */
+    private long[] releasedDuringScan;
+
+    /**
+     * The task that periodically reconciles port usage, or null when this tracker is not running.
+     */
+    private TimerTask task;
+
+    /**
+     * Notified of every port that is released (can be null).
+     */
+    private volatile IntConsumer releaseListener;
+
+    public PortUsageTracker( final int minPort, final int maxPort )
+    {
+        setRange( minPort, maxPort );
+    }
+
+    /**
+     * Returns the utilization (in percent) of the port range above which a warning is logged.
+     *
+     * @return a percentage.
+     */
+    public static int getWarningThreshold()
+    {
+        return JiveGlobals.getIntProperty( WARNING_THRESHOLD_PROPERTY_NAME, WARNING_THRESHOLD_DEFAULT_VALUE );
+    }
+
+    /**
+     * Returns the utilization (in percent) of the port range above which an error is logged.
+     *
+     * @return a percentage.
+     */
+    public static int getCriticalThreshold()
+    {
+        return JiveGlobals.getIntProperty( CRITICAL_THRESHOLD_PROPERTY_NAME, CRITICAL_THRESHOLD_DEFAULT_VALUE );
+    }
+
+    /**
+     * Returns the interval in which port usage is reconciled with the sockets that are bound on the host.
+     *
+     * @return an interval in milliseconds.
+     */
+    public static long getScanInterval()
+    {
+        return Math.max( 500, JiveGlobals.getLongProperty( SCAN_INTERVAL_PROPERTY_NAME, SCAN_INTERVAL_DEFAULT_VALUE ) );
+    }
+
+    /**
+     * Starts periodic reconciliation of port usage. Invoking this method on an instance that is already started
+     * causes the task to be rescheduled, which allows a change of the scan interval to be applied.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        if ( !PROC_NET_UDP[ 0 ].canRead() )
+        {
+            Log.debug( "Bound UDP sockets cannot be listed on this host. Only explicitly recorded port usage is tracked." );
+            return;
+        }
+
+        final long interval = getScanInterval();
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    scan();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while scanning UDP port usage.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, 0, interval );
+        Log.debug( "Started scanning UDP port usage every {}ms.", interval );
+    }
+
+    /**
+     * Stops periodic reconciliation of port usage.
+     */
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Registers a listener that is notified of every port that is released, either explicitly or as detected by a
+     * scan. Replaces any previously registered listener.
+     *
+     * @param releaseListener the listener (can be null to unregister).
+     */
+    public void setReleaseListener( final IntConsumer releaseListener )
+    {
+        this.releaseListener = releaseListener;
+    }
+
+    /**
+     * Checks if two port numbers form a valid range: both are valid port numbers, and the first does not exceed the
+     * second.
+     *
+     * @param minPort the lowest port number of the range.
+     * @param maxPort the highest port number of the range.
+     * @return true if the range is valid, otherwise false.
+     */
+    public static boolean isValidRange( final int minPort, final int maxPort )
+    {
+        return minPort >= 0 && maxPort <= 65535 && minPort <= maxPort;
+    }
+
+    /**
+     * Changes the tracked port range. This resets all usage information and counters.
+     *
+     * @param minPort the lowest port number of the range.
+     * @param maxPort the highest port number of the range.
+     */
+    public synchronized void setRange( final int minPort, final int maxPort )
+    {
+        if ( !isValidRange( minPort, maxPort ) )
+        {
+            throw new IllegalArgumentException( "Invalid port range: " + minPort + " - " + maxPort );
+        }
+        this.minPort = minPort;
+        this.maxPort = maxPort;
+        this.bitmap = new long[ ( maxPort - minPort + 64 ) / 64 ];
+        this.used = 0;
+        this.allocations = 0;
+        this.releases = 0;
+        this.bindFailures = 0;
+        this.level = Level.NORMAL;
+        this.allocatedDuringScan = null;
+        this.releasedDuringScan = null;
+    }
+
+    /**
+     * Records that a port has been allocated.
+     *
+     * @param port the port number.
+     * @return true if the port is in the tracked range and was not already in use, otherwise false.
+     */
+    public synchronized boolean allocated( final int port )
+    {
+        if ( port < minPort || port > maxPort )
+        {
+            return false;
+        }
+        final int index = port - minPort;
+        final long mask = 1L << index;
+        if ( ( bitmap[ index >>> 6 ] & mask ) != 0 )
+        {
+            return false;
+        }
+        bitmap[ index >>> 6 ] |= mask;
+        if ( allocatedDuringScan != null )
+        {
+            allocatedDuringScan[ index >>> 6 ] |= mask;
+            releasedDuringScan[ index >>> 6 ] &= ~mask;
+        }
+        used++;
+        allocations++;
+        evaluateThresholds();
+        return true;
+    }
+
+    /**
+     * Records that a port has been released.
+     *
+     * @param port the port number.
+     * @return true if the port is in the tracked range and was in use, otherwise false.
+     */
+    public boolean released( final int port )
+    {
+        synchronized ( this )
+        {
+            if ( port < minPort || port > maxPort )
+            {
+                return false;
+            }
+            final int index = port - minPort;
+            final long mask = 1L << index;
+            if ( ( bitmap[ index >>> 6 ] & mask ) == 0 )
+            {
+                return false;
+            }
+            bitmap[ index >>> 6 ] &= ~mask;
+            if ( releasedDuringScan != null )
+            {
+                releasedDuringScan[ index >>> 6 ] |= mask;
+                allocatedDuringScan[ index >>> 6 ] &= ~mask;
+            }
+            used--;
+            releases++;
+            evaluateThresholds();
+        }
+
+        // The listener is notified without holding the lock of this instance, as it might acquire locks of its own.
+        final IntConsumer listener = releaseListener;
+        if ( listener != null )
+        {
+            listener.accept( port );
+        }
+        return true;
+    }
+
+    /**
+     * Records that a port in the tracked range could not be bound.
+     *
+     * @param port the port number.
+     */
+    public synchronized void bindFailed( final int port )
+    {
+        if ( port >= minPort && port <= maxPort )
+        {
+            bindFailures++;
+        }
+    }
+
+    /**
+     * Replaces the usage information with the ports that are currently bound on the host. Differences with the
+     * previous usage information are recorded as allocations and releases. Allocations and releases that are recorded
+     * while the host is being scanned take precedence over what the scan observed.
+     */
+    protected void scan() throws IOException
+    {
+        final int min;
+        final int max;
+        synchronized ( this )
+        {
+            min = minPort;
+            max = maxPort;
+            beginScan();
+        }
+
+        final long[] observed = new long[ ( max - min + 64 ) / 64 ];
+        for ( final File file : PROC_NET_UDP )
+        {
+            if ( file.canRead() )
+            {
+                readBoundPorts( file, min, max, observed );
+            }
+        }
+
+        completeScan( min, max, observed );
+    }
+
+    /**
+     * Starts recording the allocations and releases that happen while a scan is in progress.
+     */
+    synchronized void beginScan()
+    {
+        allocatedDuringScan = new long[ bitmap.length ];
+        releasedDuringScan = new long[ bitmap.length ];
+    }
+
+    /**
+     * Replaces the usage information with the ports that a scan observed as bound, merged with the allocations and
+     * releases that were recorded since {@link #beginScan()}.
+     *
+     * @param min the lowest port number of the range that was scanned.
+     * @param max the highest port number of the range that was scanned.
+     * @param observed one bit per port in the scanned range, set for ports that were observed as bound.
+     */
+    void completeScan( final int min, final int max, final long[] observed )
+    {
+        final long[] removed = new long[ observed.length ];
+        synchronized ( this )
+        {
+            if ( min != minPort || max != maxPort || allocatedDuringScan == null )
+            {
+                return; // The range changed while scanning. The next scan will use the new range.
+            }
+            int count = 0;
+            for ( int i = 0; i < bitmap.length; i++ )
+            {
+                observed[ i ] = ( observed[ i ] | allocatedDuringScan[ i ] ) & ~releasedDuringScan[ i ];
+                allocations += Long.bitCount( observed[ i ] & ~bitmap[ i ] );
+                removed[ i ] = bitmap[ i ] & ~observed[ i ];
+                releases += Long.bitCount( removed[ i ] );
+                count += Long.bitCount( observed[ i ] );
+            }
+            bitmap = observed;
+            used = count;
+            allocatedDuringScan = null;
+            releasedDuringScan = null;
+            evaluateThresholds();
+        }
+
+        final IntConsumer listener = releaseListener;
+        if ( listener == null )
+        {
+            return;
+        }
+        for ( int i = 0; i < removed.length; i++ )
+        {
+            long bits = removed[ i ];
+            while ( bits != 0 )
+            {
+                listener.accept( min + i * 64 + Long.numberOfTrailingZeros( bits ) );
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Sets a bit for every port in the provided range that is listed as a local port in a /proc/net/udp(6) file.
+     */
+    private static void readBoundPorts( final File file, final int min, final int max, final long[] bitmap ) throws IOException
+    {
+        try ( BufferedReader reader = new BufferedReader( new FileReader( file ) ) )
+        {
+            reader.readLine(); // header
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                // Format: "  sl  local_address rem_address   st ...", where local_address is 'hex-address:hex-port'.
+                final String[] fields = line.trim().split( "\\s+", 3 );
+                if ( fields.length < 2 )
+                {
+                    continue;
+                }
+                final int colon = fields[ 1 ].lastIndexOf( ':' );
+                if ( colon < 0 )
+                {
+                    continue;
+                }
+                try
+                {
+                    final int port = Integer.parseInt( fields[ 1 ].substring( colon + 1 ), 16 );
+                    if ( port >= min && port <= max )
+                    {
+                        final int index = port - min;
+                        bitmap[ index >>> 6 ] |= 1L << index;
+                    }
+                }
+                catch ( NumberFormatException e )
+                {
+                    Log.trace( "Unable to parse line of {}: {}", file, line );
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares utilization with the configured thresholds, and logs when a threshold is crossed.
+     */
+    private void evaluateThresholds()
+    {
+        final double percentage = getUtilization() * 100;
+        final Level newLevel;
+        if ( percentage >= getCriticalThreshold() )
+        {
+            newLevel = Level.CRITICAL;
+        }
+        else if ( percentage >= getWarningThreshold() )
+        {
+            newLevel = Level.WARNING;
+        }
+        else
+        {
+            newLevel = Level.NORMAL;
+        }
+
+        if ( newLevel == level )
+        {
+            return;
+        }
+
+        if ( newLevel.compareTo( level ) > 0 )
+        {
+            if ( newLevel == Level.CRITICAL )
+            {
+                Log.error( "The UDP port range {} - {} is nearly exhausted: {} of {} ports are in use. Consider enlarging the range, or enabling single-port multiplexing.", minPort, maxPort, used, getCapacity() );
+            }
+            else
+            {
+                Log.warn( "{} of {} ports of the UDP port range {} - {} are in use.", used, getCapacity(), minPort, maxPort );
+            }
+        }
+        else
+        {
+            Log.info( "Usage of the UDP port range {} - {} dropped to {} of {} ports.", minPort, maxPort, used, getCapacity() );
+        }
+        level = newLevel;
+    }
+
+    public synchronized int getMinPort()
+    {
+        return minPort;
+    }
+
+    public synchronized int getMaxPort()
+    {
+        return maxPort;
+    }
+
+    /**
+     * Returns the number of ports in the tracked range.
+     *
+     * @return a port count.
+     */
+    public synchronized int getCapacity()
+    {
+        return maxPort - minPort + 1;
+    }
+
+    /**
+     * Returns the number of ports in the tracked range that are in use.
+     *
+     * @return a port count.
+     */
+    public synchronized int getUsed()
+    {
+        return used;
+    }
+
+    /**
+     * Checks if a particular port is in use.
+     *
+     * @param port the port number.
+     * @return true if the port is in the tracked range and in use, otherwise false.
+     */
+    public synchronized boolean isUsed( final int port )
+    {
+        if ( port < minPort || port > maxPort )
+        {
+            return false;
+        }
+        final int index = port - minPort;
+        return ( bitmap[ index >>> 6 ] & ( 1L << index ) ) != 0;
+    }
+
+    /**
+     * Returns the fraction of the ports in the tracked range that are in use.
+     *
+     * @return a fraction (0 - 1).
+     */
+    public synchronized double getUtilization()
+    {
+        return (double) used / getCapacity();
+    }
+
+    /**
+     * Returns the degree in which the free ports of the tracked range are fragmented. This is defined as one minus
+     * the ratio of the largest block of consecutive free ports to the total number of free ports. A value of zero
+     * indicates that all free ports are consecutive (or that no ports are free), a value near one indicates that the
+     * free ports are scattered over many small blocks.
+     *
+     * @return a fraction (0 - 1).
+     */
+    public synchronized double getFragmentation()
+    {
+        final int free = getCapacity() - used;
+        if ( free == 0 )
+        {
+            return 0;
+        }
+
+        int largest = 0;
+        int current = 0;
+        for ( int index = 0; index < getCapacity(); index++ )
+        {
+            if ( ( bitmap[ index >>> 6 ] & ( 1L << index ) ) == 0 )
+            {
+                current++;
+                largest = Math.max( largest, current );
+            }
+            else
+            {
+                current = 0;
+            }
+        }
+        return 1 - (double) largest / free;
+    }
+
+    public synchronized long getAllocations()
+    {
+        return allocations;
+    }
+
+    public synchronized long getReleases()
+    {
+        return releases;
+    }
+
+    public synchronized long getBindFailures()
+    {
+        return bindFailures;
+    }
+
+    /**
+     * Returns the severity of the utilization of the port range, relative to the configured thresholds.
+     *
+     * @return a level (never null).
+     */
+    public synchronized Level getLevel()
+    {
+        return level;
+    }
+}
@@ -0,0 +1,541 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jitsi.service.neomedia.MediaStream;
+import org.jitsi.videobridge.*;
+import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.group.Group;
+import org.jivesoftware.openfire.group.GroupManager;
+import org.jivesoftware.openfire.muc.MUCRoom;
+import org.jivesoftware.openfire.muc.MultiUserChatService;
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.JID;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the resources of the Videobridge that the users and groups of Openfire can use.
+ *
+ * The resources of a conference are charged to the owner of the multi-user chat room that the conference is used for
+ * (a conference focus names a conference after its room), and to each group that the owner is a member of. Quotas can
+ * be defined for the number of concurrent conferences, the number of endpoints in these conferences, and the total
+ * bitrate that the Videobridge forwards to these endpoints. Quotas are defined by Openfire properties:
+ * <tt>org.jitsi.videobridge.openfire.quota.user.&lt;username&gt;.&lt;resource&gt;</tt>,
+ * <tt>org.jitsi.videobridge.openfire.quota.group.&lt;group name&gt;.&lt;resource&gt;</tt> and, for users without a
+ * quota of their own, <tt>org.jitsi.videobridge.openfire.quota.default.&lt;resource&gt;</tt>, where the resource is
+ * one of CONFERENCES, ENDPOINTS or BITRATE (in kbps).
+ *
+ * Quotas are enforced when Colibri requests allocate conferences or endpoints: a request that would exceed a quota is
+ * rejected with a resource-constraint error. Conferences and endpoints are reserved with lock-free counters when a
+ * request is admitted. The bitrate cannot be reserved in advance: new endpoints are not admitted while the measured
+ * bitrate exceeds the quota. The usage counters are periodically reconciled with the conferences of the Videobridge.
+ *
+ * Requests that this plugin sends itself (such as the warm-up of the Videobridge, load harness runs and self-test probes) are
+ * sent from the address of the server, and are not charged to anyone: they are not made on behalf of the room owner.
+ */
+public class QuotaManager
+{
+    private static final Logger Log = LoggerFactory.getLogger( QuotaManager.class );
+
+    /**
+     * The prefix of the names of all properties that define quotas.
+     */
+    public static final String PROPERTY_PREFIX = "org.jitsi.videobridge.openfire.quota.";
+
+    /**
+     * The interval (in milliseconds) in which usage is reconciled with the conferences of the Videobridge.
+     */
+    private static final long RECONCILE_INTERVAL = 5000;
+
+    /**
+     * The resources that are limited.
+     */
+    public enum Resource
+    {
+        CONFERENCES,
+        ENDPOINTS,
+
+        /**
+         * The bitrate (in kbps) that is forwarded to endpoints.
+         */
+        BITRATE
+    }
+
+    /**
+     * The usage of resources by a user or group. Principals are identified as <tt>user:&lt;username&gt;</tt> or
+     * <tt>group:&lt;group name&gt;</tt>.
+     */
+    public static class Usage
+    {
+        private final String principal;
+        private final AtomicLong conferences = new AtomicLong();
+        private final AtomicLong endpoints = new AtomicLong();
+        private final AtomicLong bitrate = new AtomicLong();
+
+        Usage( final String principal )
+        {
+            this.principal = principal;
+        }
+
+        public String getPrincipal()
+        {
+            return principal;
+        }
+
+        public long get( final Resource resource )
+        {
+            return counter( resource ).get();
+        }
+
+        /**
+         * Returns the quota of this principal for a resource.
+         *
+         * @return a quota, or -1 when the resource is not limited.
+         */
+        public long getQuota( final Resource resource )
+        {
+            final String name = principal.substring( principal.indexOf( ':' ) + 1 );
+            if ( principal.startsWith( "user:" ) )
+            {
+                final long defaultQuota = JiveGlobals.getLongProperty( PROPERTY_PREFIX + "default." + resource, -1 );
+                return JiveGlobals.getLongProperty( PROPERTY_PREFIX + "user." + name + '.' + resource, defaultQuota );
+            }
+            return JiveGlobals.getLongProperty( PROPERTY_PREFIX + "group." + name + '.' + resource, -1 );
+        }
+
+        private AtomicLong counter( final Resource resource )
+        {
+            switch ( resource )
+            {
+                case CONFERENCES: return conferences;
+                case ENDPOINTS: return endpoints;
+                default: return bitrate;
+            }
+        }
+
+        /**
+         * Adds to the usage of a resource, unless that exceeds the quota.
+         *
+         * @return true if the usage was added, false if it exceeds the quota.
+         */
+        boolean tryAcquire( final Resource resource, final long amount )
+        {
+            final long quota = getQuota( resource );
+            final AtomicLong counter = counter( resource );
+            while ( true )
+            {
+                final long current = counter.get();
+                if ( quota >= 0 && current + amount > quota )
+                {
+                    return false;
+                }
+                if ( counter.compareAndSet( current, current + amount ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        void release( final Resource resource, final long amount )
+        {
+            counter( resource ).addAndGet( -amount );
+        }
+    }
+
+    /**
+     * A conference that is charged to principals, with the endpoints that were admitted to it.
+     */
+    private static class ChargedConference
+    {
+        final List<Usage> usages;
+        final Set<String> endpoints = ConcurrentHashMap.newKeySet();
+
+        /**
+         * What is charged to each of the usages for this conference: the number of conferences (one, unless the
+         * conference was charged by a request that did not create it), endpoints and the bitrate (in kbps). Guarded by
+         * this instance.
+         */
+        private long chargedConferences;
+        private long chargedEndpoints;
+        private long chargedBitrate;
+
+        ChargedConference( final List<Usage> usages )
+        {
+            this.usages = usages;
+        }
+
+        /**
+         * Takes over the resources that were reserved by an admission.
+         */
+        synchronized void charge( final Admission admission )
+        {
+            endpoints.addAll( admission.endpoints );
+            chargedEndpoints += admission.endpoints.size();
+            if ( admission.conference )
+            {
+                chargedConferences++;
+            }
+        }
+
+        /**
+         * Adds the difference between the measured usage of the conference and what was charged for it to the usages.
+         * Resources that are reserved for requests that are in flight are not part of what was charged, and are
+         * therefore retained.
+         */
+        synchronized void adjust( final long endpoints, final long bitrate )
+        {
+            final long endpointsDelta = endpoints - chargedEndpoints;
+            final long bitrateDelta = bitrate - chargedBitrate;
+            chargedEndpoints = endpoints;
+            chargedBitrate = bitrate;
+            for ( final Usage usage : usages )
+            {
+                usage.endpoints.addAndGet( endpointsDelta );
+                usage.bitrate.addAndGet( bitrateDelta );
+            }
+        }
+
+        /**
+         * Releases everything that was charged for the conference, after it expired.
+         */
+        synchronized void release()
+        {
+            adjust( 0, 0 );
+            for ( final Usage usage : usages )
+            {
+                usage.release( Resource.CONFERENCES, chargedConferences );
+            }
+            chargedConferences = 0;
+        }
+    }
+
+    /**
+     * The resources that were reserved for a Colibri request, which are released when the request fails.
+     */
+    public static class Admission
+    {
+        private final List<Usage> usages;
+        private final boolean conference;
+        private final Set<String> endpoints;
+
+        Admission( final List<Usage> usages, final boolean conference, final Set<String> endpoints )
+        {
+            this.usages = usages;
+            this.conference = conference;
+            this.endpoints = endpoints;
+        }
+    }
+
+    private final OpenfireComponentImpl component;
+
+    private final Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * Conferences that are charged to principals, by conference identifier.
+     */
+    private final Map<String, ChargedConference> conferences = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private TimerTask task;
+
+    public QuotaManager( final OpenfireComponentImpl component )
+    {
+        this.component = component;
+    }
+
+    public synchronized void start()
+    {
+        stop();
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    reconcile();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while reconciling quota usage.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, RECONCILE_INTERVAL, RECONCILE_INTERVAL );
+    }
+
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Checks if a request was sent by the server itself (by this plugin), rather than by a user or conference focus.
+     * Stanzas that originate from users or remote domains can not carry the bare domain of this server as their sender.
+     */
+    private static boolean isServerOriginated( final IQ request )
+    {
+        final JID from = request.getFrom();
+        return from != null && from.getNode() == null && XMPPServer.getInstance().getServerInfo().getXMPPDomain().equals( from.getDomain() );
+    }
+
+    /**
+     * Reserves the conferences and endpoints that a Colibri request allocates.
+     *
+     * @param request a Colibri request (cannot be null).
+     * @return the reservation, or null when the request is not charged to any principal.
+     * @throws QuotaExceededException when the request would exceed a quota.
+     */
+    public Admission admit( final IQ request ) throws QuotaExceededException
+    {
+        final Element conference = ColibriElements.getConference( request );
+        if ( conference == null || isServerOriginated( request ) )
+        {
+            return null;
+        }
+
+        final String conferenceId = conference.attributeValue( "id" );
+        final ChargedConference charged = conferenceId == null ? null : conferences.get( conferenceId );
+        final List<Usage> principals = charged != null ? charged.usages : conferenceId == null ? getUsages( conference.attributeValue( "name" ) ) : Collections.emptyList();
+        if ( principals.isEmpty() )
+        {
+            return null;
+        }
+
+        // Endpoints for which channels are created, that were not admitted before.
+        final Set<String> endpoints = new HashSet<>();
+        for ( final Element channel : ColibriElements.getChannels( conference ) )
+        {
+            final String endpoint = channel.attributeValue( "endpoint" );
+            if ( endpoint != null && channel.attributeValue( "id" ) == null && ( charged == null || !charged.endpoints.contains( endpoint ) ) )
+            {
+                endpoints.add( endpoint );
+            }
+        }
+
+        final boolean isNewConference = conferenceId == null;
+        final List<Usage> acquired = new ArrayList<>();
+        Resource exceeded = null;
+        for ( final Usage usage : principals )
+        {
+            if ( !endpoints.isEmpty() )
+            {
+                final long bitrateQuota = usage.getQuota( Resource.BITRATE );
+                if ( bitrateQuota >= 0 && usage.get( Resource.BITRATE ) >= bitrateQuota )
+                {
+                    exceeded = Resource.BITRATE;
+                }
+                else if ( !usage.tryAcquire( Resource.ENDPOINTS, endpoints.size() ) )
+                {
+                    exceeded = Resource.ENDPOINTS;
+                }
+            }
+            if ( exceeded == null && isNewConference && !usage.tryAcquire( Resource.CONFERENCES, 1 ) )
+            {
+                usage.release( Resource.ENDPOINTS, endpoints.size() );
+                exceeded = Resource.CONFERENCES;
+            }
+            if ( exceeded != null )
+            {
+                release( new Admission( acquired, isNewConference, endpoints ) );
+                rejected.incrementAndGet();
+                throw new QuotaExceededException( usage.getPrincipal(), exceeded );
+            }
+            acquired.add( usage );
+        }
+        return new Admission( acquired, isNewConference, endpoints );
+    }
+
+    /**
+     * Completes an admission: the reserved resources are released when the request failed, and otherwise charged to
+     * the conference.
+     *
+     * @param admission the admission of the request (can be null).
+     * @param request the request (cannot be null).
+     * @param response the response of the Videobridge (can be null).
+     */
+    public void complete( final Admission admission, final IQ request, final IQ response )
+    {
+        if ( admission == null )
+        {
+            return;
+        }
+        final String conferenceId = ColibriElements.getConferenceId( request, response );
+        if ( response == null || response.getType() != IQ.Type.result || conferenceId == null )
+        {
+            release( admission );
+            return;
+        }
+        conferences.computeIfAbsent( conferenceId, id -> new ChargedConference( admission.usages ) ).charge( admission );
+    }
+
+    private static void release( final Admission admission )
+    {
+        for ( final Usage usage : admission.usages )
+        {
+            usage.release( Resource.ENDPOINTS, admission.endpoints.size() );
+            if ( admission.conference )
+            {
+                usage.release( Resource.CONFERENCES, 1 );
+            }
+        }
+    }
+
+    /**
+     * Corrects the usage counters by the difference between the usage of the conferences of the Videobridge and what
+     * was charged for them, and stops charging conferences that have expired. The counters are adjusted rather than
+     * replaced, so that resources that are reserved for requests that are in flight are retained.
+     */
+    void reconcile()
+    {
+        final Videobridge videobridge = component.getVideobridge();
+        if ( videobridge == null )
+        {
+            return;
+        }
+
+        final Map<String, Conference> active = new HashMap<>();
+        for ( final Conference conference : videobridge.getConferences() )
+        {
+            active.put( conference.getID(), conference );
+        }
+
+        for ( final Iterator<Map.Entry<String, ChargedConference>> iterator = conferences.entrySet().iterator(); iterator.hasNext(); )
+        {
+            final Map.Entry<String, ChargedConference> entry = iterator.next();
+            final Conference conference = active.get( entry.getKey() );
+            if ( conference == null )
+            {
+                iterator.remove();
+                entry.getValue().release();
+                continue;
+            }
+
+            long bitrate = 0;
+            for ( final Content content : conference.getContents() )
+            {
+                for ( final Channel channel : content.getChannels() )
+                {
+                    if ( channel instanceof RtpChannel )
+                    {
+                        final MediaStream stream = ( (RtpChannel) channel ).getStream();
+                        if ( stream != null )
+                        {
+                            bitrate += stream.getMediaStreamStats().getSendStats().getBitrate();
+                        }
+                    }
+                }
+            }
+
+            entry.getValue().adjust( conference.getEndpointCount(), bitrate / 1000 );
+        }
+    }
+
+    /**
+     * Returns the usage records of the principals that the conference of a room is charged to: the owner of the room,
+     * and the groups of the owner.
+     *
+     * @param conferenceName the name of a conference, which is the address of a room (can be null).
+     * @return usage records (possibly empty, never null).
+     */
+    private List<Usage> getUsages( final String conferenceName )
+    {
+        final String owner = getOwner( conferenceName );
+        if ( owner == null )
+        {
+            return Collections.emptyList();
+        }
+
+        final List<Usage> result = new ArrayList<>();
+        result.add( usages.computeIfAbsent( "user:" + owner, Usage::new ) );
+        final JID ownerJid = XMPPServer.getInstance().createJID( owner, null );
+        for ( final Group group : GroupManager.getInstance().getGroups( ownerJid ) )
+        {
+            result.add( usages.computeIfAbsent( "group:" + group.getName(), Usage::new ) );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the username of the local user that owns a room. When a room has more than one local owner, the owner
+     * with the lowest username is returned.
+     *
+     * @param roomAddress the address of a room (can be null).
+     * @return a username, or null when no local user owns the room.
+     */
+    private static String getOwner( final String roomAddress )
+    {
+        if ( roomAddress == null )
+        {
+            return null;
+        }
+        try
+        {
+            final JID roomJid = new JID( roomAddress );
+            final MultiUserChatService service = XMPPServer.getInstance().getMultiUserChatManager().getMultiUserChatService( roomJid );
+            final MUCRoom room = service == null || roomJid.getNode() == null ? null : service.getChatRoom( roomJid.getNode() );
+            if ( room == null )
+            {
+                return null;
+            }
+
+            String result = null;
+            for ( final JID owner : room.getOwners() )
+            {
+                if ( XMPPServer.getInstance().isLocal( owner ) && owner.getNode() != null && ( result == null || owner.getNode().compareTo( result ) < 0 ) )
+                {
+                    result = owner.getNode();
+                }
+            }
+            return result;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the usage of all principals that were charged for conferences.
+     *
+     * @return usage records, ordered by principal (never null).
+     */
+    public List<Usage> getUsages()
+    {
+        final List<Usage> result = new ArrayList<>( usages.values() );
+        result.sort( Comparator.comparing( Usage::getPrincipal ) );
+        return result;
+    }
+
+    /**
+     * Returns the number of requests that were rejected because they would exceed a quota.
+     *
+     * @return a request count.
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * Thrown when a request would exceed a quota.
+     */
+    public static class QuotaExceededException extends Exception
+    {
+        public QuotaExceededException( final String principal, final Resource resource )
+        {
+            super( "The " + resource.name().toLowerCase() + " quota of " + principal + " is exceeded." );
+        }
+    }
+}
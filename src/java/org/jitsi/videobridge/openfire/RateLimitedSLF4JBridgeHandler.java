@@ -0,0 +1,322 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bridges java.util.logging to SLF4J, while limiting the rate at which similar messages are passed on.
+ *
+ * When a network event affects many endpoints at once, the Videobridge logs the same warning for every packet or
+ * channel. Passed on as-is, such a storm floods the Openfire log files, and stalls the media threads that log on disk
+ * I/O. This handler groups messages by logger, conference and message template (the message with its numbers and
+ * identifiers masked), and passes on a limited number of messages per group per interval. Of the remaining messages,
+ * a sample can be passed on. The others are suppressed, and summarized in one message when the interval ends.
+ *
+ * The configuration is read from Openfire properties, and is refreshed every second.
+ */
+public class RateLimitedSLF4JBridgeHandler extends SLF4JBridgeHandler
+{
+    /**
+     * The name of the Openfire property that enables rate limiting. When disabled, all messages are passed on.
+     */
+    public static final String ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOG_RATE_LIMIT_ENABLED";
+
+    /**
+     * By default, rate limiting is enabled.
+     */
+    public static final boolean ENABLED_DEFAULT_VALUE = true;
+
+    /**
+     * The name of the Openfire property that defines the number of messages per group that are passed on in each
+     * interval.
+     */
+    public static final String MESSAGES_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOG_RATE_LIMIT_MESSAGES";
+
+    /**
+     * The default number of messages per group that are passed on in each interval.
+     */
+    public static final int MESSAGES_DEFAULT_VALUE = 10;
+
+    /**
+     * The name of the Openfire property that defines the length (in milliseconds) of an interval.
+     */
+    public static final String INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOG_RATE_LIMIT_INTERVAL";
+
+    /**
+     * The default length (in milliseconds) of an interval.
+     */
+    public static final long INTERVAL_DEFAULT_VALUE = 10000;
+
+    /**
+     * The name of the Openfire property that defines which fraction of the messages that exceed the limit is passed on
+     * regardless: one in every N messages. A value of zero or less suppresses all messages that exceed the limit.
+     */
+    public static final String SAMPLING_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOG_RATE_LIMIT_SAMPLING";
+
+    /**
+     * By default, all messages that exceed the limit are suppressed.
+     */
+    public static final int SAMPLING_DEFAULT_VALUE = 0;
+
+    /**
+     * The name of the Openfire property that defines the maximum number of groups that are tracked. Messages of groups
+     * that cannot be tracked are grouped by logger only.
+     */
+    public static final String MAX_GROUPS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.LOG_RATE_LIMIT_MAX_GROUPS";
+
+    /**
+     * The default maximum number of groups that are tracked.
+     */
+    public static final int MAX_GROUPS_DEFAULT_VALUE = 1000;
+
+    /**
+     * Matches the parts of a message that differ between otherwise similar messages: hexadecimal identifiers and
+     * numbers (such as SSRCs, ports, addresses and counters).
+     */
+    private static final Pattern VARIABLE = Pattern.compile( "[0-9a-fA-F]{8,}|\\d+" );
+
+    /**
+     * Matches a conference identifier in a message.
+     */
+    private static final Pattern CONFERENCE = Pattern.compile( "(?i)conf(?:erence)?(?:[ _]?id)?[=:\\s]+\\[?([0-9a-z]+)" );
+
+    /**
+     * The handler that is installed, or null when none is installed.
+     */
+    private static volatile RateLimitedSLF4JBridgeHandler instance;
+
+    /**
+     * The messages that are passed on and suppressed in the current interval of a group.
+     */
+    private static class Window
+    {
+        final String loggerName;
+        final String template;
+        long start;
+        int passed;
+        int suppressed;
+        Level level;
+
+        Window( final String loggerName, final String template, final long start )
+        {
+            this.loggerName = loggerName;
+            this.template = template;
+            this.start = start;
+        }
+
+        /**
+         * Ends the interval when it has passed, and returns the summary of the messages that were suppressed in it.
+         *
+         * @param force ends the interval, even when it has not passed.
+         * @return a summary, or null when the interval has not passed, or no messages were suppressed.
+         */
+        LogRecord roll( final long now, final long interval, final boolean force )
+        {
+            if ( !force && now - start < interval )
+            {
+                return null;
+            }
+            LogRecord summary = null;
+            if ( suppressed > 0 )
+            {
+                summary = new LogRecord( level, suppressed + " similar messages suppressed in the last " + ( now - start ) / 1000 + " seconds: " + template );
+                summary.setLoggerName( loggerName );
+            }
+            start = now;
+            passed = 0;
+            suppressed = 0;
+            return summary;
+        }
+    }
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong passedTotal = new AtomicLong();
+
+    private final AtomicLong suppressedTotal = new AtomicLong();
+
+    private volatile boolean enabled = ENABLED_DEFAULT_VALUE;
+    private volatile int messages = MESSAGES_DEFAULT_VALUE;
+    private volatile long interval = INTERVAL_DEFAULT_VALUE;
+    private volatile int sampling = SAMPLING_DEFAULT_VALUE;
+    private volatile int maxGroups = MAX_GROUPS_DEFAULT_VALUE;
+
+    /**
+     * Returns the handler that is installed.
+     *
+     * @return a handler, or null when none is installed.
+     */
+    public static RateLimitedSLF4JBridgeHandler getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Installs a new handler on the java.util.logging root logger.
+     *
+     * @return the installed handler (never null).
+     */
+    public static RateLimitedSLF4JBridgeHandler installRateLimited()
+    {
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+        handler.reload();
+        java.util.logging.LogManager.getLogManager().getLogger( "" ).addHandler( handler );
+        instance = handler;
+        return handler;
+    }
+
+    /**
+     * Removes the handler from the java.util.logging root logger, after passing on the pending summaries.
+     */
+    public static void uninstallRateLimited()
+    {
+        final RateLimitedSLF4JBridgeHandler handler = instance;
+        instance = null;
+        if ( handler != null )
+        {
+            java.util.logging.LogManager.getLogManager().getLogger( "" ).removeHandler( handler );
+            handler.flush( true );
+        }
+    }
+
+    /**
+     * Reads the configuration from the Openfire properties.
+     */
+    public void reload()
+    {
+        enabled = JiveGlobals.getBooleanProperty( ENABLED_PROPERTY_NAME, ENABLED_DEFAULT_VALUE );
+        messages = Math.max( 1, JiveGlobals.getIntProperty( MESSAGES_PROPERTY_NAME, MESSAGES_DEFAULT_VALUE ) );
+        interval = Math.max( 1000, JiveGlobals.getLongProperty( INTERVAL_PROPERTY_NAME, INTERVAL_DEFAULT_VALUE ) );
+        sampling = JiveGlobals.getIntProperty( SAMPLING_PROPERTY_NAME, SAMPLING_DEFAULT_VALUE );
+        maxGroups = Math.max( 1, JiveGlobals.getIntProperty( MAX_GROUPS_PROPERTY_NAME, MAX_GROUPS_DEFAULT_VALUE ) );
+    }
+
+    @Override
+    public void publish( final LogRecord record )
+    {
+        if ( record == null || !enabled || !isLoggable( record ) )
+        {
+            super.publish( record );
+            return;
+        }
+
+        final String loggerName = record.getLoggerName() == null ? "" : record.getLoggerName();
+        final String message = record.getMessage() == null ? "" : record.getMessage();
+
+        // Parameterized messages are templates already.
+        final String template = record.getParameters() == null ? VARIABLE.matcher( message ).replaceAll( "#" ) : message;
+        final Matcher conference = CONFERENCE.matcher( message );
+        String key = loggerName + '\u0000' + ( conference.find() ? conference.group( 1 ) : "" ) + '\u0000' + template;
+
+        Window window = windows.get( key );
+        if ( window == null && windows.size() >= maxGroups )
+        {
+            key = loggerName; // too many groups: group by logger only.
+            window = windows.get( key );
+        }
+        if ( window == null )
+        {
+            window = windows.computeIfAbsent( key, k -> new Window( loggerName, template, System.currentTimeMillis() ) );
+        }
+
+        final LogRecord summary;
+        final boolean pass;
+        synchronized ( window )
+        {
+            summary = window.roll( System.currentTimeMillis(), interval, false );
+            if ( window.passed < messages )
+            {
+                window.passed++;
+                pass = true;
+            }
+            else
+            {
+                window.suppressed++;
+                window.level = record.getLevel();
+                pass = sampling > 0 && window.suppressed % sampling == 0;
+            }
+        }
+
+        if ( summary != null )
+        {
+            super.publish( summary );
+        }
+        if ( pass )
+        {
+            passedTotal.incrementAndGet();
+            super.publish( record );
+        }
+        else
+        {
+            suppressedTotal.incrementAndGet();
+        }
+    }
+
+    /**
+     * Passes on the summaries of intervals that have ended, and stops tracking groups that have been idle for a full
+     * interval. Invoked periodically, so that summaries are logged also when a storm has ended.
+     *
+     * @param all ends all intervals, including those that have not passed.
+     */
+    void flush( final boolean all )
+    {
+        final long now = System.currentTimeMillis();
+        for ( final Iterator<Window> iterator = windows.values().iterator(); iterator.hasNext(); )
+        {
+            final Window window = iterator.next();
+            final LogRecord summary;
+            synchronized ( window )
+            {
+                if ( window.passed == 0 && window.suppressed == 0 && now - window.start >= interval )
+                {
+                    iterator.remove();
+                    continue;
+                }
+                summary = window.roll( now, interval, all );
+            }
+            if ( summary != null )
+            {
+                super.publish( summary );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages that were passed on while rate limiting applied.
+     *
+     * @return a message count.
+     */
+    public long getPassed()
+    {
+        return passedTotal.get();
+    }
+
+    /**
+     * Returns the number of messages that were suppressed.
+     *
+     * @return a message count.
+     */
+    public long getSuppressed()
+    {
+        return suppressedTotal.get();
+    }
+
+    /**
+     * Returns the number of groups of messages that are tracked.
+     *
+     * @return a group count.
+     */
+    public int getGroups()
+    {
+        return windows.size();
+    }
+}
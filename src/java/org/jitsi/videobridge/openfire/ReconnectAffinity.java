@@ -0,0 +1,275 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.jivesoftware.util.JiveGlobals;
+import org.xmpp.packet.IQ;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets an endpoint that reconnects to a conference get the media port that it used before.
+ *
+ * When the network of a client changes, the conference focus expires the channels of its endpoint and allocates new
+ * ones. Normally, the new channels are bound to a port that is handed out by the {@link PortAllocator}, which avoids
+ * recently released ports, so that the candidates of the Videobridge change.
+ *
+ * This class records the port that the channels of each endpoint were bound to. When the channels of an endpoint are
+ * expired, and new channels for the same endpoint in the same conference are allocated within a short period, the
+ * Videobridge is pointed at the previous port instead. The candidates that the Videobridge offers (host candidates as
+ * well as mapped and STUN-discovered candidates, which are derived from the same port) then have the same addresses as
+ * before, which keeps firewall rules and port forwarding that are limited to particular ports applicable. The new
+ * channels have new ICE credentials and a new DTLS session, so the client still performs a full ICE restart and DTLS
+ * handshake: keeping the port is not known to shorten a reconnect. Ports that are not claimed within that period are
+ * discarded by a {@link TimingWheel}.
+ */
+public class ReconnectAffinity
+{
+    /**
+     * The name of the Openfire property that enables reuse of the port of a reconnecting endpoint.
+     */
+    public static final String ENABLED_PROPERTY_NAME = "org.jitsi.videobridge.openfire.RECONNECT_AFFINITY_ENABLED";
+
+    /**
+     * Reuse of the port of a reconnecting endpoint is enabled by default.
+     */
+    public static final boolean ENABLED_DEFAULT_VALUE = true;
+
+    /**
+     * The name of the Openfire property that defines the period (in milliseconds) after the channels of an endpoint
+     * were expired, in which new channels for that endpoint are bound to the port that it used before.
+     */
+    public static final String WINDOW_PROPERTY_NAME = "org.jitsi.videobridge.openfire.RECONNECT_AFFINITY_WINDOW";
+
+    /**
+     * The default period (in milliseconds) in which a reconnecting endpoint gets the port that it used before.
+     */
+    public static final long WINDOW_DEFAULT_VALUE = 30000;
+
+    /**
+     * The maximum number of endpoints for which a port is recorded. When exceeded, the least recently used entries are
+     * discarded. This bounds memory usage when channels expire without a Colibri request (for example, because the
+     * conference expires).
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * The XML namespace of ICE-UDP transports.
+     */
+    private static final String ICE_UDP_NAMESPACE = "urn:xmpp:jingle:transports:ice-udp:1";
+
+    /**
+     * Ports by conference identifier and endpoint identifier.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Entry> eldest )
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final TimingWheel timingWheel;
+
+    private final LongAdder reused = new LongAdder();
+
+    private final LongAdder expired = new LongAdder();
+
+    public ReconnectAffinity( final TimingWheel timingWheel )
+    {
+        this.timingWheel = timingWheel;
+    }
+
+    public static boolean isEnabled()
+    {
+        return JiveGlobals.getBooleanProperty( ENABLED_PROPERTY_NAME, ENABLED_DEFAULT_VALUE );
+    }
+
+    public static long getWindow()
+    {
+        return JiveGlobals.getLongProperty( WINDOW_PROPERTY_NAME, WINDOW_DEFAULT_VALUE );
+    }
+
+    /**
+     * Returns the port that an endpoint used before its channels in a conference were expired, if that happened less
+     * than the configured period ago. The port is handed out only once.
+     *
+     * @param conferenceId the identifier of the conference (can be null).
+     * @param endpointId the identifier of the endpoint (can be null).
+     * @return a port number, or -1 when the endpoint is not reconnecting.
+     */
+    public synchronized int claim( final String conferenceId, final String endpointId )
+    {
+        if ( conferenceId == null || endpointId == null || !isEnabled() )
+        {
+            return -1;
+        }
+
+        final String key = getKey( conferenceId, endpointId );
+        final Entry entry = entries.get( key );
+        if ( entry == null || entry.released == 0 )
+        {
+            return -1;
+        }
+
+        entries.remove( key );
+        if ( System.currentTimeMillis() - entry.released > getWindow() )
+        {
+            expired.increment();
+            return -1;
+        }
+        reused.increment();
+        return entry.port;
+    }
+
+    /**
+     * Records the ports that channels were bound to, and the expiry of channels, as described in the response to a
+     * Colibri request.
+     *
+     * @param request a Colibri request (cannot be null).
+     * @param response the response to the request (can be null).
+     */
+    public synchronized void record( final IQ request, final IQ response )
+    {
+        if ( response == null || response.getType() != IQ.Type.result || !isEnabled() )
+        {
+            return;
+        }
+        final String conferenceId = ColibriElements.getConferenceId( request, response );
+        final Element conference = ColibriElements.getConference( response );
+        if ( conferenceId == null || conference == null )
+        {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        for ( final Element channel : ColibriElements.getChannels( conference ) )
+        {
+            final String endpointId = channel.attributeValue( "endpoint" );
+            if ( endpointId == null )
+            {
+                continue;
+            }
+            final String key = getKey( conferenceId, endpointId );
+
+            if ( "0".equals( channel.attributeValue( "expire" ) ) )
+            {
+                final Entry entry = entries.get( key );
+                if ( entry != null && entry.released == 0 )
+                {
+                    entry.released = now;
+                    timingWheel.schedule( () -> discard( key, entry ), getWindow() );
+                }
+                continue;
+            }
+
+            final int port = getPort( conference, channel );
+            if ( port > 0 )
+            {
+                final Entry entry = entries.get( key );
+                if ( entry == null || entry.port != port || entry.released != 0 )
+                {
+                    entries.put( key, new Entry( port ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the port of an endpoint that did not reconnect in time.
+     */
+    private synchronized void discard( final String key, final Entry entry )
+    {
+        if ( entries.remove( key, entry ) )
+        {
+            expired.increment();
+        }
+    }
+
+    /**
+     * Returns the port of the first UDP host candidate of the transport of a channel, or of the channel bundle that
+     * the channel is part of.
+     */
+    private static int getPort( final Element conference, final Element channel )
+    {
+        Element transport = channel.element( "transport" );
+        final String bundleId = channel.attributeValue( "channel-bundle-id" );
+        if ( transport == null && bundleId != null )
+        {
+            for ( final Iterator bundles = conference.elementIterator( "channel-bundle" ); bundles.hasNext(); )
+            {
+                final Element bundle = (Element) bundles.next();
+                if ( bundleId.equals( bundle.attributeValue( "id" ) ) )
+                {
+                    transport = bundle.element( "transport" );
+                    break;
+                }
+            }
+        }
+        if ( transport == null || !ICE_UDP_NAMESPACE.equals( transport.getNamespaceURI() ) )
+        {
+            return -1;
+        }
+
+        for ( final Iterator candidates = transport.elementIterator( "candidate" ); candidates.hasNext(); )
+        {
+            final Element candidate = (Element) candidates.next();
+            if ( "host".equals( candidate.attributeValue( "type" ) ) && "udp".equalsIgnoreCase( candidate.attributeValue( "protocol" ) ) )
+            {
+                try
+                {
+                    return Integer.parseInt( candidate.attributeValue( "port" ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String getKey( final String conferenceId, final String endpointId )
+    {
+        return conferenceId + '\u0000' + endpointId;
+    }
+
+    /**
+     * Returns the number of reconnecting endpoints that got the port that they used before.
+     *
+     * @return a count.
+     */
+    public long getReused()
+    {
+        return reused.sum();
+    }
+
+    /**
+     * Returns the number of ports that were discarded, because their endpoint did not reconnect within the configured
+     * period.
+     *
+     * @return a count.
+     */
+    public long getExpired()
+    {
+        return expired.sum();
+    }
+
+    /**
+     * The port of an endpoint, and the moment at which its channels were expired (0 while they are in use).
+     */
+    private static final class Entry
+    {
+        private final int port;
+
+        private long released;
+
+        private Entry( final int port )
+        {
+            this.port = port;
+        }
+    }
+}
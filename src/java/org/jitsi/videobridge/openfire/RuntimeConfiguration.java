@@ -10,8 +10,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Exposes various bits of Jitsi configuration.
@@ -55,6 +58,12 @@ public class RuntimeConfiguration
      */
     public static final boolean SSLTCP_TCP_HARVESTER_DEFAULT_VALUE = true; // should be equal to org.jitsi.videobridge.IceUdpTransportManager.TCP_HARVESTER_SSLTCP_DEFAULT
 
+    /**
+     * The name of the libjitsi property that defines the maximum number of packets that are queued for sending, per
+     * media stream.
+     */
+    public static final String PACKET_QUEUE_CAPACITY_PNAME = "org.jitsi.impl.neomedia.RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY"; // should be equal to org.jitsi.impl.neomedia.RTPConnectorOutputStream.PACKET_QUEUE_CAPACITY_PNAME
+
     /**
      * Changes to the allowed network interfaces require a restart of the plugin to take effect.
      * The value that is currently in use is equal to the value that was configured when this plugin got initialized,
@@ -146,6 +155,13 @@ public class RuntimeConfiguration
      */
     private static final boolean SSLTCP_ENABLED_AT_STARTUP = RuntimeConfiguration.isSslTcpEnabled();
 
+    /**
+     * libjitsi reads the capacity of its packet queues once, when the first media stream is created. The value
+     * currently used is equal to the value that was configured when this plugin got initialized, which is what is
+     * stored in this field. Note: can be null.
+     */
+    private static final Integer PACKET_QUEUE_CAPACITY_AT_STARTUP = RuntimeConfiguration.getPacketQueueCapacity();
+
     /**
      * Changes to AWS harvester availability require a restart of the plugin to take effect.
      * The value currently used is equal to the value that was configured when this
@@ -337,6 +353,27 @@ public class RuntimeConfiguration
         return value;
     }
 
+    /**
+     * Returns the maximum number of packets that libjitsi queues for sending, per media stream, or null if the default
+     * is to be used.
+     *
+     * Note that this method returns the configured value, which might differ from the configuration that is
+     * in effect (as configuration changes require a restart to be taken into effect).
+     *
+     * @return a number of packets, possibly null.
+     */
+    public static Integer getPacketQueueCapacity()
+    {
+        final int value = LibJitsi.getConfigurationService().getInt( PACKET_QUEUE_CAPACITY_PNAME, -1 );
+
+        if ( value == -1 )
+        {
+            return null;
+        }
+
+        return value;
+    }
+
     /**
      * Returns the TCP port number mapping that is used for multiplexing multiple media streams over TCP, or null if the
      * default is to be used.
@@ -470,6 +507,175 @@ public class RuntimeConfiguration
         return StackProperties.getString( MappingCandidateHarvesters.NAT_HARVESTER_PUBLIC_ADDRESS_PNAME );
     }
 
+    /**
+     * Returns the compiled rules that define what network interfaces and IP addresses can be used for media. When
+     * the plugin is running, the rules that it compiled are returned. Otherwise, they are compiled from the Openfire
+     * configuration.
+     *
+     * @return a network filter (never null).
+     */
+    public static NetworkFilter getNetworkFilter()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        if ( plugin != null )
+        {
+            return plugin.getNetworkFilter();
+        }
+        return NetworkFilter.compile(
+            JiveGlobals.getListProperty( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME, null ),
+            JiveGlobals.getListProperty( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME, null )
+        );
+    }
+
+    /**
+     * Returns the tracker of the usage of the UDP port range that is used for dynamically allocated media ports. Unlike
+     * the other methods of this class, the tracker reflects the range that is in effect, rather than the configured
+     * range.
+     *
+     * @return a port usage tracker, or null when the plugin is not running.
+     */
+    public static PortUsageTracker getPortUsageTracker()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getPortUsageTracker();
+    }
+
+    /**
+     * Returns the thread pool on which the plugin performs asynchronous work. Its current sizing (which, when
+     * auto-tuning is enabled, can differ from the configured sizing) is available through the getters of the pool.
+     *
+     * @return a thread pool, or null when the plugin is not running.
+     */
+    public static BridgeExecutor getExecutor()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getExecutor();
+    }
+
+    /**
+     * Returns the manager that limits the resources that users and groups can use, which exposes their usage.
+     *
+     * @return a quota manager, or null when the plugin is not running.
+     */
+    public static QuotaManager getQuotaManager()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        if ( plugin == null || !( plugin.getComponent() instanceof OpenfireComponentImpl ) )
+        {
+            return null;
+        }
+        return ( (OpenfireComponentImpl) plugin.getComponent() ).getQuotaManager();
+    }
+
+    /**
+     * Returns the component that shares the configuration with the other nodes of an Openfire cluster, which exposes
+     * the version of the configuration that each node applied.
+     *
+     * @return a clustered configuration, or null when the plugin is not running.
+     */
+    public static ClusteredConfiguration getClusteredConfiguration()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getClusteredConfiguration();
+    }
+
+    /**
+     * Returns the probe that periodically verifies that conferences can be allocated and media is forwarded, which
+     * exposes the health state and latency histograms.
+     *
+     * @return a self-test probe, or null when the plugin is not running.
+     */
+    public static SelfTestProbe getSelfTestProbe()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getSelfTestProbe();
+    }
+
+    /**
+     * Returns the guard that accepts and limits ICE-TCP connections on behalf of the TCP harvester, which exposes
+     * connection metrics.
+     *
+     * @return an ICE-TCP guard, or null when the plugin is not running or the guard is not enabled.
+     */
+    public static IceTcpGuard getIceTcpGuard()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        return plugin == null ? null : plugin.getIceTcpGuard();
+    }
+
+    /**
+     * Returns the cache that absorbs retransmissions of Colibri requests, which exposes how many requests it absorbed.
+     *
+     * @return a request cache, or null when the plugin is not running.
+     */
+    public static ColibriRequestCache getColibriRequestCache()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        if ( plugin == null || !( plugin.getComponent() instanceof OpenfireComponentImpl ) )
+        {
+            return null;
+        }
+        return ( (OpenfireComponentImpl) plugin.getComponent() ).getRequestCache();
+    }
+
+    /**
+     * Returns the changes to the network interfaces and addresses of this host since the Videobridge was started.
+     *
+     * @return a change (possibly empty), or null when the plugin is not running.
+     */
+    public static NetworkChangeWatcher.Change getNetworkChangeSinceStart()
+    {
+        final PluginImpl plugin = PluginImpl.getRunningInstance();
+        if ( plugin == null || plugin.getNetworkChangeWatcher() == null )
+        {
+            return null;
+        }
+        return plugin.getNetworkChangeWatcher().getChangeSinceStart();
+    }
+
+    /**
+     * Checks if the single-port harvester, which binds to the addresses that were available when the Videobridge
+     * started, is affected by changes of the network interfaces and addresses of this host.
+     *
+     * @return true if the single-port harvester is in use and the addresses changed, otherwise false.
+     */
+    public static boolean isSinglePortHarvesterStale()
+    {
+        if ( !WAS_SINGLE_PORT_ENABLED_AT_STARTUP )
+        {
+            return false;
+        }
+        final NetworkChangeWatcher.Change change = getNetworkChangeSinceStart();
+        return change != null && !change.isEmpty();
+    }
+
+    /**
+     * Checks if the interfaces and addresses that ice4j is using differ from the ones that the rules select now. The
+     * rules can contain patterns, which were evaluated once, against the interfaces and addresses that this host had
+     * when the Videobridge started.
+     *
+     * @return true if the rules select other interfaces or addresses than the ones in use, otherwise false.
+     */
+    public static boolean isNetworkFilterStale()
+    {
+        final Map<String, String> properties;
+        try
+        {
+            properties = PluginImpl.getStackProperties( getNetworkFilter() );
+        }
+        catch ( SocketException e )
+        {
+            Log.debug( "Unable to enumerate the network interfaces of this host.", e );
+            return false;
+        }
+        return !Objects.equals( ALLOWED_INTERFACES_AT_STARTUP, properties.get( StackProperties.ALLOWED_INTERFACES ) )
+            || !Objects.equals( BLOCKED_INTERFACES_AT_STARTUP, properties.get( StackProperties.BLOCKED_INTERFACES ) )
+            || !Objects.equals( ALLOWED_ADDRESSES_AT_STARTUP, properties.get( StackProperties.ALLOWED_ADDRESSES ) )
+            || !Objects.equals( BLOCKED_ADDRESSES_AT_STARTUP, properties.get( StackProperties.BLOCKED_ADDRESSES ) );
+    }
+
     /**
      * Checks if the plugin requires a restart to apply pending configuration changes.
      *
@@ -482,6 +688,8 @@ public class RuntimeConfiguration
         || ( BLOCKED_INTERFACES_AT_STARTUP == null && RuntimeConfiguration.getBlockedInterfaces() != null ) || ( BLOCKED_INTERFACES_AT_STARTUP != null && !BLOCKED_INTERFACES_AT_STARTUP.equals( RuntimeConfiguration.getBlockedInterfaces() ) )
         || ( ALLOWED_ADDRESSES_AT_STARTUP == null && RuntimeConfiguration.getAllowedAddresses() != null ) || ( ALLOWED_ADDRESSES_AT_STARTUP != null && !ALLOWED_ADDRESSES_AT_STARTUP.equals( RuntimeConfiguration.getAllowedAddresses() ) )
         || ( BLOCKED_ADDRESSES_AT_STARTUP == null && RuntimeConfiguration.getBlockedAddresses() != null ) || ( BLOCKED_ADDRESSES_AT_STARTUP != null && !BLOCKED_ADDRESSES_AT_STARTUP.equals( RuntimeConfiguration.getBlockedAddresses() ) )
+        || RuntimeConfiguration.isNetworkFilterStale()
+        || RuntimeConfiguration.isSinglePortHarvesterStale()
         || WAS_SINGLE_PORT_ENABLED_AT_STARTUP != RuntimeConfiguration.isSinglePortEnabled()
         || SINGLE_PORT_AT_STARTUP != RuntimeConfiguration.getSinglePort()
         || WAS_MINMAX_PORT_ENABLED_AT_STARTUP != RuntimeConfiguration.isMinMaxPortEnabled()
@@ -491,6 +699,7 @@ public class RuntimeConfiguration
         || ( TCP_PORT_AT_STARTUP == null && RuntimeConfiguration.getTcpPort() != null) || ( TCP_PORT_AT_STARTUP != null && !TCP_PORT_AT_STARTUP.equals( RuntimeConfiguration.getTcpPort() ) )
         || ( TCP_MAPPED_PORT_AT_STARTUP == null && RuntimeConfiguration.getTcpMappedPort() != null) || ( TCP_MAPPED_PORT_AT_STARTUP != null && !TCP_MAPPED_PORT_AT_STARTUP.equals( RuntimeConfiguration.getTcpMappedPort() ) )
         || SSLTCP_ENABLED_AT_STARTUP != RuntimeConfiguration.isSslTcpEnabled()
+        || !Objects.equals( PACKET_QUEUE_CAPACITY_AT_STARTUP, RuntimeConfiguration.getPacketQueueCapacity() )
         || WAS_AWS_MAPPING_HARVESTER_ENABLED_AT_STARTUP != RuntimeConfiguration.isAWSMappingHarvesterEnabled()
         || WAS_AWS_MAPPING_HARVESTER_FORCED_AT_STARTUP != RuntimeConfiguration.isAWSMappingHarvesterForced()
         || !STUN_MAPPING_HARVESTER_ADDRESSES_AT_STARTUP.equals( RuntimeConfiguration.getSTUNMappingHarvesterAddresses() )
@@ -1,28 +1,54 @@
 package org.jitsi.videobridge.openfire;
 
+import org.jivesoftware.util.TaskEngine;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
+import java.util.TimerTask;
+
 /**
  * Adds the SLF4JBridgeHandler in an OSGi bundle.
  *
+ * The handler that is added limits the rate of similar messages (see {@link RateLimitedSLF4JBridgeHandler}).
+ *
  * @author Guus der Kinderen, guus.der.kinderen@gmail.com
  */
 public class SLF4JBridgeHandlerBundleActivator implements BundleActivator
 {
+    /**
+     * Refreshes the configuration of the handler, and logs the summaries of suppressed messages.
+     */
+    private TimerTask flushTask;
+
     @Override
     public void start( BundleContext context ) throws Exception
     {
         // Remove existing handlers attached to j.u.l root logger
         SLF4JBridgeHandler.removeHandlersForRootLogger();
 
-        SLF4JBridgeHandler.install();
+        final RateLimitedSLF4JBridgeHandler handler = RateLimitedSLF4JBridgeHandler.installRateLimited();
+        flushTask = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                handler.reload();
+                handler.flush( false );
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( flushTask, 1000, 1000 );
     }
 
     @Override
     public void stop( BundleContext context ) throws Exception
     {
+        if ( flushTask != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( flushTask );
+            flushTask = null;
+        }
+        RateLimitedSLF4JBridgeHandler.uninstallRateLimited();
         SLF4JBridgeHandler.uninstall();
     }
 }
@@ -0,0 +1,316 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Periodically verifies that the Videobridge can allocate conferences and forward media.
+ *
+ * Each probe allocates a short-lived conference with two endpoints through the {@link LocalColibriChannel} (which
+ * uses the same component and port configuration as conferences that are requested by a conference focus), and
+ * forwards a second of RTP between the endpoints over the network stack of this host (see {@link LoadHarness}). The
+ * allocation time and forwarding latency are recorded in histograms.
+ *
+ * A probe fails when the allocation fails, or when most packets are not forwarded. After a configurable number of
+ * consecutive failures, the Videobridge is considered degraded: it then fails the health checks of conference focuses,
+ * so that they allocate new conferences on other bridges. The next successful probe restores the healthy state.
+ *
+ * As probes generate (light) media load, and can cause health checks to fail, the probe is disabled unless an interval
+ * is explicitly configured. While disabled, the Videobridge is never considered degraded.
+ */
+public class SelfTestProbe
+{
+    private static final Logger Log = LoggerFactory.getLogger( SelfTestProbe.class );
+
+    /**
+     * The name of the Openfire property that defines the interval (in milliseconds) in which probes are performed. A
+     * value of zero or less disables the probe.
+     */
+    public static final String INTERVAL_PROPERTY_NAME = "org.jitsi.videobridge.openfire.SELF_TEST_INTERVAL";
+
+    /**
+     * The default interval (in milliseconds) in which probes are performed: the probe is disabled by default.
+     */
+    public static final long INTERVAL_DEFAULT_VALUE = 0;
+
+    /**
+     * The minimum interval (in milliseconds) in which probes are performed, regardless of the configured interval.
+     */
+    public static final long INTERVAL_MINIMUM = 10000;
+
+    /**
+     * The name of the Openfire property that defines the number of consecutive failed probes after which the
+     * Videobridge is considered degraded.
+     */
+    public static final String FAILURE_THRESHOLD_PROPERTY_NAME = "org.jitsi.videobridge.openfire.SELF_TEST_FAILURE_THRESHOLD";
+
+    /**
+     * The default number of consecutive failed probes after which the Videobridge is considered degraded.
+     */
+    public static final int FAILURE_THRESHOLD_DEFAULT_VALUE = 2;
+
+    /**
+     * The fraction of packets that can be lost before a probe fails.
+     */
+    private static final double MAX_LOSS = 0.5;
+
+    /**
+     * The upper bounds (in milliseconds) of the histogram buckets. The last bucket holds all larger values.
+     */
+    private static final long[] BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, Long.MAX_VALUE };
+
+    /**
+     * The health of the Videobridge, as determined by the probe.
+     */
+    public enum State
+    {
+        /**
+         * No probe has completed yet.
+         */
+        UNKNOWN,
+
+        HEALTHY,
+
+        /**
+         * The configured number of consecutive probes failed.
+         */
+        DEGRADED
+    }
+
+    private final LocalColibriChannel channel;
+
+    private final AtomicLongArray allocationHistogram = new AtomicLongArray( BUCKETS.length );
+
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray( BUCKETS.length );
+
+    /**
+     * Prevents probes from overlapping when a probe takes longer than the interval.
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private volatile State state = State.UNKNOWN;
+
+    private volatile int consecutiveFailures;
+
+    private volatile long lastProbe;
+
+    private volatile String lastResult;
+
+    /**
+     * The task that periodically probes, or null when not running.
+     */
+    private TimerTask task;
+
+    public SelfTestProbe( final LocalColibriChannel channel )
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Starts probing. Invoking this method on an instance that is already started causes the task to be rescheduled,
+     * which allows a change of the interval to be applied.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        final long configured = JiveGlobals.getLongProperty( INTERVAL_PROPERTY_NAME, INTERVAL_DEFAULT_VALUE );
+        if ( configured <= 0 )
+        {
+            Log.debug( "The self-test probe is disabled." );
+            state = State.UNKNOWN;
+            return;
+        }
+
+        final long interval = Math.max( INTERVAL_MINIMUM, configured );
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    probe();
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while performing a self-test probe.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, interval, interval );
+    }
+
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Performs one probe, unless a probe (or a load harness run) is already in progress.
+     */
+    protected void probe()
+    {
+        if ( !probing.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        try
+        {
+            final LoadHarness.Report report = new LoadHarness( channel, "self-test" ).run( new LoadHarness.Shape( 1, 2, 50, 160, 1 ) );
+            record( allocationHistogram, report.getAllocationMillis() );
+            if ( report.getLatencyP50() >= 0 )
+            {
+                record( latencyHistogram, (long) Math.ceil( report.getLatencyP50() ) );
+            }
+
+            if ( report.getLoss() > MAX_LOSS )
+            {
+                failed( String.format( "%.0f %% of the packets were not forwarded.", report.getLoss() * 100 ) );
+            }
+            else
+            {
+                succeeded( String.format( "Allocated in %d ms, forwarding latency %.2f ms (p99: %.2f ms), loss %.1f %%.", report.getAllocationMillis(), report.getLatencyP50(), report.getLatencyP99(), report.getLoss() * 100 ) );
+            }
+        }
+        catch ( IllegalStateException e )
+        {
+            Log.debug( "Skipping a self-test probe, as the load harness is in use." );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch ( Exception e )
+        {
+            failed( e.getMessage() );
+        }
+        finally
+        {
+            probing.set( false );
+        }
+    }
+
+    private synchronized void succeeded( final String result )
+    {
+        if ( state == State.DEGRADED )
+        {
+            Log.info( "The self-test probe succeeded. The Videobridge is no longer considered degraded." );
+        }
+        consecutiveFailures = 0;
+        state = State.HEALTHY;
+        lastProbe = System.currentTimeMillis();
+        lastResult = result;
+    }
+
+    private synchronized void failed( final String result )
+    {
+        consecutiveFailures++;
+        lastProbe = System.currentTimeMillis();
+        lastResult = result;
+        Log.debug( "The self-test probe failed ({} consecutive failures): {}", consecutiveFailures, result );
+
+        if ( state != State.DEGRADED && consecutiveFailures >= JiveGlobals.getIntProperty( FAILURE_THRESHOLD_PROPERTY_NAME, FAILURE_THRESHOLD_DEFAULT_VALUE ) )
+        {
+            Log.warn( "The self-test probe failed {} consecutive times. The Videobridge is considered degraded, and fails health checks until a probe succeeds. Last failure: {}", consecutiveFailures, result );
+            state = State.DEGRADED;
+        }
+    }
+
+    private static void record( final AtomicLongArray histogram, final long value )
+    {
+        for ( int i = 0; i < BUCKETS.length; i++ )
+        {
+            if ( value <= BUCKETS[ i ] )
+            {
+                histogram.incrementAndGet( i );
+                return;
+            }
+        }
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    public boolean isDegraded()
+    {
+        return state == State.DEGRADED;
+    }
+
+    public int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Returns the moment at which the last probe completed.
+     *
+     * @return a timestamp (in milliseconds since the epoch), or 0 when no probe completed.
+     */
+    public long getLastProbe()
+    {
+        return lastProbe;
+    }
+
+    /**
+     * Returns a human-readable description of the result of the last probe.
+     *
+     * @return a description, or null when no probe completed.
+     */
+    public String getLastResult()
+    {
+        return lastResult;
+    }
+
+    /**
+     * Returns the upper bounds (in milliseconds) of the histogram buckets. The last bound is {@link Long#MAX_VALUE}.
+     *
+     * @return bucket bounds (never null).
+     */
+    public static long[] getBuckets()
+    {
+        return BUCKETS.clone();
+    }
+
+    /**
+     * Returns the number of probes per allocation time bucket.
+     *
+     * @return counts, one for each bucket (never null).
+     */
+    public long[] getAllocationHistogram()
+    {
+        return toArray( allocationHistogram );
+    }
+
+    /**
+     * Returns the number of probes per median forwarding latency bucket.
+     *
+     * @return counts, one for each bucket (never null).
+     */
+    public long[] getLatencyHistogram()
+    {
+        return toArray( latencyHistogram );
+    }
+
+    private static long[] toArray( final AtomicLongArray histogram )
+    {
+        final long[] result = new long[ histogram.length() ];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[ i ] = histogram.get( i );
+        }
+        return result;
+    }
+}
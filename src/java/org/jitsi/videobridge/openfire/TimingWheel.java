@@ -0,0 +1,379 @@
+package org.jitsi.videobridge.openfire;
+
+import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.TaskEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks after a delay, for the expiry of state that the plugin keeps per conference, endpoint or request.
+ *
+ * Periodically sweeping over all entries to find the expired ones costs time in proportion to the number of entries,
+ * even when none of them expire. This scheduler is a hashed timing wheel instead: a ring of slots, each of which holds
+ * a linked list of the timeouts that expire in that slot (in the current or a later revolution). Scheduling and
+ * cancelling a timeout are constant-time operations, and each tick only visits the timeouts of one slot.
+ *
+ * Timeouts expire with the precision of one tick. Tasks are run on the thread that advances the wheel, and are
+ * therefore expected to be short; long-running work is to be handed off to an executor.
+ *
+ * Only state of this plugin expires through this wheel. The Videobridge expires its own conferences, channels and
+ * endpoints, which this plugin does not replace.
+ */
+public class TimingWheel
+{
+    private static final Logger Log = LoggerFactory.getLogger( TimingWheel.class );
+
+    /**
+     * The name of the Openfire property that defines the duration (in milliseconds) of one tick of the wheel.
+     */
+    public static final String TICK_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TIMING_WHEEL_TICK";
+
+    /**
+     * The default duration (in milliseconds) of one tick of the wheel.
+     */
+    public static final long TICK_DEFAULT_VALUE = 100;
+
+    /**
+     * The name of the Openfire property that defines the number of slots of the wheel.
+     */
+    public static final String SLOTS_PROPERTY_NAME = "org.jitsi.videobridge.openfire.TIMING_WHEEL_SLOTS";
+
+    /**
+     * The default number of slots of the wheel.
+     */
+    public static final int SLOTS_DEFAULT_VALUE = 512;
+
+    /**
+     * A scheduled task, which can be cancelled until it is run.
+     */
+    public final class Timeout
+    {
+        private final Runnable task;
+
+        private final long deadline;
+
+        private long rounds;
+
+        private int slot = -1;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+        private Timeout( final Runnable task, final long deadline )
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from being run.
+         *
+         * @return true if the task was cancelled, false if it already ran or was cancelled before.
+         */
+        public boolean cancel()
+        {
+            synchronized ( TimingWheel.this )
+            {
+                if ( slot == -1 )
+                {
+                    return false;
+                }
+                unlink( this );
+                cancelled.increment();
+                return true;
+            }
+        }
+
+        /**
+         * Returns the moment at which the task is due.
+         *
+         * @return a moment in milliseconds since the epoch.
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+    }
+
+    /**
+     * The first timeout of each slot.
+     */
+    private Timeout[] slots;
+
+    private long tickDuration;
+
+    /**
+     * The moment at which tick 0 started.
+     */
+    private long startTime;
+
+    /**
+     * The last tick of which the slot was processed.
+     */
+    private long processedTick;
+
+    private int pending;
+
+    private final LongAdder scheduled = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    private final LongAdder expired = new LongAdder();
+
+    private TimerTask task;
+
+    public TimingWheel()
+    {
+        configure( System.currentTimeMillis() );
+    }
+
+    /**
+     * Starts advancing the wheel, with the configured tick duration and number of slots. Timeouts that were scheduled
+     * before are retained.
+     */
+    public synchronized void start()
+    {
+        stop();
+
+        // Re-distribute existing timeouts over the (possibly resized) wheel.
+        final List<Timeout> existing = drain();
+        configure( System.currentTimeMillis() );
+        for ( final Timeout timeout : existing )
+        {
+            link( timeout );
+        }
+
+        task = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    advance( System.currentTimeMillis() );
+                }
+                catch ( Throwable t )
+                {
+                    Log.warn( "An unexpected exception occurred while advancing the timing wheel.", t );
+                }
+            }
+        };
+        TaskEngine.getInstance().scheduleAtFixedRate( task, tickDuration, tickDuration );
+    }
+
+    /**
+     * Stops advancing the wheel. Scheduled timeouts are retained, but do not expire until the wheel is started again.
+     */
+    public synchronized void stop()
+    {
+        if ( task != null )
+        {
+            TaskEngine.getInstance().cancelScheduledTask( task );
+            task = null;
+        }
+    }
+
+    /**
+     * Schedules a task to be run after a delay.
+     *
+     * @param task the task (cannot be null).
+     * @param delay the delay in milliseconds.
+     * @return the timeout, through which the task can be cancelled (never null).
+     */
+    public Timeout schedule( final Runnable task, final long delay )
+    {
+        return schedule( task, delay, System.currentTimeMillis() );
+    }
+
+    /**
+     * Schedules a task to be run after a delay, relative to the provided moment.
+     *
+     * @param now a moment in milliseconds since the epoch.
+     */
+    synchronized Timeout schedule( final Runnable task, final long delay, final long now )
+    {
+        final Timeout timeout = new Timeout( task, now + Math.max( 0, delay ) );
+        link( timeout );
+        scheduled.increment();
+        return timeout;
+    }
+
+    /**
+     * Runs the tasks of all timeouts that are due at the provided moment.
+     *
+     * @param now a moment in milliseconds since the epoch.
+     */
+    void advance( final long now )
+    {
+        final List<Runnable> due = new ArrayList<>();
+        synchronized ( this )
+        {
+            final long currentTick = ( now - startTime ) / tickDuration;
+            if ( currentTick - processedTick > slots.length )
+            {
+                // More than a revolution was missed (for example, because the thread pool was saturated): rather than
+                // visiting slots repeatedly, re-distribute all timeouts.
+                final List<Timeout> existing = drain();
+                processedTick = currentTick;
+                for ( final Timeout timeout : existing )
+                {
+                    if ( timeout.deadline <= now )
+                    {
+                        due.add( timeout.task );
+                    }
+                    else
+                    {
+                        link( timeout );
+                    }
+                }
+            }
+            for ( long tick = processedTick + 1; tick <= currentTick; tick++ )
+            {
+                final int index = (int) ( tick % slots.length );
+                Timeout timeout = slots[ index ];
+                while ( timeout != null )
+                {
+                    final Timeout next = timeout.next;
+                    if ( timeout.rounds <= 0 || timeout.deadline <= now )
+                    {
+                        unlink( timeout );
+                        due.add( timeout.task );
+                    }
+                    else
+                    {
+                        timeout.rounds--;
+                    }
+                    timeout = next;
+                }
+            }
+            processedTick = Math.max( processedTick, currentTick );
+        }
+
+        for ( final Runnable runnable : due )
+        {
+            expired.increment();
+            try
+            {
+                runnable.run();
+            }
+            catch ( Throwable t )
+            {
+                Log.warn( "An unexpected exception occurred while running an expiry task.", t );
+            }
+        }
+    }
+
+    private void configure( final long now )
+    {
+        tickDuration = Math.max( 1, JiveGlobals.getLongProperty( TICK_PROPERTY_NAME, TICK_DEFAULT_VALUE ) );
+        slots = new Timeout[ Math.max( 1, JiveGlobals.getIntProperty( SLOTS_PROPERTY_NAME, SLOTS_DEFAULT_VALUE ) ) ];
+        startTime = now;
+        processedTick = 0;
+        pending = 0;
+    }
+
+    /**
+     * Adds a timeout to the slot of the tick in which it is due. Timeouts that are already due are placed in the slot
+     * of the next tick.
+     */
+    private void link( final Timeout timeout )
+    {
+        final long tick = Math.max( processedTick + 1, ( timeout.deadline - startTime + tickDuration - 1 ) / tickDuration );
+        timeout.rounds = ( tick - processedTick - 1 ) / slots.length;
+        timeout.slot = (int) ( tick % slots.length );
+        timeout.previous = null;
+        timeout.next = slots[ timeout.slot ];
+        if ( timeout.next != null )
+        {
+            timeout.next.previous = timeout;
+        }
+        slots[ timeout.slot ] = timeout;
+        pending++;
+    }
+
+    private void unlink( final Timeout timeout )
+    {
+        if ( timeout.previous != null )
+        {
+            timeout.previous.next = timeout.next;
+        }
+        else
+        {
+            slots[ timeout.slot ] = timeout.next;
+        }
+        if ( timeout.next != null )
+        {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        pending--;
+    }
+
+    /**
+     * Removes all timeouts from the wheel.
+     */
+    private List<Timeout> drain()
+    {
+        final List<Timeout> result = new ArrayList<>( pending );
+        for ( final Timeout head : slots )
+        {
+            Timeout timeout = head;
+            while ( timeout != null )
+            {
+                final Timeout next = timeout.next;
+                unlink( timeout );
+                result.add( timeout );
+                timeout = next;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of timeouts that are scheduled, and have not expired or been cancelled.
+     *
+     * @return a timeout count.
+     */
+    public synchronized int getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * Returns the number of timeouts that were scheduled.
+     *
+     * @return a timeout count.
+     */
+    public long getScheduled()
+    {
+        return scheduled.sum();
+    }
+
+    /**
+     * Returns the number of timeouts that were cancelled before they expired.
+     *
+     * @return a timeout count.
+     */
+    public long getCancelled()
+    {
+        return cancelled.sum();
+    }
+
+    /**
+     * Returns the number of timeouts that expired.
+     *
+     * @return a timeout count.
+     */
+    public long getExpired()
+    {
+        return expired.sum();
+    }
+}
@@ -0,0 +1,93 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link ClusteredConfiguration#getChanged(Map, Map)}.
+ */
+public class ClusteredConfigurationTest
+{
+    /**
+     * Verifies that identical sets of properties have no changes.
+     */
+    @Test
+    public void testNoChanges() throws Exception
+    {
+        // Setup fixture.
+        final Map<String, String> a = new HashMap<>();
+        a.put( "org.jitsi.videobridge.openfire.MIN_PORT", "10000" );
+        final Map<String, String> b = new HashMap<>( a );
+
+        // Execute system under test.
+        final Set<String> result = ClusteredConfiguration.getChanged( a, b );
+
+        // Verify result.
+        assertTrue( result.isEmpty() );
+    }
+
+    /**
+     * Verifies that a property with a different value is changed, and that its parent property is included.
+     */
+    @Test
+    public void testChangedValue() throws Exception
+    {
+        // Setup fixture.
+        final Map<String, String> a = new HashMap<>();
+        a.put( "org.jitsi.videobridge.openfire.MIN_PORT", "10000" );
+        a.put( "org.jitsi.videobridge.openfire.MAX_PORT", "20000" );
+        final Map<String, String> b = new HashMap<>( a );
+        b.put( "org.jitsi.videobridge.openfire.MIN_PORT", "11000" );
+
+        // Execute system under test.
+        final Set<String> result = ClusteredConfiguration.getChanged( a, b );
+
+        // Verify result.
+        assertTrue( result.contains( "org.jitsi.videobridge.openfire.MIN_PORT" ) );
+        assertTrue( result.contains( "org.jitsi.videobridge.openfire" ) );
+        assertFalse( result.contains( "org.jitsi.videobridge.openfire.MAX_PORT" ) );
+    }
+
+    /**
+     * Verifies that properties that exist in only one of the sets are changed.
+     */
+    @Test
+    public void testAddedAndRemoved() throws Exception
+    {
+        // Setup fixture.
+        final Map<String, String> a = new HashMap<>();
+        a.put( "org.jitsi.videobridge.openfire.MIN_PORT", "10000" );
+        final Map<String, String> b = new HashMap<>();
+        b.put( "org.jitsi.videobridge.openfire.MAX_PORT", "20000" );
+
+        // Execute system under test.
+        final Set<String> result = ClusteredConfiguration.getChanged( a, b );
+
+        // Verify result.
+        assertTrue( result.contains( "org.jitsi.videobridge.openfire.MIN_PORT" ) );
+        assertTrue( result.contains( "org.jitsi.videobridge.openfire.MAX_PORT" ) );
+    }
+
+    /**
+     * Verifies that a change of a value of a list property (which is stored as child properties) includes the list
+     * property itself.
+     */
+    @Test
+    public void testListProperty() throws Exception
+    {
+        // Setup fixture.
+        final Map<String, String> a = new HashMap<>();
+        a.put( "org.jitsi.videobridge.openfire.INTERFACES_ALLOWED.00", "eth0" );
+        final Map<String, String> b = new HashMap<>( a );
+        b.put( "org.jitsi.videobridge.openfire.INTERFACES_ALLOWED.01", "eth1" );
+
+        // Execute system under test.
+        final Set<String> result = ClusteredConfiguration.getChanged( a, b );
+
+        // Verify result.
+        assertEquals( new HashSet<>( Arrays.asList( "org.jitsi.videobridge.openfire.INTERFACES_ALLOWED.01", "org.jitsi.videobridge.openfire.INTERFACES_ALLOWED" ) ), result );
+    }
+}
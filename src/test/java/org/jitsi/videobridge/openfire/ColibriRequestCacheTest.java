@@ -0,0 +1,183 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+import org.xmpp.packet.IQ;
+import org.xmpp.packet.PacketError;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link ColibriRequestCache}.
+ */
+public class ColibriRequestCacheTest
+{
+    private static IQ request( final String from, final String id )
+    {
+        final IQ request = new IQ( IQ.Type.set );
+        request.setFrom( from );
+        request.setID( id );
+        return request;
+    }
+
+    /**
+     * Verifies that a retransmission of a request that was processed is answered with the original response, without
+     * processing the request again.
+     */
+    @Test
+    public void testReplay() throws Exception
+    {
+        // Setup fixture.
+        final ColibriRequestCache cache = new ColibriRequestCache( new TimingWheel() );
+        final AtomicInteger handled = new AtomicInteger();
+        final ColibriRequestCache.Handler handler = request -> {
+            handled.incrementAndGet();
+            return IQ.createResultIQ( request );
+        };
+        cache.process( request( "focus@example.org/focus", "a1" ), handler );
+
+        // Execute system under test.
+        final IQ result = cache.process( request( "focus@example.org/focus", "a1" ), handler );
+
+        // Verify result.
+        assertEquals( IQ.Type.result, result.getType() );
+        assertEquals( "a1", result.getID() );
+        assertEquals( 1, handled.get() );
+        assertEquals( 1, cache.getReplayed() );
+    }
+
+    /**
+     * Verifies that requests with the same stanza ID, but from different senders, are processed independently.
+     */
+    @Test
+    public void testDifferentSenders() throws Exception
+    {
+        // Setup fixture.
+        final ColibriRequestCache cache = new ColibriRequestCache( new TimingWheel() );
+        final AtomicInteger handled = new AtomicInteger();
+        final ColibriRequestCache.Handler handler = request -> {
+            handled.incrementAndGet();
+            return IQ.createResultIQ( request );
+        };
+
+        // Execute system under test.
+        cache.process( request( "focus@example.org/focus", "a1" ), handler );
+        cache.process( request( "focus@example.org/other", "a1" ), handler );
+
+        // Verify result.
+        assertEquals( 2, handled.get() );
+        assertEquals( 2, cache.getMisses() );
+    }
+
+    /**
+     * Verifies that an error response is not retained, so that a retransmission is processed again.
+     */
+    @Test
+    public void testErrorNotRetained() throws Exception
+    {
+        // Setup fixture.
+        final ColibriRequestCache cache = new ColibriRequestCache( new TimingWheel() );
+        final AtomicInteger handled = new AtomicInteger();
+        final ColibriRequestCache.Handler handler = request -> {
+            handled.incrementAndGet();
+            final IQ error = IQ.createResultIQ( request );
+            error.setError( new PacketError( PacketError.Condition.internal_server_error ) );
+            return error;
+        };
+        cache.process( request( "focus@example.org/focus", "a1" ), handler );
+
+        // Execute system under test.
+        cache.process( request( "focus@example.org/focus", "a1" ), handler );
+
+        // Verify result.
+        assertEquals( 2, handled.get() );
+        assertEquals( 0, cache.getSize() );
+    }
+
+    /**
+     * Verifies that a retransmission that arrives while the original request is being processed receives the response
+     * to the original request.
+     */
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        // Setup fixture.
+        final ColibriRequestCache cache = new ColibriRequestCache( new TimingWheel() );
+        final AtomicInteger handled = new AtomicInteger();
+        final CountDownLatch processing = new CountDownLatch( 1 );
+        final CountDownLatch proceed = new CountDownLatch( 1 );
+        final ColibriRequestCache.Handler handler = request -> {
+            handled.incrementAndGet();
+            processing.countDown();
+            proceed.await();
+            return IQ.createResultIQ( request );
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            final Future<IQ> original = executor.submit( () -> cache.process( request( "focus@example.org/focus", "a1" ), handler ) );
+            assertTrue( processing.await( 5, TimeUnit.SECONDS ) );
+
+            // Execute system under test.
+            final Future<IQ> retransmission = executor.submit( () -> cache.process( request( "focus@example.org/focus", "a1" ), handler ) );
+            Thread.sleep( 100 );
+            proceed.countDown();
+
+            // Verify result.
+            assertEquals( IQ.Type.result, original.get( 5, TimeUnit.SECONDS ).getType() );
+            assertEquals( IQ.Type.result, retransmission.get( 5, TimeUnit.SECONDS ).getType() );
+            assertEquals( 1, handled.get() );
+            assertEquals( 1, cache.getCoalesced() );
+        }
+        finally
+        {
+            proceed.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies that a retransmission does not wait for the original request for longer than the coalesce timeout,
+     * but is answered with a 'wait' error.
+     */
+    @Test
+    public void testCoalesceTimeout() throws Exception
+    {
+        // Setup fixture.
+        final ColibriRequestCache cache = new ColibriRequestCache( new TimingWheel() );
+        final CountDownLatch processing = new CountDownLatch( 1 );
+        final CountDownLatch proceed = new CountDownLatch( 1 );
+        final ColibriRequestCache.Handler handler = request -> {
+            processing.countDown();
+            proceed.await();
+            return IQ.createResultIQ( request );
+        };
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final Future<IQ> original = executor.submit( () -> cache.process( request( "focus@example.org/focus", "a1" ), handler ) );
+            assertTrue( processing.await( 5, TimeUnit.SECONDS ) );
+
+            // Execute system under test.
+            final long start = System.currentTimeMillis();
+            final IQ result = cache.process( request( "focus@example.org/focus", "a1" ), handler );
+            final long waited = System.currentTimeMillis() - start;
+
+            // Verify result.
+            assertEquals( IQ.Type.error, result.getType() );
+            assertEquals( PacketError.Condition.resource_constraint, result.getError().getCondition() );
+            assertTrue( "Waited for the coalesce timeout, not the TTL: " + waited, waited < ColibriRequestCache.TTL_DEFAULT_VALUE );
+            assertEquals( 1, cache.getCoalesceTimeouts() );
+
+            proceed.countDown();
+            assertEquals( IQ.Type.result, original.get( 5, TimeUnit.SECONDS ).getType() );
+        }
+        finally
+        {
+            proceed.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify how {@link ConferenceMigrator} captures the state of a conference, and how that state is
+ * encoded.
+ */
+public class ConferenceMigratorTest
+{
+    private static final String ICE_UDP_NAMESPACE = "urn:xmpp:jingle:transports:ice-udp:1";
+
+    /**
+     * Returns the Colibri description of a conference, as the Videobridge responds with it: with identifiers, ICE
+     * credentials, candidates and a DTLS fingerprint.
+     */
+    private static Element described()
+    {
+        final Element conference = DocumentHelper.createElement( QName.get( "conference", ColibriElements.NAMESPACE ) );
+        conference.addAttribute( "id", "abcdef" ).addAttribute( "name", "room@conference.example.org" );
+
+        final Element audio = conference.addElement( "content" ).addAttribute( "name", "audio" );
+        final Element channel = audio.addElement( "channel" )
+            .addAttribute( "id", "1234" )
+            .addAttribute( "endpoint", "endpoint-1" )
+            .addAttribute( "initiator", "true" )
+            .addAttribute( "expire", "60" );
+        channel.addElement( "payload-type" ).addAttribute( "id", "111" ).addAttribute( "name", "opus" );
+        channel.addElement( QName.get( "source", "urn:xmpp:jingle:apps:rtp:ssma:0" ) ).addAttribute( "ssrc", "4321" );
+        final Element transport = channel.addElement( QName.get( "transport", ICE_UDP_NAMESPACE ) )
+            .addAttribute( "ufrag", "ufrag" )
+            .addAttribute( "pwd", "password" );
+        transport.addElement( "rtcp-mux" );
+        transport.addElement( "candidate" ).addAttribute( "ip", "192.0.2.1" ).addAttribute( "port", "10000" );
+        transport.addElement( "fingerprint" ).setText( "AB:CD" );
+
+        final Element data = conference.addElement( "content" ).addAttribute( "name", "data" );
+        data.addElement( "sctpconnection" )
+            .addAttribute( "id", "5678" )
+            .addAttribute( "endpoint", "endpoint-1" )
+            .addAttribute( "channel-bundle-id", "endpoint-1" );
+
+        final Element bundle = conference.addElement( "channel-bundle" ).addAttribute( "id", "endpoint-1" );
+        bundle.addElement( QName.get( "transport", ICE_UDP_NAMESPACE ) ).addAttribute( "ufrag", "bundle" );
+
+        conference.addElement( "endpoint" ).addAttribute( "id", "endpoint-1" ).addAttribute( "displayname", "Endpoint" );
+        return conference;
+    }
+
+    /**
+     * Verifies that everything that is bound to the original Videobridge is omitted from a snapshot, and that the
+     * endpoints, payload types and sources are retained.
+     */
+    @Test
+    public void testToAllocation() throws Exception
+    {
+        // Execute system under test.
+        final Element result = ConferenceMigrator.toAllocation( described() );
+
+        // Verify result.
+        assertNull( result.attributeValue( "id" ) );
+        assertEquals( "room@conference.example.org", result.attributeValue( "name" ) );
+
+        final Element channel = result.element( "content" ).element( "channel" );
+        assertNull( channel.attributeValue( "id" ) );
+        assertNull( channel.attributeValue( "expire" ) );
+        assertEquals( "endpoint-1", channel.attributeValue( "endpoint" ) );
+        assertEquals( "111", channel.element( "payload-type" ).attributeValue( "id" ) );
+        assertEquals( "4321", channel.element( "source" ).attributeValue( "ssrc" ) );
+
+        final Element transport = channel.element( QName.get( "transport", ICE_UDP_NAMESPACE ) );
+        assertNull( transport.attributeValue( "ufrag" ) );
+        assertNull( transport.attributeValue( "pwd" ) );
+        assertNull( transport.element( "candidate" ) );
+        assertNull( transport.element( "fingerprint" ) );
+        assertNotNull( transport.element( "rtcp-mux" ) );
+
+        assertEquals( "endpoint-1", result.element( "endpoint" ).attributeValue( "id" ) );
+    }
+
+    /**
+     * Verifies that a bundled channel does not get a transport of its own, and that a new transport is requested for
+     * its bundle instead.
+     */
+    @Test
+    public void testToAllocationBundle() throws Exception
+    {
+        // Execute system under test.
+        final Element result = ConferenceMigrator.toAllocation( described() );
+
+        // Verify result.
+        final Element sctpConnection = ( (Element) result.elements( "content" ).get( 1 ) ).element( "sctpconnection" );
+        assertNull( sctpConnection.attributeValue( "id" ) );
+        assertNull( sctpConnection.element( QName.get( "transport", ICE_UDP_NAMESPACE ) ) );
+
+        final Element bundle = result.element( "channel-bundle" );
+        assertEquals( "endpoint-1", bundle.attributeValue( "id" ) );
+        assertNull( bundle.element( QName.get( "transport", ICE_UDP_NAMESPACE ) ).attributeValue( "ufrag" ) );
+    }
+
+    /**
+     * Verifies that a decoded snapshot is equal to the snapshot that was encoded.
+     */
+    @Test
+    public void testEncodeDecode() throws Exception
+    {
+        // Setup fixture.
+        final ConferenceMigrator.Snapshot snapshot = new ConferenceMigrator.Snapshot( "focus@example.org/focus", ConferenceMigrator.toAllocation( described() ) );
+
+        // Execute system under test.
+        final ConferenceMigrator.Snapshot result = ConferenceMigrator.Snapshot.decode( snapshot.encode() );
+
+        // Verify result.
+        assertEquals( "focus@example.org/focus", result.getFocus() );
+        final Element conference = result.getConference();
+        assertEquals( ColibriElements.NAMESPACE, conference.getNamespaceURI() );
+        assertEquals( "room@conference.example.org", conference.attributeValue( "name" ) );
+        assertEquals( 2, conference.elements( "content" ).size() );
+        final Element channel = conference.element( "content" ).element( "channel" );
+        assertEquals( "endpoint-1", channel.attributeValue( "endpoint" ) );
+        assertEquals( "4321", channel.element( "source" ).attributeValue( "ssrc" ) );
+        assertNotNull( channel.element( QName.get( "transport", ICE_UDP_NAMESPACE ) ).element( "rtcp-mux" ) );
+        assertEquals( "endpoint-1", conference.element( "channel-bundle" ).attributeValue( "id" ) );
+        assertEquals( "Endpoint", conference.element( "endpoint" ).attributeValue( "displayname" ) );
+    }
+
+    /**
+     * Verifies that the encoded snapshot is smaller than its XML representation.
+     */
+    @Test
+    public void testEncodeCompact() throws Exception
+    {
+        // Setup fixture.
+        final ConferenceMigrator.Snapshot snapshot = new ConferenceMigrator.Snapshot( null, ConferenceMigrator.toAllocation( described() ) );
+
+        // Execute system under test.
+        final byte[] result = snapshot.encode();
+
+        // Verify result.
+        assertTrue( result.length < snapshot.getConference().asXML().length() );
+    }
+
+    /**
+     * Verifies that data that is not an encoded snapshot is rejected.
+     */
+    @Test( expected = IOException.class )
+    public void testDecodeTruncated() throws Exception
+    {
+        // Setup fixture.
+        final byte[] encoded = new ConferenceMigrator.Snapshot( null, ConferenceMigrator.toAllocation( described() ) ).encode();
+
+        // Execute system under test.
+        ConferenceMigrator.Snapshot.decode( Arrays.copyOf( encoded, encoded.length / 2 ) );
+    }
+}
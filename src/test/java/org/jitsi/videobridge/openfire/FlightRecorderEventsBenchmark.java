@@ -0,0 +1,82 @@
+package org.jitsi.videobridge.openfire;
+
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.*;
+import org.xmpp.packet.IQ;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead that the Java Flight Recorder events of {@link FlightRecorderEvents} add to the code paths
+ * that emit them, both without a recording and with a recording that has the events enabled at the threshold of the
+ * 'profile' settings of the JDK (so that the events are evaluated, but not committed). Compare the results with those
+ * of {@link #baseline()}.
+ *
+ * This benchmark is not executed by the unit tests. See the README for how to run it.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( org.openjdk.jmh.annotations.Scope.Benchmark )
+public class FlightRecorderEventsBenchmark
+{
+    @Param( { "false", "true" } )
+    public boolean recording;
+
+    private Recording jfr;
+
+    private IQ request;
+
+    private IQ response;
+
+    @Setup
+    public void setUp()
+    {
+        request = new IQ( IQ.Type.set );
+        request.setFrom( "focus@example.org/focus" );
+        request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        response = IQ.createResultIQ( request );
+        response.setChildElement( "conference", ColibriElements.NAMESPACE ).addAttribute( "id", "abcdef" );
+
+        if ( recording )
+        {
+            jfr = new Recording();
+            jfr.enable( "org.jitsi.videobridge.openfire.PropertyApply" ).withThreshold( Duration.ofMillis( 20 ) );
+            jfr.enable( "org.jitsi.videobridge.openfire.ColibriRequest" ).withThreshold( Duration.ofMillis( 20 ) );
+            jfr.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if ( jfr != null )
+        {
+            jfr.close();
+            jfr = null;
+        }
+    }
+
+    @Benchmark
+    public void baseline()
+    {
+    }
+
+    @Benchmark
+    public void propertyApply()
+    {
+        try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.propertyApply( "org.jitsi.videobridge.openfire.MIN_PORT", false ) )
+        {
+            // The application of the property.
+        }
+    }
+
+    @Benchmark
+    public void colibriRequest()
+    {
+        FlightRecorderEvents.colibriRequest().complete( request, response );
+    }
+}
@@ -0,0 +1,103 @@
+package org.jitsi.videobridge.openfire;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.xmpp.packet.IQ;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link FlightRecorderEvents}.
+ */
+public class FlightRecorderEventsTest
+{
+    private static List<RecordedEvent> record( final String eventName, final Runnable activity ) throws Exception
+    {
+        final Path file = Files.createTempFile( "jitsi-videobridge-", ".jfr" );
+        try
+        {
+            try ( Recording recording = new Recording() )
+            {
+                recording.enable( eventName ).withThreshold( Duration.ZERO );
+                recording.start();
+                activity.run();
+                recording.stop();
+                recording.dump( file );
+            }
+            return RecordingFile.readAllEvents( file ).stream()
+                .filter( event -> event.getEventType().getName().equals( eventName ) )
+                .collect( Collectors.toList() );
+        }
+        finally
+        {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    /**
+     * Verifies that when no recording is active, the shared no-op scopes are returned, so that no event objects are
+     * retained and no fields are computed.
+     */
+    @Test
+    public void testNoopWhenNotRecording() throws Exception
+    {
+        // Execute system under test.
+        final FlightRecorderEvents.Scope scope = FlightRecorderEvents.propertyApply( "org.jitsi.test", false );
+        final FlightRecorderEvents.ColibriScope colibriScope = FlightRecorderEvents.colibriRequest();
+
+        // Verify result.
+        assertSame( FlightRecorderEvents.NOOP_SCOPE, scope );
+        assertSame( FlightRecorderEvents.NOOP_COLIBRI_SCOPE, colibriScope );
+    }
+
+    /**
+     * Verifies that the application of a property is recorded when its event is enabled.
+     */
+    @Test
+    public void testPropertyApplyRecorded() throws Exception
+    {
+        // Execute system under test.
+        final List<RecordedEvent> events = record( "org.jitsi.videobridge.openfire.PropertyApply", () -> {
+            try ( FlightRecorderEvents.Scope ignored = FlightRecorderEvents.propertyApply( "org.jitsi.test", true ) )
+            {
+                // The application of the property.
+            }
+        } );
+
+        // Verify result.
+        assertEquals( 1, events.size() );
+        assertEquals( "org.jitsi.test", events.get( 0 ).getString( "property" ) );
+        assertTrue( events.get( 0 ).getBoolean( "deleted" ) );
+    }
+
+    /**
+     * Verifies that the processing of a Colibri request is recorded with the identifier of its conference.
+     */
+    @Test
+    public void testColibriRequestRecorded() throws Exception
+    {
+        // Setup fixture.
+        final IQ request = new IQ( IQ.Type.set );
+        request.setFrom( "focus@example.org/focus" );
+        request.setChildElement( "conference", ColibriElements.NAMESPACE );
+        final IQ response = IQ.createResultIQ( request );
+        response.setChildElement( "conference", ColibriElements.NAMESPACE ).addAttribute( "id", "abcdef" );
+
+        // Execute system under test.
+        final List<RecordedEvent> events = record( "org.jitsi.videobridge.openfire.ColibriRequest", () -> FlightRecorderEvents.colibriRequest().complete( request, response ) );
+
+        // Verify result.
+        assertEquals( 1, events.size() );
+        assertEquals( "abcdef", events.get( 0 ).getString( "conferenceId" ) );
+        assertEquals( "focus@example.org/focus", events.get( 0 ).getString( "from" ) );
+        assertFalse( events.get( 0 ).getBoolean( "error" ) );
+    }
+}
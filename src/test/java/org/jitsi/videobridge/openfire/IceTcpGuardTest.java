@@ -0,0 +1,175 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify how {@link IceTcpGuard} classifies the data that is received at the start of a connection.
+ */
+public class IceTcpGuardTest
+{
+    private static final int PUBLIC_PORT = 4443;
+
+    private static final int INTERNAL_PORT = 14443;
+
+    private static final int HTTPS_PORT = 7443;
+
+    private static IceTcpGuard guard( final boolean sslTcp, final int httpsPort )
+    {
+        return new IceTcpGuard( PUBLIC_PORT, INTERNAL_PORT, sslTcp, httpsPort, new TimingWheel() );
+    }
+
+    /**
+     * Returns a buffer in write mode (as it is after reading from a connection) that holds the provided bytes.
+     */
+    private static ByteBuffer received( final byte[] data )
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( 1024 );
+        buffer.put( data );
+        return buffer;
+    }
+
+    /**
+     * Returns an RFC 4571 framed STUN binding request without attributes.
+     */
+    private static byte[] framedStunBindingRequest()
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( 2 + 20 );
+        buffer.putShort( (short) 20 );                // RFC 4571 length
+        buffer.putShort( (short) 0x0001 );            // binding request
+        buffer.putShort( (short) 0 );                 // message length
+        buffer.putInt( 0x2112A442 );                  // magic cookie
+        buffer.put( new byte[ 12 ] );                 // transaction ID
+        return buffer.array();
+    }
+
+    /**
+     * Verifies that a framed STUN message is relayed to the TCP harvester.
+     */
+    @Test
+    public void testStun() throws Exception
+    {
+        // Setup fixture.
+        final IceTcpGuard guard = guard( false, -1 );
+
+        // Execute system under test.
+        final int result = guard.classify( received( framedStunBindingRequest() ) );
+
+        // Verify result.
+        assertEquals( INTERNAL_PORT, result );
+    }
+
+    /**
+     * Verifies that more data is awaited when only part of a framed STUN message was received.
+     */
+    @Test
+    public void testIncompleteStun() throws Exception
+    {
+        // Setup fixture.
+        final IceTcpGuard guard = guard( false, -1 );
+        final byte[] stun = framedStunBindingRequest();
+
+        // Execute system under test.
+        final int empty = guard.classify( received( new byte[ 0 ] ) );
+        final int partial = guard.classify( received( Arrays.copyOf( stun, 10 ) ) );
+
+        // Verify result.
+        assertEquals( 0, empty );
+        assertEquals( 0, partial );
+    }
+
+    /**
+     * Verifies that data without the STUN magic cookie is rejected.
+     */
+    @Test
+    public void testNoMagicCookie() throws Exception
+    {
+        // Setup fixture.
+        final IceTcpGuard guard = guard( false, -1 );
+        final byte[] data = framedStunBindingRequest();
+        data[ 6 ] = 0x00;
+
+        // Execute system under test.
+        final int result = guard.classify( received( data ) );
+
+        // Verify result.
+        assertEquals( -1, result );
+    }
+
+    /**
+     * Verifies that an HTTP request is rejected.
+     */
+    @Test
+    public void testHttp() throws Exception
+    {
+        // Setup fixture.
+        final IceTcpGuard guard = guard( true, HTTPS_PORT );
+
+        // Execute system under test.
+        final int result = guard.classify( received( "GET / HTTP/1.1\r\nHost: example.org\r\n\r\n".getBytes( "US-ASCII" ) ) );
+
+        // Verify result.
+        assertEquals( -1, result );
+    }
+
+    /**
+     * Verifies that an SSLTCP handshake is relayed to the TCP harvester when SSLTCP is enabled, and rejected when it
+     * is not.
+     */
+    @Test
+    public void testSslTcp() throws Exception
+    {
+        // Setup fixture.
+        final byte[] handshake = Arrays.copyOf( new byte[] { (byte) 0x80, 0x46, 0x01, 0x03, 0x01, 0x00, 0x2d }, 32 );
+
+        // Execute system under test.
+        final int enabled = guard( true, -1 ).classify( received( handshake ) );
+        final int incomplete = guard( true, -1 ).classify( received( new byte[] { (byte) 0x80, 0x46 } ) );
+        final int disabled = guard( false, -1 ).classify( received( handshake ) );
+
+        // Verify result.
+        assertEquals( INTERNAL_PORT, enabled );
+        assertEquals( 0, incomplete );
+        assertEquals( -1, disabled );
+    }
+
+    /**
+     * Verifies that a TLS record is relayed to the HTTPS listener when the port is shared, and rejected when it is not.
+     */
+    @Test
+    public void testTls() throws Exception
+    {
+        // Setup fixture.
+        final byte[] clientHello = Arrays.copyOf( new byte[] { 0x16, 0x03, 0x01, 0x02, 0x00, 0x01 }, 32 );
+
+        // Execute system under test.
+        final int shared = guard( false, HTTPS_PORT ).classify( received( clientHello ) );
+        final int incomplete = guard( false, HTTPS_PORT ).classify( received( new byte[] { 0x16, 0x03 } ) );
+        final int notShared = guard( false, -1 ).classify( received( clientHello ) );
+
+        // Verify result.
+        assertEquals( HTTPS_PORT, shared );
+        assertEquals( 0, incomplete );
+        assertEquals( -1, notShared );
+    }
+
+    /**
+     * Verifies that a record that starts like a TLS handshake, but has an unknown version, is rejected.
+     */
+    @Test
+    public void testTlsUnknownVersion() throws Exception
+    {
+        // Setup fixture.
+        final IceTcpGuard guard = guard( false, HTTPS_PORT );
+
+        // Execute system under test.
+        final int result = guard.classify( received( new byte[] { 0x16, 0x02, 0x00 } ) );
+
+        // Verify result.
+        assertEquals( -1, result );
+    }
+}
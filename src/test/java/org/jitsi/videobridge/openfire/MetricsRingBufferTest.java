@@ -0,0 +1,112 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link MetricsRingBuffer}.
+ */
+public class MetricsRingBufferTest
+{
+    private static long[] row( final long value )
+    {
+        final long[] row = new long[ HistoricMetric.values().length ];
+        row[ 0 ] = value;
+        return row;
+    }
+
+    /**
+     * Verifies that when the buffer is full, the oldest rows are overwritten, and that rows are read in chronological
+     * order.
+     */
+    @Test
+    public void testOverwriteOldest() throws Exception
+    {
+        // Setup fixture.
+        final MetricsRingBuffer buffer = new MetricsRingBuffer( 3 );
+        for ( int i = 1; i <= 5; i++ )
+        {
+            buffer.add( i * 1000, row( i ) );
+        }
+        final List<Long> timestamps = new ArrayList<>();
+
+        // Execute system under test.
+        final int result = buffer.read( -1, ( timestamp, values ) -> timestamps.add( timestamp ) );
+
+        // Verify result.
+        assertEquals( 3, result );
+        assertEquals( 3, buffer.size() );
+        assertEquals( Arrays.asList( 3000L, 4000L, 5000L ), timestamps );
+    }
+
+    /**
+     * Verifies that only rows that are newer than the provided timestamp are read.
+     */
+    @Test
+    public void testReadSince() throws Exception
+    {
+        // Setup fixture.
+        final MetricsRingBuffer buffer = new MetricsRingBuffer( 10 );
+        for ( int i = 1; i <= 5; i++ )
+        {
+            buffer.add( i * 1000, row( i ) );
+        }
+        final List<Long> values = new ArrayList<>();
+
+        // Execute system under test.
+        final int result = buffer.read( 3000, ( timestamp, row ) -> values.add( row[ 0 ] ) );
+
+        // Verify result.
+        assertEquals( 2, result );
+        assertEquals( Arrays.asList( 4L, 5L ), values );
+    }
+
+    /**
+     * Verifies that a row can be added while a visitor of a read operation is blocked.
+     */
+    @Test
+    public void testAddDuringSlowRead() throws Exception
+    {
+        // Setup fixture.
+        final MetricsRingBuffer buffer = new MetricsRingBuffer( 10 );
+        buffer.add( 1000, row( 1 ) );
+        final CountDownLatch visiting = new CountDownLatch( 1 );
+        final CountDownLatch proceed = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            final Future<Integer> read = executor.submit( () -> buffer.read( -1, ( timestamp, values ) -> {
+                visiting.countDown();
+                try
+                {
+                    proceed.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            } ) );
+            assertTrue( visiting.await( 5, TimeUnit.SECONDS ) );
+
+            // Execute system under test.
+            final Future<?> add = executor.submit( () -> buffer.add( 2000, row( 2 ) ) );
+
+            // Verify result.
+            add.get( 5, TimeUnit.SECONDS );
+            assertEquals( 2, buffer.size() );
+            proceed.countDown();
+            assertEquals( 1, (int) read.get( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            proceed.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
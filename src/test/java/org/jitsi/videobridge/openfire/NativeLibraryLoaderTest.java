@@ -0,0 +1,47 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify how {@link NativeLibraryLoader} recognizes native libraries and the library path.
+ */
+public class NativeLibraryLoaderTest
+{
+    /**
+     * Verifies that the library name is derived from the file name of a native library of the current platform.
+     */
+    @Test
+    public void testGetLibraryName() throws Exception
+    {
+        // Execute system under test.
+        final String result = NativeLibraryLoader.getLibraryName( System.mapLibraryName( NativeLibraryLoader.SCTP_LIBRARY ) );
+
+        // Verify result.
+        assertEquals( NativeLibraryLoader.SCTP_LIBRARY, result );
+        assertNull( NativeLibraryLoader.getLibraryName( "README.txt" ) );
+    }
+
+    /**
+     * Verifies that a folder is found in a library path, also when the path names it differently.
+     */
+    @Test
+    public void testIsOnLibraryPath() throws Exception
+    {
+        // Setup fixture.
+        final File folder = new File( System.getProperty( "java.io.tmpdir" ) );
+        final String path = folder.getCanonicalPath();
+        final String libraryPath = "/nonexistent" + File.pathSeparator + new File( folder, "." ).getPath();
+
+        // Execute system under test.
+        final boolean result = NativeLibraryLoader.isOnLibraryPath( libraryPath, path );
+
+        // Verify result.
+        assertTrue( result );
+        assertFalse( NativeLibraryLoader.isOnLibraryPath( "", path ) );
+        assertFalse( NativeLibraryLoader.isOnLibraryPath( "/nonexistent", path ) );
+    }
+}
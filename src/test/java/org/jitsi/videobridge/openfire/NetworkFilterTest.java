@@ -0,0 +1,197 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link NetworkFilter}.
+ */
+public class NetworkFilterTest
+{
+    /**
+     * Verifies that a filter without rules allows everything.
+     */
+    @Test
+    public void testAllowAll() throws Exception
+    {
+        // Execute system under test.
+        final NetworkFilter filter = NetworkFilter.ALLOW_ALL;
+
+        // Verify result.
+        assertTrue( filter.isInterfaceAllowed( "eth0" ) );
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "192.0.2.1" ) ) );
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "2001:db8::1" ) ) );
+        assertFalse( filter.hasInterfaceRules() );
+        assertFalse( filter.hasAddressRules() );
+    }
+
+    /**
+     * Verifies that an IPv4 CIDR prefix matches the addresses in the range only.
+     */
+    @Test
+    public void testIPv4Prefix() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Collections.singletonList( "10.0.0.0/8" ), null );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "10.0.0.1" ) ) );
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "10.255.255.255" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "11.0.0.1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "2001:db8::1" ) ) );
+    }
+
+    /**
+     * Verifies that a prefix length that does not end on a byte boundary is applied bit by bit.
+     */
+    @Test
+    public void testIPv4PrefixNotOnByteBoundary() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Collections.singletonList( "192.168.4.0/22" ), null );
+
+        // Verify result.
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "192.168.3.255" ) ) );
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "192.168.4.0" ) ) );
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "192.168.7.255" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "192.168.8.0" ) ) );
+    }
+
+    /**
+     * Verifies that an IPv6 CIDR prefix matches the addresses in the range only.
+     */
+    @Test
+    public void testIPv6Prefix() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Collections.singletonList( "2001:db8::/32" ), null );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "2001:db8:1234::1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "2001:db9::1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "10.0.0.1" ) ) );
+    }
+
+    /**
+     * Verifies that a literal address matches that address only.
+     */
+    @Test
+    public void testLiteralAddress() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Collections.singletonList( "192.0.2.1" ), null );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "192.0.2.1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "192.0.2.2" ) ) );
+    }
+
+    /**
+     * Verifies that a blocked prefix takes precedence over an allowed prefix that contains it.
+     */
+    @Test
+    public void testBlockedTakesPrecedence() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Collections.singletonList( "10.0.0.0/8" ), Collections.singletonList( "10.1.0.0/16" ) );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "10.2.0.1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "10.1.0.1" ) ) );
+    }
+
+    /**
+     * Verifies that a shorter prefix covers a longer one that was added before it.
+     */
+    @Test
+    public void testShorterPrefixCoversLonger() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Arrays.asList( "10.1.2.0/24", "10.0.0.0/8" ), null );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "10.200.0.1" ) ) );
+    }
+
+    /**
+     * Verifies that invalid address rules are ignored, rather than causing everything to be rejected or allowed.
+     */
+    @Test
+    public void testInvalidAddressRulesAreIgnored() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, null, Arrays.asList( "example.org", "10.0.0.0/33", "192.0.2.0/24" ), null );
+
+        // Verify result.
+        assertTrue( filter.isAddressAllowed( InetAddress.getByName( "192.0.2.1" ) ) );
+        assertFalse( filter.isAddressAllowed( InetAddress.getByName( "10.0.0.1" ) ) );
+    }
+
+    /**
+     * Verifies that interface globs match as documented, and that other characters are matched literally.
+     */
+    @Test
+    public void testInterfaceGlobs() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( Arrays.asList( "eth*", "ens?", "br.0" ), null, null, null );
+
+        // Verify result.
+        assertTrue( filter.isInterfaceAllowed( "eth0" ) );
+        assertTrue( filter.isInterfaceAllowed( "eth" ) );
+        assertTrue( filter.isInterfaceAllowed( "ens3" ) );
+        assertFalse( filter.isInterfaceAllowed( "ens33" ) );
+        assertTrue( filter.isInterfaceAllowed( "br.0" ) );
+        assertFalse( filter.isInterfaceAllowed( "brx0" ) );
+        assertFalse( filter.isInterfaceAllowed( "wlan0" ) );
+    }
+
+    /**
+     * Verifies that a blocked interface glob takes precedence over an allowed one.
+     */
+    @Test
+    public void testBlockedInterfaceGlob() throws Exception
+    {
+        // Setup fixture.
+        final NetworkFilter filter = NetworkFilter.compile( null, Collections.singletonList( "veth*" ), null, null );
+
+        // Verify result.
+        assertTrue( filter.isInterfaceAllowed( "eth0" ) );
+        assertFalse( filter.isInterfaceAllowed( "veth1234" ) );
+    }
+
+    /**
+     * Verifies that only rules that list an interface by name are found, not patterns that match it.
+     */
+    @Test
+    public void testFindLiteralInterfaceRule() throws Exception
+    {
+        // Setup fixture.
+        final List<String> rules = Arrays.asList( "eth*", " ens3 " );
+
+        // Verify result.
+        assertNull( NetworkFilter.findLiteralInterfaceRule( rules, "eth0" ) );
+        assertEquals( " ens3 ", NetworkFilter.findLiteralInterfaceRule( rules, "ens3" ) );
+        assertNull( NetworkFilter.findLiteralInterfaceRule( null, "ens3" ) );
+    }
+
+    /**
+     * Verifies that only rules that list an address literally are found (in any notation), not prefixes that match it.
+     */
+    @Test
+    public void testFindLiteralAddressRule() throws Exception
+    {
+        // Setup fixture.
+        final List<String> rules = Arrays.asList( "10.0.0.0/8", "2001:db8::1", "invalid" );
+
+        // Verify result.
+        assertNull( NetworkFilter.findLiteralAddressRule( rules, InetAddress.getByName( "10.0.0.1" ) ) );
+        assertEquals( "2001:db8::1", NetworkFilter.findLiteralAddressRule( rules, InetAddress.getByName( "2001:db8:0:0:0:0:0:1" ) ) );
+    }
+}
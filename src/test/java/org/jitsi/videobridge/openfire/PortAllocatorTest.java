@@ -0,0 +1,280 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link PortAllocator}.
+ */
+public class PortAllocatorTest
+{
+    /**
+     * Verifies that ports are handed out round-robin, starting at the lowest port of the range.
+     */
+    @Test
+    public void testRoundRobin() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10009, null );
+
+        // Execute system under test.
+        final int first = allocator.allocate();
+        final int second = allocator.allocate();
+        final int third = allocator.allocate();
+
+        // Verify result.
+        assertEquals( 10000, first );
+        assertEquals( 10001, second );
+        assertEquals( 10002, third );
+    }
+
+    /**
+     * Verifies that a block of ports is handed out as consecutive ports, and that the next allocation starts after the
+     * block.
+     */
+    @Test
+    public void testBlock() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10009, null );
+
+        // Execute system under test.
+        final int block = allocator.allocate( 3 );
+        final int next = allocator.allocate();
+
+        // Verify result.
+        assertEquals( 10000, block );
+        assertEquals( 10003, next );
+    }
+
+    /**
+     * Verifies that a block does not contain a port that is in use.
+     */
+    @Test
+    public void testBlockSkipsPortInUse() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10009, port -> port == 10002 );
+
+        // Execute system under test.
+        final int block = allocator.allocate( 3 );
+
+        // Verify result.
+        assertEquals( 10003, block );
+    }
+
+    /**
+     * Verifies that a block that does not fit in the remainder of the range is handed out from the start of the range.
+     */
+    @Test
+    public void testBlockDoesNotWrap() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10009, null );
+        allocator.allocate( 8 );
+        allocator.released( 10000 ); // in cooldown
+        allocator.released( 10001 ); // in cooldown
+
+        // Execute system under test.
+        final int block = allocator.allocate( 3 );
+
+        // Verify result.
+        assertEquals( -1, block );
+        assertEquals( 1, allocator.getExhaustions() );
+    }
+
+    /**
+     * Verifies that a port that was released is not handed out again during its cooldown period.
+     */
+    @Test
+    public void testCooldownAfterRelease() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10001, null );
+        allocator.allocate();
+        allocator.allocate();
+        allocator.released( 10000 );
+
+        // Execute system under test.
+        final int result = allocator.allocate();
+
+        // Verify result.
+        assertEquals( -1, result );
+    }
+
+    /**
+     * Verifies that a port that was bound (without being handed out) is not handed out during its cooldown period.
+     */
+    @Test
+    public void testCooldownAfterBound() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10001, null );
+        allocator.bound( 10000 );
+
+        // Execute system under test.
+        final int first = allocator.allocate();
+        final int second = allocator.allocate();
+
+        // Verify result.
+        assertEquals( 10001, first );
+        assertEquals( -1, second );
+    }
+
+    /**
+     * Verifies that a bind failure is counted, and puts the port in cooldown.
+     */
+    @Test
+    public void testBindFailed() throws Exception
+    {
+        // Setup fixture.
+        final PortAllocator allocator = new PortAllocator( 10000, 10001, null );
+
+        // Execute system under test.
+        allocator.bindFailed( 10001 );
+        final int first = allocator.allocate();
+        final int second = allocator.allocate();
+
+        // Verify result.
+        assertEquals( 1, allocator.getBindFailures() );
+        assertEquals( 10000, first );
+        assertEquals( -1, second );
+    }
+
+    /**
+     * Verifies that an invalid range is rejected.
+     */
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidRange() throws Exception
+    {
+        new PortAllocator( 20000, 10000, null );
+    }
+
+    /**
+     * Verifies that concurrent callers that allocate ports (and blocks of ports) from a range until it is exhausted
+     * never receive overlapping ports, and that together, they receive every port of the range.
+     */
+    @Test
+    public void testConcurrentAllocation() throws Exception
+    {
+        // Setup fixture.
+        final int minPort = 10000;
+        final int maxPort = 19999;
+        final int threads = 16;
+        final PortAllocator allocator = new PortAllocator( minPort, maxPort, null );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<List<Integer>>> futures = new ArrayList<>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            final int count = i % 3 + 1;
+            futures.add( executor.submit( () -> {
+                final List<Integer> ports = new ArrayList<>();
+                start.await();
+                int port;
+                while ( ( port = allocator.allocate( count ) ) != -1 )
+                {
+                    for ( int j = 0; j < count; j++ )
+                    {
+                        ports.add( port + j );
+                    }
+                }
+                return ports;
+            } ) );
+        }
+
+        // Execute system under test.
+        start.countDown();
+        final BitSet handedOut = new BitSet();
+        int total = 0;
+        try
+        {
+            for ( final Future<List<Integer>> future : futures )
+            {
+                for ( final int port : future.get( 30, TimeUnit.SECONDS ) )
+                {
+                    // Verify result.
+                    assertTrue( "Port is in range: " + port, port >= minPort && port <= maxPort );
+                    assertFalse( "Port was handed out more than once: " + port, handedOut.get( port - minPort ) );
+                    handedOut.set( port - minPort );
+                    total++;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // Verify result.
+        assertEquals( total, handedOut.cardinality() );
+        assertTrue( "Most of the range was handed out: " + total, total > ( maxPort - minPort + 1 ) - 3 * threads );
+        assertEquals( threads, allocator.getExhaustions() );
+    }
+
+    /**
+     * Verifies that concurrent callers that allocate and release ports never receive a port that is in use.
+     */
+    @Test
+    public void testConcurrentAllocationAndRelease() throws Exception
+    {
+        // Setup fixture.
+        final int minPort = 10000;
+        final int maxPort = 10999;
+        final int threads = 8;
+        final Set<Integer> inUse = ConcurrentHashMap.newKeySet();
+        final PortAllocator allocator = new PortAllocator( minPort, maxPort, inUse::contains );
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            futures.add( executor.submit( () -> {
+                start.await();
+                int collisions = 0;
+                final Deque<Integer> held = new ArrayDeque<>();
+                for ( int j = 0; j < 10000; j++ )
+                {
+                    final int port = allocator.allocate();
+                    if ( port != -1 )
+                    {
+                        if ( !inUse.add( port ) )
+                        {
+                            collisions++;
+                        }
+                        held.add( port );
+                    }
+                    if ( held.size() > 10 || ( port == -1 && !held.isEmpty() ) )
+                    {
+                        final int released = held.remove();
+                        inUse.remove( released );
+                        allocator.released( released );
+                    }
+                }
+                return collisions;
+            } ) );
+        }
+
+        // Execute system under test.
+        start.countDown();
+        int collisions = 0;
+        try
+        {
+            for ( final Future<Integer> future : futures )
+            {
+                collisions += future.get( 30, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // Verify result.
+        assertEquals( 0, collisions );
+    }
+}
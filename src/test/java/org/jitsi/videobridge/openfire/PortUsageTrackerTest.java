@@ -0,0 +1,120 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify how {@link PortUsageTracker} reconciles its usage information with the result of a scan.
+ */
+public class PortUsageTrackerTest
+{
+    private static final int MIN_PORT = 10000;
+
+    private static final int MAX_PORT = 10099;
+
+    private static long[] observed( final int... ports )
+    {
+        final long[] bitmap = new long[ ( MAX_PORT - MIN_PORT + 64 ) / 64 ];
+        for ( final int port : ports )
+        {
+            final int index = port - MIN_PORT;
+            bitmap[ index >>> 6 ] |= 1L << index;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Verifies that ports that a scan did not observe are released, and that newly observed ports are allocated.
+     */
+    @Test
+    public void testScanReplacesUsage() throws Exception
+    {
+        // Setup fixture.
+        final PortUsageTracker tracker = new PortUsageTracker( MIN_PORT, MAX_PORT );
+        tracker.allocated( 10001 );
+        tracker.allocated( 10070 );
+        final List<Integer> released = new ArrayList<>();
+        tracker.setReleaseListener( released::add );
+
+        // Execute system under test.
+        tracker.beginScan();
+        tracker.completeScan( MIN_PORT, MAX_PORT, observed( 10001, 10002 ) );
+
+        // Verify result.
+        assertTrue( tracker.isUsed( 10001 ) );
+        assertTrue( tracker.isUsed( 10002 ) );
+        assertFalse( tracker.isUsed( 10070 ) );
+        assertEquals( 2, tracker.getUsed() );
+        assertEquals( Collections.singletonList( 10070 ), released );
+    }
+
+    /**
+     * Verifies that a port that is allocated while a scan is in progress is not released by that scan.
+     */
+    @Test
+    public void testAllocationDuringScan() throws Exception
+    {
+        // Setup fixture.
+        final PortUsageTracker tracker = new PortUsageTracker( MIN_PORT, MAX_PORT );
+        final List<Integer> released = new ArrayList<>();
+        tracker.setReleaseListener( released::add );
+        tracker.beginScan();
+
+        // Execute system under test.
+        tracker.allocated( 10080 );
+        tracker.completeScan( MIN_PORT, MAX_PORT, observed() );
+
+        // Verify result.
+        assertTrue( tracker.isUsed( 10080 ) );
+        assertEquals( 1, tracker.getUsed() );
+        assertEquals( 1, tracker.getAllocations() );
+        assertEquals( 0, tracker.getReleases() );
+        assertTrue( released.isEmpty() );
+    }
+
+    /**
+     * Verifies that a port that is released while a scan is in progress is not allocated again by that scan.
+     */
+    @Test
+    public void testReleaseDuringScan() throws Exception
+    {
+        // Setup fixture.
+        final PortUsageTracker tracker = new PortUsageTracker( MIN_PORT, MAX_PORT );
+        tracker.allocated( 10005 );
+        tracker.beginScan();
+
+        // Execute system under test.
+        tracker.released( 10005 );
+        tracker.completeScan( MIN_PORT, MAX_PORT, observed( 10005 ) );
+
+        // Verify result.
+        assertFalse( tracker.isUsed( 10005 ) );
+        assertEquals( 0, tracker.getUsed() );
+        assertEquals( 1, tracker.getAllocations() );
+        assertEquals( 1, tracker.getReleases() );
+    }
+
+    /**
+     * Verifies that the result of a scan is discarded when the range changed while scanning.
+     */
+    @Test
+    public void testRangeChangedDuringScan() throws Exception
+    {
+        // Setup fixture.
+        final PortUsageTracker tracker = new PortUsageTracker( MIN_PORT, MAX_PORT );
+        tracker.beginScan();
+        tracker.setRange( 20000, 20099 );
+
+        // Execute system under test.
+        tracker.completeScan( MIN_PORT, MAX_PORT, observed( 10001 ) );
+
+        // Verify result.
+        assertEquals( 0, tracker.getUsed() );
+        assertEquals( 20000, tracker.getMinPort() );
+    }
+}
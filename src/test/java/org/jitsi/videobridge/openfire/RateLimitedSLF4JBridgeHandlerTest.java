@@ -0,0 +1,150 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link RateLimitedSLF4JBridgeHandler}, using its default configuration.
+ */
+public class RateLimitedSLF4JBridgeHandlerTest
+{
+    private static LogRecord record( final String loggerName, final String message )
+    {
+        final LogRecord record = new LogRecord( Level.WARNING, message );
+        record.setLoggerName( loggerName );
+        return record;
+    }
+
+    /**
+     * Verifies that of messages that differ only in their numbers and identifiers, the configured number is passed on
+     * per interval, and the others are suppressed.
+     */
+    @Test
+    public void testLimitSimilarMessages() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+
+        // Execute system under test.
+        for ( int i = 0; i < 25; i++ )
+        {
+            handler.publish( record( "org.jitsi.Test", "Failed to send packet with SSRC " + ( 1000 + i ) + " to port " + ( 10000 + i ) ) );
+        }
+
+        // Verify result.
+        assertEquals( RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getPassed() );
+        assertEquals( 25 - RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getSuppressed() );
+        assertEquals( 1, handler.getGroups() );
+    }
+
+    /**
+     * Verifies that similar messages of different conferences are limited independently.
+     */
+    @Test
+    public void testGroupByConference() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+
+        // Execute system under test.
+        for ( int i = 0; i < 15; i++ )
+        {
+            handler.publish( record( "org.jitsi.Test", "conference=abcdef Channel expired: " + i ) );
+            handler.publish( record( "org.jitsi.Test", "conference=ghijkl Channel expired: " + i ) );
+        }
+
+        // Verify result.
+        assertEquals( 2 * RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getPassed() );
+        assertEquals( 2, handler.getGroups() );
+    }
+
+    /**
+     * Verifies that similar messages of different loggers are limited independently.
+     */
+    @Test
+    public void testGroupByLogger() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+
+        // Execute system under test.
+        for ( int i = 0; i < 15; i++ )
+        {
+            handler.publish( record( "org.jitsi.A", "Dropping packet " + i ) );
+            handler.publish( record( "org.jitsi.B", "Dropping packet " + i ) );
+        }
+
+        // Verify result.
+        assertEquals( 2 * RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getPassed() );
+        assertEquals( 2 * ( 15 - RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE ), handler.getSuppressed() );
+    }
+
+    /**
+     * Verifies that messages that differ in text other than numbers and identifiers are limited independently.
+     */
+    @Test
+    public void testDistinctMessages() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+
+        // Execute system under test.
+        for ( int i = 0; i < 15; i++ )
+        {
+            handler.publish( record( "org.jitsi.Test", "Dropping packet " + i ) );
+            handler.publish( record( "org.jitsi.Test", "Forwarding packet " + i ) );
+        }
+
+        // Verify result.
+        assertEquals( 2, handler.getGroups() );
+        assertEquals( 2 * RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getPassed() );
+    }
+
+    /**
+     * Verifies that the messages of a parameterized template are grouped by the template.
+     */
+    @Test
+    public void testParameterizedMessages() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+
+        // Execute system under test.
+        for ( int i = 0; i < 15; i++ )
+        {
+            final LogRecord record = record( "org.jitsi.Test", "Dropping packet {0}" );
+            record.setParameters( new Object[] { i } );
+            handler.publish( record );
+        }
+
+        // Verify result.
+        assertEquals( 1, handler.getGroups() );
+        assertEquals( RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getPassed() );
+    }
+
+    /**
+     * Verifies that ending all intervals lets messages of a group be passed on again.
+     */
+    @Test
+    public void testFlushEndsInterval() throws Exception
+    {
+        // Setup fixture.
+        final RateLimitedSLF4JBridgeHandler handler = new RateLimitedSLF4JBridgeHandler();
+        for ( int i = 0; i < 15; i++ )
+        {
+            handler.publish( record( "org.jitsi.Test", "Dropping packet " + i ) );
+        }
+
+        // Execute system under test.
+        handler.flush( true );
+        handler.publish( record( "org.jitsi.Test", "Dropping packet 16" ) );
+
+        // Verify result.
+        assertEquals( RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE + 1, handler.getPassed() );
+        assertEquals( 15 - RateLimitedSLF4JBridgeHandler.MESSAGES_DEFAULT_VALUE, handler.getSuppressed() );
+    }
+}
@@ -0,0 +1,114 @@
+package org.jitsi.videobridge.openfire;
+
+import org.dom4j.Element;
+import org.dom4j.QName;
+import org.junit.Test;
+import org.xmpp.packet.IQ;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify which ports {@link ReconnectAffinity} hands out to reconnecting endpoints. The timing wheel is
+ * advanced by the tests, rather than by a timer.
+ */
+public class ReconnectAffinityTest
+{
+    private static final String CONFERENCE_ID = "abcdef";
+
+    private static final String ENDPOINT_ID = "endpoint-1";
+
+    /**
+     * Returns a Colibri request for the channel of the endpoint, and the response of the Videobridge to it.
+     *
+     * @param port the port of the UDP host candidate in the response, or -1 when the channel is expired.
+     */
+    private static IQ[] exchange( final int port )
+    {
+        final IQ request = new IQ( IQ.Type.set );
+        request.setChildElement( "conference", ColibriElements.NAMESPACE ).addAttribute( "id", CONFERENCE_ID );
+
+        final IQ response = IQ.createResultIQ( request );
+        final Element channel = response.setChildElement( "conference", ColibriElements.NAMESPACE )
+            .addAttribute( "id", CONFERENCE_ID )
+            .addElement( "content" ).addAttribute( "name", "audio" )
+            .addElement( "channel" ).addAttribute( "id", "1234" ).addAttribute( "endpoint", ENDPOINT_ID );
+        if ( port < 0 )
+        {
+            channel.addAttribute( "expire", "0" );
+        }
+        else
+        {
+            channel.addElement( QName.get( "transport", "urn:xmpp:jingle:transports:ice-udp:1" ) )
+                .addElement( "candidate" )
+                .addAttribute( "type", "host" )
+                .addAttribute( "protocol", "udp" )
+                .addAttribute( "port", String.valueOf( port ) );
+        }
+        return new IQ[] { request, response };
+    }
+
+    private static void record( final ReconnectAffinity affinity, final int port )
+    {
+        final IQ[] exchange = exchange( port );
+        affinity.record( exchange[ 0 ], exchange[ 1 ] );
+    }
+
+    /**
+     * Verifies that an endpoint that reconnects after its channels were expired gets its previous port, once.
+     */
+    @Test
+    public void testClaimAfterExpiry() throws Exception
+    {
+        // Setup fixture.
+        final ReconnectAffinity affinity = new ReconnectAffinity( new TimingWheel() );
+        record( affinity, 10042 );
+        record( affinity, -1 );
+
+        // Execute system under test.
+        final int first = affinity.claim( CONFERENCE_ID, ENDPOINT_ID );
+        final int second = affinity.claim( CONFERENCE_ID, ENDPOINT_ID );
+
+        // Verify result.
+        assertEquals( 10042, first );
+        assertEquals( -1, second );
+        assertEquals( 1, affinity.getReused() );
+    }
+
+    /**
+     * Verifies that the port of an endpoint whose channels are in use is not handed out.
+     */
+    @Test
+    public void testNoClaimWhileInUse() throws Exception
+    {
+        // Setup fixture.
+        final ReconnectAffinity affinity = new ReconnectAffinity( new TimingWheel() );
+        record( affinity, 10042 );
+
+        // Execute system under test.
+        final int result = affinity.claim( CONFERENCE_ID, ENDPOINT_ID );
+
+        // Verify result.
+        assertEquals( -1, result );
+        assertEquals( 0, affinity.getReused() );
+    }
+
+    /**
+     * Verifies that the port of an endpoint that does not reconnect within the window is discarded by the timing wheel.
+     */
+    @Test
+    public void testDiscardAfterWindow() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final ReconnectAffinity affinity = new ReconnectAffinity( wheel );
+        record( affinity, 10042 );
+        record( affinity, -1 );
+
+        // Execute system under test.
+        wheel.advance( System.currentTimeMillis() + ReconnectAffinity.WINDOW_DEFAULT_VALUE + TimingWheel.TICK_DEFAULT_VALUE * 2 );
+
+        // Verify result.
+        assertEquals( -1, affinity.claim( CONFERENCE_ID, ENDPOINT_ID ) );
+        assertEquals( 1, affinity.getExpired() );
+    }
+}
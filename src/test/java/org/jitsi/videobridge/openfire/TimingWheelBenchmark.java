@@ -0,0 +1,108 @@
+package org.jitsi.videobridge.openfire;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of finding expired entries with a {@link TimingWheel} to that of a periodic sweep over all
+ * entries, for a stable population of entries that each expire {@link #LIFETIME} milliseconds after they were last
+ * (re)scheduled, and are then scheduled again.
+ *
+ * Each invocation of {@link #wheelTick()} advances the wheel by one tick of the default duration, and each invocation of
+ * {@link #sweep()} visits all entries once. To compare the CPU time per second, multiply the result of the former by
+ * the number of ticks per second, and that of the latter by the number of sweeps per second.
+ *
+ * This benchmark is not executed by the unit tests. See the README for how to run it.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( org.openjdk.jmh.annotations.Scope.Benchmark )
+public class TimingWheelBenchmark
+{
+    /**
+     * The time (in milliseconds) after which an entry expires, which is the default reconnect affinity window.
+     */
+    private static final long LIFETIME = ReconnectAffinity.WINDOW_DEFAULT_VALUE;
+
+    @Param( { "10000", "100000" } )
+    public int entries;
+
+    private TimingWheel wheel;
+
+    /**
+     * The moment (in milliseconds since the epoch) up to which the wheel was advanced.
+     */
+    private long wheelNow;
+
+    /**
+     * The deadlines of the entries of the sweep, by entry.
+     */
+    private Map<Integer, Long> deadlines;
+
+    /**
+     * The moment (in milliseconds since the epoch) of the last sweep.
+     */
+    private long sweepNow;
+
+    @Setup
+    public void setUp()
+    {
+        final Random random = new Random( 42 );
+
+        wheel = new TimingWheel();
+        wheelNow = System.currentTimeMillis();
+        for ( int i = 0; i < entries; i++ )
+        {
+            wheel.schedule( new Reschedule(), random.nextInt( (int) LIFETIME ), wheelNow );
+        }
+
+        deadlines = new ConcurrentHashMap<>();
+        sweepNow = wheelNow;
+        for ( int i = 0; i < entries; i++ )
+        {
+            deadlines.put( i, sweepNow + random.nextInt( (int) LIFETIME ) );
+        }
+    }
+
+    /**
+     * A task that schedules itself again when it expires.
+     */
+    private final class Reschedule implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            wheel.schedule( this, LIFETIME, wheelNow );
+        }
+    }
+
+    @Benchmark
+    public void wheelTick()
+    {
+        wheelNow += TimingWheel.TICK_DEFAULT_VALUE;
+        wheel.advance( wheelNow );
+    }
+
+    @Benchmark
+    public int sweep()
+    {
+        sweepNow += TimingWheel.TICK_DEFAULT_VALUE;
+        int expired = 0;
+        for ( final Map.Entry<Integer, Long> entry : deadlines.entrySet() )
+        {
+            if ( entry.getValue() <= sweepNow )
+            {
+                entry.setValue( sweepNow + LIFETIME );
+                expired++;
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,167 @@
+package org.jitsi.videobridge.openfire;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests that verify the behavior of {@link TimingWheel}, using its default tick duration and number of slots. The
+ * wheel is advanced by the tests, rather than by a timer.
+ */
+public class TimingWheelTest
+{
+    /**
+     * The duration of one revolution of a wheel with the default configuration.
+     */
+    private static final long REVOLUTION = TimingWheel.TICK_DEFAULT_VALUE * TimingWheel.SLOTS_DEFAULT_VALUE;
+
+    /**
+     * Verifies that a task is run when it is due, and not before.
+     */
+    @Test
+    public void testExpiresWhenDue() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger runs = new AtomicInteger();
+        wheel.schedule( runs::incrementAndGet, 1000 );
+
+        // Execute system under test.
+        wheel.advance( start + 500 );
+        final int runsBeforeDue = runs.get();
+        wheel.advance( start + 1500 );
+
+        // Verify result.
+        assertEquals( 0, runsBeforeDue );
+        assertEquals( 1, runs.get() );
+        assertEquals( 1, wheel.getExpired() );
+        assertEquals( 0, wheel.getPending() );
+    }
+
+    /**
+     * Verifies that a task with a delay of more than one revolution of the wheel is not run when its slot is visited
+     * in an earlier revolution.
+     */
+    @Test
+    public void testRounds() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final long delay = REVOLUTION + REVOLUTION / 2;
+        final AtomicInteger runs = new AtomicInteger();
+        wheel.schedule( runs::incrementAndGet, delay );
+
+        // Execute system under test.
+        wheel.advance( start + REVOLUTION / 2 );
+        wheel.advance( start + REVOLUTION );
+        wheel.advance( start + delay - 1000 );
+        final int runsBeforeDue = runs.get();
+        wheel.advance( start + delay + 1000 );
+
+        // Verify result.
+        assertEquals( 0, runsBeforeDue );
+        assertEquals( 1, runs.get() );
+        assertEquals( 0, wheel.getPending() );
+    }
+
+    /**
+     * Verifies that a cancelled task is not run, and that a timeout can be cancelled only once.
+     */
+    @Test
+    public void testCancel() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger runs = new AtomicInteger();
+        final TimingWheel.Timeout timeout = wheel.schedule( runs::incrementAndGet, 1000 );
+
+        // Execute system under test.
+        final boolean first = timeout.cancel();
+        final boolean second = timeout.cancel();
+        wheel.advance( start + 1500 );
+
+        // Verify result.
+        assertTrue( first );
+        assertFalse( second );
+        assertEquals( 0, runs.get() );
+        assertEquals( 1, wheel.getCancelled() );
+        assertEquals( 0, wheel.getExpired() );
+        assertEquals( 0, wheel.getPending() );
+    }
+
+    /**
+     * Verifies that a timeout cannot be cancelled after its task ran.
+     */
+    @Test
+    public void testCancelAfterExpiry() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final TimingWheel.Timeout timeout = wheel.schedule( () -> {}, 1000 );
+        wheel.advance( start + 1500 );
+
+        // Execute system under test.
+        final boolean result = timeout.cancel();
+
+        // Verify result.
+        assertFalse( result );
+        assertEquals( 0, wheel.getCancelled() );
+    }
+
+    /**
+     * Verifies that when the wheel is advanced by more than one revolution at once, the tasks that are due are run,
+     * and the others are retained until they are due.
+     */
+    @Test
+    public void testCatchUp() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger early = new AtomicInteger();
+        final AtomicInteger late = new AtomicInteger();
+        wheel.schedule( early::incrementAndGet, 1000 );
+        wheel.schedule( late::incrementAndGet, 4 * REVOLUTION );
+
+        // Execute system under test.
+        wheel.advance( start + 2 * REVOLUTION );
+        final int lateRunsBeforeDue = late.get();
+        final int pendingBeforeDue = wheel.getPending();
+        wheel.advance( start + 3 * REVOLUTION );
+        wheel.advance( start + 4 * REVOLUTION + 1000 );
+
+        // Verify result.
+        assertEquals( 1, early.get() );
+        assertEquals( 0, lateRunsBeforeDue );
+        assertEquals( 1, pendingBeforeDue );
+        assertEquals( 1, late.get() );
+        assertEquals( 0, wheel.getPending() );
+    }
+
+    /**
+     * Verifies that an exception thrown by a task does not prevent other due tasks from being run.
+     */
+    @Test
+    public void testFailingTask() throws Exception
+    {
+        // Setup fixture.
+        final TimingWheel wheel = new TimingWheel();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger runs = new AtomicInteger();
+        wheel.schedule( () -> { throw new IllegalStateException( "test" ); }, 1000 );
+        wheel.schedule( runs::incrementAndGet, 1000 );
+
+        // Execute system under test.
+        wheel.advance( start + 1500 );
+
+        // Verify result.
+        assertEquals( 1, runs.get() );
+        assertEquals( 2, wheel.getExpired() );
+    }
+}
@@ -0,0 +1,482 @@
+<%@ page import="org.jitsi.videobridge.openfire.*" %>
+<%@ page import="java.util.*" %>
+<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ taglib uri="http://java.sun.com/jstl/core_rt" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jstl/fmt_rt" prefix="fmt" %>
+<%
+    final BridgeMetricsSampler sampler = DashboardEventsServlet.getSampler();
+    final BridgeMetrics metrics = sampler == null ? BridgeMetrics.EMPTY : sampler.getLatest();
+    final PortUsageTracker portUsage = RuntimeConfiguration.getPortUsageTracker();
+    final BridgeExecutor executor = RuntimeConfiguration.getExecutor();
+    final ColibriRequestCache requestCache = RuntimeConfiguration.getColibriRequestCache();
+    final SelfTestProbe selfTestProbe = RuntimeConfiguration.getSelfTestProbe();
+    final ClusteredConfiguration clusteredConfiguration = RuntimeConfiguration.getClusteredConfiguration();
+    final QuotaManager quotaManager = RuntimeConfiguration.getQuotaManager();
+    final IceTcpGuard iceTcpGuard = RuntimeConfiguration.getIceTcpGuard();
+
+    // Histograms of the self-test probe, as 'bound: count' pairs of the non-empty buckets.
+    final String[] selfTestHistograms = new String[ 2 ];
+    if ( selfTestProbe != null )
+    {
+        final long[] buckets = SelfTestProbe.getBuckets();
+        final long[][] histograms = { selfTestProbe.getAllocationHistogram(), selfTestProbe.getLatencyHistogram() };
+        for ( int h = 0; h < histograms.length; h++ )
+        {
+            final StringBuilder sb = new StringBuilder();
+            for ( int b = 0; b < buckets.length; b++ )
+            {
+                if ( histograms[ h ][ b ] > 0 )
+                {
+                    sb.append( sb.length() == 0 ? "" : ", " );
+                    sb.append( buckets[ b ] == Long.MAX_VALUE ? "&gt; " + buckets[ b - 1 ] : "&le; " + buckets[ b ] ).append( " ms: " ).append( histograms[ h ][ b ] );
+                }
+            }
+            selfTestHistograms[ h ] = sb.length() == 0 ? "-" : sb.toString();
+        }
+    }
+
+    // Per-minute rows of the last hour, newest first.
+    final LinkedList<long[]> history = new LinkedList<>();
+    final MetricsHistory metricsHistory = MetricsExportServlet.getHistory();
+    if ( metricsHistory != null )
+    {
+        metricsHistory.getMinutes().read( System.currentTimeMillis() - 60 * 60 * 1000, new MetricsRingBuffer.RowVisitor()
+        {
+            @Override
+            public void visit( long timestamp, long[] values )
+            {
+                final long[] row = new long[ values.length + 1 ];
+                row[ 0 ] = timestamp;
+                System.arraycopy( values, 0, row, 1, values.length );
+                history.addFirst( row );
+            }
+        } );
+    }
+%>
+<html>
+<head>
+    <title><fmt:message key="dashboard.page.title" /></title>
+
+    <meta name="pageID" content="jitsi-videobridge-dashboard"/>
+
+    <style>
+        td.metric-value {
+            font-weight: bold;
+            text-align: right;
+            padding-left: 2em;
+        }
+    </style>
+
+    <script type="text/javascript">
+        function formatBitrate( bps ) {
+            if ( bps >= 1000000 ) {
+                return ( bps / 1000000 ).toFixed( 2 ) + ' Mbps';
+            }
+            if ( bps >= 1000 ) {
+                return ( bps / 1000 ).toFixed( 1 ) + ' kbps';
+            }
+            return bps + ' bps';
+        }
+
+        function setText( id, value ) {
+            document.getElementById( id ).textContent = value;
+        }
+
+        function render( metrics ) {
+            setText( 'conferences', metrics.conferences );
+            setText( 'endpoints', metrics.endpoints );
+            setText( 'bitrateDownload', formatBitrate( metrics.bitrateDownload ) );
+            setText( 'bitrateUpload', formatBitrate( metrics.bitrateUpload ) );
+            setText( 'packetLossRate', ( metrics.packetLossRate * 100 ).toFixed( 2 ) + ' %' );
+            setText( 'portRange', metrics.minPort + ' - ' + metrics.maxPort );
+            var capacity = metrics.maxPort - metrics.minPort + 1;
+            setText( 'portsUsed', metrics.portsUsed < 0 ? '-' : metrics.portsUsed + ' / ' + capacity + ' (' + ( metrics.portsUsed * 100 / capacity ).toFixed( 1 ) + ' %)' );
+            setText( 'portFragmentation', ( metrics.portFragmentation * 100 ).toFixed( 1 ) + ' %' );
+            setText( 'iqCount', metrics.iqCount );
+            setText( 'iqLatencyAverage', metrics.iqLatencyAverage.toFixed( 2 ) + ' ms' );
+            setText( 'iqLatencyMax', metrics.iqLatencyMax.toFixed( 2 ) + ' ms' );
+            setText( 'allocationLatencyAverage', metrics.allocationLatencyAverage.toFixed( 2 ) + ' ms' );
+            setText( 'cpuLoad', metrics.cpuLoad < 0 ? '-' : ( metrics.cpuLoad * 100 ).toFixed( 1 ) + ' %' );
+            setText( 'updated', new Date( metrics.timestamp ).toLocaleTimeString() );
+        }
+
+        window.onload = function() {
+            if ( !window.EventSource ) {
+                return;
+            }
+            var source = new EventSource( 'dashboard-events' );
+            source.addEventListener( 'metrics', function( event ) {
+                document.getElementById( 'disconnected' ).style.display = 'none';
+                render( JSON.parse( event.data ) );
+            } );
+            source.onerror = function() {
+                document.getElementById( 'disconnected' ).style.display = '';
+            };
+        };
+    </script>
+</head>
+<body>
+
+<% if ( sampler == null ) { %>
+<div class="jive-warning">
+    <table cellpadding="0" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td class="jive-icon"><img src="/images/warning-16x16.gif" width="16" height="16" border="0" alt=""/></td>
+            <td class="jive-icon-label">
+                <fmt:message key="dashboard.page.not-running"/>
+            </td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+<br/>
+<% } %>
+
+<div class="jive-warning" id="disconnected" style="display: none;">
+    <table cellpadding="0" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td class="jive-icon"><img src="/images/warning-16x16.gif" width="16" height="16" border="0" alt=""/></td>
+            <td class="jive-icon-label">
+                <fmt:message key="dashboard.page.disconnected"/>
+            </td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<% if ( portUsage != null && portUsage.getLevel() != PortUsageTracker.Level.NORMAL ) { %>
+<div class="jive-warning">
+    <table cellpadding="0" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td class="jive-icon"><img src="/images/warning-16x16.gif" width="16" height="16" border="0" alt=""/></td>
+            <td class="jive-icon-label">
+                <fmt:message key="dashboard.page.ports.exhaustion-warning">
+                    <fmt:param value="<%= portUsage.getUsed() %>"/>
+                    <fmt:param value="<%= portUsage.getCapacity() %>"/>
+                </fmt:message>
+            </td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+<br/>
+<% } %>
+
+<p>
+    <fmt:message key="dashboard.page.description"/>
+</p>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.load.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.load.conferences"/>:</td>
+            <td class="metric-value" id="conferences"><%= metrics.getConferences() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.load.endpoints"/>:</td>
+            <td class="metric-value" id="endpoints"><%= metrics.getEndpoints() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.load.cpu"/>:</td>
+            <td class="metric-value" id="cpuLoad"><%= metrics.getCpuLoad() < 0 ? "-" : String.format( "%.1f", metrics.getCpuLoad() * 100 ) + " %" %></td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.traffic.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.traffic.bitrate-download"/>:</td>
+            <td class="metric-value" id="bitrateDownload"><%= metrics.getBitrateDownload() %> bps</td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.traffic.bitrate-upload"/>:</td>
+            <td class="metric-value" id="bitrateUpload"><%= metrics.getBitrateUpload() %> bps</td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.traffic.packet-loss"/>:</td>
+            <td class="metric-value" id="packetLossRate"><%= String.format( "%.2f", metrics.getPacketLossRate() * 100 ) %> %</td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.ports.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.ports.range"/>:</td>
+            <td class="metric-value" id="portRange"><%= RuntimeConfiguration.getMinPort() %> - <%= RuntimeConfiguration.getMaxPort() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.ports.used"/>:</td>
+            <td class="metric-value" id="portsUsed"><%= portUsage == null ? "-" : portUsage.getUsed() + " / " + portUsage.getCapacity() + " (" + String.format( "%.1f", portUsage.getUtilization() * 100 ) + " %)" %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.ports.fragmentation"/>:</td>
+            <td class="metric-value" id="portFragmentation"><%= portUsage == null ? "-" : String.format( "%.1f", portUsage.getFragmentation() * 100 ) + " %" %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.ports.bind-failures"/>:</td>
+            <td class="metric-value"><%= portUsage == null ? "-" : portUsage.getBindFailures() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.ports.thresholds"/>:</td>
+            <td class="metric-value"><%= PortUsageTracker.getWarningThreshold() %> % / <%= PortUsageTracker.getCriticalThreshold() %> %</td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.iq.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.iq.count"/>:</td>
+            <td class="metric-value" id="iqCount"><%= metrics.getIqCount() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.iq.latency-average"/>:</td>
+            <td class="metric-value" id="iqLatencyAverage"><%= String.format( "%.2f", metrics.getIqLatencyAverage() ) %> ms</td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.iq.latency-max"/>:</td>
+            <td class="metric-value" id="iqLatencyMax"><%= String.format( "%.2f", metrics.getIqLatencyMax() ) %> ms</td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.iq.allocation-latency"/>:</td>
+            <td class="metric-value" id="allocationLatencyAverage"><%= String.format( "%.2f", metrics.getAllocationLatencyAverage() ) %> ms</td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.iq.retransmissions"/>:</td>
+            <td class="metric-value"><%= requestCache == null ? "-" : requestCache.getReplayed() + " / " + requestCache.getCoalesced() + " / " + requestCache.getCoalesceTimeouts() %></td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.executor.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.executor.threads"/>:</td>
+            <td class="metric-value"><%= executor == null ? "-" : executor.getActiveThreads() + " / " + executor.getThreads() + ( executor.isAutoTuned() ? " (auto)" : "" ) %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.executor.queue"/>:</td>
+            <td class="metric-value"><%= executor == null ? "-" : executor.getQueueSize() + " / " + executor.getQueueCapacity() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.executor.latency"/>:</td>
+            <td class="metric-value"><%= executor == null ? "-" : String.format( "%.2f", executor.getQueueLatency() ) + " ms" %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.executor.rejected"/>:</td>
+            <td class="metric-value"><%= executor == null ? "-" : executor.getRejectedCount() %></td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.selftest.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.selftest.state"/>:</td>
+            <td class="metric-value"><%= selfTestProbe == null ? "-" : selfTestProbe.getState() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.selftest.last"/>:</td>
+            <td class="metric-value"><%= selfTestProbe == null || selfTestProbe.getLastProbe() == 0 ? "-" : new Date( selfTestProbe.getLastProbe() ) + " - " + selfTestProbe.getLastResult() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.selftest.failures"/>:</td>
+            <td class="metric-value"><%= selfTestProbe == null ? "-" : selfTestProbe.getConsecutiveFailures() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.selftest.allocation"/>:</td>
+            <td class="metric-value"><%= selfTestProbe == null ? "-" : selfTestHistograms[ 0 ] %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.selftest.latency"/>:</td>
+            <td class="metric-value"><%= selfTestProbe == null ? "-" : selfTestHistograms[ 1 ] %></td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+
+<% if ( iceTcpGuard != null ) { %>
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.icetcp.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.ports"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getPublicPort() %> / <%= iceTcpGuard.getInternalPort() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.active"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getActive() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.accepted"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getAccepted() %></td>
+        </tr>
+        <% if ( iceTcpGuard.getHttpsPort() > 0 ) { %>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.https"/> <%= iceTcpGuard.getHttpsPort() %>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getHttps() %></td>
+        </tr>
+        <% } %>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.rejected"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getRejectedAddress() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.pauses"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getAcceptPauses() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.handshake"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getHandshakeTimeouts() %> / <%= iceTcpGuard.getHandshakeFailures() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.icetcp.relay"/>:</td>
+            <td class="metric-value"><%= iceTcpGuard.getRelayFailures() %></td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+<% } %>
+
+<% if ( quotaManager != null ) { %>
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.quota.title"/>
+</div>
+<div class="jive-contentBox">
+    <p><fmt:message key="dashboard.page.quota.rejected"/>: <b><%= quotaManager.getRejected() %></b></p>
+    <div class="jive-table">
+        <table cellpadding="0" cellspacing="0" border="0" width="100%">
+            <thead>
+            <tr>
+                <th nowrap><fmt:message key="dashboard.page.quota.principal"/></th>
+                <th nowrap><fmt:message key="dashboard.page.quota.conferences"/></th>
+                <th nowrap><fmt:message key="dashboard.page.quota.endpoints"/></th>
+                <th nowrap><fmt:message key="dashboard.page.quota.bitrate"/></th>
+            </tr>
+            </thead>
+            <tbody>
+            <% for ( final QuotaManager.Usage usage : quotaManager.getUsages() ) { %>
+            <tr>
+                <td><c:out value="<%= usage.getPrincipal() %>"/></td>
+                <% for ( final QuotaManager.Resource resource : QuotaManager.Resource.values() ) { %>
+                <td><%= usage.get( resource ) %> / <%= usage.getQuota( resource ) < 0 ? "-" : String.valueOf( usage.getQuota( resource ) ) %></td>
+                <% } %>
+            </tr>
+            <% } %>
+            </tbody>
+        </table>
+    </div>
+</div>
+<% } %>
+
+<% if ( clusteredConfiguration != null && clusteredConfiguration.isActive() ) { %>
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.cluster.title"/>
+</div>
+<div class="jive-contentBox">
+    <table cellpadding="3" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td><fmt:message key="dashboard.page.cluster.version"/>:</td>
+            <td class="metric-value"><%= clusteredConfiguration.getVersion() %> / <%= clusteredConfiguration.getAppliedVersion() %></td>
+        </tr>
+        <tr>
+            <td><fmt:message key="dashboard.page.cluster.skewed"/>:</td>
+            <td class="metric-value"><%= clusteredConfiguration.getSkewedNodes() %></td>
+        </tr>
+        <% for ( final Map.Entry<String, Long> acknowledgement : clusteredConfiguration.getAcknowledgements().entrySet() ) { %>
+        <tr>
+            <td><fmt:message key="dashboard.page.cluster.node"/> <%= acknowledgement.getKey() %>:</td>
+            <td class="metric-value"><%= acknowledgement.getValue() %></td>
+        </tr>
+        <% } %>
+        </tbody>
+    </table>
+</div>
+<% } %>
+
+<p>
+    <fmt:message key="dashboard.page.updated"/>: <span id="updated">-</span>
+</p>
+
+<div class="jive-contentBoxHeader">
+    <fmt:message key="dashboard.page.history.title"/>
+</div>
+<div class="jive-contentBox">
+    <p>
+        <fmt:message key="dashboard.page.history.info"/>
+    </p>
+    <p>
+        <fmt:message key="dashboard.page.history.export"/>
+        <a href="metrics-export?resolution=minute"><fmt:message key="dashboard.page.history.export.minute"/></a>,
+        <a href="metrics-export?resolution=second"><fmt:message key="dashboard.page.history.export.second"/></a>
+    </p>
+    <div class="jive-table">
+        <table cellpadding="0" cellspacing="0" border="0" width="100%">
+            <thead>
+            <tr>
+                <th nowrap><fmt:message key="dashboard.page.history.time"/></th>
+                <th nowrap><fmt:message key="dashboard.page.load.conferences"/></th>
+                <th nowrap><fmt:message key="dashboard.page.load.endpoints"/></th>
+                <th nowrap><fmt:message key="dashboard.page.traffic.bitrate-download"/> (kbps)</th>
+                <th nowrap><fmt:message key="dashboard.page.traffic.bitrate-upload"/> (kbps)</th>
+                <th nowrap><fmt:message key="dashboard.page.load.cpu"/> (%)</th>
+                <th nowrap><fmt:message key="dashboard.page.iq.allocation-latency"/> (ms)</th>
+            </tr>
+            </thead>
+            <tbody>
+            <% for ( final long[] row : history ) { %>
+            <tr>
+                <td><%= new java.util.Date( row[ 0 ] ) %></td>
+                <td><%= row[ 1 + HistoricMetric.CONFERENCES.ordinal() ] %></td>
+                <td><%= row[ 1 + HistoricMetric.ENDPOINTS.ordinal() ] %></td>
+                <td><%= row[ 1 + HistoricMetric.BITRATE_DOWNLOAD.ordinal() ] / 1000 %></td>
+                <td><%= row[ 1 + HistoricMetric.BITRATE_UPLOAD.ordinal() ] / 1000 %></td>
+                <td><%= row[ 1 + HistoricMetric.CPU_LOAD.ordinal() ] < 0 ? "-" : String.format( "%.1f", row[ 1 + HistoricMetric.CPU_LOAD.ordinal() ] / 10.0 ) %></td>
+                <td><%= String.format( "%.2f", row[ 1 + HistoricMetric.ALLOCATION_LATENCY.ordinal() ] / 1000.0 ) %></td>
+            </tr>
+            <% } %>
+            </tbody>
+        </table>
+    </div>
+</div>
+
+</body>
+</html>
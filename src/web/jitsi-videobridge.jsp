@@ -31,34 +31,37 @@
     boolean singlePortEnabled, minmaxPortEnabled, tcpEnabled, sslTcpEnabled;
     String stunPort, singlePort, minPort, maxPort, tcpPort, mappedTcpPort;
 
+    // Changes are applied as one batch, so that the Videobridge never observes a partially applied configuration.
+    final ConfigurationBatch batch = new ConfigurationBatch();
     if (reset)
     {
-        JiveGlobals.deleteProperty( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.MAX_PORT_NUMBER_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.MIN_PORT_NUMBER_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.MINMAX_PORT_ENABLED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.SINGLE_PORT_ENABLED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.SINGLE_PORT_NUMBER_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.TCP_ENABLED_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.TCP_PORT_PROPERTY_NAME );
-        JiveGlobals.deleteProperty( PluginImpl.TCP_SSLTCP_ENABLED_PROPERTY_NAME );
+        batch.delete( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
+        batch.delete( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME );
+        batch.delete( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME );
+        batch.delete( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME );
+        batch.delete( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
+        batch.delete( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME );
+        batch.delete( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME );
+        batch.delete( PluginImpl.MAX_PORT_NUMBER_PROPERTY_NAME );
+        batch.delete( PluginImpl.MIN_PORT_NUMBER_PROPERTY_NAME );
+        batch.delete( PluginImpl.MINMAX_PORT_ENABLED_PROPERTY_NAME );
+        batch.delete( PluginImpl.SINGLE_PORT_ENABLED_PROPERTY_NAME );
+        batch.delete( PluginImpl.SINGLE_PORT_NUMBER_PROPERTY_NAME );
+        batch.delete( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME );
+        batch.delete( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME );
+        batch.delete( PluginImpl.TCP_ENABLED_PROPERTY_NAME );
+        batch.delete( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME );
+        batch.delete( PluginImpl.TCP_PORT_PROPERTY_NAME );
+        batch.delete( PluginImpl.TCP_SSLTCP_ENABLED_PROPERTY_NAME );
+        batch.apply();
     }
     if (update)
     {
         String allowAllInterfaces = request.getParameter( "allow-all-interfaces" );
         if ( allowAllInterfaces.equalsIgnoreCase( "true" ) )
         {
-            JiveGlobals.deleteProperty( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME );
-            JiveGlobals.deleteProperty( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
+            batch.delete( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME );
+            batch.delete( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
         }
         else
         {
@@ -70,15 +73,23 @@
                     allowed.add( parameterName.substring( "interface-allowed-".length() ) );
                 }
             }
-            JiveGlobals.setProperty( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME, allowed );
-            JiveGlobals.deleteProperty( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
+            final String interfaceRulesParameter = request.getParameter( "interface-rules" );
+            if ( interfaceRulesParameter != null ) {
+                for ( final String rule : interfaceRulesParameter.split( "[,\\s]+" ) ) {
+                    if ( !rule.isEmpty() ) {
+                        allowed.add( rule );
+                    }
+                }
+            }
+            batch.set( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME, allowed );
+            batch.delete( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME );
         }
 
         String allowAllAddresses = request.getParameter( "allow-all-addresses" );
         if ( allowAllAddresses.equalsIgnoreCase( "true" ) )
         {
-            JiveGlobals.deleteProperty( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME );
-            JiveGlobals.deleteProperty( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
+            batch.delete( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME );
+            batch.delete( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
         }
         else
         {
@@ -90,32 +101,40 @@
                     allowed.add( parameterName.substring( "address-allowed-".length() ) );
                 }
             }
-            JiveGlobals.setProperty( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME, allowed );
-            JiveGlobals.deleteProperty( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
+            final String addressRulesParameter = request.getParameter( "address-rules" );
+            if ( addressRulesParameter != null ) {
+                for ( final String rule : addressRulesParameter.split( "[,\\s]+" ) ) {
+                    if ( !rule.isEmpty() ) {
+                        allowed.add( rule );
+                    }
+                }
+            }
+            batch.set( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME, allowed );
+            batch.delete( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME );
         }
 
         String aws = request.getParameter( "aws" );
         if ( aws == null || aws.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME );
+            batch.delete( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME );
         } else {
-            JiveGlobals.setProperty( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME, aws.trim() );
+            batch.set( PluginImpl.AWS_HARVESTER_CONFIG_PROPERTY_NAME, aws.trim() );
         }
 
         String stunAddress = request.getParameter( "stunAddress" );
         if ( stunAddress == null || stunAddress.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME );
+            batch.delete( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME );
         } else {
-            JiveGlobals.setProperty( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME, stunAddress.trim() );
+            batch.set( PluginImpl.STUN_HARVESTER_ADDRESS_PROPERTY_NAME, stunAddress.trim() );
         }
 
         stunPort = request.getParameter( "stunPort" );
         if ( stunPort == null || stunPort.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME );
+            batch.delete( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME );
         } else {
             try {
                 int port = Integer.valueOf(stunPort.trim());
                 if(port >= 1 && port <= 65535) {
-                    JiveGlobals.setProperty( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME, stunPort.trim() );
+                    batch.set( PluginImpl.STUN_HARVESTER_PORT_PROPERTY_NAME, stunPort.trim() );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -126,20 +145,20 @@
 
         final String manualMappedLocalAddress = request.getParameter( "manualMappedLocalAddress" );
         if ( manualMappedLocalAddress == null || manualMappedLocalAddress.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME );
+            batch.delete( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME );
         } else {
-            JiveGlobals.setProperty( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME, manualMappedLocalAddress.trim() );
+            batch.set( PluginImpl.MANUAL_HARVESTER_LOCAL_PROPERTY_NAME, manualMappedLocalAddress.trim() );
         }
 
         final String manualMappedPublicAddress = request.getParameter( "manualMappedPublicAddress" );
         if ( manualMappedPublicAddress == null || manualMappedPublicAddress.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME );
+            batch.delete( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME );
         } else {
-            JiveGlobals.setProperty( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME, manualMappedPublicAddress.trim() );
+            batch.set( PluginImpl.MANUAL_HARVESTER_PUBLIC_PROPERTY_NAME, manualMappedPublicAddress.trim() );
         }
 
         singlePortEnabled = Boolean.parseBoolean( request.getParameter( "singlePortEnabled" ) );
-        JiveGlobals.setProperty( PluginImpl.SINGLE_PORT_ENABLED_PROPERTY_NAME, Boolean.toString( singlePortEnabled ) );
+        batch.set( PluginImpl.SINGLE_PORT_ENABLED_PROPERTY_NAME, Boolean.toString( singlePortEnabled ) );
 
         singlePort = request.getParameter("singlePort");
         if (singlePort != null) {
@@ -148,7 +167,7 @@
             {
                 int port = Integer.valueOf(singlePort);
                 if(port >= 1 && port <= 65535) {
-                    JiveGlobals.setProperty( PluginImpl.SINGLE_PORT_NUMBER_PROPERTY_NAME, singlePort );
+                    batch.set( PluginImpl.SINGLE_PORT_NUMBER_PROPERTY_NAME, singlePort );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -158,7 +177,7 @@
         }
 
         minmaxPortEnabled = Boolean.parseBoolean( request.getParameter( "minmaxPortEnabled" ) );
-        JiveGlobals.setProperty( PluginImpl.MINMAX_PORT_ENABLED_PROPERTY_NAME, Boolean.toString( minmaxPortEnabled ) );
+        batch.set( PluginImpl.MINMAX_PORT_ENABLED_PROPERTY_NAME, Boolean.toString( minmaxPortEnabled ) );
 
         minPort = request.getParameter("minPort");
         if (minPort != null) {
@@ -166,7 +185,7 @@
             try {
                 int port = Integer.valueOf(minPort);
                 if( port >= 1 && port <= 65535 ) {
-                    JiveGlobals.setProperty( PluginImpl.MIN_PORT_NUMBER_PROPERTY_NAME, minPort );
+                    batch.set( PluginImpl.MIN_PORT_NUMBER_PROPERTY_NAME, minPort );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -181,7 +200,7 @@
             try {
                 int port = Integer.valueOf( maxPort );
                 if ( port >= 1 && port <= 65535 ) {
-                    JiveGlobals.setProperty( PluginImpl.MAX_PORT_NUMBER_PROPERTY_NAME, maxPort );
+                    batch.set( PluginImpl.MAX_PORT_NUMBER_PROPERTY_NAME, maxPort );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -191,16 +210,16 @@
         }
 
         tcpEnabled = Boolean.parseBoolean( request.getParameter( "tcpEnabled" ) );
-        JiveGlobals.setProperty( PluginImpl.TCP_ENABLED_PROPERTY_NAME, Boolean.toString( tcpEnabled ));
+        batch.set( PluginImpl.TCP_ENABLED_PROPERTY_NAME, Boolean.toString( tcpEnabled ));
 
         tcpPort = request.getParameter( "tcpPort" );
         if ( tcpPort == null || tcpPort.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.TCP_PORT_PROPERTY_NAME );
+            batch.delete( PluginImpl.TCP_PORT_PROPERTY_NAME );
         } else {
             try {
                 int port = Integer.valueOf(tcpPort.trim());
                 if(port >= 1 && port <= 65535) {
-                    JiveGlobals.setProperty( PluginImpl.TCP_PORT_PROPERTY_NAME, tcpPort.trim() );
+                    batch.set( PluginImpl.TCP_PORT_PROPERTY_NAME, tcpPort.trim() );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -213,12 +232,12 @@
 
         mappedTcpPort = request.getParameter( "mappedTcpPort" );
         if ( mappedTcpPort == null || mappedTcpPort.trim().isEmpty() ) {
-            JiveGlobals.deleteProperty( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME );
+            batch.delete( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME );
         } else {
             try {
                 int port = Integer.valueOf(mappedTcpPort.trim());
                 if(port >= 1 && port <= 65535) {
-                    JiveGlobals.setProperty( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME, mappedTcpPort.trim() );
+                    batch.set( PluginImpl.TCP_MAPPED_PORT_PROPERTY_NAME, mappedTcpPort.trim() );
                 } else {
                     throw new NumberFormatException( "out of range port" );
                 }
@@ -229,7 +248,8 @@
             }
         }
         sslTcpEnabled = Boolean.parseBoolean( request.getParameter( "sslTcpEnabled" ) );
-        JiveGlobals.setProperty( PluginImpl.TCP_SSLTCP_ENABLED_PROPERTY_NAME, Boolean.toString( sslTcpEnabled ) );
+        batch.set( PluginImpl.TCP_SSLTCP_ENABLED_PROPERTY_NAME, Boolean.toString( sslTcpEnabled ) );
+        batch.apply();
     }
     else
     {
@@ -254,38 +274,33 @@
     final Collection<String> allowedInterfaces = JiveGlobals.getListProperty( PluginImpl.INTERFACES_ALLOWED_PROPERTY_NAME, null ); // null if all interfaces are allowed.
     final Collection<String> blockedInterfaces = JiveGlobals.getListProperty( PluginImpl.INTERFACES_BLOCKED_PROPERTY_NAME, null );
 
-    final Collection<InetAddress> allowedAddresses;
     final List<String> addressesAllowed = JiveGlobals.getListProperty( PluginImpl.ADDRESSES_ALLOWED_PROPERTY_NAME, null );
-    if ( addressesAllowed == null || addressesAllowed.isEmpty() )
-    {
-        allowedAddresses = null;
-    }
-    else
-    {
-        allowedAddresses = new ArrayList<>();
-        for ( final String addressAllowed : addressesAllowed )
-        {
-            allowedAddresses.add( InetAddress.getByName( addressAllowed ) );
-        }
-    }
-
-    final Collection<InetAddress> blockedAddresses;
     final List<String> addressesBlocked = JiveGlobals.getListProperty( PluginImpl.ADDRESSES_BLOCKED_PROPERTY_NAME, null );
-    if ( addressesBlocked == null || addressesBlocked.isEmpty() )
-    {
-        blockedAddresses = null;
+    final NetworkFilter networkFilter = RuntimeConfiguration.getNetworkFilter();
+
+    // Patterns (CIDR prefixes and globs) are shown in a text field, literal values as checkboxes. The literal values
+    // that have a checkbox are collected while the checkboxes are rendered.
+    final Set<String> listedInterfaceRules = new HashSet<>();
+    final Set<String> listedAddressRules = new HashSet<>();
+    final List<String> interfaceRules = new ArrayList<>();
+    if ( allowedInterfaces != null ) {
+        for ( final String rule : allowedInterfaces ) {
+            if ( NetworkFilter.isPattern( rule ) ) {
+                interfaceRules.add( rule );
+            }
+        }
     }
-    else
-    {
-        blockedAddresses = new ArrayList<>();
-        for ( final String addressBlocked : addressesBlocked )
-        {
-            blockedAddresses.add( InetAddress.getByName( addressBlocked ) );
+    final List<String> addressRules = new ArrayList<>();
+    if ( addressesAllowed != null ) {
+        for ( final String rule : addressesAllowed ) {
+            if ( NetworkFilter.isPattern( rule ) ) {
+                addressRules.add( rule );
+            }
         }
     }
 
-    boolean isAllowAllInterfaces = allowedInterfaces == null && blockedAddresses == null;
-    boolean isAllowAllAddresses = allowedAddresses == null && blockedAddresses == null;
+    boolean isAllowAllInterfaces = allowedInterfaces == null && blockedInterfaces == null;
+    boolean isAllowAllAddresses = ( addressesAllowed == null || addressesAllowed.isEmpty() ) && ( addressesBlocked == null || addressesBlocked.isEmpty() );
 
     boolean isAtLeastOneHarvesterEnabled = singlePortEnabled || minmaxPortEnabled || tcpEnabled;
 %>
@@ -340,6 +355,24 @@
 <br/>
 <% } %>
 
+<% if ( RuntimeConfiguration.isSinglePortHarvesterStale() ) { %>
+<div class="jive-warning">
+    <table cellpadding="0" cellspacing="0" border="0">
+        <tbody>
+        <tr>
+            <td class="jive-icon"><img src="/images/warning-16x16.gif" width="16" height="16" border="0" alt=""/></td>
+            <td class="jive-icon-label">
+                <fmt:message key="config.page.configuration.network-changed">
+                    <fmt:param value="<%= StringUtils.escapeHTMLTags( RuntimeConfiguration.getNetworkChangeSinceStart().toString() ) %>"/>
+                </fmt:message>
+            </td>
+        </tr>
+        </tbody>
+    </table>
+</div>
+<br/>
+<% } %>
+
 <% if ( !isAtLeastOneHarvesterEnabled ) { %>
 <div class="jive-warning">
     <table cellpadding="0" cellspacing="0" border="0">
@@ -410,13 +443,23 @@
                     }
 
                     final boolean isDown = !NetworkUtils.isInterfaceUp( networkInterface );
-                    final boolean isAllowed = ( allowedInterfaces == null  || (allowedInterfaces != null && allowedInterfaces.contains( ifName ) ) )
-                            && ( blockedInterfaces == null || blockedInterfaces != null && !blockedInterfaces.contains( ifName ) );
+                    final boolean isAllowed = networkFilter.isInterfaceAllowed( ifName );
+
+                    // Only interfaces that are listed by name are checked (and submitted). An interface that is allowed
+                    // by a pattern is shown as such, but not submitted, so that the pattern is not shadowed by a name.
+                    final String listedRule = NetworkFilter.findLiteralInterfaceRule( allowedInterfaces, ifName );
+                    if ( listedRule != null ) {
+                        listedInterfaceRules.add( listedRule );
+                    }
+                    final boolean isImplied = isAllowed && allowedInterfaces != null && !allowedInterfaces.isEmpty() && listedRule == null;
             %>
             <tr>
                 <td style="padding-left: 2em;">
-                    <input type="checkbox" name="interface-allowed-<%=ifName%>" id="interface-allowed-<%=ifName%>" <%= isAllowed ? "checked" : ""%>/>
+                    <input type="checkbox" name="interface-allowed-<%=ifName%>" id="interface-allowed-<%=ifName%>" <%= isAllowed ? "checked" : ""%> <%= isImplied ? "disabled" : ""%>/>
                     <label for="interface-allowed-<%=ifName%>"><fmt:message key="config.page.configuration.interfaces.allow"/> <%= ifName %> <%= hardwareAddress != null ? "(" + hardwareAddress + ")" : "" %></label>
+                    <% if ( isImplied ) { %>
+                    <span class="jive-info-text"><fmt:message key="config.page.configuration.interfaces.allowed-by-rule" /></span>
+                    <% } %>
                     <% if ( isDown ) { %>
                     <span class="jive-info-text"><fmt:message key="config.page.configuration.interfaces.interface-down" /></span>
                     <% } %>
@@ -425,6 +468,24 @@
             <%
                 }
             %>
+            <tr>
+                <td style="padding-left: 2em;">
+                    <label for="interface-rules"><fmt:message key="config.page.configuration.interfaces.rules"/></label>
+                    <%
+                        // Names for which no checkbox is shown (for example, of an interface that is no longer present)
+                        // are retained in the text field.
+                        if ( allowedInterfaces != null ) {
+                            for ( final String rule : allowedInterfaces ) {
+                                if ( !NetworkFilter.isPattern( rule ) && !listedInterfaceRules.contains( rule ) ) {
+                                    interfaceRules.add( rule );
+                                }
+                            }
+                        }
+                    %>
+                    <input type="text" name="interface-rules" id="interface-rules" size="40" value="<%= StringUtils.escapeForXML( String.join( ", ", interfaceRules ) ) %>"/>
+                    <br/><span class="jive-info-text"><fmt:message key="config.page.configuration.interfaces.rules_info"/></span>
+                </td>
+            </tr>
 
             </tbody>
         </table>
@@ -464,8 +525,7 @@
                             ? networkInterface.getDisplayName()
                             : networkInterface.getName();
 
-                    final boolean isInterfaceAllowed = ( allowedInterfaces == null || (allowedInterfaces != null && allowedInterfaces.contains( ifName ) ) )
-                            && ( blockedInterfaces == null || blockedInterfaces != null && !blockedInterfaces.contains( ifName ) );
+                    final boolean isInterfaceAllowed = networkFilter.isInterfaceAllowed( ifName );
 
                     final Enumeration<InetAddress> ifaceAddresses = networkInterface.getInetAddresses();
                     while ( ifaceAddresses.hasMoreElements() ) {
@@ -475,13 +535,24 @@
                             hostAddress = hostAddress.substring( 0, hostAddress.indexOf( '%' ) );
                         }
 
-                        final boolean isAllowed = ( allowedAddresses == null || allowedAddresses != null && allowedAddresses.contains( address ) )
-                            && ( blockedAddresses == null || blockedAddresses != null && !blockedAddresses.contains( address ) );
+                        final boolean isAllowed = networkFilter.isAddressAllowed( address );
+
+                        // Only addresses that are listed literally are checked (and submitted). An address that is
+                        // allowed by a CIDR prefix is shown as such, but not submitted, so that the prefix is not
+                        // shadowed by literals.
+                        final String listedRule = NetworkFilter.findLiteralAddressRule( addressesAllowed, address );
+                        if ( listedRule != null ) {
+                            listedAddressRules.add( listedRule );
+                        }
+                        final boolean isImplied = isAllowed && addressesAllowed != null && !addressesAllowed.isEmpty() && listedRule == null;
             %>
             <tr>
                 <td style="padding-left: 2em;">
-                    <input type="checkbox" name="address-allowed-<%=hostAddress%>" id="address-allowed-<%=hostAddress%>" <%= isAllowed ? "checked" : ""%>/>
+                    <input type="checkbox" name="address-allowed-<%=hostAddress%>" id="address-allowed-<%=hostAddress%>" <%= isAllowed ? "checked" : ""%> <%= isImplied ? "disabled" : ""%>/>
                     <label for="address-allowed-<%=hostAddress%>"><fmt:message key="config.page.configuration.addresses.allow"/> <%= hostAddress %> </label>
+                    <% if ( isImplied ) { %>
+                    <span class="jive-info-text"><fmt:message key="config.page.configuration.addresses.allowed-by-rule" /></span>
+                    <% } %>
                     <% if ( !isInterfaceAllowed ) { %>
                     <span class="jive-info-text"><fmt:message key="config.page.configuration.addresses.interface-not-allowed"><fmt:param value="<%=ifName%>"/></fmt:message></span>
                     <% } %>
@@ -490,6 +561,24 @@
             <%
                     } }
             %>
+            <tr>
+                <td style="padding-left: 2em;">
+                    <label for="address-rules"><fmt:message key="config.page.configuration.addresses.rules"/></label>
+                    <%
+                        // Addresses for which no checkbox is shown (for example, of an interface that is down) are
+                        // retained in the text field.
+                        if ( addressesAllowed != null ) {
+                            for ( final String rule : addressesAllowed ) {
+                                if ( !NetworkFilter.isPattern( rule ) && !listedAddressRules.contains( rule ) ) {
+                                    addressRules.add( rule );
+                                }
+                            }
+                        }
+                    %>
+                    <input type="text" name="address-rules" id="address-rules" size="40" value="<%= StringUtils.escapeForXML( String.join( ", ", addressRules ) ) %>"/>
+                    <br/><span class="jive-info-text"><fmt:message key="config.page.configuration.addresses.rules_info"/></span>
+                </td>
+            </tr>
 
             </tbody>
         </table>